@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.activemq;
+
+/**
+ * Indicates how {@link ActiveMQInboundEventReceiver} consumers acknowledge messages.
+ * 
+ * @author Derek
+ */
+public enum ActiveMQAcknowledgeMode {
+
+	/** Each message is acknowledged as it is received */
+	Auto,
+
+	/** Acknowledgements are sent lazily in groups. Messages may be redelivered */
+	DupsOk,
+
+	/** Messages are received in transactions that are committed in batches */
+	Transacted;
+}
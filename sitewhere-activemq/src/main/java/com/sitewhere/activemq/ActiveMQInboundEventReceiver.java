@@ -13,7 +13,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.jms.BytesMessage;
@@ -27,8 +29,10 @@ import javax.jms.Session;
 import javax.jms.TextMessage;
 
 import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.ActiveMQPrefetchPolicy;
 import org.apache.activemq.broker.BrokerService;
 import org.apache.activemq.broker.TransportConnector;
+import org.apache.activemq.command.ActiveMQQueue;
 import org.apache.log4j.Logger;
 
 import com.sitewhere.configuration.TomcatConfigurationResolver;
@@ -42,6 +46,12 @@ import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
  * Implementation of {@link IInboundEventReceiver} that uses an ActiveMQ broker to listen
  * on a transport for messages.
  * 
+ * Consumers may acknowledge each message, acknowledge lazily in groups, or commit
+ * transactions in batches. Prefetch and optimized acknowledgement can be tuned on the
+ * consumer connections. If a maximum consumer count is set, consumers are added as the
+ * queue backs up and removed one at a time as it drains, never dropping below the
+ * configured number of consumers.
+ * 
  * @author Derek
  */
 public class ActiveMQInboundEventReceiver extends LifecycleComponent implements IInboundEventReceiver<byte[]> {
@@ -52,6 +62,21 @@ public class ActiveMQInboundEventReceiver extends LifecycleComponent implements
 	/** Number of consumers reading messages from the queue */
 	private static final int DEFAULT_NUM_CONSUMERS = 3;
 
+	/** Default number of messages consumed in each transaction */
+	private static final int DEFAULT_TRANSACTION_BATCH_SIZE = 100;
+
+	/** Default number of messages dispatched to a consumer ahead of processing */
+	private static final int DEFAULT_PREFETCH_SIZE = ActiveMQPrefetchPolicy.DEFAULT_QUEUE_PREFETCH;
+
+	/** Default queue depth handled by each consumer before more are added */
+	private static final int DEFAULT_MESSAGES_PER_CONSUMER = 1000;
+
+	/** Default time between consumer scaling checks in milliseconds */
+	private static final long DEFAULT_SCALE_INTERVAL = 5 * 1000;
+
+	/** Time consumers wait for a message before checking state in milliseconds */
+	private static final long RECEIVE_TIMEOUT = 500;
+
 	/** Parent event source */
 	private IInboundEventSource<byte[]> eventSource;
 
@@ -73,12 +98,39 @@ public class ActiveMQInboundEventReceiver extends LifecycleComponent implements
 	/** Number of consumers used to read messages from the queue */
 	private int numConsumers = DEFAULT_NUM_CONSUMERS;
 
+	/** Most consumers started as the queue backs up (0 to disable scaling) */
+	private int maxConsumers = 0;
+
+	/** Queue depth handled by each consumer before more are added */
+	private int messagesPerConsumer = DEFAULT_MESSAGES_PER_CONSUMER;
+
+	/** Time between consumer scaling checks in milliseconds */
+	private long scaleInterval = DEFAULT_SCALE_INTERVAL;
+
+	/** How consumers acknowledge messages */
+	private ActiveMQAcknowledgeMode acknowledgeMode = ActiveMQAcknowledgeMode.Auto;
+
+	/** Number of messages consumed in each transaction */
+	private int transactionBatchSize = DEFAULT_TRANSACTION_BATCH_SIZE;
+
+	/** Number of messages dispatched to a consumer ahead of processing */
+	private int prefetchSize = DEFAULT_PREFETCH_SIZE;
+
+	/** Indicates whether acknowledgements are batched by the ActiveMQ client */
+	private boolean optimizeAcknowledge = false;
+
 	/** List of consumers reading messages */
 	private List<Consumer> consumers = new ArrayList<Consumer>();
 
 	/** Thread pool for consumer processing */
 	private ExecutorService consumersPool;
 
+	/** Adds and removes consumers based on queue depth */
+	private ScheduledExecutorService scaler;
+
+	/** Indicates whether message delivery to consumers is stopped */
+	private boolean paused = false;
+
 	public ActiveMQInboundEventReceiver() {
 		super(LifecycleComponentType.InboundEventReceiver);
 		this.brokerService = new BrokerService();
@@ -146,14 +198,68 @@ public class ActiveMQInboundEventReceiver extends LifecycleComponent implements
 	 */
 	protected void startConsumers() throws SiteWhereException {
 		consumers.clear();
-		consumersPool = Executors.newFixedThreadPool(getNumConsumers(), new ConsumersThreadFactory());
+		consumersPool = Executors.newCachedThreadPool(new ConsumersThreadFactory());
 		for (int i = 0; i < getNumConsumers(); i++) {
-			Consumer consumer = new Consumer();
-			consumer.start();
-			consumersPool.execute(consumer);
-			consumers.add(consumer);
+			addConsumer();
+		}
+		LOGGER.info("Created " + consumers.size() + " consumers for processing ActiveMQ messages ("
+				+ getAcknowledgeMode() + " acknowledge, prefetch " + getPrefetchSize() + ").");
+		if (getMaxConsumers() > getNumConsumers()) {
+			scaler = Executors.newSingleThreadScheduledExecutor(new ScalerThreadFactory());
+			scaler.scheduleWithFixedDelay(new ConsumerScaler(), getScaleInterval(), getScaleInterval(),
+					TimeUnit.MILLISECONDS);
+			LOGGER.info("Consumers will scale between " + getNumConsumers() + " and " + getMaxConsumers()
+					+ " based on queue depth.");
+		}
+	}
+
+	/**
+	 * Start a new consumer.
+	 * 
+	 * @throws SiteWhereException
+	 */
+	protected synchronized void addConsumer() throws SiteWhereException {
+		Consumer consumer = new Consumer();
+		consumer.start();
+		if (paused) {
+			consumer.pause();
+		}
+		consumersPool.execute(consumer);
+		consumers.add(consumer);
+	}
+
+	/**
+	 * Stop the most recently added consumer. Messages it has prefetched but not processed
+	 * are returned to the queue.
+	 */
+	protected synchronized void removeConsumer() {
+		if (consumers.size() > 0) {
+			consumers.remove(consumers.size() - 1).retire();
+		}
+	}
+
+	/**
+	 * Get the number of consumers reading from the queue.
+	 * 
+	 * @return
+	 */
+	public synchronized int getConsumerCount() {
+		return consumers.size();
+	}
+
+	/**
+	 * Get the number of messages on the queue that have not been acknowledged.
+	 * 
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public long getQueueDepth() throws SiteWhereException {
+		try {
+			return brokerService.getDestination(new ActiveMQQueue(getQueueName())).getDestinationStatistics()
+					.getMessages().getCount();
+		} catch (Exception e) {
+			throw new SiteWhereException("Unable to get ActiveMQ queue depth.", e);
 		}
-		LOGGER.info("Created " + consumers.size() + " consumers for processing ActiveMQ messages.");
 	}
 
 	/*
@@ -178,11 +284,19 @@ public class ActiveMQInboundEventReceiver extends LifecycleComponent implements
 	 * 
 	 * @throws SiteWhereException
 	 */
-	protected void stopConsumers() throws SiteWhereException {
+	protected synchronized void stopConsumers() throws SiteWhereException {
+		if (scaler != null) {
+			scaler.shutdownNow();
+			scaler = null;
+		}
+		for (Consumer consumer : consumers) {
+			consumer.retire();
+		}
 		consumersPool.shutdownNow();
 		for (Consumer consumer : consumers) {
 			consumer.stop();
 		}
+		consumers.clear();
 	}
 
 	/*
@@ -197,6 +311,38 @@ public class ActiveMQInboundEventReceiver extends LifecycleComponent implements
 		getEventSource().onEncodedEventReceived(ActiveMQInboundEventReceiver.this, payload);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.provisioning.IInboundEventReceiver#pauseDelivery()
+	 */
+	@Override
+	public synchronized void pauseDelivery() {
+		if (!paused) {
+			for (Consumer consumer : consumers) {
+				consumer.pause();
+			}
+			paused = true;
+			LOGGER.info("Stopped delivery from ActiveMQ queue: " + getQueueName());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.provisioning.IInboundEventReceiver#resumeDelivery()
+	 */
+	@Override
+	public synchronized void resumeDelivery() {
+		if (paused) {
+			for (Consumer consumer : consumers) {
+				consumer.resume();
+			}
+			paused = false;
+			LOGGER.info("Restarted delivery from ActiveMQ queue: " + getQueueName());
+		}
+	}
+
 	/** Used for naming consumer threads */
 	private class ConsumersThreadFactory implements ThreadFactory {
 
@@ -209,6 +355,47 @@ public class ActiveMQInboundEventReceiver extends LifecycleComponent implements
 		}
 	}
 
+	/** Used for naming consumer scaler thread */
+	private class ScalerThreadFactory implements ThreadFactory {
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "SiteWhere ActiveMQ(" + getBrokerName() + ") Scaler");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * Sizes the consumer pool to the queue depth. Consumers are added as soon as they are
+	 * needed but removed one per check, so short lulls do not cause churn.
+	 * 
+	 * @author Derek
+	 */
+	private class ConsumerScaler implements Runnable {
+
+		@Override
+		public void run() {
+			try {
+				long depth = getQueueDepth();
+				int wanted = (int) Math.min(getMaxConsumers(), (depth / getMessagesPerConsumer()) + 1);
+				wanted = Math.max(getNumConsumers(), wanted);
+				int current = getConsumerCount();
+				if (wanted > current) {
+					for (int i = current; i < wanted; i++) {
+						addConsumer();
+					}
+					LOGGER.info("Queue depth is " + depth + ". Increased consumers from " + current + " to "
+							+ wanted + ".");
+				} else if (wanted < current) {
+					removeConsumer();
+					LOGGER.info("Queue depth is " + depth + ". Reduced consumers to " + (current - 1) + ".");
+				}
+			} catch (Throwable e) {
+				LOGGER.error("Unable to scale ActiveMQ consumers.", e);
+			}
+		}
+	}
+
 	/**
 	 * Reads messages from the ActiveMQ queue and puts the binary content on a queue for
 	 * SiteWhere to use.
@@ -226,17 +413,40 @@ public class ActiveMQInboundEventReceiver extends LifecycleComponent implements
 		/** Consumer for reading data */
 		private MessageConsumer consumer;
 
+		/** Indicates whether the consumer should keep reading */
+		private volatile boolean running = true;
+
+		/** Messages received in the current transaction */
+		private int uncommitted = 0;
+
 		public void start() throws SiteWhereException {
 			try {
 				// Create a VM connection to the broker.
 				ActiveMQConnectionFactory connectionFactory =
 						new ActiveMQConnectionFactory("vm://" + getBrokerName());
+				ActiveMQPrefetchPolicy prefetch = new ActiveMQPrefetchPolicy();
+				prefetch.setQueuePrefetch(getPrefetchSize());
+				connectionFactory.setPrefetchPolicy(prefetch);
+				connectionFactory.setOptimizeAcknowledge(isOptimizeAcknowledge());
 				this.connection = connectionFactory.createConnection();
 				connection.setExceptionListener(this);
 				connection.start();
 
 				// Create a Session
-				this.session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+				switch (getAcknowledgeMode()) {
+				case DupsOk: {
+					this.session = connection.createSession(false, Session.DUPS_OK_ACKNOWLEDGE);
+					break;
+				}
+				case Transacted: {
+					this.session = connection.createSession(true, Session.SESSION_TRANSACTED);
+					break;
+				}
+				default: {
+					this.session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+					break;
+				}
+				}
 
 				Destination destination = session.createQueue(getQueueName());
 				this.consumer = session.createConsumer(destination);
@@ -245,6 +455,37 @@ public class ActiveMQInboundEventReceiver extends LifecycleComponent implements
 			}
 		}
 
+		/**
+		 * Stop delivery of messages. Consumers blocked in receive wait until delivery is
+		 * restarted, and undelivered messages remain on the broker.
+		 */
+		public void pause() {
+			try {
+				connection.stop();
+			} catch (JMSException e) {
+				LOGGER.error("Unable to stop ActiveMQ consumer connection.", e);
+			}
+		}
+
+		/**
+		 * Restart delivery of messages after {@link #pause()}.
+		 */
+		public void resume() {
+			try {
+				connection.start();
+			} catch (JMSException e) {
+				LOGGER.error("Unable to restart ActiveMQ consumer connection.", e);
+			}
+		}
+
+		/**
+		 * Ask the consumer to commit any open transaction and close once it finishes the
+		 * message it is processing.
+		 */
+		public void retire() {
+			running = false;
+		}
+
 		public void stop() throws SiteWhereException {
 			try {
 				consumer.close();
@@ -262,11 +503,12 @@ public class ActiveMQInboundEventReceiver extends LifecycleComponent implements
 		 */
 		@Override
 		public void run() {
-			while (true) {
+			while (running) {
 				try {
-					Message message = consumer.receive();
+					Message message = consumer.receive(RECEIVE_TIMEOUT);
 					if (message == null) {
-						break;
+						commit();
+						continue;
 					}
 					if (message instanceof TextMessage) {
 						TextMessage textMessage = (TextMessage) message;
@@ -279,11 +521,45 @@ public class ActiveMQInboundEventReceiver extends LifecycleComponent implements
 					} else {
 						LOGGER.warn("Ignoring unknown JMS message type: " + message.getClass().getName());
 					}
+					uncommitted++;
+					if (uncommitted >= getTransactionBatchSize()) {
+						commit();
+					}
 				} catch (Throwable e) {
-					LOGGER.error("Error in ActiveMQ message processing.", e);
+					if (running) {
+						LOGGER.error("Error in ActiveMQ message processing.", e);
+						synchronized (ActiveMQInboundEventReceiver.this) {
+							consumers.remove(this);
+						}
+						try {
+							stop();
+						} catch (SiteWhereException e1) {
+						}
+					}
 					return;
 				}
 			}
+			try {
+				commit();
+				stop();
+			} catch (Throwable e) {
+				LOGGER.warn("Error closing retired ActiveMQ consumer.", e);
+			}
+		}
+
+		/**
+		 * Commit messages received in the current transaction.
+		 * 
+		 * @throws JMSException
+		 */
+		protected void commit() throws JMSException {
+			if (uncommitted == 0) {
+				return;
+			}
+			if (getAcknowledgeMode() == ActiveMQAcknowledgeMode.Transacted) {
+				session.commit();
+			}
+			uncommitted = 0;
 		}
 
 		/*
@@ -359,4 +635,60 @@ public class ActiveMQInboundEventReceiver extends LifecycleComponent implements
 	public void setNumConsumers(int numConsumers) {
 		this.numConsumers = numConsumers;
 	}
+
+	public int getMaxConsumers() {
+		return maxConsumers;
+	}
+
+	public void setMaxConsumers(int maxConsumers) {
+		this.maxConsumers = maxConsumers;
+	}
+
+	public int getMessagesPerConsumer() {
+		return messagesPerConsumer;
+	}
+
+	public void setMessagesPerConsumer(int messagesPerConsumer) {
+		this.messagesPerConsumer = messagesPerConsumer;
+	}
+
+	public long getScaleInterval() {
+		return scaleInterval;
+	}
+
+	public void setScaleInterval(long scaleInterval) {
+		this.scaleInterval = scaleInterval;
+	}
+
+	public ActiveMQAcknowledgeMode getAcknowledgeMode() {
+		return acknowledgeMode;
+	}
+
+	public void setAcknowledgeMode(ActiveMQAcknowledgeMode acknowledgeMode) {
+		this.acknowledgeMode = acknowledgeMode;
+	}
+
+	public int getTransactionBatchSize() {
+		return transactionBatchSize;
+	}
+
+	public void setTransactionBatchSize(int transactionBatchSize) {
+		this.transactionBatchSize = transactionBatchSize;
+	}
+
+	public int getPrefetchSize() {
+		return prefetchSize;
+	}
+
+	public void setPrefetchSize(int prefetchSize) {
+		this.prefetchSize = prefetchSize;
+	}
+
+	public boolean isOptimizeAcknowledge() {
+		return optimizeAcknowledge;
+	}
+
+	public void setOptimizeAcknowledge(boolean optimizeAcknowledge) {
+		this.optimizeAcknowledge = optimizeAcknowledge;
+	}
 }
\ No newline at end of file
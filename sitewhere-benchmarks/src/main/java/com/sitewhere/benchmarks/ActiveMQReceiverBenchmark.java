@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sitewhere.activemq.ActiveMQAcknowledgeMode;
+import com.sitewhere.activemq.ActiveMQInboundEventReceiver;
+import com.sitewhere.server.lifecycle.LifecycleComponent;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.provisioning.IDeviceEventDecoder;
+import com.sitewhere.spi.device.provisioning.IInboundEventReceiver;
+import com.sitewhere.spi.device.provisioning.IInboundEventSource;
+import com.sitewhere.spi.device.provisioning.IInboundProcessingStrategy;
+import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
+
+/**
+ * Compares the time {@link ActiveMQInboundEventReceiver} takes per message to drain an
+ * embedded broker queue using the previous configuration (auto acknowledge, default
+ * prefetch, fixed consumers) against batched acknowledgement and elastic consumers.
+ * Messages are queued while the receiver is paused, then timed as it drains the queue.
+ * 
+ * @author Derek
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ActiveMQReceiverBenchmark {
+
+	/** Number of messages sent for each invocation */
+	public static final int MESSAGE_COUNT = 20000;
+
+	/** Name of queue used for benchmarks */
+	private static final String QUEUE_NAME = "SITEWHERE.BENCHMARK";
+
+	/** Receiver configuration being measured */
+	@Param({ "AutoAck", "DupsOkElastic", "TransactedElastic" })
+	public String configuration;
+
+	/** Receiver being measured */
+	private ActiveMQInboundEventReceiver receiver;
+
+	/** Counts messages delivered to the event source */
+	private CountingEventSource source;
+
+	/** Broker data directory */
+	private File dataDirectory;
+
+	@Setup(Level.Iteration)
+	public void setup() throws Exception {
+		dataDirectory = File.createTempFile("sitewhere-activemq", "");
+		dataDirectory.delete();
+		dataDirectory.mkdirs();
+		source = new CountingEventSource(MESSAGE_COUNT);
+		receiver = new ActiveMQInboundEventReceiver();
+		receiver.setBrokerName("sitewhere-benchmark");
+		receiver.setTransportUri("tcp://localhost:0");
+		receiver.setQueueName(QUEUE_NAME);
+		receiver.setDataDirectory(dataDirectory.getAbsolutePath());
+		receiver.setEventSource(source);
+		receiver.setNumConsumers(3);
+		if ("DupsOkElastic".equals(configuration)) {
+			configureElastic();
+			receiver.setAcknowledgeMode(ActiveMQAcknowledgeMode.DupsOk);
+			receiver.setOptimizeAcknowledge(true);
+		} else if ("TransactedElastic".equals(configuration)) {
+			configureElastic();
+			receiver.setAcknowledgeMode(ActiveMQAcknowledgeMode.Transacted);
+			receiver.setTransactionBatchSize(200);
+		}
+		receiver.start();
+		receiver.pauseDelivery();
+		sendMessages();
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws Exception {
+		receiver.stop();
+		delete(dataDirectory);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(MESSAGE_COUNT)
+	public boolean drainQueue() throws InterruptedException {
+		receiver.resumeDelivery();
+		return source.getReceived().await(2, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Allow consumers to scale between three and eight.
+	 */
+	protected void configureElastic() {
+		receiver.setMaxConsumers(8);
+		receiver.setMessagesPerConsumer(2000);
+		receiver.setScaleInterval(250);
+	}
+
+	/**
+	 * Send persistent messages to the queue over a VM connection.
+	 * 
+	 * @throws Exception
+	 */
+	protected void sendMessages() throws Exception {
+		ActiveMQConnectionFactory factory =
+				new ActiveMQConnectionFactory("vm://" + receiver.getBrokerName() + "?create=false");
+		Connection connection = factory.createConnection();
+		try {
+			connection.start();
+			Session session = connection.createSession(true, Session.SESSION_TRANSACTED);
+			MessageProducer producer = session.createProducer(session.createQueue(QUEUE_NAME));
+			byte[] payload = "{\"hardwareId\":\"123-TEST-4567890\",\"type\":\"DeviceMeasurements\"}"
+					.getBytes();
+			for (int i = 0; i < MESSAGE_COUNT; i++) {
+				BytesMessage message = session.createBytesMessage();
+				message.writeBytes(payload);
+				producer.send(message);
+				if ((i % 1000) == 999) {
+					session.commit();
+				}
+			}
+			session.commit();
+		} finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Delete a directory and its contents.
+	 * 
+	 * @param file
+	 */
+	protected void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Event source that counts payloads instead of decoding them.
+	 * 
+	 * @author Derek
+	 */
+	private static class CountingEventSource extends LifecycleComponent implements
+			IInboundEventSource<byte[]> {
+
+		/** Static logger instance */
+		private static Logger LOGGER = Logger.getLogger(CountingEventSource.class);
+
+		/** Counts down as payloads arrive */
+		private CountDownLatch received;
+
+		public CountingEventSource(int expected) {
+			super(LifecycleComponentType.InboundEventSource);
+			this.received = new CountDownLatch(expected);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#start()
+		 */
+		@Override
+		public void start() throws SiteWhereException {
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#stop()
+		 */
+		@Override
+		public void stop() throws SiteWhereException {
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#getLogger()
+		 */
+		@Override
+		public Logger getLogger() {
+			return LOGGER;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.sitewhere.spi.device.provisioning.IInboundEventSource#getSourceId()
+		 */
+		@Override
+		public String getSourceId() {
+			return "benchmark";
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * com.sitewhere.spi.device.provisioning.IInboundEventSource#setDeviceEventDecoder(com
+		 * .sitewhere.spi.device.provisioning.IDeviceEventDecoder)
+		 */
+		@Override
+		public void setDeviceEventDecoder(IDeviceEventDecoder<byte[]> decoder) {
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * com.sitewhere.spi.device.provisioning.IInboundEventSource#setInboundProcessingStrategy
+		 * (com.sitewhere.spi.device.provisioning.IInboundProcessingStrategy)
+		 */
+		@Override
+		public void setInboundProcessingStrategy(IInboundProcessingStrategy strategy) {
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * com.sitewhere.spi.device.provisioning.IInboundEventSource#setInboundEventReceivers
+		 * (java.util.List)
+		 */
+		@Override
+		public void setInboundEventReceivers(List<IInboundEventReceiver<byte[]>> receivers) {
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * com.sitewhere.spi.device.provisioning.IInboundEventSource#onEncodedEventReceived
+		 * (com.sitewhere.spi.device.provisioning.IInboundEventReceiver, java.lang.Object)
+		 */
+		@Override
+		public void onEncodedEventReceived(IInboundEventReceiver<byte[]> receiver, byte[] encodedEvent) {
+			received.countDown();
+		}
+
+		public CountDownLatch getReceived() {
+			return received;
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sitewhere.rest.model.asset.HardwareAsset;
+import com.sitewhere.rest.model.search.SearchCriteria;
+import com.sitewhere.server.asset.AssetMatcher;
+import com.sitewhere.server.asset.AssetSearchIndex;
+import com.sitewhere.spi.asset.AssetType;
+import com.sitewhere.spi.search.ISearchResults;
+
+/**
+ * Measures typeahead queries against {@link AssetSearchIndex} on a large generated
+ * catalogue. Queries follow the keystrokes of a user typing an asset name and should
+ * stay well under a millisecond each.
+ * 
+ * @author Derek
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssetSearchIndexBenchmark {
+
+	/** Words used to generate asset names */
+	private static final String[] WORDS = { "Raspberry", "Arduino", "Sensor", "Gateway", "Beacon",
+			"Tracker", "Controller", "Thermostat", "Camera", "Meter" };
+
+	/** Number of assets in generated catalogue */
+	private static final int NUM_ASSETS = 100000;
+
+	/** Query typed so far */
+	@Param({ "th", "ther", "thermo", "thermostat 4", "thermostat 42" })
+	public String query;
+
+	/** Index under test */
+	private AssetSearchIndex<HardwareAsset> index;
+
+	/** First page of typeahead results */
+	private SearchCriteria paging = new SearchCriteria(1, 20);
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		List<HardwareAsset> assets = new ArrayList<HardwareAsset>();
+		for (int i = 0; i < NUM_ASSETS; i++) {
+			HardwareAsset asset = new HardwareAsset();
+			asset.setId("hw-" + i);
+			asset.setName(WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(1000));
+			asset.setDescription("Model " + WORDS[random.nextInt(WORDS.length)] + "-" + i);
+			assets.add(asset);
+		}
+		this.index = new AssetSearchIndex<HardwareAsset>(AssetType.Hardware, assets, new AssetMatcher());
+	}
+
+	@Benchmark
+	public ISearchResults<HardwareAsset> typeahead() {
+		return index.search(query, paging);
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.sitewhere.rest.model.device.event.DeviceEventBatch;
+import com.sitewhere.rest.model.device.event.DeviceLocation;
+import com.sitewhere.rest.model.device.event.DeviceMeasurements;
+import com.sitewhere.rest.model.device.event.request.DeviceAlertCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceLocationCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceMeasurementsCreateRequest;
+import com.sitewhere.rest.model.device.provisioning.DecodedDeviceEventRequest;
+import com.sitewhere.spi.device.DeviceAssignmentType;
+import com.sitewhere.spi.device.event.AlertLevel;
+import com.sitewhere.spi.device.event.IDeviceMeasurements;
+
+/**
+ * Builds deterministic event payloads used as benchmark inputs.
+ * 
+ * @author Derek
+ */
+public class BenchmarkEvents {
+
+	/** Measurement names used in generated events */
+	public static final String[] MEASUREMENT_NAMES = { "engine.temp", "engine.rpm", "fuel.level",
+			"battery.voltage", "speed" };
+
+	/**
+	 * Create a measurements create request with all standard measurement names.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public static DeviceMeasurementsCreateRequest createMeasurementsRequest(int index) {
+		DeviceMeasurementsCreateRequest mx = new DeviceMeasurementsCreateRequest();
+		for (int i = 0; i < MEASUREMENT_NAMES.length; i++) {
+			mx.addOrReplaceMeasurement(MEASUREMENT_NAMES[i], (double) ((index * 31 + i * 7) % 1000));
+		}
+		mx.setEventDate(new Date(1420070400000L + (index * 1000L)));
+		return mx;
+	}
+
+	/**
+	 * Create a location create request.
+	 * 
+	 * @param latitude
+	 * @param longitude
+	 * @return
+	 */
+	public static DeviceLocationCreateRequest createLocationRequest(double latitude, double longitude) {
+		DeviceLocationCreateRequest location = new DeviceLocationCreateRequest();
+		location.setLatitude(latitude);
+		location.setLongitude(longitude);
+		location.setElevation(0.0);
+		location.setEventDate(new Date());
+		return location;
+	}
+
+	/**
+	 * Create an alert create request.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public static DeviceAlertCreateRequest createAlertRequest(int index) {
+		DeviceAlertCreateRequest alert = new DeviceAlertCreateRequest();
+		alert.setType("engine.overheat");
+		alert.setLevel(AlertLevel.Warning);
+		alert.setMessage("Engine temperature exceeded threshold on sample " + index + ".");
+		alert.setEventDate(new Date());
+		return alert;
+	}
+
+	/**
+	 * Create a batch with the given number of each event type.
+	 * 
+	 * @param hardwareId
+	 * @param measurements
+	 * @param locations
+	 * @param alerts
+	 * @return
+	 */
+	public static DeviceEventBatch createBatch(String hardwareId, int measurements, int locations,
+			int alerts) {
+		DeviceEventBatch batch = new DeviceEventBatch();
+		batch.setHardwareId(hardwareId);
+		List<DeviceMeasurementsCreateRequest> mxs = new ArrayList<DeviceMeasurementsCreateRequest>();
+		for (int i = 0; i < measurements; i++) {
+			mxs.add(createMeasurementsRequest(i));
+		}
+		batch.setMeasurements(mxs);
+		List<DeviceLocationCreateRequest> locs = new ArrayList<DeviceLocationCreateRequest>();
+		for (int i = 0; i < locations; i++) {
+			locs.add(createLocationRequest(33.75 + (i * 0.0001), -84.38 + (i * 0.0001)));
+		}
+		batch.setLocations(locs);
+		List<DeviceAlertCreateRequest> alrts = new ArrayList<DeviceAlertCreateRequest>();
+		for (int i = 0; i < alerts; i++) {
+			alrts.add(createAlertRequest(i));
+		}
+		batch.setAlerts(alrts);
+		return batch;
+	}
+
+	/**
+	 * Wrap a measurements request as it would be delivered by an event decoder.
+	 * 
+	 * @param hardwareId
+	 * @param index
+	 * @return
+	 */
+	public static DecodedDeviceEventRequest createDecodedMeasurements(String hardwareId, int index) {
+		DecodedDeviceEventRequest decoded = new DecodedDeviceEventRequest();
+		decoded.setHardwareId(hardwareId);
+		decoded.setRequest(createMeasurementsRequest(index));
+		return decoded;
+	}
+
+	/**
+	 * Create a list of stored measurements events such as those returned by a datastore
+	 * query.
+	 * 
+	 * @param assignmentToken
+	 * @param count
+	 * @return
+	 */
+	public static List<IDeviceMeasurements> createMeasurementsHistory(String assignmentToken, int count) {
+		List<IDeviceMeasurements> results = new ArrayList<IDeviceMeasurements>();
+		for (int i = 0; i < count; i++) {
+			DeviceMeasurementsCreateRequest request = createMeasurementsRequest(count - i);
+			DeviceMeasurements mxs = new DeviceMeasurements();
+			mxs.setId(String.valueOf(i));
+			mxs.setDeviceAssignmentToken(assignmentToken);
+			mxs.setAssignmentType(DeviceAssignmentType.Unassociated);
+			mxs.setEventDate(request.getEventDate());
+			mxs.setReceivedDate(request.getEventDate());
+			for (String key : request.getMeasurements().keySet()) {
+				mxs.addOrReplaceMeasurement(key, request.getMeasurement(key));
+			}
+			results.add(mxs);
+		}
+		return results;
+	}
+
+	/**
+	 * Create a stored location event.
+	 * 
+	 * @param assignmentToken
+	 * @param latitude
+	 * @param longitude
+	 * @return
+	 */
+	public static DeviceLocation createLocation(String assignmentToken, double latitude, double longitude) {
+		DeviceLocation location = new DeviceLocation();
+		location.setId("location");
+		location.setDeviceAssignmentToken(assignmentToken);
+		location.setAssignmentType(DeviceAssignmentType.Unassociated);
+		location.setLatitude(latitude);
+		location.setLongitude(longitude);
+		location.setEventDate(new Date());
+		location.setReceivedDate(new Date());
+		return location;
+	}
+}
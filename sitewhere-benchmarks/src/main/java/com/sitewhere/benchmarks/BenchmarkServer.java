@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import com.codahale.metrics.MetricRegistry;
+import com.sitewhere.SiteWhere;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDeviceManagement;
+import com.sitewhere.spi.device.event.processor.IInboundEventProcessorChain;
+import com.sitewhere.spi.server.ISiteWhereServer;
+
+/**
+ * Minimal {@link ISiteWhereServer} installed as the {@link SiteWhere} singleton so that
+ * components which look up services through {@link SiteWhere#getServer()} can be
+ * benchmarked without starting a server. Only the services used by the benchmarked code
+ * paths are available. Other methods do nothing and return null, zero or false.
+ * 
+ * @author Derek
+ */
+public class BenchmarkServer implements InvocationHandler {
+
+	/** Device management implementation */
+	private IDeviceManagement deviceManagement;
+
+	/** Inbound event processor chain */
+	private IInboundEventProcessorChain inboundEventProcessorChain;
+
+	/** Metric registry */
+	private MetricRegistry metricRegistry = new MetricRegistry();
+
+	public BenchmarkServer(IDeviceManagement deviceManagement,
+			IInboundEventProcessorChain inboundEventProcessorChain) {
+		this.deviceManagement = deviceManagement;
+		this.inboundEventProcessorChain = inboundEventProcessorChain;
+	}
+
+	/**
+	 * Install a benchmark server as the {@link SiteWhere} singleton.
+	 * 
+	 * @param deviceManagement
+	 * @param inboundEventProcessorChain
+	 * @throws SiteWhereException
+	 */
+	public static void install(IDeviceManagement deviceManagement,
+			IInboundEventProcessorChain inboundEventProcessorChain) throws SiteWhereException {
+		BenchmarkServer handler = new BenchmarkServer(deviceManagement, inboundEventProcessorChain);
+		ISiteWhereServer server =
+				(ISiteWhereServer) Proxy.newProxyInstance(ISiteWhereServer.class.getClassLoader(),
+						new Class<?>[] { ISiteWhereServer.class }, handler);
+		setServer(server);
+	}
+
+	/**
+	 * Remove the installed benchmark server.
+	 * 
+	 * @throws SiteWhereException
+	 */
+	public static void uninstall() throws SiteWhereException {
+		setServer(null);
+	}
+
+	/**
+	 * Set the singleton server instance. {@link SiteWhere} only allows the server to be
+	 * created from configuration, so the field is set reflectively.
+	 * 
+	 * @param server
+	 * @throws SiteWhereException
+	 */
+	protected static void setServer(ISiteWhereServer server) throws SiteWhereException {
+		try {
+			Field field = SiteWhere.class.getDeclaredField("SERVER");
+			field.setAccessible(true);
+			field.set(null, server);
+		} catch (NoSuchFieldException e) {
+			throw new SiteWhereException("Unable to locate SiteWhere server field.", e);
+		} catch (IllegalAccessException e) {
+			throw new SiteWhereException("Unable to set SiteWhere server field.", e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object,
+	 * java.lang.reflect.Method, java.lang.Object[])
+	 */
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getDeclaringClass() == Object.class) {
+			return method.invoke(this, args);
+		}
+		String name = method.getName();
+		if ("getDeviceManagement".equals(name)) {
+			return deviceManagement;
+		} else if ("getInboundEventProcessorChain".equals(name)) {
+			return inboundEventProcessorChain;
+		} else if ("getMetricRegistry".equals(name)) {
+			return metricRegistry;
+		}
+		return NoOpDeviceManagement.getDefaultValue(method.getReturnType());
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sitewhere.device.charting.ChartBuilder;
+import com.sitewhere.spi.device.charting.IChartSeries;
+import com.sitewhere.spi.device.event.IDeviceMeasurements;
+
+/**
+ * Measures conversion of measurements history into chart series with
+ * {@link ChartBuilder}, as done by the assignment chart REST call.
+ * 
+ * @author Derek
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChartBuilderBenchmark {
+
+	/** Number of measurements events charted */
+	@Param({ "100", "10000" })
+	public int eventCount;
+
+	/** Measurements history */
+	private List<IDeviceMeasurements> history;
+
+	/** Subset of measurement ids to chart */
+	private String[] filter;
+
+	@Setup
+	public void setup() {
+		this.history =
+				BenchmarkEvents.createMeasurementsHistory(NoOpDeviceManagement.ASSIGNMENT_TOKEN, eventCount);
+		this.filter =
+				new String[] { BenchmarkEvents.MEASUREMENT_NAMES[0], BenchmarkEvents.MEASUREMENT_NAMES[2] };
+	}
+
+	@Benchmark
+	public List<IChartSeries<Double>> processAll() {
+		return new ChartBuilder().process(history, null);
+	}
+
+	@Benchmark
+	public List<IChartSeries<Double>> processFiltered() {
+		return new ChartBuilder().process(history, filter);
+	}
+}
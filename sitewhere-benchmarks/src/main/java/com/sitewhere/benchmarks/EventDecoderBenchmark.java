@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sitewhere.common.MarshalUtils;
+import com.sitewhere.device.provisioning.json.JsonBatchEventDecoder;
+import com.sitewhere.device.provisioning.protobuf.ProtobufDeviceEventDecoder;
+import com.sitewhere.device.provisioning.protobuf.ProtobufDeviceEventEncoder;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.provisioning.IDecodedDeviceEventHandler;
+import com.sitewhere.spi.device.provisioning.IDecodedDeviceEventRequest;
+
+/**
+ * Measures decoding of inbound payloads into {@link IDecodedDeviceEventRequest} objects
+ * for the JSON batch and protobuf decoders.
+ * 
+ * @author Derek
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventDecoderBenchmark {
+
+	/** Number of measurements events in the JSON batch */
+	@Param({ "1", "100" })
+	public int batchSize;
+
+	/** JSON batch decoder */
+	private JsonBatchEventDecoder jsonDecoder = new JsonBatchEventDecoder();
+
+	/** Protobuf decoder */
+	private ProtobufDeviceEventDecoder protobufDecoder = new ProtobufDeviceEventDecoder();
+
+	/** Encoded JSON batch */
+	private byte[] jsonPayload;
+
+	/** Encoded protobuf measurements message */
+	private byte[] protobufPayload;
+
+	/** Counts events handed off by the streaming JSON decoder */
+	private CountingHandler counter = new CountingHandler();
+
+	@Setup
+	public void setup() throws SiteWhereException {
+		this.jsonPayload =
+				MarshalUtils.marshalJson(BenchmarkEvents.createBatch(NoOpDeviceManagement.HARDWARE_ID,
+						batchSize, batchSize / 10, batchSize / 10));
+		this.protobufPayload =
+				new ProtobufDeviceEventEncoder().encode(BenchmarkEvents.createDecodedMeasurements(
+						NoOpDeviceManagement.HARDWARE_ID, 0));
+	}
+
+	@Benchmark
+	public List<IDecodedDeviceEventRequest> decodeJsonBatch() throws SiteWhereException {
+		return jsonDecoder.decode(jsonPayload);
+	}
+
+	@Benchmark
+	public List<IDecodedDeviceEventRequest> decodeProtobuf() throws SiteWhereException {
+		return protobufDecoder.decode(protobufPayload);
+	}
+
+	@Benchmark
+	public int decodeJsonBatchStreaming() throws SiteWhereException {
+		counter.count = 0;
+		jsonDecoder.decode(jsonPayload, counter);
+		return counter.count;
+	}
+
+	/**
+	 * Handler that counts streamed events so results are not optimized away.
+	 * 
+	 * @author Derek
+	 */
+	private static class CountingHandler implements IDecodedDeviceEventHandler {
+
+		/** Number of events seen */
+		private int count;
+
+		@Override
+		public void onEventDecoded(IDecodedDeviceEventRequest decoded) throws SiteWhereException {
+			count++;
+		}
+	}
+}
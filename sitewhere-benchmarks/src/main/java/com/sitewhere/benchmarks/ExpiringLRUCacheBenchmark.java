@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sitewhere.common.ExpiringLRUCache;
+
+/**
+ * Measures contended access to {@link ExpiringLRUCache}, which backs the device
+ * management caches. Readers and writers share one cache instance to show the cost of
+ * the single synchronized map under load.
+ * 
+ * @author Derek
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpiringLRUCacheBenchmark {
+
+	/** Number of distinct keys accessed */
+	@Param({ "1000", "100000" })
+	public int keyCount;
+
+	/** Maximum cache size */
+	private static final int CACHE_SIZE = 10000;
+
+	/** Cache under test */
+	private ExpiringLRUCache<String, String> cache;
+
+	/** Precomputed keys */
+	private String[] keys;
+
+	@Setup
+	public void setup() {
+		this.cache = new ExpiringLRUCache<String, String>(CACHE_SIZE, 60 * 60 * 1000);
+		this.keys = new String[keyCount];
+		for (int i = 0; i < keyCount; i++) {
+			keys[i] = "device-" + i;
+			cache.put(keys[i], keys[i]);
+		}
+	}
+
+	/**
+	 * Per-thread key cursor so threads do not contend on the index.
+	 * 
+	 * @author Derek
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		/** Current position */
+		private int position = (int) (Thread.currentThread().getId() * 7919);
+
+		/**
+		 * Get the next key index.
+		 * 
+		 * @param limit
+		 * @return
+		 */
+		public int next(int limit) {
+			position = (position + 1) % limit;
+			return position;
+		}
+	}
+
+	@Benchmark
+	@Group("readMostly")
+	@GroupThreads(3)
+	public String readMostlyGet(Cursor cursor) {
+		return cache.get(keys[cursor.next(keyCount)]);
+	}
+
+	@Benchmark
+	@Group("readMostly")
+	@GroupThreads(1)
+	public void readMostlyPut(Cursor cursor) {
+		String key = keys[cursor.next(keyCount)];
+		cache.put(key, key);
+	}
+
+	@Benchmark
+	@Group("getOnly")
+	@GroupThreads(4)
+	public String getOnly(Cursor cursor) {
+		return cache.get(keys[cursor.next(keyCount)]);
+	}
+}
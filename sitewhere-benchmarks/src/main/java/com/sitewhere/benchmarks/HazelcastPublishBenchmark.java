@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.Message;
+import com.hazelcast.core.MessageListener;
+import com.sitewhere.hazelcast.DeviceEventBatch;
+import com.sitewhere.hazelcast.SiteWhereDataSerializableFactory;
+import com.sitewhere.rest.model.device.event.DeviceLocation;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.server.hazelcast.ISiteWhereHazelcast;
+
+/**
+ * Compares publishing one message per event with publishing {@link DeviceEventBatch}
+ * messages between two members of a cluster running in the same JVM. Each invocation
+ * publishes a block of events and waits until the subscriber has received all of them.
+ * 
+ * @author Derek
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HazelcastPublishBenchmark {
+
+	/** Number of events published per invocation */
+	public static final int EVENTS_PER_INVOCATION = 2000;
+
+	/** Number of events in each batch */
+	private static final int BATCH_SIZE = 200;
+
+	/** Member that publishes */
+	private HazelcastInstance publisher;
+
+	/** Member that subscribes */
+	private HazelcastInstance subscriber;
+
+	/** Topic for single events */
+	private ITopic<DeviceLocation> singleTopic;
+
+	/** Topic for batched events */
+	private ITopic<DeviceEventBatch> batchTopic;
+
+	/** Number of events received by the subscriber */
+	private AtomicLong received = new AtomicLong();
+
+	/** Precomputed events */
+	private DeviceLocation[] events;
+
+	@Setup
+	public void setup() {
+		this.publisher = Hazelcast.newHazelcastInstance(createConfig());
+		this.subscriber = Hazelcast.newHazelcastInstance(createConfig());
+
+		subscriber.<DeviceLocation> getTopic(ISiteWhereHazelcast.TOPIC_LOCATION_ADDED).addMessageListener(
+				new MessageListener<DeviceLocation>() {
+
+					@Override
+					public void onMessage(Message<DeviceLocation> message) {
+						received.incrementAndGet();
+					}
+				});
+		subscriber.<DeviceEventBatch> getTopic(ISiteWhereHazelcast.TOPIC_LOCATION_BATCH).addMessageListener(
+				new MessageListener<DeviceEventBatch>() {
+
+					@Override
+					public void onMessage(Message<DeviceEventBatch> message) {
+						received.addAndGet(message.getMessageObject().getEvents().size());
+					}
+				});
+		this.singleTopic = publisher.getTopic(ISiteWhereHazelcast.TOPIC_LOCATION_ADDED);
+		this.batchTopic = publisher.getTopic(ISiteWhereHazelcast.TOPIC_LOCATION_BATCH);
+
+		this.events = new DeviceLocation[EVENTS_PER_INVOCATION];
+		for (int i = 0; i < EVENTS_PER_INVOCATION; i++) {
+			events[i] = createLocation(i);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		Hazelcast.shutdownAll();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(EVENTS_PER_INVOCATION)
+	public long publishSingleEvents() {
+		long target = received.get() + EVENTS_PER_INVOCATION;
+		for (int i = 0; i < EVENTS_PER_INVOCATION; i++) {
+			singleTopic.publish(events[i]);
+		}
+		return awaitReceived(target);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(EVENTS_PER_INVOCATION)
+	public long publishBatchedEvents() {
+		long target = received.get() + EVENTS_PER_INVOCATION;
+		List<IDeviceEvent> batch = new ArrayList<IDeviceEvent>();
+		for (int i = 0; i < EVENTS_PER_INVOCATION; i++) {
+			batch.add(events[i]);
+			if (batch.size() == BATCH_SIZE) {
+				batchTopic.publish(new DeviceEventBatch(batch));
+				batch = new ArrayList<IDeviceEvent>();
+			}
+		}
+		if (!batch.isEmpty()) {
+			batchTopic.publish(new DeviceEventBatch(batch));
+		}
+		return awaitReceived(target);
+	}
+
+	/**
+	 * Wait until the subscriber has received the given number of events.
+	 * 
+	 * @param target
+	 * @return
+	 */
+	protected long awaitReceived(long target) {
+		long current;
+		while ((current = received.get()) < target) {
+			Thread.yield();
+		}
+		return current;
+	}
+
+	/**
+	 * Create configuration for a cluster member.
+	 * 
+	 * @return
+	 */
+	protected Config createConfig() {
+		Config config = new Config();
+		config.getGroupConfig().setName("sitewhere-benchmark");
+		config.getNetworkConfig().setPort(5901);
+		config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+		config.getNetworkConfig().getJoin().getTcpIpConfig().setEnabled(true).addMember("127.0.0.1:5901")
+				.addMember("127.0.0.1:5902");
+		config.getSerializationConfig().addDataSerializableFactory(
+				SiteWhereDataSerializableFactory.FACTORY_ID, new SiteWhereDataSerializableFactory());
+		return config;
+	}
+
+	/**
+	 * Create a location event like those sent by devices.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	protected DeviceLocation createLocation(int index) {
+		DeviceLocation location = new DeviceLocation();
+		location.setId(String.valueOf(index));
+		location.setSiteToken("bb105f8d-3150-41f5-b9d1-db04965668d3");
+		location.setDeviceAssignmentToken("assignment-" + (index % 1000));
+		location.setEventDate(new Date());
+		location.setReceivedDate(new Date());
+		location.setLatitude(33.75 + (index % 100) * 0.001);
+		location.setLongitude(-84.39 - (index % 100) * 0.001);
+		location.setElevation(0.0);
+		return location;
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sitewhere.device.event.processor.DefaultEventStorageProcessor;
+import com.sitewhere.device.event.processor.DefaultInboundEventProcessorChain;
+import com.sitewhere.device.provisioning.BlockingQueueInboundProcessingStrategy;
+import com.sitewhere.rest.model.device.provisioning.DecodedDeviceEventRequest;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.processor.IInboundEventProcessor;
+
+/**
+ * Measures end-to-end throughput of {@link BlockingQueueInboundProcessingStrategy}
+ * feeding the default inbound processor chain. Storage goes to
+ * {@link NoOpDeviceManagement} so the result reflects queueing, dispatch and event
+ * creation overhead rather than datastore latency. Each invocation submits a block of
+ * events and waits until all of them have been stored.
+ * 
+ * @author Derek
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InboundProcessingBenchmark {
+
+	/** Number of events submitted per invocation */
+	public static final int EVENTS_PER_INVOCATION = 1000;
+
+	/** Number of strategy processing threads */
+	@Param({ "1", "4", "16" })
+	public int processorThreads;
+
+	/** Fixtures and stored event counter */
+	private NoOpDeviceManagement fixtures;
+
+	/** Inbound processor chain */
+	private DefaultInboundEventProcessorChain chain;
+
+	/** Strategy under test */
+	private BlockingQueueInboundProcessingStrategy strategy;
+
+	/** Precomputed decoded events */
+	private DecodedDeviceEventRequest[] events;
+
+	@Setup
+	public void setup() throws SiteWhereException {
+		this.fixtures = new NoOpDeviceManagement();
+
+		List<IInboundEventProcessor> processors = new ArrayList<IInboundEventProcessor>();
+		processors.add(new DefaultEventStorageProcessor());
+		this.chain = new DefaultInboundEventProcessorChain();
+		chain.setProcessors(processors);
+		BenchmarkServer.install(fixtures.create(), chain);
+		chain.lifecycleStart();
+
+		this.strategy = new BlockingQueueInboundProcessingStrategy();
+		strategy.setEventProcessorThreadCount(processorThreads);
+		strategy.setEnableMonitoring(false);
+		strategy.lifecycleStart();
+
+		this.events = new DecodedDeviceEventRequest[EVENTS_PER_INVOCATION];
+		for (int i = 0; i < EVENTS_PER_INVOCATION; i++) {
+			events[i] = BenchmarkEvents.createDecodedMeasurements(NoOpDeviceManagement.HARDWARE_ID, i);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws SiteWhereException {
+		strategy.lifecycleStop();
+		chain.lifecycleStop();
+		BenchmarkServer.uninstall();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(EVENTS_PER_INVOCATION)
+	public long processMeasurements() throws SiteWhereException {
+		long target = getCompleted() + EVENTS_PER_INVOCATION;
+		for (int i = 0; i < EVENTS_PER_INVOCATION; i++) {
+			strategy.processDeviceMeasurements(events[i]);
+		}
+		long completed;
+		while ((completed = getCompleted()) < target) {
+			Thread.yield();
+		}
+		return completed;
+	}
+
+	/**
+	 * Get number of events that have left the pipeline, either stored or failed.
+	 * 
+	 * @return
+	 */
+	protected long getCompleted() {
+		return fixtures.getEventCount() + strategy.getErrorCount();
+	}
+}
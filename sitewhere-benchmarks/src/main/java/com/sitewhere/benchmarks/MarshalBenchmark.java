@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sitewhere.common.MarshalUtils;
+import com.sitewhere.rest.model.device.event.DeviceEventBatch;
+import com.sitewhere.rest.model.device.event.DeviceMeasurements;
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Measures JSON marshaling with {@link MarshalUtils} for a single event, as used by the
+ * outbound processors, and for an event batch.
+ * 
+ * @author Derek
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarshalBenchmark {
+
+	/** Single stored event */
+	private DeviceMeasurements event;
+
+	/** Batch of event requests */
+	private DeviceEventBatch batch;
+
+	/** Marshaled single event */
+	private byte[] eventJson;
+
+	/** Marshaled batch */
+	private byte[] batchJson;
+
+	@Setup
+	public void setup() throws SiteWhereException {
+		this.event =
+				(DeviceMeasurements) BenchmarkEvents.createMeasurementsHistory(
+						NoOpDeviceManagement.ASSIGNMENT_TOKEN, 1).get(0);
+		this.batch = BenchmarkEvents.createBatch(NoOpDeviceManagement.HARDWARE_ID, 50, 10, 5);
+		this.eventJson = MarshalUtils.marshalJson(event);
+		this.batchJson = MarshalUtils.marshalJson(batch);
+	}
+
+	@Benchmark
+	public byte[] marshalEvent() throws SiteWhereException {
+		return MarshalUtils.marshalJson(event);
+	}
+
+	@Benchmark
+	public DeviceMeasurements unmarshalEvent() throws SiteWhereException {
+		return MarshalUtils.unmarshalJson(eventJson, DeviceMeasurements.class);
+	}
+
+	@Benchmark
+	public byte[] marshalBatch() throws SiteWhereException {
+		return MarshalUtils.marshalJson(batch);
+	}
+
+	@Benchmark
+	public DeviceEventBatch unmarshalBatch() throws SiteWhereException {
+		return MarshalUtils.unmarshalJson(batchJson, DeviceEventBatch.class);
+	}
+}
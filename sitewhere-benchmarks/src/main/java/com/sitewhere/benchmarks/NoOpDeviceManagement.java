@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sitewhere.core.SiteWherePersistence;
+import com.sitewhere.rest.model.common.Location;
+import com.sitewhere.rest.model.device.Device;
+import com.sitewhere.rest.model.device.DeviceAssignment;
+import com.sitewhere.rest.model.device.DeviceSpecification;
+import com.sitewhere.rest.model.device.Zone;
+import com.sitewhere.rest.model.device.command.CommandParameter;
+import com.sitewhere.rest.model.device.command.DeviceCommand;
+import com.sitewhere.rest.model.device.event.DeviceEvent;
+import com.sitewhere.spi.device.DeviceAssignmentStatus;
+import com.sitewhere.spi.device.DeviceAssignmentType;
+import com.sitewhere.spi.device.IDeviceManagement;
+import com.sitewhere.spi.device.command.IDeviceCommand;
+import com.sitewhere.spi.device.command.ParameterType;
+import com.sitewhere.spi.device.event.request.IDeviceAlertCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceCommandResponseCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceLocationCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceMeasurementsCreateRequest;
+
+/**
+ * Creates an {@link IDeviceManagement} that serves a fixed set of fixtures from memory
+ * and discards created events. Events are still built with the same logic used by the
+ * real datastores so benchmarks exercise the full inbound path without any I/O.
+ * 
+ * @author Derek
+ */
+public class NoOpDeviceManagement implements InvocationHandler {
+
+	/** Hardware id of fixture device */
+	public static final String HARDWARE_ID = "benchmark-device";
+
+	/** Token of fixture assignment */
+	public static final String ASSIGNMENT_TOKEN = "benchmark-assignment";
+
+	/** Token of fixture site */
+	public static final String SITE_TOKEN = "benchmark-site";
+
+	/** Token of fixture specification (protobuf naming requires a UUID) */
+	public static final String SPECIFICATION_TOKEN = "7dfd6d63-5e8d-4380-be04-fc5c73801dfb";
+
+	/** Token of fixture zone */
+	public static final String ZONE_TOKEN = "benchmark-zone";
+
+	/** Name of fixture command */
+	public static final String COMMAND_NAME = "setThreshold";
+
+	/** Fixture device */
+	private Device device;
+
+	/** Fixture assignment */
+	private DeviceAssignment assignment;
+
+	/** Fixture specification */
+	private DeviceSpecification specification;
+
+	/** Fixture commands */
+	private List<IDeviceCommand> commands = new ArrayList<IDeviceCommand>();
+
+	/** Fixture zone */
+	private Zone zone;
+
+	/** Counts events created */
+	private AtomicLong eventCount = new AtomicLong();
+
+	public NoOpDeviceManagement() {
+		this.specification = new DeviceSpecification();
+		specification.setToken(SPECIFICATION_TOKEN);
+		specification.setName("Benchmark Specification");
+
+		DeviceCommand command = new DeviceCommand();
+		command.setToken("benchmark-command");
+		command.setSpecificationToken(SPECIFICATION_TOKEN);
+		command.setNamespace("http://sitewhere/benchmark");
+		command.setName(COMMAND_NAME);
+		List<CommandParameter> parameters = new ArrayList<CommandParameter>();
+		parameters.add(new CommandParameter("name", ParameterType.String, true));
+		parameters.add(new CommandParameter("threshold", ParameterType.Double, true));
+		parameters.add(new CommandParameter("enabled", ParameterType.Bool, false));
+		command.setParameters(parameters);
+		commands.add(command);
+
+		this.device = new Device();
+		device.setHardwareId(HARDWARE_ID);
+		device.setSiteToken(SITE_TOKEN);
+		device.setSpecificationToken(SPECIFICATION_TOKEN);
+		device.setAssignmentToken(ASSIGNMENT_TOKEN);
+
+		this.assignment = new DeviceAssignment();
+		assignment.setToken(ASSIGNMENT_TOKEN);
+		assignment.setDeviceHardwareId(HARDWARE_ID);
+		assignment.setSiteToken(SITE_TOKEN);
+		assignment.setAssignmentType(DeviceAssignmentType.Unassociated);
+		assignment.setStatus(DeviceAssignmentStatus.Active);
+		assignment.setActiveDate(new Date());
+
+		this.zone = new Zone();
+		zone.setToken(ZONE_TOKEN);
+		zone.setSiteToken(SITE_TOKEN);
+		zone.setName("Benchmark Zone");
+		List<Location> coordinates = new ArrayList<Location>();
+		coordinates.add(new Location(33.7490, -84.3880));
+		coordinates.add(new Location(33.7490, -84.3680));
+		coordinates.add(new Location(33.7690, -84.3680));
+		coordinates.add(new Location(33.7790, -84.3780));
+		coordinates.add(new Location(33.7690, -84.3880));
+		zone.setCoordinates(coordinates);
+	}
+
+	/**
+	 * Create an {@link IDeviceManagement} backed by this handler.
+	 * 
+	 * @return
+	 */
+	public IDeviceManagement create() {
+		return (IDeviceManagement) Proxy.newProxyInstance(IDeviceManagement.class.getClassLoader(),
+				new Class<?>[] { IDeviceManagement.class }, this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object,
+	 * java.lang.reflect.Method, java.lang.Object[])
+	 */
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getDeclaringClass() == Object.class) {
+			return method.invoke(this, args);
+		}
+		String name = method.getName();
+		if ("getDeviceByHardwareId".equals(name)) {
+			return device;
+		} else if ("getDeviceAssignmentByToken".equals(name)) {
+			return assignment;
+		} else if ("getDeviceSpecificationByToken".equals(name)) {
+			return specification;
+		} else if ("listDeviceCommands".equals(name)) {
+			return commands;
+		} else if ("getZone".equals(name)) {
+			return zone;
+		} else if ("addDeviceMeasurements".equals(name)) {
+			return created(SiteWherePersistence.deviceMeasurementsCreateLogic(
+					(IDeviceMeasurementsCreateRequest) args[1], assignment));
+		} else if ("addDeviceLocation".equals(name)) {
+			return created(SiteWherePersistence.deviceLocationCreateLogic(assignment,
+					(IDeviceLocationCreateRequest) args[1]));
+		} else if ("addDeviceAlert".equals(name)) {
+			return created(SiteWherePersistence.deviceAlertCreateLogic(assignment,
+					(IDeviceAlertCreateRequest) args[1]));
+		} else if ("addDeviceCommandResponse".equals(name)) {
+			return created(SiteWherePersistence.deviceCommandResponseCreateLogic(assignment,
+					(IDeviceCommandResponseCreateRequest) args[1]));
+		}
+		return getDefaultValue(method.getReturnType());
+	}
+
+	/**
+	 * Assign an id to a created event and count it.
+	 * 
+	 * @param event
+	 * @return
+	 */
+	protected DeviceEvent created(DeviceEvent event) {
+		event.setId(String.valueOf(eventCount.incrementAndGet()));
+		return event;
+	}
+
+	/**
+	 * Get the value returned for methods that have no fixture. Primitive types return zero
+	 * or false and all other types return null.
+	 * 
+	 * @param type
+	 * @return
+	 */
+	public static Object getDefaultValue(Class<?> type) {
+		if (type == boolean.class) {
+			return Boolean.FALSE;
+		} else if (type == char.class) {
+			return Character.valueOf((char) 0);
+		} else if (type == byte.class) {
+			return Byte.valueOf((byte) 0);
+		} else if (type == short.class) {
+			return Short.valueOf((short) 0);
+		} else if (type == int.class) {
+			return Integer.valueOf(0);
+		} else if (type == long.class) {
+			return Long.valueOf(0);
+		} else if (type == float.class) {
+			return Float.valueOf(0);
+		} else if (type == double.class) {
+			return Double.valueOf(0);
+		}
+		return null;
+	}
+
+	/**
+	 * Get number of events created since the last reset.
+	 * 
+	 * @return
+	 */
+	public long getEventCount() {
+		return eventCount.get();
+	}
+
+	/**
+	 * Reset the created event count.
+	 */
+	public void resetEventCount() {
+		eventCount.set(0);
+	}
+
+	public Device getDevice() {
+		return device;
+	}
+
+	public DeviceAssignment getAssignment() {
+		return assignment;
+	}
+
+	public DeviceSpecification getSpecification() {
+		return specification;
+	}
+
+	public List<IDeviceCommand> getCommands() {
+		return commands;
+	}
+
+	public Zone getZone() {
+		return zone;
+	}
+}
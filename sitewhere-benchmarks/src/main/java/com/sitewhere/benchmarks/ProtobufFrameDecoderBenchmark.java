@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.sitewhere.device.provisioning.protobuf.ProtobufDeviceEventDecoder;
+import com.sitewhere.device.provisioning.protobuf.ProtobufDeviceEventEncoder;
+import com.sitewhere.rest.model.device.provisioning.DecodedDeviceEventRequest;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.provisioning.IDecodedDeviceEventRequest;
+
+/**
+ * Compares decoding a gateway frame containing many protobuf events in a single pass with
+ * decoding the same events delivered one payload per event. Results are reported in
+ * events decoded per second.
+ * 
+ * @author Derek
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtobufFrameDecoderBenchmark {
+
+	/** Number of events in each frame */
+	private static final int EVENTS_PER_FRAME = 100;
+
+	/** Protobuf decoder */
+	private ProtobufDeviceEventDecoder decoder = new ProtobufDeviceEventDecoder();
+
+	/** Frame containing all events */
+	private byte[] frame;
+
+	/** Each event encoded as a separate payload */
+	private byte[][] singles;
+
+	@Setup
+	public void setup() throws SiteWhereException {
+		ProtobufDeviceEventEncoder encoder = new ProtobufDeviceEventEncoder();
+		List<DecodedDeviceEventRequest> events = new ArrayList<DecodedDeviceEventRequest>();
+		this.singles = new byte[EVENTS_PER_FRAME][];
+		for (int i = 0; i < EVENTS_PER_FRAME; i++) {
+			DecodedDeviceEventRequest event =
+					BenchmarkEvents.createDecodedMeasurements(NoOpDeviceManagement.HARDWARE_ID, i);
+			events.add(event);
+			singles[i] = encoder.encode(event);
+		}
+		this.frame = encoder.encode(events);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(EVENTS_PER_FRAME)
+	public List<IDecodedDeviceEventRequest> decodeFrame() throws SiteWhereException {
+		return decoder.decode(frame);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(EVENTS_PER_FRAME)
+	public void decodeSingles(Blackhole blackhole) throws SiteWhereException {
+		for (int i = 0; i < EVENTS_PER_FRAME; i++) {
+			blackhole.consume(decoder.decode(singles[i]));
+		}
+	}
+}
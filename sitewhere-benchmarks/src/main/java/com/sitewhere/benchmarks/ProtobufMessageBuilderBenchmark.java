@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sitewhere.device.provisioning.NestedDeviceSupport.NestedDeviceInformation;
+import com.sitewhere.device.provisioning.protobuf.ProtobufMessageBuilder;
+import com.sitewhere.rest.model.device.command.DeviceCommandExecution;
+import com.sitewhere.rest.model.device.event.DeviceCommandInvocation;
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Measures encoding of a command invocation into a protobuf message with
+ * {@link ProtobufMessageBuilder}, including building the specification descriptor.
+ * 
+ * @author Derek
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtobufMessageBuilderBenchmark {
+
+	/** Fixtures */
+	private NoOpDeviceManagement fixtures;
+
+	/** Command execution to encode */
+	private DeviceCommandExecution execution;
+
+	/** Nesting context for target device */
+	private NestedDeviceInformation nesting;
+
+	@Setup
+	public void setup() throws SiteWhereException {
+		this.fixtures = new NoOpDeviceManagement();
+		BenchmarkServer.install(fixtures.create(), null);
+
+		DeviceCommandInvocation invocation = new DeviceCommandInvocation();
+		invocation.setId("benchmark-invocation");
+		invocation.setDeviceAssignmentToken(NoOpDeviceManagement.ASSIGNMENT_TOKEN);
+
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("name", "engine.temp");
+		parameters.put("threshold", Double.valueOf(98.6));
+		parameters.put("enabled", Boolean.TRUE);
+
+		this.execution = new DeviceCommandExecution();
+		execution.setCommand(fixtures.getCommands().get(0));
+		execution.setInvocation(invocation);
+		execution.setParameters(parameters);
+
+		this.nesting = new NestedDeviceInformation();
+		nesting.setGateway(fixtures.getDevice());
+	}
+
+	@TearDown
+	public void tearDown() throws SiteWhereException {
+		BenchmarkServer.uninstall();
+	}
+
+	@Benchmark
+	public byte[] createMessage() throws SiteWhereException {
+		return ProtobufMessageBuilder.createMessage(execution, nesting, fixtures.getAssignment());
+	}
+}
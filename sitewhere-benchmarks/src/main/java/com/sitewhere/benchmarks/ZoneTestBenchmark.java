@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sitewhere.geospatial.ZoneTest;
+import com.sitewhere.geospatial.ZoneTestEventProcessor;
+import com.sitewhere.rest.model.device.event.DeviceLocation;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.AlertLevel;
+import com.sitewhere.spi.geospatial.ZoneContainment;
+
+/**
+ * Measures zone containment checks in {@link ZoneTestEventProcessor} for locations inside
+ * and outside of the test zone. Tests fire on {@link ZoneContainment#Inside}, so the
+ * inside case also includes creating an alert.
+ * 
+ * @author Derek
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZoneTestBenchmark {
+
+	/** Where the location falls relative to the zone */
+	@Param({ "Inside", "Outside" })
+	public ZoneContainment placement;
+
+	/** Number of zone tests evaluated per location */
+	@Param({ "1", "10" })
+	public int testCount;
+
+	/** Processor under test */
+	private ZoneTestEventProcessor processor;
+
+	/** Location to test */
+	private DeviceLocation location;
+
+	@Setup
+	public void setup() throws SiteWhereException {
+		BenchmarkServer.install(new NoOpDeviceManagement().create(), null);
+
+		List<ZoneTest> tests = new ArrayList<ZoneTest>();
+		for (int i = 0; i < testCount; i++) {
+			ZoneTest test = new ZoneTest();
+			test.setZoneToken(NoOpDeviceManagement.ZONE_TOKEN);
+			test.setCondition(ZoneContainment.Inside);
+			test.setAlertType("zone.entered");
+			test.setAlertLevel(AlertLevel.Info);
+			test.setAlertMessage("Device entered benchmark zone.");
+			tests.add(test);
+		}
+		this.processor = new ZoneTestEventProcessor();
+		processor.setZoneTests(tests);
+
+		double latitude = (placement == ZoneContainment.Inside) ? 33.7590 : 33.7000;
+		double longitude = (placement == ZoneContainment.Inside) ? -84.3780 : -84.3000;
+		this.location =
+				BenchmarkEvents.createLocation(NoOpDeviceManagement.ASSIGNMENT_TOKEN, latitude, longitude);
+	}
+
+	@TearDown
+	public void tearDown() throws SiteWhereException {
+		BenchmarkServer.uninstall();
+	}
+
+	@Benchmark
+	public void onLocation() throws SiteWhereException {
+		processor.onLocation(location);
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks.load;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.log4j.Logger;
+
+import com.sitewhere.rest.model.device.provisioning.DecodedDeviceEventRequest;
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Sends encoded events to the queue consumed by the ActiveMQ event receiver. Sessions
+ * are not thread safe, so each sending thread creates its own session and producer on a
+ * shared connection.
+ * 
+ * @author Derek
+ */
+public class ActiveMQLoadTransport implements ILoadTransport {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(ActiveMQLoadTransport.class);
+
+	/** Queue events are sent to */
+	private String queue;
+
+	/** Encodes payloads */
+	private PayloadEncoder encoder;
+
+	/** Shared connection */
+	private Connection connection;
+
+	/** All open sessions */
+	private List<Session> sessions = new CopyOnWriteArrayList<Session>();
+
+	/** Session and producer for the current thread */
+	private ThreadLocal<SessionProducer> producer = new ThreadLocal<SessionProducer>();
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.benchmarks.load.ILoadTransport#start(com.sitewhere.benchmarks.load.
+	 * LoadGeneratorConfiguration)
+	 */
+	@Override
+	public void start(LoadGeneratorConfiguration config) throws SiteWhereException {
+		this.queue = config.getQueue();
+		this.encoder = new PayloadEncoder(config.getEncoding());
+		try {
+			ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(config.getBrokerUrl());
+			connection = factory.createConnection();
+			connection.start();
+		} catch (JMSException e) {
+			throw new SiteWhereException("Unable to connect to ActiveMQ broker: " + config.getBrokerUrl(), e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.benchmarks.load.ILoadTransport#send(com.sitewhere.benchmarks.load.
+	 * VirtualDevice, com.sitewhere.rest.model.device.provisioning.DecodedDeviceEventRequest)
+	 */
+	@Override
+	public void send(VirtualDevice device, DecodedDeviceEventRequest event) throws SiteWhereException {
+		byte[] payload = encoder.encode(event);
+		try {
+			SessionProducer current = getProducer();
+			BytesMessage message = current.session.createBytesMessage();
+			message.writeBytes(payload);
+			current.producer.send(message);
+		} catch (JMSException e) {
+			throw new SiteWhereException("Unable to send event to ActiveMQ queue: " + queue, e);
+		}
+	}
+
+	/**
+	 * Get the session and producer for the current thread, creating them if necessary.
+	 * 
+	 * @return
+	 * @throws JMSException
+	 */
+	protected SessionProducer getProducer() throws JMSException {
+		SessionProducer current = producer.get();
+		if (current == null) {
+			current = new SessionProducer();
+			current.session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+			current.producer = current.session.createProducer(current.session.createQueue(queue));
+			producer.set(current);
+			sessions.add(current.session);
+		}
+		return current;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.benchmarks.load.ILoadTransport#stop()
+	 */
+	@Override
+	public void stop() throws SiteWhereException {
+		for (Session session : sessions) {
+			try {
+				session.close();
+			} catch (JMSException e) {
+				LOGGER.warn("Error closing ActiveMQ session.", e);
+			}
+		}
+		sessions.clear();
+		if (connection != null) {
+			try {
+				connection.close();
+			} catch (JMSException e) {
+				throw new SiteWhereException("Unable to close ActiveMQ connection.", e);
+			}
+		}
+	}
+
+	/**
+	 * Session and producer owned by a single thread.
+	 * 
+	 * @author Derek
+	 */
+	private static class SessionProducer {
+
+		/** Session for thread */
+		private Session session;
+
+		/** Producer for queue */
+		private MessageProducer producer;
+	}
+}
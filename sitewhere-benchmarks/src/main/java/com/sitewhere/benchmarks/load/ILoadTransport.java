@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks.load;
+
+import com.sitewhere.rest.model.device.provisioning.DecodedDeviceEventRequest;
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Delivers events from virtual devices to a SiteWhere server.
+ * 
+ * @author Derek
+ */
+public interface ILoadTransport {
+
+	/**
+	 * Open connections needed to send events.
+	 * 
+	 * @param config
+	 * @throws SiteWhereException
+	 */
+	public void start(LoadGeneratorConfiguration config) throws SiteWhereException;
+
+	/**
+	 * Send a single event for a device. Called concurrently from multiple threads, but
+	 * never concurrently for the same device.
+	 * 
+	 * @param device
+	 * @param event
+	 * @throws SiteWhereException
+	 */
+	public void send(VirtualDevice device, DecodedDeviceEventRequest event) throws SiteWhereException;
+
+	/**
+	 * Close connections and release resources.
+	 * 
+	 * @throws SiteWhereException
+	 */
+	public void stop() throws SiteWhereException;
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks.load;
+
+import java.io.PrintStream;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SynchronizedHistogram;
+
+import com.sitewhere.spi.device.event.DeviceEventType;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+
+/**
+ * Collects latency samples for a load generator run in HDR histograms and prints a
+ * percentile summary.
+ * 
+ * Send latency is measured on the client in microseconds from the time a send was
+ * scheduled, so stalls in the transport are not hidden by delayed sends. End-to-end
+ * latency is measured in milliseconds from the event date set by the virtual device to
+ * the received date stored with the persisted event.
+ * 
+ * @author Derek
+ */
+public class LatencyReport {
+
+	/** Highest send latency tracked in microseconds (one hour) */
+	private static final long MAX_SEND_MICROS = TimeUnit.HOURS.toMicros(1);
+
+	/** Highest end-to-end latency tracked in milliseconds (one hour) */
+	private static final long MAX_END_TO_END_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+	/** Number of significant digits kept by histograms */
+	private static final int SIGNIFICANT_DIGITS = 3;
+
+	/** Send latency in microseconds */
+	private Histogram send = new SynchronizedHistogram(MAX_SEND_MICROS, SIGNIFICANT_DIGITS);
+
+	/** End-to-end latency in milliseconds by event type */
+	private Map<DeviceEventType, Histogram> endToEnd = new LinkedHashMap<DeviceEventType, Histogram>();
+
+	/** End-to-end latency in milliseconds for all event types */
+	private Histogram endToEndAll = new Histogram(MAX_END_TO_END_MILLIS, SIGNIFICANT_DIGITS);
+
+	/** Number of events sent */
+	private AtomicLong sent = new AtomicLong();
+
+	/** Number of failed sends */
+	private AtomicLong errors = new AtomicLong();
+
+	/** Number of sent events found in the datastore */
+	private long persisted;
+
+	public LatencyReport() {
+		endToEnd.put(DeviceEventType.Measurements, new Histogram(MAX_END_TO_END_MILLIS, SIGNIFICANT_DIGITS));
+		endToEnd.put(DeviceEventType.Location, new Histogram(MAX_END_TO_END_MILLIS, SIGNIFICANT_DIGITS));
+		endToEnd.put(DeviceEventType.Alert, new Histogram(MAX_END_TO_END_MILLIS, SIGNIFICANT_DIGITS));
+	}
+
+	/**
+	 * Record a successful send.
+	 * 
+	 * @param nanos
+	 */
+	public void recordSend(long nanos) {
+		sent.incrementAndGet();
+		send.recordValue(Math.min(MAX_SEND_MICROS, Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos))));
+	}
+
+	/**
+	 * Record a failed send.
+	 */
+	public void recordError() {
+		errors.incrementAndGet();
+	}
+
+	/**
+	 * Record end-to-end latency for an event read back from the server. Only called from
+	 * a single thread after sending has finished.
+	 * 
+	 * @param event
+	 */
+	public void recordPersisted(IDeviceEvent event) {
+		persisted++;
+		Date eventDate = event.getEventDate();
+		Date receivedDate = event.getReceivedDate();
+		if ((eventDate == null) || (receivedDate == null)) {
+			return;
+		}
+		long millis =
+				Math.min(MAX_END_TO_END_MILLIS, Math.max(0, receivedDate.getTime() - eventDate.getTime()));
+		endToEndAll.recordValue(millis);
+		Histogram histogram = endToEnd.get(event.getEventType());
+		if (histogram != null) {
+			histogram.recordValue(millis);
+		}
+	}
+
+	/**
+	 * Print a summary of the run.
+	 * 
+	 * @param out
+	 * @param elapsedMillis
+	 */
+	public void printSummary(PrintStream out, long elapsedMillis) {
+		double seconds = Math.max(1, elapsedMillis) / 1000.0;
+		out.println();
+		out.println(String.format("Sent %d events in %.1f s (%.1f events/s), %d errors", sent.get(), seconds,
+				sent.get() / seconds, errors.get()));
+		out.println(String.format("Persisted %d of %d sent events", persisted, sent.get()));
+		out.println();
+		out.println(String.format("%-24s %10s %10s %10s %10s %10s %10s %10s", "Latency (ms)", "count", "mean",
+				"p50", "p90", "p99", "p99.9", "max"));
+		printRow(out, "send", send, 1000.0);
+		printRow(out, "end-to-end", endToEndAll, 1.0);
+		for (DeviceEventType type : endToEnd.keySet()) {
+			printRow(out, "end-to-end " + type.name(), endToEnd.get(type), 1.0);
+		}
+	}
+
+	/**
+	 * Print a single summary row.
+	 * 
+	 * @param out
+	 * @param label
+	 * @param histogram
+	 * @param unitsPerMilli
+	 */
+	protected void printRow(PrintStream out, String label, Histogram histogram, double unitsPerMilli) {
+		out.println(String.format("%-24s %10d %10.2f %10.2f %10.2f %10.2f %10.2f %10.2f", label,
+				histogram.getTotalCount(), histogram.getMean() / unitsPerMilli,
+				histogram.getValueAtPercentile(50.0) / unitsPerMilli,
+				histogram.getValueAtPercentile(90.0) / unitsPerMilli,
+				histogram.getValueAtPercentile(99.0) / unitsPerMilli,
+				histogram.getValueAtPercentile(99.9) / unitsPerMilli,
+				histogram.getMaxValue() / unitsPerMilli));
+	}
+
+	/**
+	 * Print full percentile distributions in the HdrHistogram text format. Values are
+	 * scaled to milliseconds.
+	 * 
+	 * @param out
+	 */
+	public void printDistributions(PrintStream out) {
+		out.println("# send");
+		send.outputPercentileDistribution(out, 1000.0);
+		out.println("# end-to-end");
+		endToEndAll.outputPercentileDistribution(out, 1.0);
+		for (DeviceEventType type : endToEnd.keySet()) {
+			out.println("# end-to-end " + type.name());
+			endToEnd.get(type).outputPercentileDistribution(out, 1.0);
+		}
+	}
+}
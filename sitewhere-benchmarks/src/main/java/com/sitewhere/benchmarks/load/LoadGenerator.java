@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks.load;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.sitewhere.rest.client.SiteWhereClient;
+import com.sitewhere.rest.model.device.DeviceAssignment;
+import com.sitewhere.rest.model.device.event.DeviceAlert;
+import com.sitewhere.rest.model.device.event.DeviceLocation;
+import com.sitewhere.rest.model.device.event.DeviceMeasurements;
+import com.sitewhere.rest.model.device.request.DeviceAssignmentCreateRequest;
+import com.sitewhere.rest.model.device.request.DeviceCreateRequest;
+import com.sitewhere.rest.model.device.request.SiteCreateRequest;
+import com.sitewhere.rest.model.device.provisioning.DecodedDeviceEventRequest;
+import com.sitewhere.spi.ISiteWhereClient;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.DeviceAssignmentType;
+
+/**
+ * Standalone load generator that simulates a fleet of devices sending events to a
+ * running SiteWhere server. Devices and assignments are created through the REST
+ * services, then each virtual device sends events at a fixed rate over the chosen
+ * transport. After sending stops, persisted events are read back to measure end-to-end
+ * latency from device to datastore.
+ * 
+ * Arguments are given as <code>name=value</code> pairs (see
+ * {@link LoadGeneratorConfiguration}), for example:
+ * 
+ * <pre>
+ * java -cp target/benchmarks.jar com.sitewhere.benchmarks.load.LoadGenerator \
+ *     transport=mqtt encoding=protobuf devices=500 rate=2 duration=120
+ * </pre>
+ * 
+ * @author Derek
+ */
+public class LoadGenerator {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(LoadGenerator.class);
+
+	/** Run settings */
+	private LoadGeneratorConfiguration config;
+
+	/** Client for provisioning and verification */
+	private ISiteWhereClient client;
+
+	/** Collects latency samples */
+	private LatencyReport report = new LatencyReport();
+
+	public LoadGenerator(LoadGeneratorConfiguration config) {
+		this.config = config;
+		this.client = new SiteWhereClient(config.getUrl(), config.getUsername(), config.getPassword());
+	}
+
+	public static void main(String[] args) throws Exception {
+		LoadGenerator generator = new LoadGenerator(LoadGeneratorConfiguration.parse(args));
+		generator.run();
+	}
+
+	/**
+	 * Provision the fleet, generate load, then verify persisted events and print the
+	 * report.
+	 * 
+	 * @throws SiteWhereException
+	 */
+	public void run() throws SiteWhereException {
+		List<VirtualDevice> fleet = createFleet();
+
+		ILoadTransport transport = createTransport();
+		transport.start(config);
+		long start = System.currentTimeMillis();
+		try {
+			sendEvents(fleet, transport);
+		} finally {
+			transport.stop();
+		}
+		long elapsed = System.currentTimeMillis() - start;
+
+		LOGGER.info("Waiting " + config.getDrain() + " seconds for server to persist events.");
+		sleep(TimeUnit.SECONDS.toMillis(config.getDrain()));
+		verifyPersisted(fleet);
+
+		report.printSummary(System.out, elapsed);
+		if (config.getHistogramFile() != null) {
+			try {
+				PrintStream out = new PrintStream(config.getHistogramFile());
+				try {
+					report.printDistributions(out);
+				} finally {
+					out.close();
+				}
+			} catch (FileNotFoundException e) {
+				throw new SiteWhereException("Unable to write histogram file.", e);
+			}
+		}
+	}
+
+	/**
+	 * Create the transport chosen in the configuration.
+	 * 
+	 * @return
+	 */
+	protected ILoadTransport createTransport() {
+		switch (config.getTransport()) {
+		case Mqtt: {
+			return new MqttLoadTransport();
+		}
+		case ActiveMQ: {
+			return new ActiveMQLoadTransport();
+		}
+		case Socket: {
+			return new SocketLoadTransport();
+		}
+		default: {
+			return new RestLoadTransport();
+		}
+		}
+	}
+
+	/**
+	 * Create a device and assignment for each virtual device.
+	 * 
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected List<VirtualDevice> createFleet() throws SiteWhereException {
+		if (config.getSiteToken() == null) {
+			SiteCreateRequest site = new SiteCreateRequest();
+			site.setName("Load Test " + System.currentTimeMillis());
+			site.setDescription("Site created by the SiteWhere load generator.");
+			config.setSiteToken(client.createSite(site).getToken());
+		}
+		String prefix = "loadgen-" + Long.toString(System.currentTimeMillis(), 36) + "-";
+		LOGGER.info("Creating " + config.getDevices() + " devices with prefix '" + prefix + "'.");
+
+		ExecutorService executor = Executors.newFixedThreadPool(config.getThreads());
+		try {
+			List<Future<VirtualDevice>> results = new ArrayList<Future<VirtualDevice>>();
+			for (int i = 0; i < config.getDevices(); i++) {
+				results.add(executor.submit(new DeviceCreator(prefix + i, i)));
+			}
+			List<VirtualDevice> fleet = new ArrayList<VirtualDevice>();
+			for (Future<VirtualDevice> result : results) {
+				fleet.add(result.get());
+			}
+			return fleet;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SiteWhereException("Interrupted while creating devices.", e);
+		} catch (ExecutionException e) {
+			throw new SiteWhereException("Unable to create devices.", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Schedule each device to send at the configured rate for the configured duration.
+	 * Start times are spread over the first period so devices do not send in lockstep.
+	 * 
+	 * @param fleet
+	 * @param transport
+	 */
+	protected void sendEvents(List<VirtualDevice> fleet, ILoadTransport transport) {
+		long period = (long) (TimeUnit.SECONDS.toNanos(1) / config.getRate());
+		ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(config.getThreads());
+		Random random = new Random();
+		long now = System.nanoTime();
+		for (VirtualDevice device : fleet) {
+			long delay = (long) (random.nextDouble() * period);
+			scheduler.scheduleAtFixedRate(new DeviceSender(device, transport, now + delay, period), delay,
+					period, TimeUnit.NANOSECONDS);
+		}
+		LOGGER.info("Sending events from " + fleet.size() + " devices for " + config.getDuration()
+				+ " seconds.");
+		sleep(TimeUnit.SECONDS.toMillis(config.getDuration()));
+
+		// Shutting down cancels periodic tasks and lets in-flight sends finish.
+		scheduler.shutdown();
+		try {
+			scheduler.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Read back events for each device and record end-to-end latency.
+	 * 
+	 * @param fleet
+	 * @throws SiteWhereException
+	 */
+	protected void verifyPersisted(List<VirtualDevice> fleet) throws SiteWhereException {
+		for (VirtualDevice device : fleet) {
+			String token = device.getAssignmentToken();
+			if (device.getMeasurementsSent() > 0) {
+				for (DeviceMeasurements mx : client.listDeviceMeasurements(token,
+						(int) device.getMeasurementsSent()).getResults()) {
+					report.recordPersisted(mx);
+				}
+			}
+			if (device.getLocationsSent() > 0) {
+				for (DeviceLocation location : client.listDeviceLocations(token,
+						(int) device.getLocationsSent()).getResults()) {
+					report.recordPersisted(location);
+				}
+			}
+			if (device.getAlertsSent() > 0) {
+				for (DeviceAlert alert : client.listDeviceAlerts(token,
+						(int) device.getAlertsSent()).getResults()) {
+					report.recordPersisted(alert);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sleep without propagating interrupts.
+	 * 
+	 * @param millis
+	 */
+	protected void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Creates a device and assignment on the server for a single virtual device.
+	 * 
+	 * @author Derek
+	 */
+	private class DeviceCreator implements Callable<VirtualDevice> {
+
+		/** Hardware id for the new device */
+		private String hardwareId;
+
+		/** Seed for the device random source */
+		private long seed;
+
+		public DeviceCreator(String hardwareId, long seed) {
+			this.hardwareId = hardwareId;
+			this.seed = seed;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		@Override
+		public VirtualDevice call() throws Exception {
+			DeviceCreateRequest device = new DeviceCreateRequest();
+			device.setHardwareId(hardwareId);
+			device.setSiteToken(config.getSiteToken());
+			device.setSpecificationToken(config.getSpecificationToken());
+			device.setComments("Virtual device created by the SiteWhere load generator.");
+			client.createDevice(device);
+
+			DeviceAssignmentCreateRequest request = new DeviceAssignmentCreateRequest();
+			request.setDeviceHardwareId(hardwareId);
+			request.setAssignmentType(DeviceAssignmentType.Unassociated);
+			DeviceAssignment assignment = client.createDeviceAssignment(request);
+			return new VirtualDevice(hardwareId, assignment.getToken(), config, seed);
+		}
+	}
+
+	/**
+	 * Periodic task that sends the next event for a device. Latency is measured from the
+	 * time the send was intended to start rather than when the task actually ran, so a
+	 * backed up transport shows up in the results instead of silently lowering the rate.
+	 * 
+	 * @author Derek
+	 */
+	private class DeviceSender implements Runnable {
+
+		/** Device sending events */
+		private VirtualDevice device;
+
+		/** Transport used to send */
+		private ILoadTransport transport;
+
+		/** Time the next send is intended to start */
+		private long intended;
+
+		/** Nanoseconds between sends */
+		private long period;
+
+		public DeviceSender(VirtualDevice device, ILoadTransport transport, long first, long period) {
+			this.device = device;
+			this.transport = transport;
+			this.intended = first;
+			this.period = period;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			long start = intended;
+			intended += period;
+			DecodedDeviceEventRequest event = device.nextEvent();
+			try {
+				transport.send(device, event);
+				report.recordSend(System.nanoTime() - start);
+			} catch (Exception e) {
+				// Never propagate, since that would cancel future sends for the device.
+				report.recordError();
+				LOGGER.debug("Unable to send event for " + device.getHardwareId() + ".", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks.load;
+
+/**
+ * Settings for a {@link LoadGenerator} run. Values are parsed from command line
+ * arguments of the form <code>name=value</code>. Defaults target a local server built
+ * from this repository with the sample configuration.
+ * 
+ * @author Derek
+ */
+public class LoadGeneratorConfiguration {
+
+	/** Available transports for sending events */
+	public static enum Transport {
+		Rest, Mqtt, ActiveMQ, Socket
+	}
+
+	/** Available encodings for transports that send raw payloads */
+	public static enum Encoding {
+		Protobuf, Json
+	}
+
+	/** Base URL for REST services */
+	private String url = "http://localhost:8080/sitewhere/api/";
+
+	/** Username for REST services */
+	private String username = "admin";
+
+	/** Password for REST services */
+	private String password = "password";
+
+	/** Transport used to send events */
+	private Transport transport = Transport.Rest;
+
+	/** Encoding used for raw payloads */
+	private Encoding encoding = Encoding.Protobuf;
+
+	/** Number of virtual devices */
+	private int devices = 100;
+
+	/** Events per second sent by each device */
+	private double rate = 1.0;
+
+	/** Number of seconds to generate load */
+	private int duration = 60;
+
+	/** Number of threads sending events */
+	private int threads = 16;
+
+	/** Relative weight of measurements in the event mix */
+	private int measurementsWeight = 70;
+
+	/** Relative weight of locations in the event mix */
+	private int locationsWeight = 20;
+
+	/** Relative weight of alerts in the event mix */
+	private int alertsWeight = 10;
+
+	/** Indicates whether events update assignment state */
+	private boolean updateState = false;
+
+	/** Site devices are created in. A new site is created if not set */
+	private String siteToken;
+
+	/** Specification used for created devices. Defaults to the sample Raspberry Pi */
+	private String specificationToken = "7dfd6d63-5e8d-4380-be04-fc5c73801dfb";
+
+	/** MQTT broker hostname */
+	private String mqttHost = "localhost";
+
+	/** MQTT broker port */
+	private int mqttPort = 1883;
+
+	/** MQTT topic events are published to */
+	private String mqttTopic = "SiteWhere/input/protobuf";
+
+	/** Indicates whether to start an embedded MQTT broker */
+	private boolean embeddedBroker = true;
+
+	/** ActiveMQ broker URL */
+	private String brokerUrl = "tcp://localhost:1234";
+
+	/** ActiveMQ queue events are sent to */
+	private String queue = "SITEWHERE.IN";
+
+	/** Socket receiver hostname */
+	private String socketHost = "localhost";
+
+	/** Socket receiver port */
+	private int socketPort = 8585;
+
+	/** Seconds to wait for the server to drain before checking persisted events */
+	private int drain = 10;
+
+	/** Optional file that full percentile distributions are written to */
+	private String histogramFile;
+
+	/**
+	 * Create a configuration from command line arguments.
+	 * 
+	 * @param args
+	 * @return
+	 */
+	public static LoadGeneratorConfiguration parse(String[] args) {
+		LoadGeneratorConfiguration config = new LoadGeneratorConfiguration();
+		for (String arg : args) {
+			int split = arg.indexOf('=');
+			if (split < 1) {
+				throw new IllegalArgumentException("Expected argument in the form name=value: " + arg);
+			}
+			config.set(arg.substring(0, split).trim(), arg.substring(split + 1).trim());
+		}
+		return config;
+	}
+
+	/**
+	 * Set a single value by name.
+	 * 
+	 * @param name
+	 * @param value
+	 */
+	protected void set(String name, String value) {
+		if ("url".equals(name)) {
+			setUrl(value);
+		} else if ("username".equals(name)) {
+			setUsername(value);
+		} else if ("password".equals(name)) {
+			setPassword(value);
+		} else if ("transport".equals(name)) {
+			setTransport(parseEnum(Transport.class, value));
+		} else if ("encoding".equals(name)) {
+			setEncoding(parseEnum(Encoding.class, value));
+		} else if ("devices".equals(name)) {
+			setDevices(Integer.parseInt(value));
+		} else if ("rate".equals(name)) {
+			setRate(Double.parseDouble(value));
+		} else if ("duration".equals(name)) {
+			setDuration(Integer.parseInt(value));
+		} else if ("threads".equals(name)) {
+			setThreads(Integer.parseInt(value));
+		} else if ("mix".equals(name)) {
+			String[] weights = value.split(",");
+			if (weights.length != 3) {
+				throw new IllegalArgumentException("Mix must be 'measurements,locations,alerts': " + value);
+			}
+			setMeasurementsWeight(Integer.parseInt(weights[0].trim()));
+			setLocationsWeight(Integer.parseInt(weights[1].trim()));
+			setAlertsWeight(Integer.parseInt(weights[2].trim()));
+		} else if ("updateState".equals(name)) {
+			setUpdateState(Boolean.parseBoolean(value));
+		} else if ("site".equals(name)) {
+			setSiteToken(value);
+		} else if ("specification".equals(name)) {
+			setSpecificationToken(value);
+		} else if ("mqttHost".equals(name)) {
+			setMqttHost(value);
+		} else if ("mqttPort".equals(name)) {
+			setMqttPort(Integer.parseInt(value));
+		} else if ("mqttTopic".equals(name)) {
+			setMqttTopic(value);
+		} else if ("embeddedBroker".equals(name)) {
+			setEmbeddedBroker(Boolean.parseBoolean(value));
+		} else if ("brokerUrl".equals(name)) {
+			setBrokerUrl(value);
+		} else if ("queue".equals(name)) {
+			setQueue(value);
+		} else if ("socketHost".equals(name)) {
+			setSocketHost(value);
+		} else if ("socketPort".equals(name)) {
+			setSocketPort(Integer.parseInt(value));
+		} else if ("drain".equals(name)) {
+			setDrain(Integer.parseInt(value));
+		} else if ("histogramFile".equals(name)) {
+			setHistogramFile(value);
+		} else {
+			throw new IllegalArgumentException("Unknown load generator argument: " + name);
+		}
+	}
+
+	/**
+	 * Match an enum constant ignoring case.
+	 * 
+	 * @param type
+	 * @param value
+	 * @return
+	 */
+	protected static <E extends Enum<E>> E parseEnum(Class<E> type, String value) {
+		for (E constant : type.getEnumConstants()) {
+			if (constant.name().equalsIgnoreCase(value)) {
+				return constant;
+			}
+		}
+		throw new IllegalArgumentException("Unknown " + type.getSimpleName() + ": " + value);
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public void setUrl(String url) {
+		this.url = url;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public void setUsername(String username) {
+		this.username = username;
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	public void setPassword(String password) {
+		this.password = password;
+	}
+
+	public Transport getTransport() {
+		return transport;
+	}
+
+	public void setTransport(Transport transport) {
+		this.transport = transport;
+	}
+
+	public Encoding getEncoding() {
+		return encoding;
+	}
+
+	public void setEncoding(Encoding encoding) {
+		this.encoding = encoding;
+	}
+
+	public int getDevices() {
+		return devices;
+	}
+
+	public void setDevices(int devices) {
+		this.devices = devices;
+	}
+
+	public double getRate() {
+		return rate;
+	}
+
+	public void setRate(double rate) {
+		this.rate = rate;
+	}
+
+	public int getDuration() {
+		return duration;
+	}
+
+	public void setDuration(int duration) {
+		this.duration = duration;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public int getMeasurementsWeight() {
+		return measurementsWeight;
+	}
+
+	public void setMeasurementsWeight(int measurementsWeight) {
+		this.measurementsWeight = measurementsWeight;
+	}
+
+	public int getLocationsWeight() {
+		return locationsWeight;
+	}
+
+	public void setLocationsWeight(int locationsWeight) {
+		this.locationsWeight = locationsWeight;
+	}
+
+	public int getAlertsWeight() {
+		return alertsWeight;
+	}
+
+	public void setAlertsWeight(int alertsWeight) {
+		this.alertsWeight = alertsWeight;
+	}
+
+	public boolean isUpdateState() {
+		return updateState;
+	}
+
+	public void setUpdateState(boolean updateState) {
+		this.updateState = updateState;
+	}
+
+	public String getSiteToken() {
+		return siteToken;
+	}
+
+	public void setSiteToken(String siteToken) {
+		this.siteToken = siteToken;
+	}
+
+	public String getSpecificationToken() {
+		return specificationToken;
+	}
+
+	public void setSpecificationToken(String specificationToken) {
+		this.specificationToken = specificationToken;
+	}
+
+	public String getMqttHost() {
+		return mqttHost;
+	}
+
+	public void setMqttHost(String mqttHost) {
+		this.mqttHost = mqttHost;
+	}
+
+	public int getMqttPort() {
+		return mqttPort;
+	}
+
+	public void setMqttPort(int mqttPort) {
+		this.mqttPort = mqttPort;
+	}
+
+	public String getMqttTopic() {
+		return mqttTopic;
+	}
+
+	public void setMqttTopic(String mqttTopic) {
+		this.mqttTopic = mqttTopic;
+	}
+
+	public boolean isEmbeddedBroker() {
+		return embeddedBroker;
+	}
+
+	public void setEmbeddedBroker(boolean embeddedBroker) {
+		this.embeddedBroker = embeddedBroker;
+	}
+
+	public String getBrokerUrl() {
+		return brokerUrl;
+	}
+
+	public void setBrokerUrl(String brokerUrl) {
+		this.brokerUrl = brokerUrl;
+	}
+
+	public String getQueue() {
+		return queue;
+	}
+
+	public void setQueue(String queue) {
+		this.queue = queue;
+	}
+
+	public String getSocketHost() {
+		return socketHost;
+	}
+
+	public void setSocketHost(String socketHost) {
+		this.socketHost = socketHost;
+	}
+
+	public int getSocketPort() {
+		return socketPort;
+	}
+
+	public void setSocketPort(int socketPort) {
+		this.socketPort = socketPort;
+	}
+
+	public int getDrain() {
+		return drain;
+	}
+
+	public void setDrain(int drain) {
+		this.drain = drain;
+	}
+
+	public String getHistogramFile() {
+		return histogramFile;
+	}
+
+	public void setHistogramFile(String histogramFile) {
+		this.histogramFile = histogramFile;
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks.load;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.log4j.Logger;
+import org.fusesource.mqtt.client.BlockingConnection;
+import org.fusesource.mqtt.client.MQTT;
+import org.fusesource.mqtt.client.QoS;
+
+import com.sitewhere.device.provisioning.mqtt.MqttInboundEventReceiver;
+import com.sitewhere.rest.model.device.provisioning.DecodedDeviceEventRequest;
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Publishes encoded events to an MQTT topic. By default an embedded ActiveMQ broker with
+ * an MQTT connector is started so the server {@link MqttInboundEventReceiver} can
+ * subscribe to it without any external broker. Each sending thread uses its own
+ * connection since blocking connections are not thread safe.
+ * 
+ * @author Derek
+ */
+public class MqttLoadTransport implements ILoadTransport {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(MqttLoadTransport.class);
+
+	/** Broker hostname */
+	private String hostname;
+
+	/** Broker port */
+	private int port;
+
+	/** Topic events are published to */
+	private String topic;
+
+	/** Encodes payloads */
+	private PayloadEncoder encoder;
+
+	/** Embedded broker if started */
+	private BrokerService broker;
+
+	/** Used to create unique client ids */
+	private AtomicInteger clientIds = new AtomicInteger();
+
+	/** All open connections */
+	private List<BlockingConnection> connections = new CopyOnWriteArrayList<BlockingConnection>();
+
+	/** Connection for the current thread */
+	private ThreadLocal<BlockingConnection> connection = new ThreadLocal<BlockingConnection>();
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.benchmarks.load.ILoadTransport#start(com.sitewhere.benchmarks.load.
+	 * LoadGeneratorConfiguration)
+	 */
+	@Override
+	public void start(LoadGeneratorConfiguration config) throws SiteWhereException {
+		this.hostname = config.getMqttHost();
+		this.port = config.getMqttPort();
+		this.topic = config.getMqttTopic();
+		this.encoder = new PayloadEncoder(config.getEncoding());
+		if (config.isEmbeddedBroker()) {
+			try {
+				broker = new BrokerService();
+				broker.setBrokerName("sitewhere-loadgen");
+				broker.setPersistent(false);
+				broker.setUseJmx(false);
+				broker.addConnector("mqtt://" + hostname + ":" + port);
+				broker.start();
+				broker.waitUntilStarted();
+				LOGGER.info("Started embedded MQTT broker on " + hostname + ":" + port);
+			} catch (Exception e) {
+				throw new SiteWhereException("Unable to start embedded MQTT broker.", e);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.benchmarks.load.ILoadTransport#send(com.sitewhere.benchmarks.load.
+	 * VirtualDevice, com.sitewhere.rest.model.device.provisioning.DecodedDeviceEventRequest)
+	 */
+	@Override
+	public void send(VirtualDevice device, DecodedDeviceEventRequest event) throws SiteWhereException {
+		byte[] payload = encoder.encode(event);
+		try {
+			getConnection().publish(topic, payload, QoS.AT_LEAST_ONCE, false);
+		} catch (Exception e) {
+			throw new SiteWhereException("Unable to publish event to MQTT topic: " + topic, e);
+		}
+	}
+
+	/**
+	 * Get the connection for the current thread, creating it if necessary.
+	 * 
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected BlockingConnection getConnection() throws SiteWhereException {
+		BlockingConnection current = connection.get();
+		if (current == null) {
+			try {
+				MQTT mqtt = new MQTT();
+				mqtt.setHost(hostname, port);
+				mqtt.setClientId("sitewhere-loadgen-" + clientIds.incrementAndGet());
+				current = mqtt.blockingConnection();
+				current.connect();
+			} catch (Exception e) {
+				throw new SiteWhereException("Unable to connect to MQTT broker.", e);
+			}
+			connection.set(current);
+			connections.add(current);
+		}
+		return current;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.benchmarks.load.ILoadTransport#stop()
+	 */
+	@Override
+	public void stop() throws SiteWhereException {
+		for (BlockingConnection current : connections) {
+			try {
+				current.disconnect();
+			} catch (Exception e) {
+				LOGGER.warn("Error disconnecting from MQTT broker.", e);
+			}
+		}
+		connections.clear();
+		if (broker != null) {
+			try {
+				broker.stop();
+				broker.waitUntilStopped();
+			} catch (Exception e) {
+				throw new SiteWhereException("Unable to stop embedded MQTT broker.", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks.load;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sitewhere.benchmarks.load.LoadGeneratorConfiguration.Encoding;
+import com.sitewhere.device.provisioning.json.JsonBatchEventDecoder;
+import com.sitewhere.device.provisioning.protobuf.ProtobufDeviceEventDecoder;
+import com.sitewhere.device.provisioning.protobuf.ProtobufDeviceEventEncoder;
+import com.sitewhere.rest.model.device.event.DeviceEventBatch;
+import com.sitewhere.rest.model.device.event.request.DeviceAlertCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceLocationCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceMeasurementsCreateRequest;
+import com.sitewhere.rest.model.device.provisioning.DecodedDeviceEventRequest;
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Encodes events into the binary payloads expected by the server decoders. Protobuf
+ * payloads match {@link ProtobufDeviceEventDecoder} and JSON payloads match
+ * {@link JsonBatchEventDecoder}.
+ * 
+ * @author Derek
+ */
+public class PayloadEncoder {
+
+	/** Encoding to use */
+	private Encoding encoding;
+
+	/** Encodes protobuf payloads */
+	private ProtobufDeviceEventEncoder protobuf = new ProtobufDeviceEventEncoder();
+
+	/** Encodes JSON payloads */
+	private ObjectMapper mapper = new ObjectMapper();
+
+	public PayloadEncoder(Encoding encoding) {
+		this.encoding = encoding;
+	}
+
+	/**
+	 * Encode a single event.
+	 * 
+	 * @param event
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public byte[] encode(DecodedDeviceEventRequest event) throws SiteWhereException {
+		switch (encoding) {
+		case Protobuf: {
+			return protobuf.encode(event);
+		}
+		case Json: {
+			return encodeJson(event);
+		}
+		}
+		throw new SiteWhereException("Unknown encoding: " + encoding);
+	}
+
+	/**
+	 * Wrap the event in a batch for the given device and marshal it as JSON.
+	 * 
+	 * @param event
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected byte[] encodeJson(DecodedDeviceEventRequest event) throws SiteWhereException {
+		DeviceEventBatch batch = new DeviceEventBatch();
+		batch.setHardwareId(event.getHardwareId());
+		if (event.getRequest() instanceof DeviceMeasurementsCreateRequest) {
+			batch.getMeasurements().add((DeviceMeasurementsCreateRequest) event.getRequest());
+		} else if (event.getRequest() instanceof DeviceLocationCreateRequest) {
+			batch.getLocations().add((DeviceLocationCreateRequest) event.getRequest());
+		} else if (event.getRequest() instanceof DeviceAlertCreateRequest) {
+			batch.getAlerts().add((DeviceAlertCreateRequest) event.getRequest());
+		} else {
+			throw new SiteWhereException("Unable to encode event as JSON: "
+					+ event.getRequest().getClass().getName());
+		}
+		try {
+			return mapper.writeValueAsBytes(batch);
+		} catch (JsonProcessingException e) {
+			throw new SiteWhereException("Unable to marshal event batch as JSON.", e);
+		}
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks.load;
+
+import com.sitewhere.rest.client.SiteWhereClient;
+import com.sitewhere.rest.model.device.event.request.DeviceAlertCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceLocationCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceMeasurementsCreateRequest;
+import com.sitewhere.rest.model.device.provisioning.DecodedDeviceEventRequest;
+import com.sitewhere.spi.ISiteWhereClient;
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Sends events through the REST services using {@link SiteWhereClient}. Each call
+ * returns after the event has been persisted, so send latency is also the end-to-end
+ * latency for this transport.
+ * 
+ * @author Derek
+ */
+public class RestLoadTransport implements ILoadTransport {
+
+	/** Client used to send events */
+	private ISiteWhereClient client;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.benchmarks.load.ILoadTransport#start(com.sitewhere.benchmarks.load.
+	 * LoadGeneratorConfiguration)
+	 */
+	@Override
+	public void start(LoadGeneratorConfiguration config) throws SiteWhereException {
+		this.client = new SiteWhereClient(config.getUrl(), config.getUsername(), config.getPassword());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.benchmarks.load.ILoadTransport#send(com.sitewhere.benchmarks.load.
+	 * VirtualDevice, com.sitewhere.rest.model.device.provisioning.DecodedDeviceEventRequest)
+	 */
+	@Override
+	public void send(VirtualDevice device, DecodedDeviceEventRequest event) throws SiteWhereException {
+		if (event.getRequest() instanceof DeviceMeasurementsCreateRequest) {
+			client.createDeviceMeasurements(device.getAssignmentToken(),
+					(DeviceMeasurementsCreateRequest) event.getRequest());
+		} else if (event.getRequest() instanceof DeviceLocationCreateRequest) {
+			client.createDeviceLocation(device.getAssignmentToken(),
+					(DeviceLocationCreateRequest) event.getRequest());
+		} else if (event.getRequest() instanceof DeviceAlertCreateRequest) {
+			client.createDeviceAlert(device.getAssignmentToken(),
+					(DeviceAlertCreateRequest) event.getRequest());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.benchmarks.load.ILoadTransport#stop()
+	 */
+	@Override
+	public void stop() throws SiteWhereException {
+	}
+}
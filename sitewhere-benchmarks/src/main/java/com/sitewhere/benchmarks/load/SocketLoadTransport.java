@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks.load;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import com.sitewhere.device.provisioning.socket.ReadAllInteractionHandler;
+import com.sitewhere.rest.model.device.provisioning.DecodedDeviceEventRequest;
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Sends encoded events to a socket event receiver. The server reads a payload until the
+ * connection is closed (see {@link ReadAllInteractionHandler}), so each event is sent on
+ * its own connection.
+ * 
+ * @author Derek
+ */
+public class SocketLoadTransport implements ILoadTransport {
+
+	/** Receiver hostname */
+	private String hostname;
+
+	/** Receiver port */
+	private int port;
+
+	/** Encodes payloads */
+	private PayloadEncoder encoder;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.benchmarks.load.ILoadTransport#start(com.sitewhere.benchmarks.load.
+	 * LoadGeneratorConfiguration)
+	 */
+	@Override
+	public void start(LoadGeneratorConfiguration config) throws SiteWhereException {
+		this.hostname = config.getSocketHost();
+		this.port = config.getSocketPort();
+		this.encoder = new PayloadEncoder(config.getEncoding());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.benchmarks.load.ILoadTransport#send(com.sitewhere.benchmarks.load.
+	 * VirtualDevice, com.sitewhere.rest.model.device.provisioning.DecodedDeviceEventRequest)
+	 */
+	@Override
+	public void send(VirtualDevice device, DecodedDeviceEventRequest event) throws SiteWhereException {
+		byte[] payload = encoder.encode(event);
+		Socket socket = null;
+		try {
+			socket = new Socket(hostname, port);
+			OutputStream output = socket.getOutputStream();
+			output.write(payload);
+			output.flush();
+		} catch (IOException e) {
+			throw new SiteWhereException("Unable to send event to " + hostname + ":" + port, e);
+		} finally {
+			if (socket != null) {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// Ignore errors on close.
+				}
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.benchmarks.load.ILoadTransport#stop()
+	 */
+	@Override
+	public void stop() throws SiteWhereException {
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.benchmarks.load;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sitewhere.rest.model.device.event.request.DeviceAlertCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceLocationCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceMeasurementsCreateRequest;
+import com.sitewhere.rest.model.device.provisioning.DecodedDeviceEventRequest;
+import com.sitewhere.spi.device.event.AlertLevel;
+
+/**
+ * Simulated device that produces a stream of measurements, locations and alerts in the
+ * proportions given by the configuration. Locations follow a random walk so location
+ * processing sees changing values.
+ * 
+ * @author Derek
+ */
+public class VirtualDevice {
+
+	/** Device hardware id */
+	private String hardwareId;
+
+	/** Token for the current device assignment */
+	private String assignmentToken;
+
+	/** Weight of measurements in mix */
+	private int measurementsWeight;
+
+	/** Weight of locations in mix */
+	private int locationsWeight;
+
+	/** Total of all weights */
+	private int totalWeight;
+
+	/** Indicates whether events update assignment state */
+	private boolean updateState;
+
+	/** Random source for event mix and values */
+	private Random random;
+
+	/** Current latitude */
+	private double latitude = 33.7550;
+
+	/** Current longitude */
+	private double longitude = -84.3900;
+
+	/** Number of measurements sent */
+	private AtomicLong measurementsSent = new AtomicLong();
+
+	/** Number of locations sent */
+	private AtomicLong locationsSent = new AtomicLong();
+
+	/** Number of alerts sent */
+	private AtomicLong alertsSent = new AtomicLong();
+
+	public VirtualDevice(String hardwareId, String assignmentToken, LoadGeneratorConfiguration config,
+			long seed) {
+		this.hardwareId = hardwareId;
+		this.assignmentToken = assignmentToken;
+		this.measurementsWeight = config.getMeasurementsWeight();
+		this.locationsWeight = config.getLocationsWeight();
+		this.totalWeight = measurementsWeight + locationsWeight + config.getAlertsWeight();
+		this.updateState = config.isUpdateState();
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Create the next event for the device. Only called from one thread at a time.
+	 * 
+	 * @return
+	 */
+	public DecodedDeviceEventRequest nextEvent() {
+		DecodedDeviceEventRequest decoded = new DecodedDeviceEventRequest();
+		decoded.setHardwareId(hardwareId);
+		int choice = random.nextInt(totalWeight);
+		if (choice < measurementsWeight) {
+			DeviceMeasurementsCreateRequest request = new DeviceMeasurementsCreateRequest();
+			request.addOrReplaceMeasurement("engine.temp", 80.0 + (random.nextDouble() * 40.0));
+			request.addOrReplaceMeasurement("fuel.level", random.nextDouble() * 100.0);
+			request.setUpdateState(updateState);
+			request.setEventDate(new Date());
+			decoded.setRequest(request);
+			measurementsSent.incrementAndGet();
+		} else if (choice < (measurementsWeight + locationsWeight)) {
+			latitude += (random.nextDouble() - 0.5) * 0.001;
+			longitude += (random.nextDouble() - 0.5) * 0.001;
+			DeviceLocationCreateRequest request = new DeviceLocationCreateRequest();
+			request.setLatitude(latitude);
+			request.setLongitude(longitude);
+			request.setElevation(300.0);
+			request.setUpdateState(updateState);
+			request.setEventDate(new Date());
+			decoded.setRequest(request);
+			locationsSent.incrementAndGet();
+		} else {
+			DeviceAlertCreateRequest request = new DeviceAlertCreateRequest();
+			request.setType("engine.overheat");
+			request.setLevel(AlertLevel.Warning);
+			request.setMessage("Engine temperature above threshold.");
+			request.setUpdateState(updateState);
+			request.setEventDate(new Date());
+			decoded.setRequest(request);
+			alertsSent.incrementAndGet();
+		}
+		return decoded;
+	}
+
+	public String getHardwareId() {
+		return hardwareId;
+	}
+
+	public String getAssignmentToken() {
+		return assignmentToken;
+	}
+
+	public long getMeasurementsSent() {
+		return measurementsSent.get();
+	}
+
+	public long getLocationsSent() {
+		return locationsSent.get();
+	}
+
+	public long getAlertsSent() {
+		return alertsSent.get();
+	}
+}
@@ -0,0 +1,818 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.rest.client;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.log4j.Logger;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import com.sitewhere.rest.model.device.event.DeviceEventBatch;
+import com.sitewhere.rest.model.device.event.DeviceEventBatchResponse;
+import com.sitewhere.rest.model.device.event.request.DeviceAlertCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceLocationCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceMeasurementsCreateRequest;
+import com.sitewhere.spi.IAsyncCallback;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.SiteWhereSystemException;
+
+/**
+ * Asynchronous client for high-volume integrations. Requests are sent by a pool of
+ * worker threads over pooled keep-alive HTTP connections, and results are returned as
+ * {@link ClientFuture} instances that can be waited on or given callbacks.
+ * 
+ * Events sent for the same hardware id within a short window are coalesced into a single
+ * {@link DeviceEventBatch} post. Each caller's future completes with the response for
+ * the whole batch.
+ * 
+ * Failed requests are retried with exponential backoff only when the request never
+ * reached the server, i.e. the connection could not be established or no pooled
+ * connection could be leased in time. Event batches are not idempotent, so a request
+ * that fails after it was sent (a read timeout, a dropped connection or a server error
+ * response) is failed rather than retried, since the server may already have stored
+ * the events and sending them again would duplicate them. Callers that can tolerate
+ * duplicates may retry from the future callback.
+ * 
+ * @author Derek
+ */
+public class AsyncSiteWhereClient {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(AsyncSiteWhereClient.class);
+
+	/** Default maximum number of pooled connections */
+	private static final int DEFAULT_MAX_CONNECTIONS = 50;
+
+	/** Default number of worker threads */
+	private static final int DEFAULT_NUM_THREADS = 10;
+
+	/** Default connection timeout in milliseconds */
+	private static final int DEFAULT_CONNECT_TIMEOUT = 3 * 1000;
+
+	/** Default socket read timeout in milliseconds */
+	private static final int DEFAULT_SOCKET_TIMEOUT = 30 * 1000;
+
+	/** Default time events are held for coalescing in milliseconds */
+	private static final long DEFAULT_BATCH_WINDOW = 50;
+
+	/** Default maximum number of events in a batch */
+	private static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+	/** Default number of retries after the first attempt */
+	private static final int DEFAULT_MAX_RETRIES = 3;
+
+	/** Default delay before the first retry in milliseconds */
+	private static final long DEFAULT_RETRY_BACKOFF = 200;
+
+	/** Default upper limit on retry delay in milliseconds */
+	private static final long DEFAULT_MAX_RETRY_BACKOFF = 10 * 1000;
+
+	/** Time after which idle pooled connections are closed in seconds */
+	private static final int IDLE_CONNECTION_TIMEOUT = 30;
+
+	/** Time to wait for outstanding requests on shutdown in seconds */
+	private static final int SHUTDOWN_TIMEOUT = 10;
+
+	/** Synchronous client used to send requests */
+	private SiteWhereClient client;
+
+	/** Maximum number of pooled connections */
+	private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+	/** Number of worker threads */
+	private int numThreads = DEFAULT_NUM_THREADS;
+
+	/** Connection timeout in milliseconds */
+	private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+
+	/** Socket read timeout in milliseconds */
+	private int socketTimeout = DEFAULT_SOCKET_TIMEOUT;
+
+	/** Time events are held for coalescing in milliseconds */
+	private long batchWindow = DEFAULT_BATCH_WINDOW;
+
+	/** Maximum number of events in a batch */
+	private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+	/** Number of retries after the first attempt */
+	private int maxRetries = DEFAULT_MAX_RETRIES;
+
+	/** Delay before the first retry in milliseconds */
+	private long retryBackoff = DEFAULT_RETRY_BACKOFF;
+
+	/** Upper limit on retry delay in milliseconds */
+	private long maxRetryBackoff = DEFAULT_MAX_RETRY_BACKOFF;
+
+	/** Pool of keep-alive connections */
+	private PoolingHttpClientConnectionManager connectionManager;
+
+	/** HTTP client that uses the connection pool */
+	private CloseableHttpClient httpClient;
+
+	/** Sends requests */
+	private ExecutorService workers;
+
+	/** Runs batch window flushes, retries and connection cleanup */
+	private ScheduledExecutorService scheduler;
+
+	/** Indicates whether the client accepts requests */
+	private volatile boolean running;
+
+	/** Batches being collected, keyed by hardware id and reply-to */
+	private Map<String, PendingBatch> pending = new HashMap<String, PendingBatch>();
+
+	/** Operations waiting on the scheduler for another attempt */
+	private Set<RetryingTask<?>> waiting = new HashSet<RetryingTask<?>>();
+
+	/** Used for retry jitter */
+	private Random random = new Random();
+
+	/** Number of events queued */
+	private AtomicLong queuedEvents = new AtomicLong();
+
+	/** Number of batches posted successfully */
+	private AtomicLong sentBatches = new AtomicLong();
+
+	/** Number of retries */
+	private AtomicLong retries = new AtomicLong();
+
+	/** Number of operations that failed after all retries */
+	private AtomicLong failures = new AtomicLong();
+
+	public AsyncSiteWhereClient(String url, String username, String password) {
+		this(new SiteWhereClient(url, username, password));
+	}
+
+	public AsyncSiteWhereClient(SiteWhereClient client) {
+		this.client = client;
+	}
+
+	/**
+	 * Create the connection pool and worker threads. Settings must be changed before the
+	 * client is started.
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(getMaxConnections());
+		connectionManager.setDefaultMaxPerRoute(getMaxConnections());
+		RequestConfig config =
+				RequestConfig.custom().setConnectTimeout(getConnectTimeout()).setConnectionRequestTimeout(
+						getConnectTimeout()).setSocketTimeout(getSocketTimeout()).build();
+		httpClient =
+				HttpClients.custom().setConnectionManager(connectionManager).setDefaultRequestConfig(config)
+						.build();
+		client.getClient().setRequestFactory(new HttpComponentsClientHttpRequestFactory(httpClient));
+
+		workers = Executors.newFixedThreadPool(getNumThreads(), new WorkerThreadFactory());
+		scheduler = Executors.newSingleThreadScheduledExecutor(new SchedulerThreadFactory());
+		scheduler.scheduleWithFixedDelay(new IdleConnectionCloser(), IDLE_CONNECTION_TIMEOUT,
+				IDLE_CONNECTION_TIMEOUT, TimeUnit.SECONDS);
+		running = true;
+		LOGGER.info("Started asynchronous client with " + getNumThreads() + " threads and "
+				+ getMaxConnections() + " pooled connections.");
+	}
+
+	/**
+	 * Send any batches being collected, wait for outstanding requests and release the
+	 * connection pool. Operations still waiting for a retry when the scheduler stops are
+	 * failed.
+	 */
+	public synchronized void stop() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		flush();
+		try {
+			workers.shutdown();
+			if (!workers.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+				LOGGER.warn("Timed out waiting for outstanding requests.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		scheduler.shutdownNow();
+		abortWaiting(new SiteWhereException("Client stopped before operation could be retried."));
+		try {
+			httpClient.close();
+		} catch (IOException e) {
+			LOGGER.warn("Unable to close HTTP client.", e);
+		}
+		LOGGER.info("Stopped asynchronous client. Sent " + getSentBatchCount() + " batches with "
+				+ getRetryCount() + " retries and " + getFailureCount() + " failures.");
+	}
+
+	/**
+	 * Run an operation against the synchronous client on a worker thread, retrying with
+	 * backoff if it fails.
+	 * 
+	 * @param operation
+	 * @return
+	 */
+	public <T> ClientFuture<T> submit(Callable<T> operation) {
+		ClientFuture<T> future = new ClientFuture<T>();
+		if (!running) {
+			future.fail(new SiteWhereException("Asynchronous client is not running."));
+			return future;
+		}
+		execute(new RetryingTask<T>(operation, future));
+		return future;
+	}
+
+	/**
+	 * Queue measurements to be sent in the next batch for a device.
+	 * 
+	 * @param hardwareId
+	 * @param request
+	 * @return
+	 */
+	public ClientFuture<DeviceEventBatchResponse> addDeviceMeasurements(String hardwareId,
+			DeviceMeasurementsCreateRequest request) {
+		DeviceEventBatch batch = new DeviceEventBatch();
+		batch.getMeasurements().add(request);
+		return addDeviceEventBatch(hardwareId, batch);
+	}
+
+	/**
+	 * Queue a location to be sent in the next batch for a device.
+	 * 
+	 * @param hardwareId
+	 * @param request
+	 * @return
+	 */
+	public ClientFuture<DeviceEventBatchResponse> addDeviceLocation(String hardwareId,
+			DeviceLocationCreateRequest request) {
+		DeviceEventBatch batch = new DeviceEventBatch();
+		batch.getLocations().add(request);
+		return addDeviceEventBatch(hardwareId, batch);
+	}
+
+	/**
+	 * Queue an alert to be sent in the next batch for a device.
+	 * 
+	 * @param hardwareId
+	 * @param request
+	 * @return
+	 */
+	public ClientFuture<DeviceEventBatchResponse> addDeviceAlert(String hardwareId,
+			DeviceAlertCreateRequest request) {
+		DeviceEventBatch batch = new DeviceEventBatch();
+		batch.getAlerts().add(request);
+		return addDeviceEventBatch(hardwareId, batch);
+	}
+
+	/**
+	 * Queue a batch of events to be merged with other events for the same device. The
+	 * merged batch is posted when the batch window passes or it reaches the maximum size.
+	 * 
+	 * @param hardwareId
+	 * @param events
+	 * @return
+	 */
+	public ClientFuture<DeviceEventBatchResponse> addDeviceEventBatch(String hardwareId,
+			DeviceEventBatch events) {
+		ClientFuture<DeviceEventBatchResponse> future = new ClientFuture<DeviceEventBatchResponse>();
+		if (!running) {
+			future.fail(new SiteWhereException("Asynchronous client is not running."));
+			return future;
+		}
+		String key = getBatchKey(hardwareId, events.getReplyTo());
+		PendingBatch full = null;
+		synchronized (pending) {
+			PendingBatch batch = pending.get(key);
+			boolean scheduled = true;
+			if (batch == null) {
+				batch = new PendingBatch(key, hardwareId, events.getReplyTo());
+				pending.put(key, batch);
+				scheduled = schedule(new BatchWindowFlusher(batch), getBatchWindow());
+			}
+			batch.add(events, future);
+			if ((batch.getSize() >= getMaxBatchSize()) || (!scheduled)) {
+				pending.remove(key);
+				full = batch;
+			}
+		}
+		queuedEvents.addAndGet(getEventCount(events));
+		if (full != null) {
+			send(full);
+		}
+		return future;
+	}
+
+	/**
+	 * Send all batches being collected without waiting for the batch window.
+	 */
+	public void flush() {
+		List<PendingBatch> batches;
+		synchronized (pending) {
+			batches = new ArrayList<PendingBatch>(pending.values());
+			pending.clear();
+		}
+		for (PendingBatch batch : batches) {
+			send(batch);
+		}
+	}
+
+	/**
+	 * Post a collected batch and complete its futures with the result.
+	 * 
+	 * @param batch
+	 */
+	protected void send(final PendingBatch batch) {
+		ClientFuture<DeviceEventBatchResponse> future = new ClientFuture<DeviceEventBatchResponse>();
+		future.addCallback(batch);
+		execute(new RetryingTask<DeviceEventBatchResponse>(new Callable<DeviceEventBatchResponse>() {
+
+			@Override
+			public DeviceEventBatchResponse call() throws Exception {
+				DeviceEventBatchResponse response =
+						client.addDeviceEventBatch(batch.getHardwareId(), batch.getBatch());
+				sentBatches.incrementAndGet();
+				return response;
+			}
+		}, future));
+	}
+
+	/**
+	 * Run a task on a worker thread, failing it if the workers have shut down.
+	 * 
+	 * @param task
+	 */
+	protected void execute(RetryingTask<?> task) {
+		try {
+			workers.execute(task);
+		} catch (RejectedExecutionException e) {
+			task.abort(e);
+		}
+	}
+
+	/**
+	 * Run a task on the scheduler after a delay.
+	 * 
+	 * @param task
+	 * @param delay
+	 * @return false if the scheduler has shut down
+	 */
+	protected boolean schedule(Runnable task, long delay) {
+		try {
+			scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Fail all operations waiting for a retry. Called once the scheduler has stopped, since
+	 * their retries will never run.
+	 * 
+	 * @param error
+	 */
+	protected void abortWaiting(Throwable error) {
+		List<RetryingTask<?>> aborted;
+		synchronized (waiting) {
+			aborted = new ArrayList<RetryingTask<?>>(waiting);
+			waiting.clear();
+		}
+		for (RetryingTask<?> task : aborted) {
+			task.abort(error);
+		}
+	}
+
+	/**
+	 * Indicates whether a failed request may be sent again. Only failures that happened
+	 * before the request was written are retried, since anything the server may have
+	 * processed would be duplicated by a second attempt.
+	 * 
+	 * @param error
+	 * @return
+	 */
+	protected boolean isRetryable(Throwable error) {
+		Throwable current = error;
+		while (current != null) {
+			if (current instanceof SiteWhereSystemException) {
+				if (((SiteWhereSystemException) current).hasHttpResponseCode()) {
+					return false;
+				}
+			}
+			if ((current instanceof ConnectTimeoutException) || (current instanceof ConnectException)
+					|| (current instanceof NoRouteToHostException)
+					|| (current instanceof UnknownHostException)) {
+				return true;
+			}
+			current = (current.getCause() == current) ? null : current.getCause();
+		}
+		return false;
+	}
+
+	/**
+	 * Get the delay before a retry. Doubles with each attempt up to the maximum, with
+	 * random jitter so clients that failed together do not retry together.
+	 * 
+	 * @param attempt
+	 * @return
+	 */
+	protected long getRetryDelay(int attempt) {
+		long delay = Math.min(getMaxRetryBackoff(), getRetryBackoff() << Math.min(attempt - 1, 20));
+		synchronized (random) {
+			return (delay / 2) + (long) (random.nextDouble() * (delay / 2));
+		}
+	}
+
+	/**
+	 * Get the key used for coalescing events.
+	 * 
+	 * @param hardwareId
+	 * @param replyTo
+	 * @return
+	 */
+	protected String getBatchKey(String hardwareId, String replyTo) {
+		return (replyTo == null) ? hardwareId : hardwareId + "|" + replyTo;
+	}
+
+	/**
+	 * Get the number of events in a batch.
+	 * 
+	 * @param batch
+	 * @return
+	 */
+	protected static int getEventCount(DeviceEventBatch batch) {
+		return batch.getMeasurements().size() + batch.getLocations().size() + batch.getAlerts().size();
+	}
+
+	/**
+	 * Get the number of batches being collected.
+	 * 
+	 * @return
+	 */
+	public int getPendingBatchCount() {
+		synchronized (pending) {
+			return pending.size();
+		}
+	}
+
+	public long getQueuedEventCount() {
+		return queuedEvents.get();
+	}
+
+	public long getSentBatchCount() {
+		return sentBatches.get();
+	}
+
+	public long getRetryCount() {
+		return retries.get();
+	}
+
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	/**
+	 * Events collected for a device along with the futures waiting on them.
+	 * 
+	 * @author Derek
+	 */
+	private class PendingBatch implements IAsyncCallback<DeviceEventBatchResponse> {
+
+		/** Key in pending batch map */
+		private String key;
+
+		/** Merged events */
+		private DeviceEventBatch batch = new DeviceEventBatch();
+
+		/** Futures for each caller */
+		private List<ClientFuture<DeviceEventBatchResponse>> futures =
+				new ArrayList<ClientFuture<DeviceEventBatchResponse>>();
+
+		/** Number of events in the batch */
+		private int size;
+
+		public PendingBatch(String key, String hardwareId, String replyTo) {
+			this.key = key;
+			batch.setHardwareId(hardwareId);
+			batch.setReplyTo(replyTo);
+		}
+
+		/**
+		 * Merge events into the batch.
+		 * 
+		 * @param events
+		 * @param future
+		 */
+		public void add(DeviceEventBatch events, ClientFuture<DeviceEventBatchResponse> future) {
+			batch.getMeasurements().addAll(events.getMeasurements());
+			batch.getLocations().addAll(events.getLocations());
+			batch.getAlerts().addAll(events.getAlerts());
+			futures.add(future);
+			size += getEventCount(events);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.sitewhere.spi.IAsyncCallback#onSuccess(java.lang.Object)
+		 */
+		@Override
+		public void onSuccess(DeviceEventBatchResponse result) {
+			for (ClientFuture<DeviceEventBatchResponse> future : futures) {
+				future.complete(result);
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.sitewhere.spi.IAsyncCallback#onFailure(java.lang.Throwable)
+		 */
+		@Override
+		public void onFailure(Throwable error) {
+			for (ClientFuture<DeviceEventBatchResponse> future : futures) {
+				future.fail(error);
+			}
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public String getHardwareId() {
+			return batch.getHardwareId();
+		}
+
+		public DeviceEventBatch getBatch() {
+			return batch;
+		}
+
+		public int getSize() {
+			return size;
+		}
+	}
+
+	/**
+	 * Sends a batch once its window has passed, unless it was already sent because it
+	 * filled up.
+	 * 
+	 * @author Derek
+	 */
+	private class BatchWindowFlusher implements Runnable {
+
+		/** Batch to send */
+		private PendingBatch batch;
+
+		public BatchWindowFlusher(PendingBatch batch) {
+			this.batch = batch;
+		}
+
+		@Override
+		public void run() {
+			try {
+				synchronized (pending) {
+					if (pending.get(batch.getKey()) != batch) {
+						return;
+					}
+					pending.remove(batch.getKey());
+				}
+				send(batch);
+			} catch (Throwable e) {
+				LOGGER.error("Unable to send event batch.", e);
+			}
+		}
+	}
+
+	/**
+	 * Runs an operation, scheduling another attempt with backoff if it fails.
+	 * 
+	 * @author Derek
+	 * 
+	 * @param <T>
+	 */
+	private class RetryingTask<T> implements Runnable {
+
+		/** Operation to run */
+		private Callable<T> operation;
+
+		/** Future for the result */
+		private ClientFuture<T> future;
+
+		/** Number of attempts made */
+		private int attempts;
+
+		public RetryingTask(Callable<T> operation, ClientFuture<T> future) {
+			this.operation = operation;
+			this.future = future;
+		}
+
+		@Override
+		public void run() {
+			if (future.isCancelled()) {
+				return;
+			}
+			attempts++;
+			try {
+				future.complete(operation.call());
+			} catch (Throwable e) {
+				if ((attempts > getMaxRetries()) || (!isRetryable(e))) {
+					abort(e);
+					return;
+				}
+				long delay = getRetryDelay(attempts);
+				LOGGER.debug("Request failed on attempt " + attempts + ". Retrying in " + delay + " ms.");
+				retries.incrementAndGet();
+				synchronized (waiting) {
+					waiting.add(this);
+				}
+				if (!schedule(new RetryLauncher(this), delay)) {
+					synchronized (waiting) {
+						waiting.remove(this);
+					}
+					abort(e);
+				}
+			}
+		}
+
+		/**
+		 * Fail the operation without further attempts.
+		 * 
+		 * @param error
+		 */
+		public void abort(Throwable error) {
+			if (future.fail(error)) {
+				failures.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Hands an operation waiting for a retry back to the workers.
+	 * 
+	 * @author Derek
+	 */
+	private class RetryLauncher implements Runnable {
+
+		/** Operation to retry */
+		private RetryingTask<?> task;
+
+		public RetryLauncher(RetryingTask<?> task) {
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			synchronized (waiting) {
+				if (!waiting.remove(task)) {
+					return;
+				}
+			}
+			execute(task);
+		}
+	}
+
+	/**
+	 * Closes pooled connections that have expired or been idle too long.
+	 * 
+	 * @author Derek
+	 */
+	private class IdleConnectionCloser implements Runnable {
+
+		@Override
+		public void run() {
+			try {
+				connectionManager.closeExpiredConnections();
+				connectionManager.closeIdleConnections(IDLE_CONNECTION_TIMEOUT, TimeUnit.SECONDS);
+			} catch (Throwable e) {
+				LOGGER.error("Unable to close idle connections.", e);
+			}
+		}
+	}
+
+	/** Used for naming worker threads */
+	private class WorkerThreadFactory implements ThreadFactory {
+
+		/** Counts threads */
+		private AtomicInteger counter = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "SiteWhere Async Client " + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/** Used for naming scheduler thread */
+	private class SchedulerThreadFactory implements ThreadFactory {
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "SiteWhere Async Client Scheduler");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	public SiteWhereClient getClient() {
+		return client;
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public int getSocketTimeout() {
+		return socketTimeout;
+	}
+
+	public void setSocketTimeout(int socketTimeout) {
+		this.socketTimeout = socketTimeout;
+	}
+
+	public long getBatchWindow() {
+		return batchWindow;
+	}
+
+	public void setBatchWindow(long batchWindow) {
+		this.batchWindow = batchWindow;
+	}
+
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	public long getRetryBackoff() {
+		return retryBackoff;
+	}
+
+	public void setRetryBackoff(long retryBackoff) {
+		this.retryBackoff = retryBackoff;
+	}
+
+	public long getMaxRetryBackoff() {
+		return maxRetryBackoff;
+	}
+
+	public void setMaxRetryBackoff(long maxRetryBackoff) {
+		this.maxRetryBackoff = maxRetryBackoff;
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.rest.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.log4j.Logger;
+
+import com.sitewhere.spi.IAsyncCallback;
+
+/**
+ * {@link Future} for the result of an {@link AsyncSiteWhereClient} operation. Callers
+ * may block on the result or register an {@link IAsyncCallback} that is invoked when the
+ * operation completes. Cancelling a future does not stop a request that is already on
+ * the wire.
+ * 
+ * @author Derek
+ * 
+ * @param <T>
+ */
+public class ClientFuture<T> implements Future<T> {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(ClientFuture.class);
+
+	/** Released when the operation completes */
+	private CountDownLatch done = new CountDownLatch(1);
+
+	/** Result of a successful operation */
+	private volatile T result;
+
+	/** Error from a failed operation */
+	private volatile Throwable error;
+
+	/** Indicates whether the future was cancelled */
+	private volatile boolean cancelled;
+
+	/** Callbacks waiting for completion */
+	private List<IAsyncCallback<T>> callbacks = new ArrayList<IAsyncCallback<T>>();
+
+	/**
+	 * Complete the future with a result.
+	 * 
+	 * @param value
+	 * @return true if the future was not already complete
+	 */
+	public boolean complete(T value) {
+		List<IAsyncCallback<T>> waiting;
+		synchronized (this) {
+			if (isDone()) {
+				return false;
+			}
+			this.result = value;
+			waiting = callbacks;
+			callbacks = null;
+			done.countDown();
+		}
+		for (IAsyncCallback<T> callback : waiting) {
+			notifySuccess(callback);
+		}
+		return true;
+	}
+
+	/**
+	 * Complete the future with an error.
+	 * 
+	 * @param cause
+	 * @return true if the future was not already complete
+	 */
+	public boolean fail(Throwable cause) {
+		List<IAsyncCallback<T>> waiting;
+		synchronized (this) {
+			if (isDone()) {
+				return false;
+			}
+			this.error = cause;
+			waiting = callbacks;
+			callbacks = null;
+			done.countDown();
+		}
+		for (IAsyncCallback<T> callback : waiting) {
+			notifyFailure(callback);
+		}
+		return true;
+	}
+
+	/**
+	 * Register a callback for completion. If the future is already complete, the callback
+	 * is invoked on the calling thread.
+	 * 
+	 * @param callback
+	 * @return
+	 */
+	public ClientFuture<T> addCallback(IAsyncCallback<T> callback) {
+		synchronized (this) {
+			if (!isDone()) {
+				callbacks.add(callback);
+				return this;
+			}
+		}
+		if (error != null) {
+			notifyFailure(callback);
+		} else {
+			notifySuccess(callback);
+		}
+		return this;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.concurrent.Future#cancel(boolean)
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		cancelled = true;
+		if (fail(new CancellationException())) {
+			return true;
+		}
+		cancelled = false;
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.concurrent.Future#isCancelled()
+	 */
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.concurrent.Future#isDone()
+	 */
+	@Override
+	public boolean isDone() {
+		return done.getCount() == 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.concurrent.Future#get()
+	 */
+	@Override
+	public T get() throws InterruptedException, ExecutionException {
+		done.await();
+		return getResult();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.concurrent.Future#get(long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+			TimeoutException {
+		if (!done.await(timeout, unit)) {
+			throw new TimeoutException();
+		}
+		return getResult();
+	}
+
+	/**
+	 * Get the result of a completed operation.
+	 * 
+	 * @return
+	 * @throws ExecutionException
+	 */
+	protected T getResult() throws ExecutionException {
+		if (cancelled) {
+			throw new CancellationException();
+		}
+		if (error != null) {
+			throw new ExecutionException(error);
+		}
+		return result;
+	}
+
+	/**
+	 * Invoke a success callback, logging anything it throws.
+	 * 
+	 * @param callback
+	 */
+	protected void notifySuccess(IAsyncCallback<T> callback) {
+		try {
+			callback.onSuccess(result);
+		} catch (Throwable e) {
+			LOGGER.error("Client callback threw exception.", e);
+		}
+	}
+
+	/**
+	 * Invoke a failure callback, logging anything it throws.
+	 * 
+	 * @param callback
+	 */
+	protected void notifyFailure(IAsyncCallback<T> callback) {
+		try {
+			callback.onFailure(error);
+		} catch (Throwable e) {
+			LOGGER.error("Client callback threw exception.", e);
+		}
+	}
+}
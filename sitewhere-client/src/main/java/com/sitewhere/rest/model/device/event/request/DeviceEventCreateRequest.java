@@ -28,6 +28,9 @@ public class DeviceEventCreateRequest extends MetadataProvider implements IDevic
 	/** Indicates whether device assignment state should be updated */
 	private boolean updateState = true;
 
+	/** Device-supplied key used to detect duplicates */
+	private String idempotencyKey;
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -55,4 +58,18 @@ public class DeviceEventCreateRequest extends MetadataProvider implements IDevic
 	public void setUpdateState(boolean updateState) {
 		this.updateState = updateState;
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.event.request.IDeviceEventCreateRequest#getIdempotencyKey()
+	 */
+	public String getIdempotencyKey() {
+		return idempotencyKey;
+	}
+
+	public void setIdempotencyKey(String idempotencyKey) {
+		this.idempotencyKey = idempotencyKey;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.rest.model.search.device;
+
+import com.sitewhere.spi.search.device.IDeviceBySiteParameters;
+
+/**
+ * Model object that provides parameters for a search for devices that belong to a given
+ * site.
+ * 
+ * @author Derek
+ */
+public class DeviceBySiteParameters implements IDeviceBySiteParameters {
+
+	/** Token for site to filter by */
+	private String siteToken;
+
+	public String getSiteToken() {
+		return siteToken;
+	}
+
+	public void setSiteToken(String siteToken) {
+		this.siteToken = siteToken;
+	}
+}
@@ -11,6 +11,7 @@ import java.util.Date;
 
 import com.sitewhere.rest.model.search.DateRangeSearchCriteria;
 import com.sitewhere.spi.search.device.DeviceSearchType;
+import com.sitewhere.spi.search.device.IDeviceBySiteParameters;
 import com.sitewhere.spi.search.device.IDeviceBySpecificationParameters;
 import com.sitewhere.spi.search.device.IDeviceSearchCriteria;
 
@@ -30,6 +31,9 @@ public class DeviceSearchCriteria extends DateRangeSearchCriteria implements IDe
 	/** Parameters for search for devices using a given specification */
 	private IDeviceBySpecificationParameters deviceBySpecificationParameters;
 
+	/** Parameters for search for devices that belong to a given site */
+	private IDeviceBySiteParameters deviceBySiteParameters;
+
 	public DeviceSearchCriteria(int pageNumber, int pageSize, Date startDate, Date endDate,
 			boolean excludeAssigned) {
 		super(pageNumber, pageSize, startDate, endDate);
@@ -76,6 +80,28 @@ public class DeviceSearchCriteria extends DateRangeSearchCriteria implements IDe
 		return criteria;
 	}
 
+	/**
+	 * Create search criteria for all devices that belong to a given site.
+	 * 
+	 * @param siteToken
+	 * @param pageNumber
+	 * @param pageSize
+	 * @param startDate
+	 * @param endDate
+	 * @param excludeAssigned
+	 * @return
+	 */
+	public static IDeviceSearchCriteria createDeviceBySiteSearch(String siteToken, int pageNumber,
+			int pageSize, Date startDate, Date endDate, boolean excludeAssigned) {
+		DeviceSearchCriteria criteria =
+				new DeviceSearchCriteria(pageNumber, pageSize, startDate, endDate, excludeAssigned);
+		criteria.setSearchType(DeviceSearchType.UsesSite);
+		DeviceBySiteParameters params = new DeviceBySiteParameters();
+		params.setSiteToken(siteToken);
+		criteria.setDeviceBySiteParameters(params);
+		return criteria;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -116,4 +142,17 @@ public class DeviceSearchCriteria extends DateRangeSearchCriteria implements IDe
 			IDeviceBySpecificationParameters deviceBySpecificationParameters) {
 		this.deviceBySpecificationParameters = deviceBySpecificationParameters;
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.search.device.IDeviceSearchCriteria#getDeviceBySiteParameters()
+	 */
+	public IDeviceBySiteParameters getDeviceBySiteParameters() {
+		return deviceBySiteParameters;
+	}
+
+	public void setDeviceBySiteParameters(IDeviceBySiteParameters deviceBySiteParameters) {
+		this.deviceBySiteParameters = deviceBySiteParameters;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.rest.model.system;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.sitewhere.rest.model.datatype.JsonDateSerializer;
+import com.sitewhere.spi.server.lifecycle.IStartupReport;
+
+/**
+ * Model object for server startup timing.
+ * 
+ * @author Derek
+ */
+public class StartupReport implements IStartupReport {
+
+	/** Date startup began */
+	private Date startDate;
+
+	/** Total startup time in milliseconds */
+	private long duration;
+
+	/** Maximum number of steps run in parallel */
+	private int threadCount;
+
+	/** Timing for each step */
+	private List<StartupStepTime> steps = new ArrayList<StartupStepTime>();
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.IStartupReport#getStartDate()
+	 */
+	@JsonSerialize(using = JsonDateSerializer.class)
+	public Date getStartDate() {
+		return startDate;
+	}
+
+	public void setStartDate(Date startDate) {
+		this.startDate = startDate;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.IStartupReport#getDuration()
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	public void setDuration(long duration) {
+		this.duration = duration;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.IStartupReport#getThreadCount()
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	public void setThreadCount(int threadCount) {
+		this.threadCount = threadCount;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.IStartupReport#getSteps()
+	 */
+	public List<StartupStepTime> getSteps() {
+		return steps;
+	}
+
+	public void setSteps(List<StartupStepTime> steps) {
+		this.steps = steps;
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.rest.model.system;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.sitewhere.spi.server.lifecycle.IStartupStepTime;
+import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
+
+/**
+ * Model object for timing of a single server startup step.
+ * 
+ * @author Derek
+ */
+@JsonInclude(Include.NON_NULL)
+public class StartupStepTime implements IStartupStepTime {
+
+	/** Unique step name */
+	private String name;
+
+	/** Type of component started by step */
+	private LifecycleComponentType componentType;
+
+	/** Names of steps this step waited for */
+	private List<String> dependencies = new ArrayList<String>();
+
+	/** Milliseconds from start of startup until step started */
+	private long offset;
+
+	/** Milliseconds taken by step */
+	private long duration;
+
+	/** Thread that ran step */
+	private String threadName;
+
+	/** Indicates whether step completed without error */
+	private boolean successful;
+
+	/** Error message if step failed */
+	private String error;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.IStartupStepTime#getName()
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.IStartupStepTime#getComponentType()
+	 */
+	public LifecycleComponentType getComponentType() {
+		return componentType;
+	}
+
+	public void setComponentType(LifecycleComponentType componentType) {
+		this.componentType = componentType;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.IStartupStepTime#getDependencies()
+	 */
+	public List<String> getDependencies() {
+		return dependencies;
+	}
+
+	public void setDependencies(List<String> dependencies) {
+		this.dependencies = dependencies;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.IStartupStepTime#getOffset()
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	public void setOffset(long offset) {
+		this.offset = offset;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.IStartupStepTime#getDuration()
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	public void setDuration(long duration) {
+		this.duration = duration;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.IStartupStepTime#getThreadName()
+	 */
+	public String getThreadName() {
+		return threadName;
+	}
+
+	public void setThreadName(String threadName) {
+		this.threadName = threadName;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.IStartupStepTime#isSuccessful()
+	 */
+	public boolean isSuccessful() {
+		return successful;
+	}
+
+	public void setSuccessful(boolean successful) {
+		this.successful = successful;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.IStartupStepTime#getError()
+	 */
+	public String getError() {
+		return error;
+	}
+
+	public void setError(String error) {
+		this.error = error;
+	}
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spi;
+
+/**
+ * Receives the outcome of an asynchronous client operation.
+ * 
+ * @author Derek
+ * 
+ * @param <T>
+ */
+public interface IAsyncCallback<T> {
+
+	/**
+	 * Called when the operation completes successfully.
+	 * 
+	 * @param result
+	 */
+	public void onSuccess(T result);
+
+	/**
+	 * Called when the operation fails after all retries.
+	 * 
+	 * @param error
+	 */
+	public void onFailure(Throwable error);
+}
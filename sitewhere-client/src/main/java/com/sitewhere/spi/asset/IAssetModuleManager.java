@@ -11,6 +11,8 @@ import java.util.List;
 
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.command.ICommandResponse;
+import com.sitewhere.spi.search.ISearchCriteria;
+import com.sitewhere.spi.search.ISearchResults;
 import com.sitewhere.spi.server.lifecycle.ILifecycleComponent;
 
 /**
@@ -54,4 +56,17 @@ public interface IAssetModuleManager extends ILifecycleComponent {
 	 * @throws SiteWhereException
 	 */
 	public List<? extends IAsset> search(String assetModuleId, String criteria) throws SiteWhereException;
+
+	/**
+	 * Get a page of assets from an asset module that match the given criteria, best
+	 * matches first.
+	 * 
+	 * @param assetModuleId
+	 * @param criteria
+	 * @param paging
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public ISearchResults<? extends IAsset> search(String assetModuleId, String criteria,
+			ISearchCriteria paging) throws SiteWhereException;
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spi.asset;
+
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.search.ISearchCriteria;
+import com.sitewhere.spi.search.ISearchResults;
+
+/**
+ * Asset module that keeps a search index, so results from {@link #search(String)} are
+ * already ranked and can be returned a page at a time.
+ * 
+ * @author Derek
+ */
+public interface IIndexedAssetModule<T extends IAsset> extends IAssetModule<T> {
+
+	/**
+	 * Get a page of assets that meet the criteria, best matches first.
+	 * 
+	 * @param criteria
+	 * @param paging
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public ISearchResults<T> search(String criteria, ISearchCriteria paging) throws SiteWhereException;
+}
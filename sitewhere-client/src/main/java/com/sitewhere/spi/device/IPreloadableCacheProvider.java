@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spi.device;
+
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Interface implemented by {@link IDeviceManagementCacheProvider} implementations that
+ * can reload their caches on startup, so the first requests after a restart do not all
+ * go to the datastore.
+ * 
+ * @author Derek
+ */
+public interface IPreloadableCacheProvider {
+
+	/**
+	 * Load cache entries that were in use before the last shutdown. Called once device
+	 * management has started.
+	 * 
+	 * @param management
+	 * @throws SiteWhereException
+	 */
+	public void preload(IDeviceManagement management) throws SiteWhereException;
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spi.device;
+
+import java.util.Date;
+
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.DeviceEventType;
+import com.sitewhere.spi.device.event.IDeviceEventPurgeHandler;
+
+/**
+ * Interface implemented by {@link IDeviceManagement} implementations that can delete
+ * device events older than a given date.
+ * 
+ * @author Derek
+ */
+public interface IPurgeableDeviceManagement {
+
+	/** Metadata key that marks measurements holding a rollup of purged measurements */
+	public static final String ROLLUP_INTERVAL_METADATA = "rollupInterval";
+
+	/**
+	 * Metadata key that holds the number of measurements events summarized by a rollup.
+	 * Sample counts for individual measurements are stored as <code>name.count</code>.
+	 */
+	public static final String ROLLUP_COUNT_METADATA = "rollupCount";
+
+	/**
+	 * Delete events that occurred before the given date. At most <code>maxEvents</code>
+	 * events are deleted per call, so callers repeat the call until it returns zero. If a
+	 * handler is passed, it is given each batch of events before they are deleted. If the
+	 * handler throws an exception, the batch is not deleted.
+	 * 
+	 * @param siteToken site to purge or null for all sites
+	 * @param eventType type of event to purge or null for all types
+	 * @param before events older than this date are deleted
+	 * @param includeRollups indicates whether rollup measurements are deleted
+	 * @param maxEvents maximum number of events deleted by the call
+	 * @param handler receives events before they are deleted (may be null)
+	 * @return number of events deleted
+	 * @throws SiteWhereException
+	 */
+	public int purgeDeviceEvents(String siteToken, DeviceEventType eventType, Date before,
+			boolean includeRollups, int maxEvents, IDeviceEventPurgeHandler handler)
+			throws SiteWhereException;
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spi.device.event;
+
+import java.util.List;
+
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IPurgeableDeviceManagement;
+
+/**
+ * Receives device events before they are deleted by
+ * {@link IPurgeableDeviceManagement#purgeDeviceEvents}.
+ * 
+ * @author Derek
+ */
+public interface IDeviceEventPurgeHandler {
+
+	/**
+	 * Called with a batch of events that are about to be deleted. Throwing an exception
+	 * prevents the batch from being deleted.
+	 * 
+	 * @param events
+	 * @throws SiteWhereException
+	 */
+	public void beforePurge(List<IDeviceEvent> events) throws SiteWhereException;
+}
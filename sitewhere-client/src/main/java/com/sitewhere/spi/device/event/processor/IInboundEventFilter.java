@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spi.device.event.processor;
+
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.request.IDeviceEventCreateRequest;
+
+/**
+ * {@link IInboundEventProcessor} that can stop an event from reaching the processors that
+ * follow it in an {@link IInboundEventProcessorChain}.
+ * 
+ * @author Derek
+ */
+public interface IInboundEventFilter extends IInboundEventProcessor {
+
+	/**
+	 * Indicates whether the request should be dropped rather than passed to the
+	 * remaining processors in the chain.
+	 * 
+	 * @param hardwareId
+	 * @param originator
+	 * @param request
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public boolean isFiltered(String hardwareId, String originator, IDeviceEventCreateRequest request)
+			throws SiteWhereException;
+}
@@ -32,4 +32,12 @@ public interface IDeviceEventCreateRequest extends IMetadataProvider {
 	 * @return
 	 */
 	public boolean isUpdateState();
+
+	/**
+	 * Get an optional key supplied by the device that uniquely identifies the event, so
+	 * retransmitted copies can be recognized as duplicates.
+	 * 
+	 * @return
+	 */
+	public String getIdempotencyKey();
 }
\ No newline at end of file
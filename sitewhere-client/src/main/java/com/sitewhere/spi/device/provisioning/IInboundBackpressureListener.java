@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spi.device.provisioning;
+
+/**
+ * Notified when an {@link IInboundProcessingStrategy} crosses its backpressure
+ * watermarks, so event sources can stop pulling from their transports until the backlog
+ * has drained.
+ * 
+ * @author Derek
+ */
+public interface IInboundBackpressureListener {
+
+	/**
+	 * Called when utilization reaches the high watermark. Receivers should stop taking
+	 * payloads from their transports.
+	 * 
+	 * @param utilization
+	 */
+	public void onBackpressureApplied(double utilization);
+
+	/**
+	 * Called when utilization drops to the low watermark. Receivers may resume taking
+	 * payloads from their transports.
+	 * 
+	 * @param utilization
+	 */
+	public void onBackpressureReleased(double utilization);
+}
@@ -43,4 +43,17 @@ public interface IInboundEventReceiver<T> extends ILifecycleComponent {
 	 * @return
 	 */
 	public IInboundEventSource<T> getEventSource();
+
+	/**
+	 * Stop taking payloads from the underlying transport until {@link #resumeDelivery()}
+	 * is called. Used to push back on senders while the inbound processing strategy is
+	 * overloaded. This is separate from the lifecycle pause of the component.
+	 */
+	public void pauseDelivery();
+
+	/**
+	 * Resume taking payloads from the underlying transport after
+	 * {@link #pauseDelivery()}.
+	 */
+	public void resumeDelivery();
 }
\ No newline at end of file
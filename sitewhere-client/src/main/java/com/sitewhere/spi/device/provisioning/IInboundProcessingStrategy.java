@@ -63,4 +63,34 @@ public interface IInboundProcessingStrategy extends ILifecycleComponent {
 	 * @throws SiteWhereException
 	 */
 	public void processDeviceAlert(IDecodedDeviceEventRequest request) throws SiteWhereException;
+
+	/**
+	 * Get the fraction of available capacity currently in use, from 0.0 to 1.0.
+	 * 
+	 * @return
+	 */
+	public double getUtilization();
+
+	/**
+	 * Indicates whether utilization has reached the high watermark and has not yet
+	 * dropped back to the low watermark.
+	 * 
+	 * @return
+	 */
+	public boolean isBackpressureApplied();
+
+	/**
+	 * Add a listener that is notified when backpressure is applied or released.
+	 * 
+	 * @param listener
+	 */
+	public void addBackpressureListener(IInboundBackpressureListener listener);
+
+	/**
+	 * Remove a listener added with
+	 * {@link #addBackpressureListener(IInboundBackpressureListener)}.
+	 * 
+	 * @param listener
+	 */
+	public void removeBackpressureListener(IInboundBackpressureListener listener);
 }
\ No newline at end of file
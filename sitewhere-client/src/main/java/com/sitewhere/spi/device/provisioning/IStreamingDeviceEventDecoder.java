@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spi.device.provisioning;
+
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Decoder that hands off each event as soon as it has been decoded rather than building
+ * a list for the whole payload. Event sources use this form when it is available so
+ * large payloads do not have to be held in memory.
+ * 
+ * @author Derek
+ */
+public interface IStreamingDeviceEventDecoder<T> extends IDeviceEventDecoder<T> {
+
+	/**
+	 * Decodes a payload, passing each {@link IDecodedDeviceEventRequest} to the handler
+	 * in the order it appears in the payload.
+	 * 
+	 * @param payload
+	 * @param handler
+	 * @throws SiteWhereException
+	 */
+	public void decode(T payload, IDecodedDeviceEventHandler handler) throws SiteWhereException;
+}
@@ -19,4 +19,7 @@ public enum DeviceSearchType {
 
 	/** Returns devices that use a specification */
 	UsesSpecification,
+
+	/** Returns devices that belong to a site */
+	UsesSite,
 }
\ No newline at end of file
@@ -37,4 +37,12 @@ public interface IDeviceSearchCriteria extends IDateRangeSearchCriteria {
 	 * @return
 	 */
 	public IDeviceBySpecificationParameters getDeviceBySpecificationParameters();
+
+	/**
+	 * If searching for devices that belong to a given site, this will contain the
+	 * parameters for the search.
+	 * 
+	 * @return
+	 */
+	public IDeviceBySiteParameters getDeviceBySiteParameters();
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spi.search.external;
+
+import java.util.List;
+
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.IDeviceLocation;
+
+/**
+ * Search provider that finds device assignments by their last known location.
+ * 
+ * @author Derek
+ */
+public interface ILocationSearchProvider extends ISearchProvider {
+
+	/**
+	 * Get the last known location of device assignments within a radius of the given
+	 * point, ordered from nearest to farthest.
+	 * 
+	 * @param latitude
+	 * @param longitude
+	 * @param radiusKm
+	 * @param maxResults
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public List<IDeviceLocation> getNearestLocations(double latitude, double longitude, double radiusKm,
+			int maxResults) throws SiteWhereException;
+}
@@ -22,6 +22,7 @@ import com.sitewhere.spi.device.provisioning.IDeviceProvisioning;
 import com.sitewhere.spi.search.external.ISearchProviderManager;
 import com.sitewhere.spi.server.debug.ITracer;
 import com.sitewhere.spi.server.lifecycle.ILifecycleComponent;
+import com.sitewhere.spi.server.lifecycle.IStartupReport;
 import com.sitewhere.spi.system.IVersion;
 import com.sitewhere.spi.user.IUserManagement;
 
@@ -152,4 +153,11 @@ public interface ISiteWhereServer extends ILifecycleComponent {
 	 * @return
 	 */
 	public HealthCheckRegistry getHealthCheckRegistry();
+
+	/**
+	 * Get timing recorded for each component during the last startup.
+	 * 
+	 * @return
+	 */
+	public IStartupReport getStartupReport();
 }
\ No newline at end of file
@@ -28,4 +28,31 @@ public interface ISiteWhereHazelcast {
 
 	/** Topic name for newly added command responses */
 	public static final String TOPIC_COMMAND_RESPONSE_ADDED = "sitewhere.topic.command.response.added";
+
+	/** Topic name for batches of newly added measurements */
+	public static final String TOPIC_MEASUREMENTS_BATCH = "sitewhere.topic.measurements.batch";
+
+	/** Topic name for batches of newly added locations */
+	public static final String TOPIC_LOCATION_BATCH = "sitewhere.topic.location.batch";
+
+	/** Topic name for batches of newly added alerts */
+	public static final String TOPIC_ALERT_BATCH = "sitewhere.topic.alert.batch";
+
+	/** Topic name for batches of newly added command invocations */
+	public static final String TOPIC_COMMAND_INVOCATION_BATCH = "sitewhere.topic.command.invocation.batch";
+
+	/** Topic name for batches of newly added command responses */
+	public static final String TOPIC_COMMAND_RESPONSE_BATCH = "sitewhere.topic.command.response.batch";
+
+	/** Map name for cached sites */
+	public static final String MAP_SITE_CACHE = "sitewhere.map.cache.sites";
+
+	/** Map name for cached device specifications */
+	public static final String MAP_DEVICE_SPECIFICATION_CACHE = "sitewhere.map.cache.specifications";
+
+	/** Map name for cached devices */
+	public static final String MAP_DEVICE_CACHE = "sitewhere.map.cache.devices";
+
+	/** Map name for cached device assignments */
+	public static final String MAP_DEVICE_ASSIGNMENT_CACHE = "sitewhere.map.cache.assignments";
 }
\ No newline at end of file
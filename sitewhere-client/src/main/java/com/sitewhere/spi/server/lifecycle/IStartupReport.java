@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spi.server.lifecycle;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Timing information recorded while the server started.
+ * 
+ * @author Derek
+ */
+public interface IStartupReport {
+
+	/**
+	 * Get date startup began.
+	 * 
+	 * @return
+	 */
+	public Date getStartDate();
+
+	/**
+	 * Get total time taken to start in milliseconds.
+	 * 
+	 * @return
+	 */
+	public long getDuration();
+
+	/**
+	 * Get the maximum number of steps that were run in parallel.
+	 * 
+	 * @return
+	 */
+	public int getThreadCount();
+
+	/**
+	 * Get timing for each startup step in the order steps were started.
+	 * 
+	 * @return
+	 */
+	public List<? extends IStartupStepTime> getSteps();
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spi.server.lifecycle;
+
+import java.util.List;
+
+/**
+ * Timing for a single step of server startup. A step either starts an
+ * {@link ILifecycleComponent} or runs a task such as verifying the data model.
+ * 
+ * @author Derek
+ */
+public interface IStartupStepTime {
+
+	/**
+	 * Get unique step name.
+	 * 
+	 * @return
+	 */
+	public String getName();
+
+	/**
+	 * Get type of component started by the step. Null for steps that are not components.
+	 * 
+	 * @return
+	 */
+	public LifecycleComponentType getComponentType();
+
+	/**
+	 * Get names of steps that had to finish before this step could start.
+	 * 
+	 * @return
+	 */
+	public List<String> getDependencies();
+
+	/**
+	 * Get milliseconds from the start of startup until the step started.
+	 * 
+	 * @return
+	 */
+	public long getOffset();
+
+	/**
+	 * Get milliseconds taken by the step.
+	 * 
+	 * @return
+	 */
+	public long getDuration();
+
+	/**
+	 * Get name of thread that ran the step.
+	 * 
+	 * @return
+	 */
+	public String getThreadName();
+
+	/**
+	 * Indicates whether the step completed without error.
+	 * 
+	 * @return
+	 */
+	public boolean isSuccessful();
+
+	/**
+	 * Get error message if the step failed.
+	 * 
+	 * @return
+	 */
+	public String getError();
+}
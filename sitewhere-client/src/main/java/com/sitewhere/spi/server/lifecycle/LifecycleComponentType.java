@@ -88,4 +88,7 @@ public enum LifecycleComponentType {
 
 	/** Event receiver */
 	InboundEventReceiver,
+
+	/** Event retention manager */
+	EventRetentionManager,
 }
\ No newline at end of file
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.rest.client;
+
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sitewhere.rest.model.device.event.DeviceEventBatch;
+import com.sitewhere.rest.model.device.event.DeviceEventBatchResponse;
+import com.sitewhere.rest.model.device.event.request.DeviceMeasurementsCreateRequest;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.SiteWhereSystemException;
+import com.sitewhere.spi.error.ErrorCode;
+import com.sitewhere.spi.error.ErrorLevel;
+
+/**
+ * Exercises coalescing, retries and shutdown of {@link AsyncSiteWhereClient} against a
+ * stubbed client so no server is required.
+ * 
+ * @author Derek
+ */
+public class AsyncSiteWhereClientTests {
+
+	/** Hardware id used for events */
+	private static final String HARDWARE_ID = "5a95f3f2-96f0-47f9-b98d-f5c081d01948";
+
+	@Test
+	public void testEventsCoalescedPerDevice() throws Exception {
+		StubClient stub = new StubClient(0);
+		AsyncSiteWhereClient client = new AsyncSiteWhereClient(stub);
+		client.setBatchWindow(60 * 1000);
+		client.start();
+		try {
+			List<ClientFuture<DeviceEventBatchResponse>> futures =
+					new ArrayList<ClientFuture<DeviceEventBatchResponse>>();
+			for (int i = 0; i < 5; i++) {
+				futures.add(client.addDeviceMeasurements(HARDWARE_ID, createMeasurements(i)));
+			}
+			futures.add(client.addDeviceMeasurements("other-device", createMeasurements(5)));
+			Assert.assertEquals(2, client.getPendingBatchCount());
+			client.flush();
+			for (ClientFuture<DeviceEventBatchResponse> future : futures) {
+				future.get(10, TimeUnit.SECONDS);
+			}
+			Assert.assertEquals(2, stub.getCalls().get());
+			Assert.assertEquals(5, stub.getSizes().get(HARDWARE_ID).intValue());
+			Assert.assertEquals(1, stub.getSizes().get("other-device").intValue());
+		} finally {
+			client.stop();
+		}
+	}
+
+	@Test
+	public void testBatchSentWhenFull() throws Exception {
+		StubClient stub = new StubClient(0);
+		AsyncSiteWhereClient client = new AsyncSiteWhereClient(stub);
+		client.setBatchWindow(60 * 1000);
+		client.setMaxBatchSize(3);
+		client.start();
+		try {
+			ClientFuture<DeviceEventBatchResponse> future = null;
+			for (int i = 0; i < 3; i++) {
+				future = client.addDeviceMeasurements(HARDWARE_ID, createMeasurements(i));
+			}
+			future.get(10, TimeUnit.SECONDS);
+			Assert.assertEquals(1, stub.getCalls().get());
+			Assert.assertEquals(0, client.getPendingBatchCount());
+		} finally {
+			client.stop();
+		}
+	}
+
+	@Test
+	public void testIsRetryable() {
+		AsyncSiteWhereClient client = new AsyncSiteWhereClient(new StubClient(0));
+		Assert.assertTrue(client.isRetryable(new ConnectException("Connection refused")));
+		Assert.assertTrue(client.isRetryable(new SiteWhereException(new ConnectException("Refused"))));
+		Assert.assertFalse(client.isRetryable(new SiteWhereException("Unable to parse response.")));
+		Assert.assertFalse(client.isRetryable(new SiteWhereSystemException(ErrorCode.InvalidHardwareId,
+				ErrorLevel.ERROR, 404)));
+	}
+
+	@Test
+	public void testRetryDelayBackoff() {
+		AsyncSiteWhereClient client = new AsyncSiteWhereClient(new StubClient(0));
+		client.setRetryBackoff(100);
+		client.setMaxRetryBackoff(1000);
+		for (int i = 0; i < 100; i++) {
+			assertBetween(client.getRetryDelay(1), 50, 100);
+			assertBetween(client.getRetryDelay(2), 100, 200);
+			assertBetween(client.getRetryDelay(3), 200, 400);
+			assertBetween(client.getRetryDelay(10), 500, 1000);
+			assertBetween(client.getRetryDelay(100), 500, 1000);
+		}
+	}
+
+	@Test
+	public void testFailedRequestRetried() throws Exception {
+		StubClient stub = new StubClient(2);
+		AsyncSiteWhereClient client = new AsyncSiteWhereClient(stub);
+		client.setBatchWindow(0);
+		client.setRetryBackoff(10);
+		client.start();
+		try {
+			client.addDeviceMeasurements(HARDWARE_ID, createMeasurements(0)).get(10, TimeUnit.SECONDS);
+			Assert.assertEquals(3, stub.getCalls().get());
+			Assert.assertEquals(2, client.getRetryCount());
+			Assert.assertEquals(0, client.getFailureCount());
+		} finally {
+			client.stop();
+		}
+	}
+
+	@Test
+	public void testFailedAfterMaxRetries() throws Exception {
+		StubClient stub = new StubClient(Integer.MAX_VALUE);
+		AsyncSiteWhereClient client = new AsyncSiteWhereClient(stub);
+		client.setBatchWindow(0);
+		client.setRetryBackoff(10);
+		client.setMaxRetries(2);
+		client.start();
+		try {
+			ClientFuture<DeviceEventBatchResponse> future =
+					client.addDeviceMeasurements(HARDWARE_ID, createMeasurements(0));
+			assertFails(future);
+			Assert.assertEquals(3, stub.getCalls().get());
+			Assert.assertEquals(1, client.getFailureCount());
+		} finally {
+			client.stop();
+		}
+	}
+
+	@Test
+	public void testStopFailsWaitingRetries() throws Exception {
+		StubClient stub = new StubClient(Integer.MAX_VALUE);
+		AsyncSiteWhereClient client = new AsyncSiteWhereClient(stub);
+		client.setBatchWindow(0);
+		client.setRetryBackoff(60 * 1000);
+		client.setMaxRetryBackoff(60 * 1000);
+		client.start();
+		ClientFuture<DeviceEventBatchResponse> future =
+				client.addDeviceMeasurements(HARDWARE_ID, createMeasurements(0));
+		long deadline = System.currentTimeMillis() + 10 * 1000;
+		while ((client.getRetryCount() == 0) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(1, client.getRetryCount());
+		client.stop();
+		Assert.assertTrue(future.isDone());
+		assertFails(future);
+		Assert.assertEquals(1, stub.getCalls().get());
+		Assert.assertEquals(1, client.getFailureCount());
+	}
+
+	/**
+	 * Create a measurements request.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	protected DeviceMeasurementsCreateRequest createMeasurements(double value) {
+		DeviceMeasurementsCreateRequest request = new DeviceMeasurementsCreateRequest();
+		request.addOrReplaceMeasurement("value", value);
+		return request;
+	}
+
+	/**
+	 * Assert that a future fails.
+	 * 
+	 * @param future
+	 * @throws Exception
+	 */
+	protected void assertFails(ClientFuture<DeviceEventBatchResponse> future) throws Exception {
+		try {
+			future.get(10, TimeUnit.SECONDS);
+			Assert.fail("Operation should have failed.");
+		} catch (ExecutionException e) {
+		}
+	}
+
+	/**
+	 * Assert that a value falls within a range.
+	 * 
+	 * @param value
+	 * @param min
+	 * @param max
+	 */
+	protected void assertBetween(long value, long min, long max) {
+		Assert.assertTrue("Expected " + value + " to be between " + min + " and " + max,
+				(value >= min) && (value <= max));
+	}
+
+	/**
+	 * Client that records batches instead of posting them, refusing connections for a
+	 * given number of calls first.
+	 * 
+	 * @author Derek
+	 */
+	private static class StubClient extends SiteWhereClient {
+
+		/** Number of calls that fail before calls succeed */
+		private int failures;
+
+		/** Number of calls made */
+		private AtomicInteger calls = new AtomicInteger();
+
+		/** Number of events in the last batch for each hardware id */
+		private Map<String, Integer> sizes = Collections.synchronizedMap(new HashMap<String, Integer>());
+
+		public StubClient(int failures) {
+			super("http://localhost:8080/sitewhere/api/", "admin", "password");
+			this.failures = failures;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * com.sitewhere.rest.client.SiteWhereClient#addDeviceEventBatch(java.lang.String,
+		 * com.sitewhere.rest.model.device.event.DeviceEventBatch)
+		 */
+		@Override
+		public DeviceEventBatchResponse addDeviceEventBatch(String hardwareId, DeviceEventBatch batch)
+				throws SiteWhereException {
+			if (calls.incrementAndGet() <= failures) {
+				throw new SiteWhereException(new ConnectException("Connection refused"));
+			}
+			sizes.put(hardwareId, batch.getMeasurements().size());
+			return new DeviceEventBatchResponse();
+		}
+
+		public AtomicInteger getCalls() {
+			return calls;
+		}
+
+		public Map<String, Integer> getSizes() {
+			return sizes;
+		}
+	}
+}
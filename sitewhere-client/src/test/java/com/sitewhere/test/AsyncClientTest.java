@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.sitewhere.rest.client.AsyncSiteWhereClient;
+import com.sitewhere.rest.client.ClientFuture;
+import com.sitewhere.rest.model.device.event.DeviceEventBatchResponse;
+import com.sitewhere.rest.model.device.event.request.DeviceLocationCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceMeasurementsCreateRequest;
+
+/**
+ * Sends events through {@link AsyncSiteWhereClient} against a running server.
+ * 
+ * @author Derek
+ */
+public class AsyncClientTest {
+
+	/** Hardware id of device that receives events */
+	private static final String HARDWARE_ID = "5a95f3f2-96f0-47f9-b98d-f5c081d01948";
+
+	/** Number of events to send */
+	private int numEvents = 5000;
+
+	@Test
+	public void sendCoalescedEvents() throws Exception {
+		AsyncSiteWhereClient client =
+				new AsyncSiteWhereClient("http://localhost:8080/sitewhere/api/", "admin", "password");
+		client.start();
+
+		long start = System.currentTimeMillis();
+		List<ClientFuture<DeviceEventBatchResponse>> futures =
+				new ArrayList<ClientFuture<DeviceEventBatchResponse>>();
+		for (int i = 0; i < numEvents; i++) {
+			if ((i % 2) == 0) {
+				DeviceMeasurementsCreateRequest request = new DeviceMeasurementsCreateRequest();
+				request.setEventDate(new Date());
+				request.addOrReplaceMeasurement("first", 123.45);
+				request.addOrReplaceMeasurement("second", 987.65);
+				futures.add(client.addDeviceMeasurements(HARDWARE_ID, request));
+			} else {
+				DeviceLocationCreateRequest request = new DeviceLocationCreateRequest();
+				request.setEventDate(new Date());
+				request.setLatitude(33.7550);
+				request.setLongitude(-84.3900);
+				request.setElevation(1000.0);
+				futures.add(client.addDeviceLocation(HARDWARE_ID, request));
+			}
+		}
+		for (ClientFuture<DeviceEventBatchResponse> future : futures) {
+			future.get(30, TimeUnit.SECONDS);
+		}
+		long elapsed = System.currentTimeMillis() - start;
+		System.out.println("Sent " + numEvents + " events in " + client.getSentBatchCount() + " batches in "
+				+ elapsed + " ms with " + client.getRetryCount() + " retries.");
+		client.stop();
+	}
+}
@@ -63,7 +63,7 @@ public class ExpiringLRUCache<K, V> {
 		if (entry == null) {
 			return null;
 		}
-		if ((entry.getTimestamp().getTime() - System.currentTimeMillis()) > expirationInMS) {
+		if ((System.currentTimeMillis() - entry.getTimestamp().getTime()) > expirationInMS) {
 			map.remove(key);
 			return null;
 		}
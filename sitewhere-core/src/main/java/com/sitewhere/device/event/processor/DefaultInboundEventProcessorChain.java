@@ -14,17 +14,21 @@ import org.apache.log4j.Logger;
 
 import com.sitewhere.server.lifecycle.LifecycleComponent;
 import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.processor.IInboundEventFilter;
 import com.sitewhere.spi.device.event.processor.IInboundEventProcessor;
 import com.sitewhere.spi.device.event.processor.IInboundEventProcessorChain;
 import com.sitewhere.spi.device.event.request.IDeviceAlertCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceCommandResponseCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceEventCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceLocationCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceMeasurementsCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceRegistrationRequest;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 
 /**
- * Default implementation of {@link IInboundEventProcessorChain} interface.
+ * Default implementation of {@link IInboundEventProcessorChain} interface. Processors are
+ * invoked in order. If an {@link IInboundEventFilter} drops an event, processors after it
+ * are not invoked.
  * 
  * @author Derek
  */
@@ -89,6 +93,9 @@ public class DefaultInboundEventProcessorChain extends LifecycleComponent implem
 			throws SiteWhereException {
 		for (IInboundEventProcessor processor : getProcessors()) {
 			try {
+				if (isFiltered(processor, hardwareId, originator, request)) {
+					break;
+				}
 				processor.onRegistrationRequest(hardwareId, originator, request);
 			} catch (SiteWhereException e) {
 				LOGGER.error("Processor failed to process registration request.", e);
@@ -108,6 +115,9 @@ public class DefaultInboundEventProcessorChain extends LifecycleComponent implem
 			IDeviceCommandResponseCreateRequest request) throws SiteWhereException {
 		for (IInboundEventProcessor processor : getProcessors()) {
 			try {
+				if (isFiltered(processor, hardwareId, originator, request)) {
+					break;
+				}
 				processor.onDeviceCommandResponseRequest(hardwareId, originator, request);
 			} catch (SiteWhereException e) {
 				LOGGER.error("Processor failed to process command response request.", e);
@@ -127,6 +137,9 @@ public class DefaultInboundEventProcessorChain extends LifecycleComponent implem
 			IDeviceMeasurementsCreateRequest request) throws SiteWhereException {
 		for (IInboundEventProcessor processor : getProcessors()) {
 			try {
+				if (isFiltered(processor, hardwareId, originator, request)) {
+					break;
+				}
 				processor.onDeviceMeasurementsCreateRequest(hardwareId, originator, request);
 			} catch (SiteWhereException e) {
 				LOGGER.error("Processor failed to process measurements create request.", e);
@@ -146,6 +159,9 @@ public class DefaultInboundEventProcessorChain extends LifecycleComponent implem
 			IDeviceLocationCreateRequest request) throws SiteWhereException {
 		for (IInboundEventProcessor processor : getProcessors()) {
 			try {
+				if (isFiltered(processor, hardwareId, originator, request)) {
+					break;
+				}
 				processor.onDeviceLocationCreateRequest(hardwareId, originator, request);
 			} catch (SiteWhereException e) {
 				LOGGER.error("Processor failed to process location create request.", e);
@@ -165,6 +181,9 @@ public class DefaultInboundEventProcessorChain extends LifecycleComponent implem
 			IDeviceAlertCreateRequest request) throws SiteWhereException {
 		for (IInboundEventProcessor processor : getProcessors()) {
 			try {
+				if (isFiltered(processor, hardwareId, originator, request)) {
+					break;
+				}
 				processor.onDeviceAlertCreateRequest(hardwareId, originator, request);
 			} catch (SiteWhereException e) {
 				LOGGER.error("Processor failed to process alert create request.", e);
@@ -172,6 +191,24 @@ public class DefaultInboundEventProcessorChain extends LifecycleComponent implem
 		}
 	}
 
+	/**
+	 * Indicates whether the processor is a filter that drops the request.
+	 * 
+	 * @param processor
+	 * @param hardwareId
+	 * @param originator
+	 * @param request
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected boolean isFiltered(IInboundEventProcessor processor, String hardwareId, String originator,
+			IDeviceEventCreateRequest request) throws SiteWhereException {
+		if (processor instanceof IInboundEventFilter) {
+			return ((IInboundEventFilter) processor).isFiltered(hardwareId, originator, request);
+		}
+		return false;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
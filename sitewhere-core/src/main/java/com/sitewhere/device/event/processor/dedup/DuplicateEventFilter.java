@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.event.processor.dedup;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.sitewhere.SiteWhere;
+import com.sitewhere.device.event.processor.InboundEventProcessor;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.processor.IInboundEventFilter;
+import com.sitewhere.spi.device.event.request.IDeviceAlertCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceCommandResponseCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceEventCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceLocationCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceMeasurementsCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceRegistrationRequest;
+
+/**
+ * Implementation of {@link IInboundEventFilter} that drops events already seen within a
+ * time window, so device retransmits and MQTT redeliveries are not stored twice. Place
+ * it before the event storage processor in the inbound processing chain.
+ * 
+ * Events are identified by the hardware id and the idempotency key supplied by the
+ * device. If no key was supplied, the event type, event date and payload are used
+ * instead. Events with neither a key nor an event date can not be told apart from new
+ * readings with the same values, so they are always passed through. Registration
+ * requests are also passed through since registration is already idempotent.
+ * 
+ * Seen events are tracked with a {@link RotatingBloomFilter}, so memory use is fixed and
+ * a small fraction of new events may be dropped as false positives.
+ * 
+ * @author Derek
+ */
+public class DuplicateEventFilter extends InboundEventProcessor implements IInboundEventFilter {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(DuplicateEventFilter.class);
+
+	/** Default number of seconds duplicates are remembered */
+	private static final int DEFAULT_WINDOW_SECONDS = 300;
+
+	/** Default number of events expected within a window */
+	private static final long DEFAULT_EXPECTED_EVENTS_PER_WINDOW = 1000000;
+
+	/** Default rate at which new events are mistaken for duplicates */
+	private static final double DEFAULT_FALSE_POSITIVE_RATE = 0.001;
+
+	/** Number of seconds duplicates are remembered */
+	private int windowSeconds = DEFAULT_WINDOW_SECONDS;
+
+	/** Number of events expected within a window */
+	private long expectedEventsPerWindow = DEFAULT_EXPECTED_EVENTS_PER_WINDOW;
+
+	/** Rate at which new events are mistaken for duplicates */
+	private double falsePositiveRate = DEFAULT_FALSE_POSITIVE_RATE;
+
+	/** Tracks keys of events already seen */
+	private RotatingBloomFilter seen;
+
+	/** Rate of events checked for duplicates */
+	private Meter checked = new Meter();
+
+	/** Rate of duplicate events dropped */
+	private Meter suppressed = new Meter();
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#start()
+	 */
+	@Override
+	public void start() throws SiteWhereException {
+		try {
+			seen = new RotatingBloomFilter(getExpectedEventsPerWindow(), getFalsePositiveRate(),
+					getWindowSeconds() * 1000L);
+		} catch (IllegalArgumentException e) {
+			throw new SiteWhereException("Invalid duplicate event filter configuration.", e);
+		}
+		MetricRegistry registry = SiteWhere.getServer().getMetricRegistry();
+		if (registry != null) {
+			registry.remove(MetricRegistry.name(DuplicateEventFilter.class, "checked"));
+			registry.register(MetricRegistry.name(DuplicateEventFilter.class, "checked"), checked);
+			registry.remove(MetricRegistry.name(DuplicateEventFilter.class, "suppressed"));
+			registry.register(MetricRegistry.name(DuplicateEventFilter.class, "suppressed"), suppressed);
+		}
+		LOGGER.info("Duplicate event filter using " + (seen.getNumBits() / 8 / 1024) + " KB per "
+				+ getWindowSeconds() + " second window with " + seen.getNumHashes() + " hashes.");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#getLogger()
+	 */
+	@Override
+	public Logger getLogger() {
+		return LOGGER;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#stop()
+	 */
+	@Override
+	public void stop() throws SiteWhereException {
+		seen = null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.event.processor.IInboundEventFilter#isFiltered(java.lang
+	 * .String, java.lang.String,
+	 * com.sitewhere.spi.device.event.request.IDeviceEventCreateRequest)
+	 */
+	@Override
+	public boolean isFiltered(String hardwareId, String originator, IDeviceEventCreateRequest request)
+			throws SiteWhereException {
+		RotatingBloomFilter current = seen;
+		if (current == null) {
+			return false;
+		}
+		String key = getDeduplicationKey(hardwareId, request);
+		if (key == null) {
+			return false;
+		}
+		checked.mark();
+		if (current.checkAndPut(key)) {
+			suppressed.mark();
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Dropped duplicate event for " + hardwareId + ".");
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Build the key that identifies an event.
+	 * 
+	 * @param hardwareId
+	 * @param request
+	 * @return the key or null if duplicates of the event can not be detected
+	 */
+	protected String getDeduplicationKey(String hardwareId, IDeviceEventCreateRequest request) {
+		if (request instanceof IDeviceRegistrationRequest) {
+			return null;
+		}
+		StringBuilder key = new StringBuilder();
+		key.append(hardwareId).append('|');
+		if (request.getIdempotencyKey() != null) {
+			return key.append(request.getIdempotencyKey()).toString();
+		}
+		if (request.getEventDate() == null) {
+			return null;
+		}
+		if (request instanceof IDeviceMeasurementsCreateRequest) {
+			key.append("mx|").append(request.getEventDate().getTime());
+			appendSorted(key, ((IDeviceMeasurementsCreateRequest) request).getMeasurements());
+		} else if (request instanceof IDeviceLocationCreateRequest) {
+			IDeviceLocationCreateRequest location = (IDeviceLocationCreateRequest) request;
+			key.append("loc|").append(request.getEventDate().getTime());
+			key.append('|').append(location.getLatitude()).append('|').append(location.getLongitude());
+			key.append('|').append(location.getElevation());
+		} else if (request instanceof IDeviceAlertCreateRequest) {
+			IDeviceAlertCreateRequest alert = (IDeviceAlertCreateRequest) request;
+			key.append("alert|").append(request.getEventDate().getTime());
+			key.append('|').append(alert.getType()).append('|').append(alert.getLevel());
+			key.append('|').append(alert.getMessage());
+		} else if (request instanceof IDeviceCommandResponseCreateRequest) {
+			IDeviceCommandResponseCreateRequest response = (IDeviceCommandResponseCreateRequest) request;
+			key.append("resp|").append(request.getEventDate().getTime());
+			key.append('|').append(response.getOriginatingEventId()).append('|').append(
+					response.getResponseEventId());
+			key.append('|').append(response.getResponse());
+		} else {
+			return null;
+		}
+		appendSorted(key, request.getMetadata());
+		return key.toString();
+	}
+
+	/**
+	 * Append map entries in key order so equal maps always produce the same key.
+	 * 
+	 * @param key
+	 * @param values
+	 */
+	protected void appendSorted(StringBuilder key, Map<String, ?> values) {
+		if ((values == null) || values.isEmpty()) {
+			return;
+		}
+		for (Map.Entry<String, ?> entry : new TreeMap<String, Object>(values).entrySet()) {
+			key.append('|').append(entry.getKey()).append('=').append(entry.getValue());
+		}
+	}
+
+	/**
+	 * Get the number of events checked for duplicates.
+	 * 
+	 * @return
+	 */
+	public long getCheckedCount() {
+		return checked.getCount();
+	}
+
+	/**
+	 * Get the number of duplicate events dropped.
+	 * 
+	 * @return
+	 */
+	public long getSuppressedCount() {
+		return suppressed.getCount();
+	}
+
+	public int getWindowSeconds() {
+		return windowSeconds;
+	}
+
+	public void setWindowSeconds(int windowSeconds) {
+		this.windowSeconds = windowSeconds;
+	}
+
+	public long getExpectedEventsPerWindow() {
+		return expectedEventsPerWindow;
+	}
+
+	public void setExpectedEventsPerWindow(long expectedEventsPerWindow) {
+		this.expectedEventsPerWindow = expectedEventsPerWindow;
+	}
+
+	public double getFalsePositiveRate() {
+		return falsePositiveRate;
+	}
+
+	public void setFalsePositiveRate(double falsePositiveRate) {
+		this.falsePositiveRate = falsePositiveRate;
+	}
+}
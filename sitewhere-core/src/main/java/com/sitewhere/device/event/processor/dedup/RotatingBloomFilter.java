@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.event.processor.dedup;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter that remembers keys for a limited time. Keys are added to the current
+ * generation and checked against both the current and previous generations. When the
+ * rotation interval passes, or the current generation holds as many keys as it was sized
+ * for, the previous generation is discarded and the current one takes its place. A key
+ * is therefore remembered for at least one rotation interval and at most two.
+ * 
+ * Each generation is sized for half the requested false positive rate, so a check
+ * against both stays within the requested rate. Bits are set with compare-and-swap, so
+ * the filter can be shared by many threads without locking.
+ * 
+ * @author Derek
+ */
+public class RotatingBloomFilter {
+
+	/** Seed for first hash */
+	private static final long SEED1 = 0xcbf29ce484222325L;
+
+	/** Seed for second hash */
+	private static final long SEED2 = 0x84222325cbf29ce4L;
+
+	/** FNV-1a prime */
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/** Number of keys each generation is sized for */
+	private long expectedInsertions;
+
+	/** Time between rotations in milliseconds */
+	private long rotationIntervalMs;
+
+	/** Number of bits in each generation */
+	private long numBits;
+
+	/** Number of bits set for each key */
+	private int numHashes;
+
+	/** Generation that receives new keys */
+	private volatile Generation current;
+
+	/** Generation from the previous interval */
+	private volatile Generation previous;
+
+	/** Time of last rotation */
+	private volatile long rotatedAt;
+
+	/** Number of rotations */
+	private AtomicLong rotationCount = new AtomicLong();
+
+	public RotatingBloomFilter(long expectedInsertions, double falsePositiveRate, long rotationIntervalMs) {
+		if ((expectedInsertions <= 0) || (falsePositiveRate <= 0) || (falsePositiveRate >= 1)) {
+			throw new IllegalArgumentException("Invalid Bloom filter sizing.");
+		}
+		this.expectedInsertions = expectedInsertions;
+		this.rotationIntervalMs = rotationIntervalMs;
+		double perGeneration = falsePositiveRate / 2;
+		this.numBits =
+				(long) Math.ceil(-expectedInsertions * Math.log(perGeneration) / (Math.log(2) * Math.log(2)));
+		this.numHashes = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+		this.current = new Generation();
+		this.rotatedAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * Add a key to the filter.
+	 * 
+	 * @param key
+	 * @return true if the key may have been added within the window, false if it is
+	 *         definitely new
+	 */
+	public boolean checkAndPut(String key) {
+		long h1 = hash(key, SEED1);
+		long h2 = hash(key, SEED2) | 1;
+		rotateIfNeeded();
+		Generation older = previous;
+		boolean added = current.put(h1, h2);
+		if (!added) {
+			return true;
+		}
+		return (older != null) && older.mightContain(h1, h2);
+	}
+
+	/**
+	 * Replace the previous generation if the interval has passed or the current
+	 * generation is full.
+	 */
+	protected void rotateIfNeeded() {
+		long now = System.currentTimeMillis();
+		if (((now - rotatedAt) < rotationIntervalMs) && (current.getCount() < expectedInsertions)) {
+			return;
+		}
+		synchronized (this) {
+			if (((now - rotatedAt) < rotationIntervalMs) && (current.getCount() < expectedInsertions)) {
+				return;
+			}
+			previous = current;
+			current = new Generation();
+			rotatedAt = now;
+			rotationCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Hash a key to 64 bits using FNV-1a followed by a finalizer that spreads the bits.
+	 * 
+	 * @param key
+	 * @param seed
+	 * @return
+	 */
+	protected static long hash(String key, long seed) {
+		long h = seed;
+		for (int i = 0; i < key.length(); i++) {
+			char c = key.charAt(i);
+			h = (h ^ (c & 0xff)) * FNV_PRIME;
+			h = (h ^ (c >>> 8)) * FNV_PRIME;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	public long getNumBits() {
+		return numBits;
+	}
+
+	public int getNumHashes() {
+		return numHashes;
+	}
+
+	public long getRotationCount() {
+		return rotationCount.get();
+	}
+
+	/**
+	 * Single bit array covering one rotation interval.
+	 * 
+	 * @author Derek
+	 */
+	private class Generation {
+
+		/** Bits packed into words */
+		private AtomicLongArray words = new AtomicLongArray((int) ((numBits + 63) / 64));
+
+		/** Number of keys added */
+		private AtomicLong count = new AtomicLong();
+
+		/**
+		 * Set the bits for a key.
+		 * 
+		 * @param h1
+		 * @param h2
+		 * @return true if any bit was not already set
+		 */
+		public boolean put(long h1, long h2) {
+			boolean changed = false;
+			long combined = h1;
+			for (int i = 0; i < numHashes; i++) {
+				long bit = (combined & Long.MAX_VALUE) % numBits;
+				changed |= setBit(bit);
+				combined += h2;
+			}
+			if (changed) {
+				count.incrementAndGet();
+			}
+			return changed;
+		}
+
+		/**
+		 * Indicates whether all bits for a key are set.
+		 * 
+		 * @param h1
+		 * @param h2
+		 * @return
+		 */
+		public boolean mightContain(long h1, long h2) {
+			long combined = h1;
+			for (int i = 0; i < numHashes; i++) {
+				long bit = (combined & Long.MAX_VALUE) % numBits;
+				if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+					return false;
+				}
+				combined += h2;
+			}
+			return true;
+		}
+
+		/**
+		 * Set a bit.
+		 * 
+		 * @param bit
+		 * @return true if the bit was not already set
+		 */
+		protected boolean setBit(long bit) {
+			int index = (int) (bit >>> 6);
+			long mask = 1L << bit;
+			while (true) {
+				long word = words.get(index);
+				if ((word & mask) != 0) {
+					return false;
+				}
+				if (words.compareAndSet(index, word, word | mask)) {
+					return true;
+				}
+			}
+		}
+
+		public long getCount() {
+			return count.get();
+		}
+	}
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.event.processor.ratelimit;
+
+/**
+ * Action taken for events over a rate limit.
+ * 
+ * @author Derek
+ */
+public enum RateLimitAction {
+
+	/** Drop events over the limit */
+	Drop,
+
+	/** Hold events until the limit allows them, dropping those that would wait too long */
+	Delay,
+
+	/** Keep one of every few events over the limit and drop the rest */
+	Downsample;
+}
@@ -0,0 +1,509 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.event.processor.ratelimit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.sitewhere.SiteWhere;
+import com.sitewhere.device.event.processor.InboundEventProcessor;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDevice;
+import com.sitewhere.spi.device.event.processor.IInboundEventFilter;
+import com.sitewhere.spi.device.event.request.IDeviceEventCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceRegistrationRequest;
+
+/**
+ * Implementation of {@link IInboundEventFilter} that limits the rate of events accepted
+ * from each device and from all devices in each site, so a single misbehaving device can
+ * not use up the inbound processing threads and datastore capacity needed by others.
+ * Place it before the event storage processor in the inbound processing chain.
+ * 
+ * Each device and site has a {@link TokenBucket} that allows short bursts above the
+ * configured rate. Events over the limit are handled according to the configured
+ * {@link RateLimitAction}. Registration requests are never limited. The site limit is
+ * checked first, and a site token is given back if the device limit then rejects the
+ * event, so an event only uses up capacity when it is accepted by both limits.
+ * 
+ * The {@link RateLimitAction#Delay} action sleeps on the inbound processing thread that
+ * is running the filter, so each delayed event holds a worker for up to the maximum
+ * delay. Under sustained overload that reduces throughput for all devices, not only the
+ * throttled ones, so keep the maximum delay short or use another action if devices are
+ * expected to exceed their limits for long periods.
+ * 
+ * Buckets are created when a device or site first sends an event and are removed once
+ * unused for the idle timeout, which also resets the throttled count for the device.
+ * 
+ * @author Derek
+ */
+public class RateLimitFilter extends InboundEventProcessor implements IInboundEventFilter {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(RateLimitFilter.class);
+
+	/** Nanoseconds per second */
+	private static final long NANOS_PER_SECOND = 1000000000L;
+
+	/** Seconds between removal of idle buckets */
+	private static final int CLEANUP_INTERVAL = 60;
+
+	/** Seconds before a device that was not found is looked up again */
+	private static final int UNKNOWN_DEVICE_LOOKUP_INTERVAL = 60;
+
+	/** Events allowed per second for each device (0 for no limit) */
+	private double deviceEventsPerSecond = 0;
+
+	/** Events a device may send at once above its rate */
+	private int deviceBurst = 10;
+
+	/** Events allowed per second for each site (0 for no limit) */
+	private double siteEventsPerSecond = 0;
+
+	/** Events a site may receive at once above its rate */
+	private int siteBurst = 100;
+
+	/** Action for events over the limit */
+	private RateLimitAction action = RateLimitAction.Drop;
+
+	/** Longest time (ms) an event is delayed before being dropped */
+	private long maxDelay = 1000;
+
+	/** With downsampling, one of this many events over the limit is kept */
+	private int downsampleRatio = 10;
+
+	/** Seconds a bucket may go unused before it is removed */
+	private int idleTimeout = 600;
+
+	/** Buckets by hardware id */
+	private ConcurrentMap<String, TokenBucket> deviceBuckets = new ConcurrentHashMap<String, TokenBucket>();
+
+	/** Buckets by site token */
+	private ConcurrentMap<String, TokenBucket> siteBuckets = new ConcurrentHashMap<String, TokenBucket>();
+
+	/** Origin for bucket times */
+	private long origin = System.nanoTime();
+
+	/** Removes idle buckets */
+	private ScheduledExecutorService cleaner;
+
+	/** Rate of events checked against limits */
+	private Meter checked = new Meter();
+
+	/** Rate of events over a limit */
+	private Meter throttled = new Meter();
+
+	/** Rate of events held back to stay within a limit */
+	private Meter delayed = new Meter();
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#start()
+	 */
+	@Override
+	public void start() throws SiteWhereException {
+		if ((getDeviceEventsPerSecond() < 0) || (getSiteEventsPerSecond() < 0) || (getDeviceBurst() < 1)
+				|| (getSiteBurst() < 1) || (getDownsampleRatio() < 1)) {
+			throw new SiteWhereException("Invalid rate limit filter configuration.");
+		}
+		deviceBuckets.clear();
+		siteBuckets.clear();
+		MetricRegistry registry = SiteWhere.getServer().getMetricRegistry();
+		if (registry != null) {
+			registry.remove(MetricRegistry.name(RateLimitFilter.class, "checked"));
+			registry.register(MetricRegistry.name(RateLimitFilter.class, "checked"), checked);
+			registry.remove(MetricRegistry.name(RateLimitFilter.class, "throttled"));
+			registry.register(MetricRegistry.name(RateLimitFilter.class, "throttled"), throttled);
+			registry.remove(MetricRegistry.name(RateLimitFilter.class, "delayed"));
+			registry.register(MetricRegistry.name(RateLimitFilter.class, "delayed"), delayed);
+			registry.remove(MetricRegistry.name(RateLimitFilter.class, "trackedDevices"));
+			registry.register(MetricRegistry.name(RateLimitFilter.class, "trackedDevices"),
+					new Gauge<Integer>() {
+
+						@Override
+						public Integer getValue() {
+							return deviceBuckets.size();
+						}
+					});
+		}
+		cleaner = Executors.newSingleThreadScheduledExecutor(new CleanerThreadFactory());
+		cleaner.scheduleWithFixedDelay(new Cleaner(), CLEANUP_INTERVAL, CLEANUP_INTERVAL, TimeUnit.SECONDS);
+		LOGGER.info("Rate limit filter started (device: "
+				+ describe(getDeviceEventsPerSecond(), getDeviceBurst()) + ", site: "
+				+ describe(getSiteEventsPerSecond(), getSiteBurst()) + ", action: " + getAction().name()
+				+ ").");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#getLogger()
+	 */
+	@Override
+	public Logger getLogger() {
+		return LOGGER;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#stop()
+	 */
+	@Override
+	public void stop() throws SiteWhereException {
+		if (cleaner != null) {
+			cleaner.shutdownNow();
+			cleaner = null;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.event.processor.IInboundEventFilter#isFiltered(java.lang
+	 * .String, java.lang.String,
+	 * com.sitewhere.spi.device.event.request.IDeviceEventCreateRequest)
+	 */
+	@Override
+	public boolean isFiltered(String hardwareId, String originator, IDeviceEventCreateRequest request)
+			throws SiteWhereException {
+		if ((request instanceof IDeviceRegistrationRequest)
+				|| ((getDeviceEventsPerSecond() == 0) && (getSiteEventsPerSecond() == 0))) {
+			return false;
+		}
+		checked.mark();
+		long now = System.nanoTime() - origin;
+		TokenBucket device = getBucket(deviceBuckets, hardwareId);
+		device.touch(now);
+
+		// Check the site first so a rejected event does not use up a device token.
+		TokenBucket site = null;
+		long siteWait = 0;
+		if (getSiteEventsPerSecond() > 0) {
+			String siteToken = getSiteToken(hardwareId, device, now);
+			if (siteToken != null) {
+				site = getBucket(siteBuckets, siteToken);
+				siteWait = take(site, now, getSiteEventsPerSecond(), getSiteBurst());
+				if (siteWait < 0) {
+					return isDropped(device);
+				}
+			}
+		}
+		long deviceWait = 0;
+		if (getDeviceEventsPerSecond() > 0) {
+			deviceWait = take(device, now, getDeviceEventsPerSecond(), getDeviceBurst());
+			if (deviceWait < 0) {
+				// Give back the site token so one device can not use up the site limit.
+				if (site != null) {
+					site.release(getInterval(getSiteEventsPerSecond()));
+				}
+				return isDropped(device);
+			}
+		}
+		long wait = Math.max(siteWait, deviceWait);
+		if (wait > 0) {
+			delayed.mark();
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Take a token from a bucket. Only the {@link RateLimitAction#Delay} action waits for
+	 * a token.
+	 * 
+	 * @param bucket
+	 * @param now
+	 * @param eventsPerSecond
+	 * @param burstSize
+	 * @return time to wait before processing the event, or -1 if over the limit
+	 */
+	protected long take(TokenBucket bucket, long now, double eventsPerSecond, int burstSize) {
+		long interval = getInterval(eventsPerSecond);
+		long maxWait =
+				(getAction() == RateLimitAction.Delay) ? TimeUnit.MILLISECONDS.toNanos(getMaxDelay()) : 0;
+		return bucket.acquire(now, interval, interval * burstSize, maxWait);
+	}
+
+	/**
+	 * Record an event over a limit and decide whether it is dropped.
+	 * 
+	 * @param device bucket for the device that sent the event
+	 * @return true if the event should be dropped
+	 */
+	protected boolean isDropped(TokenBucket device) {
+		throttled.mark();
+		long count = device.markThrottled();
+		if (getAction() == RateLimitAction.Downsample) {
+			return (count % getDownsampleRatio()) != 0;
+		}
+		return true;
+	}
+
+	/**
+	 * Get the time needed to add one token at the given rate.
+	 * 
+	 * @param eventsPerSecond
+	 * @return
+	 */
+	protected long getInterval(double eventsPerSecond) {
+		return Math.max(1, (long) (NANOS_PER_SECOND / eventsPerSecond));
+	}
+
+	/**
+	 * Get the bucket for a key, creating it if necessary.
+	 * 
+	 * @param buckets
+	 * @param key
+	 * @return
+	 */
+	protected TokenBucket getBucket(ConcurrentMap<String, TokenBucket> buckets, String key) {
+		TokenBucket bucket = buckets.get(key);
+		if (bucket == null) {
+			TokenBucket created = new TokenBucket();
+			bucket = buckets.putIfAbsent(key, created);
+			if (bucket == null) {
+				bucket = created;
+			}
+		}
+		return bucket;
+	}
+
+	/**
+	 * Get the site for a device, looking it up the first time the device is seen. Devices
+	 * that are not found are only looked up again after an interval, so events from
+	 * unknown hardware ids do not each cost a datastore lookup.
+	 * 
+	 * @param hardwareId
+	 * @param device
+	 * @param now
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected String getSiteToken(String hardwareId, TokenBucket device, long now) throws SiteWhereException {
+		String siteToken = device.getSiteToken();
+		if ((siteToken == null) && (device.isSiteLookupDue(now))) {
+			IDevice match = SiteWhere.getServer().getDeviceManagement().getDeviceByHardwareId(hardwareId);
+			if (match != null) {
+				siteToken = match.getSiteToken();
+				device.setSiteToken(siteToken);
+			} else {
+				device.setNextSiteLookup(now + TimeUnit.SECONDS.toNanos(UNKNOWN_DEVICE_LOOKUP_INTERVAL));
+			}
+		}
+		return siteToken;
+	}
+
+	/**
+	 * Get the number of events from a device that were over the limit.
+	 * 
+	 * @param hardwareId
+	 * @return
+	 */
+	public long getThrottledCount(String hardwareId) {
+		TokenBucket bucket = deviceBuckets.get(hardwareId);
+		return (bucket != null) ? bucket.getThrottledCount() : 0;
+	}
+
+	/**
+	 * Get the devices with the most events over the limit, most throttled first.
+	 * 
+	 * @param max
+	 * @return map of hardware id to throttled count
+	 */
+	public Map<String, Long> getMostThrottled(int max) {
+		List<Map.Entry<String, TokenBucket>> entries = new ArrayList<Map.Entry<String, TokenBucket>>();
+		for (Map.Entry<String, TokenBucket> entry : deviceBuckets.entrySet()) {
+			if (entry.getValue().getThrottledCount() > 0) {
+				entries.add(entry);
+			}
+		}
+		Collections.sort(entries, new Comparator<Map.Entry<String, TokenBucket>>() {
+
+			@Override
+			public int compare(Map.Entry<String, TokenBucket> a, Map.Entry<String, TokenBucket> b) {
+				long countA = a.getValue().getThrottledCount();
+				long countB = b.getValue().getThrottledCount();
+				return (countA == countB) ? 0 : ((countA > countB) ? -1 : 1);
+			}
+		});
+		Map<String, Long> result = new LinkedHashMap<String, Long>();
+		for (Map.Entry<String, TokenBucket> entry : entries) {
+			if (result.size() >= max) {
+				break;
+			}
+			result.put(entry.getKey(), entry.getValue().getThrottledCount());
+		}
+		return result;
+	}
+
+	/**
+	 * Get the total number of events that were over a limit.
+	 * 
+	 * @return
+	 */
+	public long getTotalThrottledCount() {
+		return throttled.getCount();
+	}
+
+	/**
+	 * Remove buckets that have not been used within the idle timeout.
+	 */
+	protected void removeIdleBuckets() {
+		long cutoff = (System.nanoTime() - origin) - TimeUnit.SECONDS.toNanos(getIdleTimeout());
+		int removed = removeIdleBuckets(deviceBuckets, cutoff) + removeIdleBuckets(siteBuckets, cutoff);
+		if (removed > 0) {
+			LOGGER.debug("Removed " + removed + " idle rate limit buckets.");
+		}
+	}
+
+	/**
+	 * Remove buckets not used since the cutoff time.
+	 * 
+	 * @param buckets
+	 * @param cutoff
+	 * @return number of buckets removed
+	 */
+	protected int removeIdleBuckets(ConcurrentMap<String, TokenBucket> buckets, long cutoff) {
+		int removed = 0;
+		Iterator<TokenBucket> it = buckets.values().iterator();
+		while (it.hasNext()) {
+			if (it.next().isIdleSince(cutoff)) {
+				it.remove();
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Describe a limit for logging.
+	 * 
+	 * @param eventsPerSecond
+	 * @param burst
+	 * @return
+	 */
+	protected String describe(double eventsPerSecond, int burst) {
+		if (eventsPerSecond == 0) {
+			return "unlimited";
+		}
+		return eventsPerSecond + "/sec, burst " + burst;
+	}
+
+	/**
+	 * Removes idle buckets, logging errors so later runs are still scheduled.
+	 * 
+	 * @author Derek
+	 */
+	private class Cleaner implements Runnable {
+
+		@Override
+		public void run() {
+			try {
+				removeIdleBuckets();
+			} catch (Throwable e) {
+				LOGGER.error("Unable to remove idle rate limit buckets.", e);
+			}
+		}
+	}
+
+	/** Used for naming bucket cleanup thread */
+	private class CleanerThreadFactory implements ThreadFactory {
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "SiteWhere Rate Limit Cleanup");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	public double getDeviceEventsPerSecond() {
+		return deviceEventsPerSecond;
+	}
+
+	public void setDeviceEventsPerSecond(double deviceEventsPerSecond) {
+		this.deviceEventsPerSecond = deviceEventsPerSecond;
+	}
+
+	public int getDeviceBurst() {
+		return deviceBurst;
+	}
+
+	public void setDeviceBurst(int deviceBurst) {
+		this.deviceBurst = deviceBurst;
+	}
+
+	public double getSiteEventsPerSecond() {
+		return siteEventsPerSecond;
+	}
+
+	public void setSiteEventsPerSecond(double siteEventsPerSecond) {
+		this.siteEventsPerSecond = siteEventsPerSecond;
+	}
+
+	public int getSiteBurst() {
+		return siteBurst;
+	}
+
+	public void setSiteBurst(int siteBurst) {
+		this.siteBurst = siteBurst;
+	}
+
+	public RateLimitAction getAction() {
+		return action;
+	}
+
+	public void setAction(RateLimitAction action) {
+		this.action = action;
+	}
+
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+
+	public void setMaxDelay(long maxDelay) {
+		this.maxDelay = maxDelay;
+	}
+
+	public int getDownsampleRatio() {
+		return downsampleRatio;
+	}
+
+	public void setDownsampleRatio(int downsampleRatio) {
+		this.downsampleRatio = downsampleRatio;
+	}
+
+	public int getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	public void setIdleTimeout(int idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+}
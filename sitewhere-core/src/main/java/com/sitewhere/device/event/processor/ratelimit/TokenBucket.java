@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.event.processor.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Token bucket for a single device or site. Rather than counting tokens, the bucket
+ * stores the time at which it will next be full (the generic cell rate algorithm). Taking
+ * a token moves that time forward by one interval, and a request is over the limit if it
+ * would move the time further than the burst allowance past now. State is a single long
+ * updated with compare-and-swap, so buckets are small and never lock.
+ * 
+ * Times are in nanoseconds relative to a fixed origin chosen by the caller.
+ * 
+ * @author Derek
+ */
+public class TokenBucket {
+
+	/** Updates time bucket is next full */
+	private static final AtomicLongFieldUpdater<TokenBucket> FULL_AT = AtomicLongFieldUpdater.newUpdater(
+			TokenBucket.class, "fullAt");
+
+	/** Updates count of throttled events */
+	private static final AtomicLongFieldUpdater<TokenBucket> THROTTLED =
+			AtomicLongFieldUpdater.newUpdater(TokenBucket.class, "throttled");
+
+	/** Time at which the bucket will hold its full burst again */
+	private volatile long fullAt;
+
+	/** Number of events that were over the limit */
+	private volatile long throttled;
+
+	/** Time the bucket was last used */
+	private volatile long lastUsed;
+
+	/** Site token for a device bucket (null if not known) */
+	private volatile String siteToken;
+
+	/** Time after which the site for an unknown device is looked up again */
+	private volatile long nextSiteLookup = Long.MIN_VALUE;
+
+	/**
+	 * Take a token, waiting up to the given time for one to become available.
+	 * 
+	 * @param now current time
+	 * @param interval time to add one token
+	 * @param burst time to fill the bucket (interval times burst size)
+	 * @param maxWait longest acceptable wait (0 to never wait)
+	 * @return time caller must wait before using the token, or -1 if no token is
+	 *         available within the maximum wait
+	 */
+	public long acquire(long now, long interval, long burst, long maxWait) {
+		lastUsed = now;
+		while (true) {
+			long current = fullAt;
+			long next = Math.max(current, now) + interval;
+			long wait = next - now - burst;
+			if (wait > maxWait) {
+				return -1;
+			}
+			if (FULL_AT.compareAndSet(this, current, next)) {
+				return Math.max(0, wait);
+			}
+		}
+	}
+
+	/**
+	 * Give back a token that was taken for an event that was then rejected by another
+	 * limit.
+	 * 
+	 * @param interval time to add one token
+	 */
+	public void release(long interval) {
+		FULL_AT.addAndGet(this, -interval);
+	}
+
+	/**
+	 * Record an event that was over the limit.
+	 * 
+	 * @return number of events over the limit including this one
+	 */
+	public long markThrottled() {
+		return THROTTLED.incrementAndGet(this);
+	}
+
+	/**
+	 * Record that the bucket was used without taking a token.
+	 * 
+	 * @param now
+	 */
+	public void touch(long now) {
+		lastUsed = now;
+	}
+
+	/**
+	 * Indicates whether the bucket has not been used since the given time.
+	 * 
+	 * @param time
+	 * @return
+	 */
+	public boolean isIdleSince(long time) {
+		return lastUsed < time;
+	}
+
+	/**
+	 * Indicates whether the site for the device should be looked up.
+	 * 
+	 * @param now
+	 * @return
+	 */
+	public boolean isSiteLookupDue(long now) {
+		return now >= nextSiteLookup;
+	}
+
+	public void setNextSiteLookup(long nextSiteLookup) {
+		this.nextSiteLookup = nextSiteLookup;
+	}
+
+	public long getThrottledCount() {
+		return throttled;
+	}
+
+	public String getSiteToken() {
+		return siteToken;
+	}
+
+	public void setSiteToken(String siteToken) {
+		this.siteToken = siteToken;
+	}
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.event.retention;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.InitializingBean;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.sitewhere.SiteWhere;
+import com.sitewhere.device.DeviceManagementDecorator;
+import com.sitewhere.server.lifecycle.LifecycleComponent;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDeviceManagement;
+import com.sitewhere.spi.device.IPurgeableDeviceManagement;
+import com.sitewhere.spi.device.event.DeviceEventType;
+import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
+
+/**
+ * Periodically purges device events that are older than allowed by the configured
+ * {@link EventRetentionPolicy} list. Purging is delegated to the device management
+ * implementation, which must implement {@link IPurgeableDeviceManagement}. Events are
+ * deleted in batches so a large backlog does not hold locks or memory for long, and
+ * measurements may be summarized by a {@link MeasurementRollupHandler} before they are
+ * deleted.
+ * 
+ * Progress is reported through meters for purged events and stored rollups, a timer
+ * for each batch and gauges for the last run.
+ * 
+ * @author Derek
+ */
+public class EventRetentionManager extends LifecycleComponent implements InitializingBean {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(EventRetentionManager.class);
+
+	/** Number of milliseconds in a day */
+	private static final long MS_PER_DAY = 24L * 60 * 60 * 1000;
+
+	/** Default minutes between retention checks */
+	private static final int DEFAULT_CHECK_INTERVAL = 60;
+
+	/** Default minutes to wait after startup before first check */
+	private static final int DEFAULT_INITIAL_DELAY = 5;
+
+	/** Default maximum number of events deleted in a batch */
+	private static final int DEFAULT_BATCH_SIZE = 1000;
+
+	/** Policies to enforce */
+	private List<EventRetentionPolicy> policies = new ArrayList<EventRetentionPolicy>();
+
+	/** Minutes between retention checks */
+	private int checkInterval = DEFAULT_CHECK_INTERVAL;
+
+	/** Minutes to wait after startup before first check */
+	private int initialDelay = DEFAULT_INITIAL_DELAY;
+
+	/** Maximum number of events deleted in a batch */
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	/** Runs retention checks */
+	private ScheduledExecutorService executor;
+
+	/** Rate of purged events */
+	private Meter purged = new Meter();
+
+	/** Rate of stored rollups */
+	private Meter rolledUp = new Meter();
+
+	/** Time taken by each purge batch */
+	private Timer batches = new Timer();
+
+	/** Number of events purged by last run */
+	private volatile long lastRunPurged;
+
+	/** Duration of last run in milliseconds */
+	private volatile long lastRunDuration;
+
+	public EventRetentionManager() {
+		super(LifecycleComponentType.EventRetentionManager);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
+	 */
+	public void afterPropertiesSet() throws Exception {
+		SiteWhere.getServer().getRegisteredLifecycleComponents().add(this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#start()
+	 */
+	@Override
+	public void start() throws SiteWhereException {
+		for (EventRetentionPolicy policy : getPolicies()) {
+			if (policy.getRetentionDays() <= 0) {
+				throw new SiteWhereException("Retention policy must keep events at least one day: " + policy);
+			}
+			if ((policy.getRollupInterval() > 0) && (policy.isIncludeRollups())) {
+				throw new SiteWhereException("Retention policy can not both store and purge rollups: "
+						+ policy);
+			}
+			if ((policy.getRollupInterval() > 0) && (policy.getEventType() != DeviceEventType.Measurements)) {
+				throw new SiteWhereException("Rollups are only supported for measurements: " + policy);
+			}
+		}
+		MetricRegistry registry = SiteWhere.getServer().getMetricRegistry();
+		if (registry != null) {
+			registry.remove(MetricRegistry.name(EventRetentionManager.class, "purged"));
+			registry.register(MetricRegistry.name(EventRetentionManager.class, "purged"), purged);
+			registry.remove(MetricRegistry.name(EventRetentionManager.class, "rolledUp"));
+			registry.register(MetricRegistry.name(EventRetentionManager.class, "rolledUp"), rolledUp);
+			registry.remove(MetricRegistry.name(EventRetentionManager.class, "batches"));
+			registry.register(MetricRegistry.name(EventRetentionManager.class, "batches"), batches);
+			registry.remove(MetricRegistry.name(EventRetentionManager.class, "lastRunPurged"));
+			registry.register(MetricRegistry.name(EventRetentionManager.class, "lastRunPurged"),
+					new Gauge<Long>() {
+
+						@Override
+						public Long getValue() {
+							return lastRunPurged;
+						}
+					});
+			registry.remove(MetricRegistry.name(EventRetentionManager.class, "lastRunDuration"));
+			registry.register(MetricRegistry.name(EventRetentionManager.class, "lastRunDuration"),
+					new Gauge<Long>() {
+
+						@Override
+						public Long getValue() {
+							return lastRunDuration;
+						}
+					});
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(new RetentionThreadFactory());
+		executor.scheduleWithFixedDelay(new RetentionChecker(), getInitialDelay(), getCheckInterval(),
+				TimeUnit.MINUTES);
+		LOGGER.info("Event retention manager enforcing " + getPolicies().size() + " policies every "
+				+ getCheckInterval() + " minutes.");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#getLogger()
+	 */
+	@Override
+	public Logger getLogger() {
+		return LOGGER;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#stop()
+	 */
+	@Override
+	public void stop() throws SiteWhereException {
+		if (executor != null) {
+			executor.shutdownNow();
+			try {
+				executor.awaitTermination(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			executor = null;
+		}
+	}
+
+	/**
+	 * Enforce all policies once.
+	 * 
+	 * @throws SiteWhereException
+	 */
+	public void enforcePolicies() throws SiteWhereException {
+		IDeviceManagement management = getPurgeableDeviceManagement();
+		if (management == null) {
+			LOGGER.warn("Device management implementation does not support purging events. "
+					+ "Retention policies will not be enforced.");
+			return;
+		}
+		long start = System.currentTimeMillis();
+		long total = 0;
+		for (EventRetentionPolicy policy : getPolicies()) {
+			if (Thread.currentThread().isInterrupted()) {
+				break;
+			}
+			total += enforcePolicy(management, policy);
+		}
+		lastRunPurged = total;
+		lastRunDuration = System.currentTimeMillis() - start;
+		LOGGER.info("Event retention check purged " + total + " events in " + lastRunDuration + " ms.");
+	}
+
+	/**
+	 * Purge events for a single policy in batches until none remain.
+	 * 
+	 * @param management
+	 * @param policy
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected long enforcePolicy(IDeviceManagement management, EventRetentionPolicy policy)
+			throws SiteWhereException {
+		IPurgeableDeviceManagement purgeable = (IPurgeableDeviceManagement) management;
+		Date before = new Date(System.currentTimeMillis() - (policy.getRetentionDays() * MS_PER_DAY));
+		MeasurementRollupHandler rollups = null;
+		if (policy.getRollupInterval() > 0) {
+			rollups = new MeasurementRollupHandler(management, policy.getRollupInterval());
+		}
+		long total = 0;
+		while (!Thread.currentThread().isInterrupted()) {
+			long rollupsBefore = (rollups != null) ? rollups.getRollupCount() : 0;
+			Timer.Context timer = batches.time();
+			int count;
+			try {
+				count =
+						purgeable.purgeDeviceEvents(policy.getSiteToken(), policy.getEventType(), before,
+								policy.isIncludeRollups(), getBatchSize(), rollups);
+			} finally {
+				timer.stop();
+			}
+			if (rollups != null) {
+				rolledUp.mark(rollups.getRollupCount() - rollupsBefore);
+			}
+			if (count == 0) {
+				break;
+			}
+			purged.mark(count);
+			total += count;
+			LOGGER.debug("Purged " + total + " events so far for policy (" + policy + ").");
+		}
+		if (total > 0) {
+			LOGGER.info("Purged " + total + " events before " + before + " for policy (" + policy + ").");
+		}
+		return total;
+	}
+
+	/**
+	 * Get the device management implementation that supports purging, unwrapping any
+	 * decorators. Rollups are written directly to the implementation so that they are
+	 * not sent through outbound processing as if they were new events.
+	 * 
+	 * @return
+	 */
+	protected IDeviceManagement getPurgeableDeviceManagement() {
+		IDeviceManagement management = SiteWhere.getServer().getDeviceManagement();
+		while (management instanceof DeviceManagementDecorator) {
+			management = ((DeviceManagementDecorator) management).getDelegate();
+		}
+		return (management instanceof IPurgeableDeviceManagement) ? management : null;
+	}
+
+	/** Used for naming retention thread */
+	private class RetentionThreadFactory implements ThreadFactory {
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "SiteWhere Event Retention");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * Runs a retention check, logging any errors so later checks are still scheduled.
+	 * 
+	 * @author Derek
+	 */
+	private class RetentionChecker implements Runnable {
+
+		@Override
+		public void run() {
+			try {
+				enforcePolicies();
+			} catch (SiteWhereException e) {
+				LOGGER.error("Event retention check failed.", e);
+			} catch (Throwable e) {
+				LOGGER.error("Unhandled exception in event retention check.", e);
+			}
+		}
+	}
+
+	public List<EventRetentionPolicy> getPolicies() {
+		return policies;
+	}
+
+	public void setPolicies(List<EventRetentionPolicy> policies) {
+		this.policies = policies;
+	}
+
+	public int getCheckInterval() {
+		return checkInterval;
+	}
+
+	public void setCheckInterval(int checkInterval) {
+		this.checkInterval = checkInterval;
+	}
+
+	public int getInitialDelay() {
+		return initialDelay;
+	}
+
+	public void setInitialDelay(int initialDelay) {
+		this.initialDelay = initialDelay;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+}
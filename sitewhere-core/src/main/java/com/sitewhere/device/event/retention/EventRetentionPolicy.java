@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.event.retention;
+
+import com.sitewhere.spi.device.event.DeviceEventType;
+
+/**
+ * Indicates how long events are kept before being purged by the
+ * {@link EventRetentionManager}. A policy may be limited to a single site and/or event
+ * type. Measurement policies may keep a rollup of each interval before the measurements
+ * are purged.
+ * 
+ * @author Derek
+ */
+public class EventRetentionPolicy {
+
+	/** Site the policy applies to (null for all sites) */
+	private String siteToken;
+
+	/** Event type the policy applies to (null for all types) */
+	private DeviceEventType eventType;
+
+	/** Number of days events are kept */
+	private int retentionDays;
+
+	/** Interval in milliseconds summarized by each rollup (0 for no rollups) */
+	private long rollupInterval;
+
+	/** Indicates whether rollups are purged along with other events */
+	private boolean includeRollups;
+
+	public String getSiteToken() {
+		return siteToken;
+	}
+
+	public void setSiteToken(String siteToken) {
+		this.siteToken = siteToken;
+	}
+
+	public DeviceEventType getEventType() {
+		return eventType;
+	}
+
+	public void setEventType(DeviceEventType eventType) {
+		this.eventType = eventType;
+	}
+
+	public int getRetentionDays() {
+		return retentionDays;
+	}
+
+	public void setRetentionDays(int retentionDays) {
+		this.retentionDays = retentionDays;
+	}
+
+	public long getRollupInterval() {
+		return rollupInterval;
+	}
+
+	public void setRollupInterval(long rollupInterval) {
+		this.rollupInterval = rollupInterval;
+	}
+
+	public boolean isIncludeRollups() {
+		return includeRollups;
+	}
+
+	public void setIncludeRollups(boolean includeRollups) {
+		this.includeRollups = includeRollups;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "site=" + ((siteToken != null) ? siteToken : "*") + ", type="
+				+ ((eventType != null) ? eventType.name() : "*") + ", days=" + retentionDays;
+	}
+}
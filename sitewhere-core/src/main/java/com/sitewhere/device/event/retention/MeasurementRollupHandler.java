@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.event.retention;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.sitewhere.rest.model.device.event.request.DeviceMeasurementsCreateRequest;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDeviceManagement;
+import com.sitewhere.spi.device.IPurgeableDeviceManagement;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventPurgeHandler;
+import com.sitewhere.spi.device.event.IDeviceMeasurements;
+
+/**
+ * Implementation of {@link IDeviceEventPurgeHandler} that summarizes measurements before
+ * they are purged. Measurements are grouped by assignment and by fixed interval. For
+ * each group a single measurements event is stored with the minimum, maximum, average
+ * and number of samples of each measurement, using names such as <code>temp.min</code>
+ * and <code>temp.count</code>. The event date is the start of the interval and the event
+ * is tagged with {@link IPurgeableDeviceManagement#ROLLUP_INTERVAL_METADATA} so later
+ * purges can tell it apart from raw measurements.
+ * 
+ * An interval split across purge batches results in more than one rollup. Since each
+ * rollup records the sample count per measurement, rollups for the same interval can be
+ * combined when read even if some measurements are only present in some events.
+ * 
+ * @author Derek
+ */
+public class MeasurementRollupHandler implements IDeviceEventPurgeHandler {
+
+	/** Device management that stores rollups */
+	private IDeviceManagement deviceManagement;
+
+	/** Interval in milliseconds summarized by each rollup */
+	private long interval;
+
+	/** Number of rollups stored */
+	private long rollupCount;
+
+	public MeasurementRollupHandler(IDeviceManagement deviceManagement, long interval) {
+		this.deviceManagement = deviceManagement;
+		this.interval = interval;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.event.IDeviceEventPurgeHandler#beforePurge(java.util.List)
+	 */
+	@Override
+	public void beforePurge(List<IDeviceEvent> events) throws SiteWhereException {
+		Map<String, Rollup> rollups = new TreeMap<String, Rollup>();
+		for (IDeviceEvent event : events) {
+			if (!(event instanceof IDeviceMeasurements) || (event.getEventDate() == null)) {
+				continue;
+			}
+			if (event.getMetadata(IPurgeableDeviceManagement.ROLLUP_INTERVAL_METADATA) != null) {
+				continue;
+			}
+			long start = event.getEventDate().getTime() - (event.getEventDate().getTime() % interval);
+			String key = event.getDeviceAssignmentToken() + ":" + start;
+			Rollup rollup = rollups.get(key);
+			if (rollup == null) {
+				rollup = new Rollup(event.getDeviceAssignmentToken(), start);
+				rollups.put(key, rollup);
+			}
+			rollup.add((IDeviceMeasurements) event);
+		}
+		for (Rollup rollup : rollups.values()) {
+			deviceManagement.addDeviceMeasurements(rollup.assignmentToken, rollup.toRequest());
+			rollupCount++;
+		}
+	}
+
+	public long getRollupCount() {
+		return rollupCount;
+	}
+
+	/**
+	 * Accumulates measurements for one assignment and interval.
+	 * 
+	 * @author Derek
+	 */
+	private class Rollup {
+
+		/** Assignment measurements belong to */
+		private String assignmentToken;
+
+		/** Start of interval */
+		private long start;
+
+		/** Number of measurements events summarized */
+		private int count;
+
+		/** Minimum value by measurement name */
+		private Map<String, Double> min = new HashMap<String, Double>();
+
+		/** Maximum value by measurement name */
+		private Map<String, Double> max = new HashMap<String, Double>();
+
+		/** Sum of values by measurement name */
+		private Map<String, Double> sum = new HashMap<String, Double>();
+
+		/** Number of values by measurement name */
+		private Map<String, Integer> samples = new HashMap<String, Integer>();
+
+		public Rollup(String assignmentToken, long start) {
+			this.assignmentToken = assignmentToken;
+			this.start = start;
+		}
+
+		/**
+		 * Add all values from a measurements event.
+		 * 
+		 * @param measurements
+		 */
+		public void add(IDeviceMeasurements measurements) {
+			count++;
+			for (String name : measurements.getMeasurements().keySet()) {
+				Double value = measurements.getMeasurement(name);
+				if (value == null) {
+					continue;
+				}
+				Double currentMin = min.get(name);
+				min.put(name, (currentMin == null) ? value : Math.min(currentMin, value));
+				Double currentMax = max.get(name);
+				max.put(name, (currentMax == null) ? value : Math.max(currentMax, value));
+				Double currentSum = sum.get(name);
+				sum.put(name, (currentSum == null) ? value : currentSum + value);
+				Integer currentSamples = samples.get(name);
+				samples.put(name, (currentSamples == null) ? 1 : currentSamples + 1);
+			}
+		}
+
+		/**
+		 * Build the request that stores the rollup.
+		 * 
+		 * @return
+		 */
+		public DeviceMeasurementsCreateRequest toRequest() {
+			DeviceMeasurementsCreateRequest request = new DeviceMeasurementsCreateRequest();
+			request.setEventDate(new Date(start));
+			request.setUpdateState(false);
+			for (String name : sum.keySet()) {
+				request.addOrReplaceMeasurement(name + ".min", min.get(name));
+				request.addOrReplaceMeasurement(name + ".max", max.get(name));
+				request.addOrReplaceMeasurement(name + ".avg", sum.get(name) / samples.get(name));
+				request.addOrReplaceMeasurement(name + ".count", samples.get(name).doubleValue());
+			}
+			request.addOrReplaceMetadata(IPurgeableDeviceManagement.ROLLUP_INTERVAL_METADATA,
+					String.valueOf(interval));
+			request.addOrReplaceMetadata(IPurgeableDeviceManagement.ROLLUP_COUNT_METADATA,
+					String.valueOf(count));
+			return request;
+		}
+	}
+}
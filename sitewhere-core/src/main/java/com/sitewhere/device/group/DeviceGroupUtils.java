@@ -53,6 +53,13 @@ public class DeviceGroupUtils {
 						criteria.getDeviceBySpecificationParameters().getSpecificationToken())) {
 					continue;
 				}
+				break;
+			}
+			case UsesSite: {
+				if (!device.getSiteToken().equals(criteria.getDeviceBySiteParameters().getSiteToken())) {
+					continue;
+				}
+				break;
 			}
 			}
 			if (criteria.isExcludeAssigned() && (device.getAssignmentToken() != null)) {
@@ -7,28 +7,51 @@
  */
 package com.sitewhere.device.provisioning;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 import org.springframework.security.core.context.SecurityContextHolder;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
 import com.sitewhere.SiteWhere;
+import com.sitewhere.common.MarshalUtils;
+import com.sitewhere.device.provisioning.journal.MappedSegmentJournal;
+import com.sitewhere.rest.model.device.event.request.DeviceAlertCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceCommandResponseCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceLocationCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceMeasurementsCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceRegistrationRequest;
+import com.sitewhere.rest.model.device.provisioning.DecodedDeviceEventRequest;
 import com.sitewhere.server.SiteWhereServer;
 import com.sitewhere.server.lifecycle.LifecycleComponent;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.event.processor.IInboundEventProcessorChain;
 import com.sitewhere.spi.device.event.request.IDeviceAlertCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceCommandResponseCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceEventCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceLocationCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceMeasurementsCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceRegistrationRequest;
 import com.sitewhere.spi.device.provisioning.IDecodedDeviceEventRequest;
+import com.sitewhere.spi.device.provisioning.IInboundBackpressureListener;
 import com.sitewhere.spi.device.provisioning.IInboundProcessingStrategy;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 
@@ -37,6 +60,17 @@ import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
  * {@link ArrayBlockingQueue} to hold decoded events that are submitted into the
  * {@link IInboundEventProcessorChain}.
  * 
+ * If a journal directory is configured, events that arrive while the queue is full are
+ * appended to a memory-mapped journal on disk instead of blocking the receiver thread.
+ * Journaled events are replayed into the queue in order as consumers catch up. Receivers
+ * only block if the journal also reaches its size cap, and then wait for journal space
+ * rather than putting events on the queue, so new events never overtake journaled ones.
+ * 
+ * When backpressure is enabled, registered listeners are told to pause their receivers
+ * once utilization reaches the high watermark and to resume them once it drops to the
+ * low watermark. Utilization is measured against the queue, or against the journal when
+ * one is configured, so the journal still absorbs bursts before receivers are paused.
+ * 
  * @author Derek
  */
 public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent implements
@@ -54,6 +88,39 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 	/** Interval between monitoring log output messages */
 	private static final int MONITORING_INTERVAL_SEC = 5;
 
+	/** Default size of each journal segment in megabytes */
+	private static final int JOURNAL_SEGMENT_SIZE_MB = 64;
+
+	/** Default maximum disk space used by journal in megabytes */
+	private static final int JOURNAL_MAX_SIZE_MB = 1024;
+
+	/** Maximum time to wait for journal replay thread to stop before closing journal */
+	private static final long JOURNAL_REPLAY_STOP_TIMEOUT_MS = 10 * 1000;
+
+	/** Time replay thread waits for journaled events before checking for shutdown */
+	private static final long JOURNAL_POLL_INTERVAL_MS = 1000;
+
+	/** Default utilization at which receivers are paused */
+	private static final double BACKPRESSURE_HIGH_WATERMARK = 0.9;
+
+	/** Default utilization at which paused receivers are resumed */
+	private static final double BACKPRESSURE_LOW_WATERMARK = 0.5;
+
+	/** Journal record type for registration requests */
+	private static final byte JOURNAL_REGISTRATION = 1;
+
+	/** Journal record type for command responses */
+	private static final byte JOURNAL_COMMAND_RESPONSE = 2;
+
+	/** Journal record type for measurements */
+	private static final byte JOURNAL_MEASUREMENTS = 3;
+
+	/** Journal record type for locations */
+	private static final byte JOURNAL_LOCATION = 4;
+
+	/** Journal record type for alerts */
+	private static final byte JOURNAL_ALERT = 5;
+
 	/** Number of thread used for event processing */
 	private int eventProcessorThreadCount = EVENT_PROCESSOR_THREAD_COUNT;
 
@@ -63,6 +130,24 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 	/** Number of seconds between monitoring messages */
 	private int monitoringIntervalSec = MONITORING_INTERVAL_SEC;
 
+	/** Directory for overflow journal (journal is disabled if not set) */
+	private String journalDirectory;
+
+	/** Size of each journal segment in megabytes */
+	private int journalSegmentSizeMb = JOURNAL_SEGMENT_SIZE_MB;
+
+	/** Maximum disk space used by journal in megabytes */
+	private int journalMaxSizeMb = JOURNAL_MAX_SIZE_MB;
+
+	/** Indicates whether receivers are paused when utilization is high */
+	private boolean enableBackpressure = true;
+
+	/** Utilization at which receivers are paused */
+	private double backpressureHighWatermark = BACKPRESSURE_HIGH_WATERMARK;
+
+	/** Utilization at which paused receivers are resumed */
+	private double backpressureLowWatermark = BACKPRESSURE_LOW_WATERMARK;
+
 	/** Counter for number of events */
 	private AtomicLong eventCount = new AtomicLong();
 
@@ -85,6 +170,31 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 	/** Pool for monitoring thread */
 	private ExecutorService monitorPool = Executors.newSingleThreadExecutor();
 
+	/** Journal that absorbs events when queue is full */
+	private MappedSegmentJournal journal;
+
+	/** Pool for journal replay thread */
+	private ExecutorService replayPool;
+
+	/** Rate of events written to journal */
+	private Meter journaled = new Meter();
+
+	/** Rate of events replayed from journal */
+	private Meter replayed = new Meter();
+
+	/** Indicates a full journal has been reported, so the warning is not logged per event */
+	private AtomicBoolean journalFull = new AtomicBoolean();
+
+	/** Listeners notified when backpressure is applied or released */
+	private List<IInboundBackpressureListener> backpressureListeners =
+			new CopyOnWriteArrayList<IInboundBackpressureListener>();
+
+	/** Indicates whether backpressure is currently applied */
+	private volatile boolean backpressureApplied = false;
+
+	/** Number of times backpressure has been applied */
+	private AtomicLong backpressureCount = new AtomicLong();
+
 	public BlockingQueueInboundProcessingStrategy() {
 		super(LifecycleComponentType.InboundProcessingStrategy);
 	}
@@ -96,6 +206,12 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 	 */
 	@Override
 	public void start() throws SiteWhereException {
+		if (getBackpressureLowWatermark() >= getBackpressureHighWatermark()) {
+			throw new SiteWhereException("Backpressure low watermark must be less than high watermark.");
+		}
+		if (getJournalDirectory() != null) {
+			startJournal();
+		}
 		processorPool =
 				Executors.newFixedThreadPool(getEventProcessorThreadCount(), new ProcessorsThreadFactory());
 		for (int i = 0; i < getEventProcessorThreadCount(); i++) {
@@ -110,6 +226,44 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 		}
 	}
 
+	/**
+	 * Open the overflow journal, register its metrics and start replaying any events left
+	 * from a previous run.
+	 * 
+	 * @throws SiteWhereException
+	 */
+	protected void startJournal() throws SiteWhereException {
+		// Segments are mapped into a single buffer, which is limited to 2 GB.
+		long segmentSize = (long) getJournalSegmentSizeMb() * 1024 * 1024;
+		if ((segmentSize <= 0) || (segmentSize > Integer.MAX_VALUE)) {
+			throw new SiteWhereException("Journal segment size must be between 1 and 2047 MB. Found "
+					+ getJournalSegmentSizeMb() + " MB.");
+		}
+		int maxSegments = Math.max(1, getJournalMaxSizeMb() / getJournalSegmentSizeMb());
+		journal = new MappedSegmentJournal(new File(getJournalDirectory()), (int) segmentSize, maxSegments);
+		journal.open();
+
+		MetricRegistry registry = SiteWhere.getServer().getMetricRegistry();
+		if (registry != null) {
+			String prefix = MetricRegistry.name(BlockingQueueInboundProcessingStrategy.class, "journal");
+			registry.remove(MetricRegistry.name(prefix, "depth"));
+			registry.register(MetricRegistry.name(prefix, "depth"), new Gauge<Long>() {
+				public Long getValue() {
+					return getJournalDepth();
+				}
+			});
+			registry.remove(MetricRegistry.name(prefix, "journaled"));
+			registry.register(MetricRegistry.name(prefix, "journaled"), journaled);
+			registry.remove(MetricRegistry.name(prefix, "replayed"));
+			registry.register(MetricRegistry.name(prefix, "replayed"), replayed);
+		}
+
+		replayPool = Executors.newSingleThreadExecutor(new ReplayThreadFactory());
+		replayPool.execute(new JournalReplayer());
+		LOGGER.info("Inbound overflow journal enabled in " + getJournalDirectory() + " with up to "
+				+ maxSegments + " segments of " + getJournalSegmentSizeMb() + " MB.");
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -132,6 +286,14 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 		}
 	}
 
+	/** Used for naming journal replay thread */
+	private class ReplayThreadFactory implements ThreadFactory {
+
+		public Thread newThread(Runnable r) {
+			return new Thread(r, "SiteWhere BlockingQueueInboundProcessingStrategy Journal Replay");
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -145,6 +307,21 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 		if (monitorPool != null) {
 			monitorPool.shutdownNow();
 		}
+		if (replayPool != null) {
+			replayPool.shutdownNow();
+			try {
+				if (!replayPool.awaitTermination(JOURNAL_REPLAY_STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+					LOGGER.warn("Journal replay thread did not stop before journal was closed.");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (journal != null) {
+			journal.close();
+			journal = null;
+		}
+		releaseBackpressure();
 		LOGGER.info("Stopped blocking queue inbound processing strategy.");
 	}
 
@@ -209,8 +386,9 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 	}
 
 	/**
-	 * Adds an {@link IDecodedDeviceEventRequest} to the queue, blocking if no space is
-	 * available.
+	 * Adds an {@link IDecodedDeviceEventRequest} to the queue. If the queue is full, the
+	 * request is written to the journal if enabled. Blocks if no space is available in
+	 * either.
 	 * 
 	 * @param request
 	 * @throws SiteWhereException
@@ -222,13 +400,278 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 			PerformanceWrapper wrapper = new PerformanceWrapper();
 			wrapper.setRequest(request);
 			wrapper.setStartTime(System.currentTimeMillis());
-			queue.put(wrapper);
+			enqueue(wrapper);
+			checkBackpressure();
 		} catch (InterruptedException e) {
 			errorCount.incrementAndGet();
 			throw new SiteWhereException(e);
 		}
 	}
 
+	/**
+	 * Put a wrapped request on the queue, or in the journal if the queue is full.
+	 * 
+	 * @param wrapper
+	 * @throws InterruptedException
+	 * @throws SiteWhereException
+	 */
+	protected void enqueue(PerformanceWrapper wrapper) throws InterruptedException, SiteWhereException {
+		MappedSegmentJournal current = journal;
+		if (current != null) {
+			// Once anything is journaled, later events follow it to keep ordering.
+			if (current.isEmpty() && queue.offer(wrapper)) {
+				return;
+			}
+			// If the journal is full, wait for replay to free space rather than putting on
+			// the queue, which would let this event overtake those already journaled.
+			byte[] record = encodeJournalRecord(wrapper);
+			while (!current.append(record)) {
+				if (journalFull.compareAndSet(false, true)) {
+					LOGGER.warn("Inbound overflow journal is full. Receivers block until it has space.");
+				}
+				current.awaitSpace(JOURNAL_POLL_INTERVAL_MS);
+			}
+			journaled.mark();
+			journalFull.set(false);
+			return;
+		}
+		queue.put(wrapper);
+	}
+
+	/**
+	 * Apply backpressure if utilization has reached the high watermark or release it if
+	 * utilization has dropped to the low watermark. The state is read without locking so
+	 * the common case costs a single utilization check.
+	 */
+	protected void checkBackpressure() {
+		if (!isEnableBackpressure() || backpressureListeners.isEmpty()) {
+			return;
+		}
+		double utilization = getUtilization();
+		if (!backpressureApplied && (utilization >= getBackpressureHighWatermark())) {
+			applyBackpressure();
+		} else if (backpressureApplied && (utilization <= getBackpressureLowWatermark())) {
+			releaseBackpressure();
+		}
+	}
+
+	/**
+	 * Notify listeners that backpressure is applied. Transitions are serialized so pause
+	 * and resume notifications can not arrive out of order.
+	 */
+	protected synchronized void applyBackpressure() {
+		double utilization = getUtilization();
+		if (backpressureApplied || (utilization < getBackpressureHighWatermark())) {
+			return;
+		}
+		backpressureApplied = true;
+		backpressureCount.incrementAndGet();
+		LOGGER.warn(String.format("Inbound processing at %.0f%% of capacity. Pausing event receivers.",
+				utilization * 100));
+		for (IInboundBackpressureListener listener : backpressureListeners) {
+			try {
+				listener.onBackpressureApplied(utilization);
+			} catch (Throwable e) {
+				LOGGER.error("Backpressure listener failed to pause.", e);
+			}
+		}
+	}
+
+	/**
+	 * Notify listeners that backpressure is released.
+	 */
+	protected synchronized void releaseBackpressure() {
+		if (!backpressureApplied) {
+			return;
+		}
+		double utilization = getUtilization();
+		backpressureApplied = false;
+		LOGGER.info(String.format("Inbound processing at %.0f%% of capacity. Resuming event receivers.",
+				utilization * 100));
+		for (IInboundBackpressureListener listener : backpressureListeners) {
+			try {
+				listener.onBackpressureReleased(utilization);
+			} catch (Throwable e) {
+				LOGGER.error("Backpressure listener failed to resume.", e);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.provisioning.IInboundProcessingStrategy#getUtilization()
+	 */
+	@Override
+	public double getUtilization() {
+		// With a journal, a full queue spills to disk, so only journal fill indicates overload.
+		MappedSegmentJournal current = journal;
+		if (current != null) {
+			if (current.isEmpty()) {
+				return 0;
+			}
+			long capacity = (long) current.getSegmentSize() * current.getMaxSegments();
+			return (double) current.getAllocatedBytes() / capacity;
+		}
+		return (double) queue.size() / MAX_QUEUE_SIZE;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.provisioning.IInboundProcessingStrategy#isBackpressureApplied
+	 * ()
+	 */
+	@Override
+	public boolean isBackpressureApplied() {
+		return backpressureApplied;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.provisioning.IInboundProcessingStrategy#
+	 * addBackpressureListener
+	 * (com.sitewhere.spi.device.provisioning.IInboundBackpressureListener)
+	 */
+	@Override
+	public void addBackpressureListener(IInboundBackpressureListener listener) {
+		backpressureListeners.add(listener);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.provisioning.IInboundProcessingStrategy#
+	 * removeBackpressureListener
+	 * (com.sitewhere.spi.device.provisioning.IInboundBackpressureListener)
+	 */
+	@Override
+	public void removeBackpressureListener(IInboundBackpressureListener listener) {
+		backpressureListeners.remove(listener);
+	}
+
+	/**
+	 * Encode a queued request as a journal record.
+	 * 
+	 * @param wrapper
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected byte[] encodeJournalRecord(PerformanceWrapper wrapper) throws SiteWhereException {
+		IDecodedDeviceEventRequest decoded = wrapper.getRequest();
+		IDeviceEventCreateRequest request = decoded.getRequest();
+		byte type;
+		if (request instanceof IDeviceRegistrationRequest) {
+			type = JOURNAL_REGISTRATION;
+		} else if (request instanceof IDeviceCommandResponseCreateRequest) {
+			type = JOURNAL_COMMAND_RESPONSE;
+		} else if (request instanceof IDeviceMeasurementsCreateRequest) {
+			type = JOURNAL_MEASUREMENTS;
+		} else if (request instanceof IDeviceLocationCreateRequest) {
+			type = JOURNAL_LOCATION;
+		} else if (request instanceof IDeviceAlertCreateRequest) {
+			type = JOURNAL_ALERT;
+		} else {
+			throw new SiteWhereException("Unable to journal device event type: "
+					+ request.getClass().getName());
+		}
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(type);
+			out.writeLong(wrapper.getStartTime());
+			writeNullableString(out, decoded.getHardwareId());
+			writeNullableString(out, decoded.getOriginator());
+			byte[] json = MarshalUtils.marshalJson(request);
+			out.writeInt(json.length);
+			out.write(json);
+			out.flush();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new SiteWhereException("Unable to encode journal record.", e);
+		}
+	}
+
+	/**
+	 * Decode a journal record back into a queued request.
+	 * 
+	 * @param record
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected PerformanceWrapper decodeJournalRecord(byte[] record) throws SiteWhereException {
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+			byte type = in.readByte();
+			long startTime = in.readLong();
+			DecodedDeviceEventRequest decoded = new DecodedDeviceEventRequest();
+			decoded.setHardwareId(readNullableString(in));
+			decoded.setOriginator(readNullableString(in));
+			byte[] json = new byte[in.readInt()];
+			in.readFully(json);
+			switch (type) {
+			case JOURNAL_REGISTRATION: {
+				decoded.setRequest(MarshalUtils.unmarshalJson(json, DeviceRegistrationRequest.class));
+				break;
+			}
+			case JOURNAL_COMMAND_RESPONSE: {
+				decoded.setRequest(
+						MarshalUtils.unmarshalJson(json, DeviceCommandResponseCreateRequest.class));
+				break;
+			}
+			case JOURNAL_MEASUREMENTS: {
+				decoded.setRequest(MarshalUtils.unmarshalJson(json, DeviceMeasurementsCreateRequest.class));
+				break;
+			}
+			case JOURNAL_LOCATION: {
+				decoded.setRequest(MarshalUtils.unmarshalJson(json, DeviceLocationCreateRequest.class));
+				break;
+			}
+			case JOURNAL_ALERT: {
+				decoded.setRequest(MarshalUtils.unmarshalJson(json, DeviceAlertCreateRequest.class));
+				break;
+			}
+			default: {
+				throw new SiteWhereException("Unknown journal record type: " + type);
+			}
+			}
+			PerformanceWrapper wrapper = new PerformanceWrapper();
+			wrapper.setRequest(decoded);
+			wrapper.setStartTime(startTime);
+			return wrapper;
+		} catch (IOException e) {
+			throw new SiteWhereException("Unable to decode journal record.", e);
+		}
+	}
+
+	/**
+	 * Write a string that may be null.
+	 * 
+	 * @param out
+	 * @param value
+	 * @throws IOException
+	 */
+	protected void writeNullableString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	/**
+	 * Read a string written by {@link #writeNullableString(DataOutputStream, String)}.
+	 * 
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	protected String readNullableString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
 	/**
 	 * Get the number of events processed.
 	 * 
@@ -256,6 +699,43 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 		return queue.size();
 	}
 
+	/**
+	 * Get the number of events waiting in the overflow journal.
+	 * 
+	 * @return
+	 */
+	public long getJournalDepth() {
+		MappedSegmentJournal current = journal;
+		return (current != null) ? current.getDepth() : 0;
+	}
+
+	/**
+	 * Get the one-minute rate of events replayed from the overflow journal per second.
+	 * 
+	 * @return
+	 */
+	public double getJournalReplayRate() {
+		return replayed.getOneMinuteRate();
+	}
+
+	/**
+	 * Get the number of events replayed from the overflow journal.
+	 * 
+	 * @return
+	 */
+	public long getJournalReplayedCount() {
+		return replayed.getCount();
+	}
+
+	/**
+	 * Get the number of times receivers have been paused due to backpressure.
+	 * 
+	 * @return
+	 */
+	public long getBackpressureCount() {
+		return backpressureCount.get();
+	}
+
 	/**
 	 * Get the average wait time in milliseconds.
 	 * 
@@ -317,6 +797,54 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 		this.monitoringIntervalSec = monitoringIntervalSec;
 	}
 
+	public boolean isEnableBackpressure() {
+		return enableBackpressure;
+	}
+
+	public void setEnableBackpressure(boolean enableBackpressure) {
+		this.enableBackpressure = enableBackpressure;
+	}
+
+	public double getBackpressureHighWatermark() {
+		return backpressureHighWatermark;
+	}
+
+	public void setBackpressureHighWatermark(double backpressureHighWatermark) {
+		this.backpressureHighWatermark = backpressureHighWatermark;
+	}
+
+	public double getBackpressureLowWatermark() {
+		return backpressureLowWatermark;
+	}
+
+	public void setBackpressureLowWatermark(double backpressureLowWatermark) {
+		this.backpressureLowWatermark = backpressureLowWatermark;
+	}
+
+	public String getJournalDirectory() {
+		return journalDirectory;
+	}
+
+	public void setJournalDirectory(String journalDirectory) {
+		this.journalDirectory = journalDirectory;
+	}
+
+	public int getJournalSegmentSizeMb() {
+		return journalSegmentSizeMb;
+	}
+
+	public void setJournalSegmentSizeMb(int journalSegmentSizeMb) {
+		this.journalSegmentSizeMb = journalSegmentSizeMb;
+	}
+
+	public int getJournalMaxSizeMb() {
+		return journalMaxSizeMb;
+	}
+
+	public void setJournalMaxSizeMb(int journalMaxSizeMb) {
+		this.journalMaxSizeMb = journalMaxSizeMb;
+	}
+
 	public class PerformanceWrapper {
 
 		/** Start time for event processing */
@@ -364,6 +892,14 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 									"Count(%5d) Errors(%5d) Backlog(%5d) AvgWait(%5d ms) AvgProc(%5d ms) AvgDS(%5d ms)",
 									eventCount, errorCount, backlog, avgWaitTime, avgProcessingTime,
 									avgDownstreamTime);
+					if (journal != null) {
+						message +=
+								String.format(" Journal(%5d) Replay(%7.1f/s)", getJournalDepth(),
+										getJournalReplayRate());
+					}
+					if (isBackpressureApplied()) {
+						message += String.format(" Paused(%3.0f%%)", getUtilization() * 100);
+					}
 					LOGGER.info(message);
 				} catch (Throwable e) {
 					LOGGER.error(e);
@@ -376,6 +912,45 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 		}
 	}
 
+	/**
+	 * Moves events from the overflow journal back into the queue in the order they were
+	 * journaled. Each record is only removed from the journal once it is on the queue.
+	 * 
+	 * @author Derek
+	 */
+	private class JournalReplayer implements Runnable {
+
+		@Override
+		public void run() {
+			MappedSegmentJournal current = journal;
+			while (!Thread.currentThread().isInterrupted()) {
+				try {
+					byte[] record = current.peek(JOURNAL_POLL_INTERVAL_MS);
+					if (record == null) {
+						continue;
+					}
+					PerformanceWrapper wrapper;
+					try {
+						wrapper = decodeJournalRecord(record);
+					} catch (SiteWhereException e) {
+						errorCount.incrementAndGet();
+						LOGGER.error("Discarding unreadable inbound journal record.", e);
+						current.commit();
+						continue;
+					}
+					queue.put(wrapper);
+					current.commit();
+					replayed.mark();
+					checkBackpressure();
+				} catch (InterruptedException e) {
+					break;
+				} catch (Throwable e) {
+					LOGGER.error("Unhandled exception in inbound journal replay.", e);
+				}
+			}
+		}
+	}
+
 	/**
 	 * Blocking thread that processes {@link IDecodedDeviceEventRequest} from a queue.
 	 * 
@@ -410,6 +985,7 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 			while (true) {
 				try {
 					PerformanceWrapper wrapper = queue.take();
+					checkBackpressure();
 					long wait = System.currentTimeMillis() - wrapper.getStartTime();
 					totalWaitTime.addAndGet(wait);
 
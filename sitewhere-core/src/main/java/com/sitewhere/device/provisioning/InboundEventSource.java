@@ -20,11 +20,14 @@ import com.sitewhere.spi.device.event.request.IDeviceCommandResponseCreateReques
 import com.sitewhere.spi.device.event.request.IDeviceLocationCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceMeasurementsCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceRegistrationRequest;
+import com.sitewhere.spi.device.provisioning.IDecodedDeviceEventHandler;
 import com.sitewhere.spi.device.provisioning.IDecodedDeviceEventRequest;
 import com.sitewhere.spi.device.provisioning.IDeviceEventDecoder;
+import com.sitewhere.spi.device.provisioning.IInboundBackpressureListener;
 import com.sitewhere.spi.device.provisioning.IInboundEventReceiver;
 import com.sitewhere.spi.device.provisioning.IInboundEventSource;
 import com.sitewhere.spi.device.provisioning.IInboundProcessingStrategy;
+import com.sitewhere.spi.device.provisioning.IStreamingDeviceEventDecoder;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 
 /**
@@ -51,6 +54,29 @@ public class InboundEventSource<T> extends LifecycleComponent implements IInboun
 	/** List of {@link IInboundEventReceiver} that supply this processor */
 	private List<IInboundEventReceiver<T>> inboundEventReceivers = new ArrayList<IInboundEventReceiver<T>>();
 
+	/** Routes events from streaming decoders as they are decoded */
+	private IDecodedDeviceEventHandler router = new IDecodedDeviceEventHandler() {
+
+		@Override
+		public void onEventDecoded(IDecodedDeviceEventRequest decoded) throws SiteWhereException {
+			routeDecodedEvent(decoded);
+		}
+	};
+
+	/** Pauses and resumes receivers when the processing strategy is overloaded */
+	private IInboundBackpressureListener backpressure = new IInboundBackpressureListener() {
+
+		@Override
+		public void onBackpressureApplied(double utilization) {
+			pauseEventReceivers();
+		}
+
+		@Override
+		public void onBackpressureReleased(double utilization) {
+			resumeEventReceivers();
+		}
+	};
+
 	public InboundEventSource() {
 		super(LifecycleComponentType.InboundEventSource);
 	}
@@ -72,6 +98,10 @@ public class InboundEventSource<T> extends LifecycleComponent implements IInboun
 			throw new SiteWhereException("No inbound event receivers registered for event source.");
 		}
 		startEventReceivers();
+		getInboundProcessingStrategy().addBackpressureListener(backpressure);
+		if (getInboundProcessingStrategy().isBackpressureApplied()) {
+			pauseEventReceivers();
+		}
 		LOGGER.debug("Started event source '" + getSourceId() + "'.");
 	}
 
@@ -111,6 +141,26 @@ public class InboundEventSource<T> extends LifecycleComponent implements IInboun
 		}
 	}
 
+	/**
+	 * Stop event receivers from taking payloads off their transports.
+	 */
+	protected void pauseEventReceivers() {
+		LOGGER.debug("Pausing receivers for event source '" + getSourceId() + "'.");
+		for (IInboundEventReceiver<T> receiver : getInboundEventReceivers()) {
+			receiver.pauseDelivery();
+		}
+	}
+
+	/**
+	 * Let paused event receivers take payloads off their transports again.
+	 */
+	protected void resumeEventReceivers() {
+		LOGGER.debug("Resuming receivers for event source '" + getSourceId() + "'.");
+		for (IInboundEventReceiver<T> receiver : getInboundEventReceivers()) {
+			receiver.resumeDelivery();
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -122,23 +172,14 @@ public class InboundEventSource<T> extends LifecycleComponent implements IInboun
 	public void onEncodedEventReceived(IInboundEventReceiver<T> receiver, T encodedPayload) {
 		try {
 			LOGGER.debug("Device event receiver thread picked up event.");
+			if (getDeviceEventDecoder() instanceof IStreamingDeviceEventDecoder) {
+				((IStreamingDeviceEventDecoder<T>) getDeviceEventDecoder()).decode(encodedPayload, router);
+				return;
+			}
 			List<IDecodedDeviceEventRequest> requests = decodePayload(encodedPayload);
 			if (requests != null) {
 				for (IDecodedDeviceEventRequest decoded : requests) {
-					if (decoded.getRequest() instanceof IDeviceRegistrationRequest) {
-						getInboundProcessingStrategy().processRegistration(decoded);
-					} else if (decoded.getRequest() instanceof IDeviceCommandResponseCreateRequest) {
-						getInboundProcessingStrategy().processDeviceCommandResponse(decoded);
-					} else if (decoded.getRequest() instanceof IDeviceMeasurementsCreateRequest) {
-						getInboundProcessingStrategy().processDeviceMeasurements(decoded);
-					} else if (decoded.getRequest() instanceof IDeviceLocationCreateRequest) {
-						getInboundProcessingStrategy().processDeviceLocation(decoded);
-					} else if (decoded.getRequest() instanceof IDeviceAlertCreateRequest) {
-						getInboundProcessingStrategy().processDeviceAlert(decoded);
-					} else {
-						LOGGER.error("Decoded device event request could not be routed: "
-								+ decoded.getRequest().getClass().getName());
-					}
+					routeDecodedEvent(decoded);
 				}
 			}
 		} catch (SiteWhereException e) {
@@ -148,6 +189,29 @@ public class InboundEventSource<T> extends LifecycleComponent implements IInboun
 		}
 	}
 
+	/**
+	 * Pass a decoded event to the inbound processing strategy based on its type.
+	 * 
+	 * @param decoded
+	 * @throws SiteWhereException
+	 */
+	protected void routeDecodedEvent(IDecodedDeviceEventRequest decoded) throws SiteWhereException {
+		if (decoded.getRequest() instanceof IDeviceRegistrationRequest) {
+			getInboundProcessingStrategy().processRegistration(decoded);
+		} else if (decoded.getRequest() instanceof IDeviceCommandResponseCreateRequest) {
+			getInboundProcessingStrategy().processDeviceCommandResponse(decoded);
+		} else if (decoded.getRequest() instanceof IDeviceMeasurementsCreateRequest) {
+			getInboundProcessingStrategy().processDeviceMeasurements(decoded);
+		} else if (decoded.getRequest() instanceof IDeviceLocationCreateRequest) {
+			getInboundProcessingStrategy().processDeviceLocation(decoded);
+		} else if (decoded.getRequest() instanceof IDeviceAlertCreateRequest) {
+			getInboundProcessingStrategy().processDeviceAlert(decoded);
+		} else {
+			LOGGER.error("Decoded device event request could not be routed: "
+					+ decoded.getRequest().getClass().getName());
+		}
+	}
+
 	/**
 	 * Decode a payload into individual events.
 	 * 
@@ -177,6 +241,9 @@ public class InboundEventSource<T> extends LifecycleComponent implements IInboun
 	@Override
 	public void stop() throws SiteWhereException {
 		LOGGER.info("Stopping inbound event source '" + getSourceId() + "'.");
+		if (getInboundProcessingStrategy() != null) {
+			getInboundProcessingStrategy().removeBackpressureListener(backpressure);
+		}
 		if (getInboundEventReceivers().size() > 0) {
 			for (IInboundEventReceiver<T> receiver : getInboundEventReceivers()) {
 				receiver.lifecycleStop();
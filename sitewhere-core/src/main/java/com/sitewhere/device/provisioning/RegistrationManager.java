@@ -7,14 +7,29 @@
  */
 package com.sitewhere.device.provisioning;
 
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.log4j.Logger;
+import org.springframework.security.core.context.SecurityContextHolder;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
 import com.sitewhere.SiteWhere;
+import com.sitewhere.common.ExpiringLRUCache;
 import com.sitewhere.rest.model.device.command.RegistrationAckCommand;
 import com.sitewhere.rest.model.device.command.RegistrationFailureCommand;
 import com.sitewhere.rest.model.device.request.DeviceAssignmentCreateRequest;
 import com.sitewhere.rest.model.device.request.DeviceCreateRequest;
 import com.sitewhere.rest.model.search.SearchCriteria;
+import com.sitewhere.server.SiteWhereServer;
 import com.sitewhere.server.lifecycle.LifecycleComponent;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.DeviceAssignmentType;
@@ -31,6 +46,15 @@ import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 /**
  * Base logic for {@link IRegistrationManager} implementations.
  * 
+ * Registrations are handled on a bounded thread pool owned by the registration manager,
+ * so a burst of devices registering at once (for instance after a network outage) does
+ * not take over the threads that process inbound events. Requests from a device that
+ * already has a registration waiting are collapsed so that only the latest is handled.
+ * Specifications are cached for a short time so they are looked up once per burst rather
+ * than once per device. Devices are always looked up through device management, whose
+ * cache provider keeps them current as devices are deleted or assignments end, so a
+ * device is never acknowledged as registered after it has been removed.
+ * 
  * @author Derek
  */
 public class RegistrationManager extends LifecycleComponent implements IRegistrationManager {
@@ -38,6 +62,21 @@ public class RegistrationManager extends LifecycleComponent implements IRegistra
 	/** Static logger instance */
 	private static Logger LOGGER = Logger.getLogger(RegistrationManager.class);
 
+	/** Default number of threads that handle registrations */
+	private static final int DEFAULT_NUM_THREADS = 4;
+
+	/** Default number of registrations that may wait for a thread */
+	private static final int DEFAULT_QUEUE_SIZE = 10000;
+
+	/** Default time in milliseconds a specification is cached */
+	private static final int DEFAULT_SPECIFICATION_CACHE_EXPIRATION = 30 * 1000;
+
+	/** Number of specifications cached */
+	private static final int SPECIFICATION_CACHE_SIZE = 1000;
+
+	/** Number of rejected registrations between warnings */
+	private static final int REJECTED_WARNING_INTERVAL = 1000;
+
 	/** Indicates if new devices can register with the system */
 	private boolean allowNewDevices = true;
 
@@ -47,6 +86,34 @@ public class RegistrationManager extends LifecycleComponent implements IRegistra
 	/** Token used if autoAssignSite is enabled */
 	private String autoAssignSiteToken = null;
 
+	/** Number of threads that handle registrations */
+	private int numThreads = DEFAULT_NUM_THREADS;
+
+	/** Number of registrations that may wait for a thread */
+	private int queueSize = DEFAULT_QUEUE_SIZE;
+
+	/** Time in milliseconds a specification is cached */
+	private int specificationCacheExpiration = DEFAULT_SPECIFICATION_CACHE_EXPIRATION;
+
+	/** Thread pool that handles registrations */
+	private ThreadPoolExecutor executor;
+
+	/** Latest waiting registration request for each hardware id */
+	private Map<String, IDeviceRegistrationRequest> pending =
+			new ConcurrentHashMap<String, IDeviceRegistrationRequest>();
+
+	/** Specifications used by recent registrations */
+	private ExpiringLRUCache<String, IDeviceSpecification> specifications;
+
+	/** Registration requests received */
+	private Meter requests = new Meter();
+
+	/** Requests collapsed into a waiting request from the same device */
+	private Meter coalesced = new Meter();
+
+	/** Requests rejected because the queue was full */
+	private Meter rejected = new Meter();
+
 	public RegistrationManager() {
 		super(LifecycleComponentType.RegistrationManger);
 	}
@@ -60,12 +127,40 @@ public class RegistrationManager extends LifecycleComponent implements IRegistra
 	 */
 	@Override
 	public void handleDeviceRegistration(IDeviceRegistrationRequest request) throws SiteWhereException {
+		requests.mark();
+		ThreadPoolExecutor pool = executor;
+		if ((pool == null) || (request.getHardwareId() == null)) {
+			processRegistration(request);
+			return;
+		}
+		String hardwareId = request.getHardwareId();
+		if (pending.put(hardwareId, request) != null) {
+			coalesced.mark();
+			return;
+		}
+		try {
+			pool.execute(new RegistrationProcessor(hardwareId));
+		} catch (RejectedExecutionException e) {
+			pending.remove(hardwareId);
+			rejected.mark();
+			if ((rejected.getCount() % REJECTED_WARNING_INTERVAL) == 1) {
+				LOGGER.warn("Registration queue is full. Dropped " + rejected.getCount()
+						+ " registration requests so far.");
+			}
+		}
+	}
+
+	/**
+	 * Handle a registration request on the calling thread.
+	 * 
+	 * @param request
+	 * @throws SiteWhereException
+	 */
+	protected void processRegistration(IDeviceRegistrationRequest request) throws SiteWhereException {
 		LOGGER.debug("Handling device registration request.");
 		IDevice device =
 				SiteWhere.getServer().getDeviceManagement().getDeviceByHardwareId(request.getHardwareId());
-		IDeviceSpecification specification =
-				SiteWhere.getServer().getDeviceManagement().getDeviceSpecificationByToken(
-						request.getSpecificationToken());
+		boolean isNewRegistration = (device == null);
 		// Create device if it does not already exist.
 		if (device == null) {
 			if (!isAllowNewDevices()) {
@@ -74,6 +169,7 @@ public class RegistrationManager extends LifecycleComponent implements IRegistra
 				// sendNoNewDevicesAllowed(request.getHardwareId());
 				return;
 			}
+			IDeviceSpecification specification = getSpecification(request.getSpecificationToken());
 			if (specification == null) {
 				sendInvalidSpecification(request.getHardwareId());
 				return;
@@ -111,10 +207,30 @@ public class RegistrationManager extends LifecycleComponent implements IRegistra
 			assnCreate.setAssignmentType(DeviceAssignmentType.Unassociated);
 			SiteWhere.getServer().getDeviceManagement().createDeviceAssignment(assnCreate);
 		}
-		boolean isNewRegistration = (device != null);
 		sendRegistrationAck(request.getHardwareId(), isNewRegistration);
 	}
 
+	/**
+	 * Get a specification by token, using the cache if possible.
+	 * 
+	 * @param token
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected IDeviceSpecification getSpecification(String token) throws SiteWhereException {
+		if (token == null) {
+			return null;
+		}
+		IDeviceSpecification specification = (specifications != null) ? specifications.get(token) : null;
+		if (specification == null) {
+			specification = SiteWhere.getServer().getDeviceManagement().getDeviceSpecificationByToken(token);
+			if ((specification != null) && (specifications != null)) {
+				specifications.put(token, specification);
+			}
+		}
+		return specification;
+	}
+
 	/**
 	 * Send a registration ack message.
 	 * 
@@ -177,6 +293,16 @@ public class RegistrationManager extends LifecycleComponent implements IRegistra
 	 */
 	@Override
 	public void start() throws SiteWhereException {
+		specifications =
+				new ExpiringLRUCache<String, IDeviceSpecification>(SPECIFICATION_CACHE_SIZE,
+						getSpecificationCacheExpiration());
+		pending.clear();
+		executor =
+				new ThreadPoolExecutor(getNumThreads(), getNumThreads(), 0L, TimeUnit.MILLISECONDS,
+						new ArrayBlockingQueue<Runnable>(getQueueSize()), new RegistrationThreadFactory());
+		registerMetrics();
+		LOGGER.info("Registration manager using " + getNumThreads() + " threads with room for "
+				+ getQueueSize() + " waiting registrations.");
 		if (isAutoAssignSite()) {
 			if (getAutoAssignSiteToken() == null) {
 				updateAutoAssignToFirstSite();
@@ -224,6 +350,103 @@ public class RegistrationManager extends LifecycleComponent implements IRegistra
 	 */
 	@Override
 	public void stop() throws SiteWhereException {
+		if (executor != null) {
+			executor.shutdown();
+			try {
+				if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+					executor.shutdownNow();
+				}
+			} catch (InterruptedException e) {
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+			executor = null;
+		}
+		pending.clear();
+	}
+
+	/**
+	 * Register registration metrics with the server.
+	 */
+	protected void registerMetrics() {
+		MetricRegistry registry = SiteWhere.getServer().getMetricRegistry();
+		if (registry != null) {
+			registry.remove(MetricRegistry.name(RegistrationManager.class, "requests"));
+			registry.register(MetricRegistry.name(RegistrationManager.class, "requests"), requests);
+			registry.remove(MetricRegistry.name(RegistrationManager.class, "coalesced"));
+			registry.register(MetricRegistry.name(RegistrationManager.class, "coalesced"), coalesced);
+			registry.remove(MetricRegistry.name(RegistrationManager.class, "rejected"));
+			registry.register(MetricRegistry.name(RegistrationManager.class, "rejected"), rejected);
+			registry.remove(MetricRegistry.name(RegistrationManager.class, "pending"));
+			registry.register(MetricRegistry.name(RegistrationManager.class, "pending"),
+					new Gauge<Integer>() {
+
+						@Override
+						public Integer getValue() {
+							return getPendingCount();
+						}
+					});
+		}
+	}
+
+	/**
+	 * Get the number of registrations waiting to be handled.
+	 * 
+	 * @return
+	 */
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * Handles the latest registration request for a device.
+	 * 
+	 * @author Derek
+	 */
+	private class RegistrationProcessor implements Runnable {
+
+		/** Hardware id of device registering */
+		private String hardwareId;
+
+		public RegistrationProcessor(String hardwareId) {
+			this.hardwareId = hardwareId;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			IDeviceRegistrationRequest request = pending.remove(hardwareId);
+			if (request == null) {
+				return;
+			}
+			try {
+				// Devices and assignments are created on behalf of the 'system' user, as
+				// is done on the inbound processing threads.
+				SecurityContextHolder.getContext().setAuthentication(
+						SiteWhereServer.getSystemAuthentication());
+				processRegistration(request);
+			} catch (Throwable e) {
+				LOGGER.error("Unable to handle registration for device: " + hardwareId, e);
+			}
+		}
+	}
+
+	/** Used for naming registration threads */
+	private class RegistrationThreadFactory implements ThreadFactory {
+
+		/** Counts threads */
+		private AtomicInteger counter = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread thread =
+					new Thread(r, "SiteWhere RegistrationManager Processor " + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
 	}
 
 	public boolean isAllowNewDevices() {
@@ -249,4 +472,28 @@ public class RegistrationManager extends LifecycleComponent implements IRegistra
 	public void setAutoAssignSiteToken(String autoAssignSiteToken) {
 		this.autoAssignSiteToken = autoAssignSiteToken;
 	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	public void setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+	}
+
+	public int getSpecificationCacheExpiration() {
+		return specificationCacheExpiration;
+	}
+
+	public void setSpecificationCacheExpiration(int specificationCacheExpiration) {
+		this.specificationCacheExpiration = specificationCacheExpiration;
+	}
 }
\ No newline at end of file
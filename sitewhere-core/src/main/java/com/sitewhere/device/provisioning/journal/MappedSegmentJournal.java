@@ -0,0 +1,464 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.provisioning.journal;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import org.apache.log4j.Logger;
+
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Append-only journal of binary records stored in fixed-size memory-mapped segment files.
+ * Records are read back in the order they were appended. A single consumer reads with
+ * {@link #peek(long)} and acknowledges with {@link #commit()}, so a record is only removed
+ * once it has been handed off.
+ * 
+ * Each segment starts with the offset of the next unread record, followed by records
+ * stored as a length and the record bytes. A zero length marks the end of the written
+ * data, so the journal can be recovered from the segment files after a restart. Segments
+ * are deleted once fully read. The total size is capped by the maximum number of
+ * segments, after which appends are rejected until {@link #awaitSpace(long)} reports
+ * that committed records have freed a segment.
+ * 
+ * @author Derek
+ */
+public class MappedSegmentJournal {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(MappedSegmentJournal.class);
+
+	/** Prefix for segment file names */
+	private static final String SEGMENT_PREFIX = "segment-";
+
+	/** Suffix for segment file names */
+	private static final String SEGMENT_SUFFIX = ".journal";
+
+	/** Bytes at start of segment that hold the read offset */
+	private static final int HEADER_SIZE = 4;
+
+	/** Bytes used for record length */
+	private static final int LENGTH_SIZE = 4;
+
+	/** Directory that holds segment files */
+	private File directory;
+
+	/** Size of each segment in bytes */
+	private int segmentSize;
+
+	/** Maximum number of segments */
+	private int maxSegments;
+
+	/** Segments in order from oldest to newest */
+	private LinkedList<Segment> segments = new LinkedList<Segment>();
+
+	/** Id used for next segment file */
+	private long nextSegmentId = 0;
+
+	/** Number of records not yet committed */
+	private long depth = 0;
+
+	/** Number of records appended */
+	private long appendedCount = 0;
+
+	/** Number of records committed */
+	private long committedCount = 0;
+
+	/** Number of appends rejected because journal was full */
+	private long rejectedCount = 0;
+
+	/** Indicates journal has been closed */
+	private boolean closed = false;
+
+	public MappedSegmentJournal(File directory, int segmentSize, int maxSegments) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxSegments = maxSegments;
+	}
+
+	/**
+	 * Open the journal, recovering unread records from existing segment files.
+	 * 
+	 * @throws SiteWhereException
+	 */
+	public synchronized void open() throws SiteWhereException {
+		if (!directory.exists() && !directory.mkdirs()) {
+			throw new SiteWhereException("Unable to create journal directory: "
+					+ directory.getAbsolutePath());
+		}
+		File[] files = directory.listFiles(new FilenameFilter() {
+
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		long[] ids = new long[files.length];
+		for (int i = 0; i < files.length; i++) {
+			ids[i] = parseSegmentId(files[i]);
+		}
+		Arrays.sort(ids);
+		for (long id : ids) {
+			Segment segment = new Segment(id, getSegmentFile(id).length());
+			segment.recover();
+			if (segment.isFullyRead()) {
+				segment.delete();
+			} else {
+				segments.add(segment);
+			}
+			nextSegmentId = id + 1;
+		}
+		closed = false;
+		if (depth > 0) {
+			LOGGER.info("Recovered " + depth + " unread records from journal in "
+					+ directory.getAbsolutePath() + ".");
+		}
+	}
+
+	/**
+	 * Append a record to the journal.
+	 * 
+	 * @param record
+	 * @return false if the journal has reached its size cap
+	 * @throws SiteWhereException
+	 */
+	public synchronized boolean append(byte[] record) throws SiteWhereException {
+		if (closed) {
+			throw new SiteWhereException("Journal is closed: " + directory.getAbsolutePath());
+		}
+		int required = LENGTH_SIZE + record.length;
+		if ((HEADER_SIZE + required) > segmentSize) {
+			throw new SiteWhereException("Journal record of " + record.length
+					+ " bytes does not fit in a segment of " + segmentSize + " bytes.");
+		}
+		Segment tail = segments.isEmpty() ? null : segments.getLast();
+		if ((tail == null) || (tail.getRemaining() < required)) {
+			if (segments.size() >= maxSegments) {
+				rejectedCount++;
+				return false;
+			}
+			tail = new Segment(nextSegmentId++, 0);
+			segments.add(tail);
+		}
+		tail.write(record);
+		depth++;
+		appendedCount++;
+		notifyAll();
+		return true;
+	}
+
+	/**
+	 * Get the oldest unread record without removing it, waiting up to the given time for
+	 * a record to be appended.
+	 * 
+	 * @param timeoutMillis
+	 * @return the record or null if none was available
+	 * @throws InterruptedException
+	 */
+	public synchronized byte[] peek(long timeoutMillis) throws InterruptedException {
+		if (depth == 0) {
+			wait(timeoutMillis);
+		}
+		if (depth == 0) {
+			return null;
+		}
+		return segments.getFirst().read();
+	}
+
+	/**
+	 * Remove the record returned by the last call to {@link #peek(long)}.
+	 */
+	public synchronized void commit() {
+		if (depth == 0) {
+			return;
+		}
+		Segment head = segments.getFirst();
+		head.advance();
+		depth--;
+		committedCount++;
+		if (head.isFullyRead()) {
+			if (segments.size() > 1) {
+				segments.removeFirst();
+				head.delete();
+			} else {
+				head.reset();
+			}
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Wait up to the given time for committed records to free space after an append was
+	 * rejected. Returns immediately if space is already available or the journal is
+	 * closed.
+	 * 
+	 * @param timeoutMillis
+	 * @throws InterruptedException
+	 */
+	public synchronized void awaitSpace(long timeoutMillis) throws InterruptedException {
+		if (closed || (segments.size() < maxSegments)) {
+			return;
+		}
+		wait(timeoutMillis);
+	}
+
+	/**
+	 * Indicates whether all records have been committed.
+	 * 
+	 * @return
+	 */
+	public synchronized boolean isEmpty() {
+		return depth == 0;
+	}
+
+	/**
+	 * Flush segments to disk and release resources. Unread records remain on disk and are
+	 * recovered by {@link #open()}.
+	 */
+	public synchronized void close() {
+		for (Segment segment : segments) {
+			segment.close();
+		}
+		segments.clear();
+		depth = 0;
+		closed = true;
+		notifyAll();
+	}
+
+	/**
+	 * Get the number of records waiting to be read.
+	 * 
+	 * @return
+	 */
+	public synchronized long getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Get the number of bytes of disk space allocated to segments.
+	 * 
+	 * @return
+	 */
+	public synchronized long getAllocatedBytes() {
+		return (long) segments.size() * segmentSize;
+	}
+
+	public synchronized long getAppendedCount() {
+		return appendedCount;
+	}
+
+	public synchronized long getCommittedCount() {
+		return committedCount;
+	}
+
+	public synchronized long getRejectedCount() {
+		return rejectedCount;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public int getSegmentSize() {
+		return segmentSize;
+	}
+
+	public int getMaxSegments() {
+		return maxSegments;
+	}
+
+	/**
+	 * Get file for the segment with the given id.
+	 * 
+	 * @param id
+	 * @return
+	 */
+	protected File getSegmentFile(long id) {
+		return new File(directory, SEGMENT_PREFIX + String.format("%019d", id) + SEGMENT_SUFFIX);
+	}
+
+	/**
+	 * Get the segment id from a segment file name.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected long parseSegmentId(File file) throws SiteWhereException {
+		String name = file.getName();
+		try {
+			return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length()
+					- SEGMENT_SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			throw new SiteWhereException("Invalid journal segment file name: " + name, e);
+		}
+	}
+
+	/**
+	 * Single memory-mapped segment file.
+	 * 
+	 * @author Derek
+	 */
+	private class Segment {
+
+		/** Segment file */
+		private File file;
+
+		/** File handle */
+		private RandomAccessFile raf;
+
+		/** Mapped contents of file */
+		private MappedByteBuffer buffer;
+
+		/** Offset of next unread record */
+		private int readPosition = HEADER_SIZE;
+
+		/** Offset where next record is written */
+		private int writePosition = HEADER_SIZE;
+
+		public Segment(long id, long existingLength) throws SiteWhereException {
+			this.file = getSegmentFile(id);
+			try {
+				this.raf = new RandomAccessFile(file, "rw");
+				int size = (int) Math.max(existingLength, segmentSize);
+				raf.setLength(size);
+				this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+				if (existingLength == 0) {
+					buffer.putInt(0, HEADER_SIZE);
+					buffer.putInt(HEADER_SIZE, 0);
+				}
+			} catch (IOException e) {
+				throw new SiteWhereException("Unable to map journal segment: " + file.getAbsolutePath(), e);
+			}
+		}
+
+		/**
+		 * Rebuild positions and depth from segment contents.
+		 */
+		public void recover() {
+			this.readPosition = buffer.getInt(0);
+			int position = HEADER_SIZE;
+			while ((position + LENGTH_SIZE) <= buffer.capacity()) {
+				int length = buffer.getInt(position);
+				if ((length <= 0) || ((position + LENGTH_SIZE + length) > buffer.capacity())) {
+					break;
+				}
+				if (position >= readPosition) {
+					depth++;
+				}
+				position += LENGTH_SIZE + length;
+			}
+			this.writePosition = position;
+		}
+
+		/**
+		 * Get space available for new records.
+		 * 
+		 * @return
+		 */
+		public int getRemaining() {
+			return buffer.capacity() - writePosition;
+		}
+
+		/**
+		 * Write a record and mark the end of written data after it.
+		 * 
+		 * @param record
+		 */
+		public void write(byte[] record) {
+			ByteBuffer view = buffer.duplicate();
+			view.position(writePosition + LENGTH_SIZE);
+			view.put(record);
+			int next = writePosition + LENGTH_SIZE + record.length;
+			if ((next + LENGTH_SIZE) <= buffer.capacity()) {
+				buffer.putInt(next, 0);
+			}
+
+			// Length is written last so a partial record is never seen as complete.
+			buffer.putInt(writePosition, record.length);
+			writePosition = next;
+		}
+
+		/**
+		 * Read the record at the read position.
+		 * 
+		 * @return
+		 */
+		public byte[] read() {
+			int length = buffer.getInt(readPosition);
+			byte[] record = new byte[length];
+			ByteBuffer view = buffer.duplicate();
+			view.position(readPosition + LENGTH_SIZE);
+			view.get(record);
+			return record;
+		}
+
+		/**
+		 * Move past the record at the read position and persist the new position.
+		 */
+		public void advance() {
+			readPosition += LENGTH_SIZE + buffer.getInt(readPosition);
+			buffer.putInt(0, readPosition);
+		}
+
+		/**
+		 * Indicates whether all written records have been read.
+		 * 
+		 * @return
+		 */
+		public boolean isFullyRead() {
+			return readPosition >= writePosition;
+		}
+
+		/**
+		 * Discard all records so the segment can be reused.
+		 */
+		public void reset() {
+			buffer.putInt(HEADER_SIZE, 0);
+			buffer.putInt(0, HEADER_SIZE);
+			readPosition = HEADER_SIZE;
+			writePosition = HEADER_SIZE;
+		}
+
+		/**
+		 * Flush contents to disk and close the file.
+		 */
+		public void close() {
+			buffer.force();
+			try {
+				raf.close();
+			} catch (IOException e) {
+				LOGGER.warn("Unable to close journal segment: " + file.getAbsolutePath(), e);
+			}
+		}
+
+		/**
+		 * Close and delete the segment file.
+		 */
+		public void delete() {
+			try {
+				raf.close();
+			} catch (IOException e) {
+				LOGGER.warn("Unable to close journal segment: " + file.getAbsolutePath(), e);
+			}
+			if (!file.delete()) {
+				// Some platforms do not allow deleting a file while it is still mapped.
+				LOGGER.warn("Unable to delete journal segment: " + file.getAbsolutePath());
+				file.deleteOnExit();
+			}
+		}
+	}
+}
@@ -11,28 +11,45 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.sitewhere.rest.model.device.event.DeviceEventBatch;
+import com.sitewhere.rest.model.device.event.request.DeviceAlertCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceLocationCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceMeasurementsCreateRequest;
 import com.sitewhere.rest.model.device.provisioning.DecodedDeviceEventRequest;
 import com.sitewhere.spi.SiteWhereException;
-import com.sitewhere.spi.device.event.request.IDeviceAlertCreateRequest;
-import com.sitewhere.spi.device.event.request.IDeviceLocationCreateRequest;
-import com.sitewhere.spi.device.event.request.IDeviceMeasurementsCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceEventCreateRequest;
+import com.sitewhere.spi.device.provisioning.IDecodedDeviceEventHandler;
 import com.sitewhere.spi.device.provisioning.IDecodedDeviceEventRequest;
-import com.sitewhere.spi.device.provisioning.IDeviceEventDecoder;
+import com.sitewhere.spi.device.provisioning.IStreamingDeviceEventDecoder;
 
 /**
  * Event decoder that converts a binary payload into the default SiteWhere REST
  * implementations using Jackson to marshal them as JSON.
  * 
+ * The payload is read as a stream of {@link DeviceEventBatch} objects, so a single batch
+ * or newline-delimited batches are both accepted. Each measurement, location and alert is
+ * handed off as soon as it has been parsed rather than after the whole batch has been
+ * mapped into memory.
+ * 
  * @author Derek
  */
-public class JsonBatchEventDecoder implements IDeviceEventDecoder<byte[]> {
+public class JsonBatchEventDecoder implements IStreamingDeviceEventDecoder<byte[]> {
 
 	/** Used to map data into an object based on JSON parsing */
-	private ObjectMapper mapper = new ObjectMapper();
+	private static ObjectMapper MAPPER = new ObjectMapper();
+
+	/** Reads measurements (readers are immutable and shared by all threads) */
+	private static ObjectReader MEASUREMENTS_READER = MAPPER.reader(DeviceMeasurementsCreateRequest.class);
+
+	/** Reads locations */
+	private static ObjectReader LOCATION_READER = MAPPER.reader(DeviceLocationCreateRequest.class);
+
+	/** Reads alerts */
+	private static ObjectReader ALERT_READER = MAPPER.reader(DeviceAlertCreateRequest.class);
 
 	/*
 	 * (non-Javadoc)
@@ -42,34 +59,191 @@ public class JsonBatchEventDecoder implements IDeviceEventDecoder<byte[]> {
 	 */
 	@Override
 	public List<IDecodedDeviceEventRequest> decode(byte[] payload) throws SiteWhereException {
-		try {
-			List<IDecodedDeviceEventRequest> events = new ArrayList<IDecodedDeviceEventRequest>();
-			DeviceEventBatch batch = mapper.readValue(payload, DeviceEventBatch.class);
-			for (IDeviceLocationCreateRequest lc : batch.getLocations()) {
-				DecodedDeviceEventRequest decoded = new DecodedDeviceEventRequest();
-				decoded.setHardwareId(batch.getHardwareId());
-				decoded.setRequest(lc);
-				events.add(decoded);
-			}
-			for (IDeviceMeasurementsCreateRequest mc : batch.getMeasurements()) {
-				DecodedDeviceEventRequest decoded = new DecodedDeviceEventRequest();
-				decoded.setHardwareId(batch.getHardwareId());
-				decoded.setRequest(mc);
+		final List<IDecodedDeviceEventRequest> events = new ArrayList<IDecodedDeviceEventRequest>();
+		decode(payload, new IDecodedDeviceEventHandler() {
+
+			@Override
+			public void onEventDecoded(IDecodedDeviceEventRequest decoded) throws SiteWhereException {
 				events.add(decoded);
 			}
-			for (IDeviceAlertCreateRequest ac : batch.getAlerts()) {
-				DecodedDeviceEventRequest decoded = new DecodedDeviceEventRequest();
-				decoded.setHardwareId(batch.getHardwareId());
-				decoded.setRequest(ac);
-				events.add(decoded);
+		});
+		return events;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.provisioning.IStreamingDeviceEventDecoder#decode(java.lang
+	 * .Object, com.sitewhere.spi.device.provisioning.IDecodedDeviceEventHandler)
+	 */
+	@Override
+	public void decode(byte[] payload, IDecodedDeviceEventHandler handler) throws SiteWhereException {
+		JsonParser parser = null;
+		try {
+			parser = MAPPER.getFactory().createParser(payload);
+			JsonToken token;
+			while ((token = parser.nextToken()) != null) {
+				if (token != JsonToken.START_OBJECT) {
+					throw new SiteWhereException("Expected JSON object for event batch but found " + token
+							+ ".");
+				}
+				parseBatch(parser, handler);
 			}
-			return events;
-		} catch (JsonParseException e) {
-			throw new SiteWhereException(e);
-		} catch (JsonMappingException e) {
-			throw new SiteWhereException(e);
 		} catch (IOException e) {
 			throw new SiteWhereException(e);
+		} finally {
+			if (parser != null) {
+				try {
+					parser.close();
+				} catch (IOException e) {
+					// Parser only wraps an in-memory buffer.
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parse a single batch object. The parser is positioned on the opening brace.
+	 * 
+	 * @param parser
+	 * @param handler
+	 * @throws IOException
+	 * @throws SiteWhereException
+	 */
+	protected void parseBatch(JsonParser parser, IDecodedDeviceEventHandler handler) throws IOException,
+			SiteWhereException {
+		BatchContext batch = new BatchContext(handler);
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			JsonToken value = parser.nextToken();
+			if ("hardwareId".equals(field)) {
+				batch.setHardwareId((value == JsonToken.VALUE_NULL) ? null : parser.getText());
+			} else if ("measurements".equals(field)) {
+				parseEvents(parser, value, MEASUREMENTS_READER, batch);
+			} else if ("locations".equals(field)) {
+				parseEvents(parser, value, LOCATION_READER, batch);
+			} else if ("alerts".equals(field)) {
+				parseEvents(parser, value, ALERT_READER, batch);
+			} else if ("replyTo".equals(field)) {
+				parser.skipChildren();
+			} else {
+				throw new SiteWhereException("Unrecognized field in event batch: " + field);
+			}
+		}
+		batch.flush();
+	}
+
+	/**
+	 * Parse an array of events, passing each one on as it is read. Null entries are
+	 * skipped.
+	 * 
+	 * @param parser
+	 * @param value
+	 * @param reader
+	 * @param batch
+	 * @throws IOException
+	 * @throws SiteWhereException
+	 */
+	protected void parseEvents(JsonParser parser, JsonToken value, ObjectReader reader, BatchContext batch)
+			throws IOException, SiteWhereException {
+		if (value == JsonToken.VALUE_NULL) {
+			return;
+		}
+		if (value != JsonToken.START_ARRAY) {
+			throw new SiteWhereException("Expected array of events but found " + value + ".");
+		}
+		JsonToken token;
+		while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+			if (token == JsonToken.VALUE_NULL) {
+				continue;
+			}
+			if (token != JsonToken.START_OBJECT) {
+				throw new SiteWhereException("Expected event object but found " + token + ".");
+			}
+			IDeviceEventCreateRequest request = reader.readValue(parser);
+			batch.onEvent(request);
+		}
+	}
+
+	/**
+	 * Tracks the hardware id for the batch being parsed. Events that appear before the
+	 * hardware id in the document are held until it is known.
+	 * 
+	 * @author Derek
+	 */
+	private static class BatchContext {
+
+		/** Handler that receives decoded events */
+		private IDecodedDeviceEventHandler handler;
+
+		/** Hardware id for batch */
+		private String hardwareId;
+
+		/** Indicates whether hardware id has been read */
+		private boolean hardwareIdKnown = false;
+
+		/** Events waiting for hardware id */
+		private List<IDeviceEventCreateRequest> pending;
+
+		public BatchContext(IDecodedDeviceEventHandler handler) {
+			this.handler = handler;
+		}
+
+		/**
+		 * Set the hardware id and release any events waiting on it.
+		 * 
+		 * @param hardwareId
+		 * @throws SiteWhereException
+		 */
+		public void setHardwareId(String hardwareId) throws SiteWhereException {
+			this.hardwareId = hardwareId;
+			this.hardwareIdKnown = true;
+			flush();
+		}
+
+		/**
+		 * Pass an event to the handler or hold it until the hardware id is known.
+		 * 
+		 * @param request
+		 * @throws SiteWhereException
+		 */
+		public void onEvent(IDeviceEventCreateRequest request) throws SiteWhereException {
+			if (hardwareIdKnown) {
+				emit(request);
+			} else {
+				if (pending == null) {
+					pending = new ArrayList<IDeviceEventCreateRequest>();
+				}
+				pending.add(request);
+			}
+		}
+
+		/**
+		 * Pass on any held events.
+		 * 
+		 * @throws SiteWhereException
+		 */
+		public void flush() throws SiteWhereException {
+			if (pending != null) {
+				for (IDeviceEventCreateRequest request : pending) {
+					emit(request);
+				}
+				pending = null;
+			}
+		}
+
+		/**
+		 * Wrap an event with the batch hardware id and pass it to the handler.
+		 * 
+		 * @param request
+		 * @throws SiteWhereException
+		 */
+		protected void emit(IDeviceEventCreateRequest request) throws SiteWhereException {
+			DecodedDeviceEventRequest decoded = new DecodedDeviceEventRequest();
+			decoded.setHardwareId(hardwareId);
+			decoded.setRequest(request);
+			handler.onEventDecoded(decoded);
 		}
 	}
-}
\ No newline at end of file
+}
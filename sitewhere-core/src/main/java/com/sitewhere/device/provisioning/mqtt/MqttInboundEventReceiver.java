@@ -64,6 +64,9 @@ public class MqttInboundEventReceiver extends LifecycleComponent implements IInb
 	/** Shared MQTT connection */
 	private BlockingConnection connection;
 
+	/** Indicates whether reading from the connection is suspended */
+	private boolean paused = false;
+
 	/** Used to execute MQTT subscribe in separate thread */
 	private ExecutorService executor = Executors.newSingleThreadExecutor(new SubscribersThreadFactory());
 
@@ -151,6 +154,35 @@ public class MqttInboundEventReceiver extends LifecycleComponent implements IInb
 		getEventSource().onEncodedEventReceived(MqttInboundEventReceiver.this, payload);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.provisioning.IInboundEventReceiver#pauseDelivery()
+	 */
+	@Override
+	public synchronized void pauseDelivery() {
+		if (!paused && (connection != null)) {
+			// Stops reading from the socket, so unacknowledged messages stay with the broker.
+			connection.suspend();
+			paused = true;
+			LOGGER.info("Suspended MQTT subscription on topic: " + getTopic());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.provisioning.IInboundEventReceiver#resumeDelivery()
+	 */
+	@Override
+	public synchronized void resumeDelivery() {
+		if (paused && (connection != null)) {
+			connection.resume();
+			paused = false;
+			LOGGER.info("Resumed MQTT subscription on topic: " + getTopic());
+		}
+	}
+
 	/**
 	 * Pulls messages from the MQTT topic and puts them on the queue for this receiver.
 	 * 
@@ -183,6 +215,7 @@ public class MqttInboundEventReceiver extends LifecycleComponent implements IInb
 	@Override
 	public void stop() throws SiteWhereException {
 		executor.shutdownNow();
+		resumeDelivery();
 		try {
 			connection.disconnect();
 			connection.kill();
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.provisioning.socket;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.provisioning.IInboundEventReceiver;
+import com.sitewhere.spi.device.provisioning.socket.ISocketInteractionHandler;
+import com.sitewhere.spi.device.provisioning.socket.ISocketInteractionHandlerFactory;
+
+/**
+ * Implementation of {@link ISocketInteractionHandler} that keeps the client connection
+ * open and sends each newline-terminated line to the parent event source as a separate
+ * byte array. Used with newline-delimited JSON so one connection can carry an unbounded
+ * stream of event batches.
+ * 
+ * @author Derek
+ */
+public class LineDelimitedInteractionHandler implements ISocketInteractionHandler<byte[]> {
+
+	/** Default maximum line length in bytes */
+	public static final int DEFAULT_MAX_LINE_LENGTH = 1024 * 1024;
+
+	/** Maximum line length in bytes */
+	private int maxLineLength = DEFAULT_MAX_LINE_LENGTH;
+
+	public LineDelimitedInteractionHandler(int maxLineLength) {
+		this.maxLineLength = maxLineLength;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.provisioning.socket.ISocketInteractionHandler#process(
+	 * java.net.Socket, com.sitewhere.spi.device.provisioning.IInboundEventReceiver)
+	 */
+	@Override
+	public void process(Socket socket, IInboundEventReceiver<byte[]> receiver) throws SiteWhereException {
+		try {
+			InputStream input = new BufferedInputStream(socket.getInputStream());
+			try {
+				ByteArrayOutputStream line = new ByteArrayOutputStream();
+				int value;
+				while ((value = input.read()) != -1) {
+					if (value == '\n') {
+						deliver(line, receiver);
+					} else if (line.size() >= maxLineLength) {
+						throw new SiteWhereException("Line exceeds maximum length of " + maxLineLength
+								+ " bytes.");
+					} else {
+						line.write(value);
+					}
+				}
+				deliver(line, receiver);
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			throw new SiteWhereException("Exception processing request in socket interaction handler.", e);
+		}
+	}
+
+	/**
+	 * Send the buffered line to the receiver unless it is blank, then reset the buffer.
+	 * 
+	 * @param line
+	 * @param receiver
+	 */
+	protected void deliver(ByteArrayOutputStream line, IInboundEventReceiver<byte[]> receiver) {
+		byte[] payload = line.toByteArray();
+		line.reset();
+		for (byte current : payload) {
+			if (!Character.isWhitespace(current)) {
+				receiver.onEventPayloadReceived(payload);
+				return;
+			}
+		}
+	}
+
+	public int getMaxLineLength() {
+		return maxLineLength;
+	}
+
+	/**
+	 * Factory class that produces {@link LineDelimitedInteractionHandler} instances.
+	 * 
+	 * @author Derek
+	 */
+	public static class Factory implements ISocketInteractionHandlerFactory<byte[]> {
+
+		/** Maximum line length in bytes */
+		private int maxLineLength = DEFAULT_MAX_LINE_LENGTH;
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * com.sitewhere.spi.device.provisioning.socket.ISocketInteractionHandlerFactory
+		 * #newInstance()
+		 */
+		@Override
+		public ISocketInteractionHandler<byte[]> newInstance() {
+			return new LineDelimitedInteractionHandler(getMaxLineLength());
+		}
+
+		public int getMaxLineLength() {
+			return maxLineLength;
+		}
+
+		public void setMaxLineLength(int maxLineLength) {
+			this.maxLineLength = maxLineLength;
+		}
+	}
+}
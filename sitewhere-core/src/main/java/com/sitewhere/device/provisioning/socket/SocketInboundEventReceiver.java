@@ -70,6 +70,9 @@ public class SocketInboundEventReceiver<T> extends LifecycleComponent implements
 	/** Handles processing of server requests */
 	private ServerProcessingThread processing;
 
+	/** Indicates whether accepting connections and reading sockets is paused */
+	private boolean paused = false;
+
 	public SocketInboundEventReceiver() {
 		super(LifecycleComponentType.InboundEventReceiver);
 	}
@@ -129,6 +132,7 @@ public class SocketInboundEventReceiver<T> extends LifecycleComponent implements
 		if (processing != null) {
 			processing.setTerminate(true);
 		}
+		resumeDelivery();
 		if (processingService != null) {
 			processingService.shutdown();
 		}
@@ -159,9 +163,12 @@ public class SocketInboundEventReceiver<T> extends LifecycleComponent implements
 		public void run() {
 			while (!terminate) {
 				try {
+					awaitResume();
 					Socket socket = server.accept();
 					RequestProcessingThread processor = new RequestProcessingThread(socket);
 					pool.submit(processor);
+				} catch (InterruptedException e) {
+					break;
 				} catch (IOException e) {
 					if (!terminate) {
 						LOGGER.error("Exception while accepting request in event receiver server socket.", e);
@@ -184,9 +191,53 @@ public class SocketInboundEventReceiver<T> extends LifecycleComponent implements
 	 */
 	@Override
 	public void onEventPayloadReceived(T payload) {
+		try {
+			// Holding the handler thread stops it reading, so TCP flow control slows the sender.
+			awaitResume();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 		getEventSource().onEncodedEventReceived(SocketInboundEventReceiver.this, payload);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.provisioning.IInboundEventReceiver#pauseDelivery()
+	 */
+	@Override
+	public synchronized void pauseDelivery() {
+		if (!paused) {
+			paused = true;
+			LOGGER.info("Paused socket receiver on port " + getPort() + ".");
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.provisioning.IInboundEventReceiver#resumeDelivery()
+	 */
+	@Override
+	public synchronized void resumeDelivery() {
+		if (paused) {
+			paused = false;
+			notifyAll();
+			LOGGER.info("Resumed socket receiver on port " + getPort() + ".");
+		}
+	}
+
+	/**
+	 * Block the calling thread while the receiver is paused.
+	 * 
+	 * @throws InterruptedException
+	 */
+	protected synchronized void awaitResume() throws InterruptedException {
+		while (paused) {
+			wait();
+		}
+	}
+
 	/**
 	 * Handles processing for a single request.
 	 * 
@@ -25,6 +25,9 @@ import com.vividsolutions.jts.geom.Polygon;
  */
 public class GeoUtils {
 
+	/** Mean radius of the earth in kilometers */
+	public static final double EARTH_RADIUS_KM = 6371.0088;
+
 	/**
 	 * Creates a JTS point from a device location.
 	 * 
@@ -65,4 +68,22 @@ public class GeoUtils {
 		LinearRing linear = new GeometryFactory().createLinearRing(coords);
 		return new Polygon(linear, null, fact);
 	}
+
+	/**
+	 * Get the great-circle distance between two points using the haversine formula.
+	 * 
+	 * @param lat1
+	 * @param lon1
+	 * @param lat2
+	 * @param lon2
+	 * @return distance in kilometers
+	 */
+	public static double getDistanceKm(double lat1, double lon1, double lat2, double lon2) {
+		double dLat = Math.toRadians(lat2 - lat1);
+		double dLon = Math.toRadians(lon2 - lon1);
+		double a =
+				Math.sin(dLat / 2) * Math.sin(dLat / 2) + Math.cos(Math.toRadians(lat1))
+						* Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+		return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+	}
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.geospatial;
+
+/**
+ * Encodes points as geohash strings. Each character adds five bits that alternately
+ * halve the longitude and latitude ranges, so points that share a prefix lie in the same
+ * rectangular cell and a shorter prefix is a larger cell.
+ * 
+ * @author Derek
+ */
+public class Geohash {
+
+	/** Characters used for each five-bit group */
+	private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+	/** Maximum supported precision */
+	public static final int MAX_PRECISION = 12;
+
+	/**
+	 * Encode a point at the given precision.
+	 * 
+	 * @param latitude
+	 * @param longitude
+	 * @param precision number of characters
+	 * @return
+	 */
+	public static String encode(double latitude, double longitude, int precision) {
+		double minLat = -90, maxLat = 90;
+		double minLon = -180, maxLon = 180;
+		char[] hash = new char[precision];
+		boolean even = true;
+		for (int i = 0; i < precision; i++) {
+			int value = 0;
+			for (int bit = 0; bit < 5; bit++) {
+				value <<= 1;
+				if (even) {
+					double mid = (minLon + maxLon) / 2;
+					if (longitude >= mid) {
+						value |= 1;
+						minLon = mid;
+					} else {
+						maxLon = mid;
+					}
+				} else {
+					double mid = (minLat + maxLat) / 2;
+					if (latitude >= mid) {
+						value |= 1;
+						minLat = mid;
+					} else {
+						maxLat = mid;
+					}
+				}
+				even = !even;
+			}
+			hash[i] = BASE32[value];
+		}
+		return new String(hash);
+	}
+
+	/**
+	 * Get the height of a cell in degrees of latitude.
+	 * 
+	 * @param precision
+	 * @return
+	 */
+	public static double getCellHeight(int precision) {
+		int bits = precision * 5;
+		return 180.0 / (1L << (bits / 2));
+	}
+
+	/**
+	 * Get the width of a cell in degrees of longitude.
+	 * 
+	 * @param precision
+	 * @return
+	 */
+	public static double getCellWidth(int precision) {
+		int bits = precision * 5;
+		return 360.0 / (1L << ((bits + 1) / 2));
+	}
+
+	/**
+	 * Wrap a longitude into the range -180 to 180.
+	 * 
+	 * @param longitude
+	 * @return
+	 */
+	public static double normalizeLongitude(double longitude) {
+		double result = longitude;
+		while (result < -180) {
+			result += 360;
+		}
+		while (result >= 180) {
+			result -= 360;
+		}
+		return result;
+	}
+}
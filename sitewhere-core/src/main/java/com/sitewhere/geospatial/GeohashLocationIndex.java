@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.geospatial;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.sitewhere.rest.model.device.event.DeviceLocation;
+import com.sitewhere.spi.device.event.IDeviceLocation;
+
+/**
+ * In-memory index of the last known location for each device assignment. Locations are
+ * stored in a sorted map keyed by geohash, so all locations in a geohash cell are found
+ * with a single range scan. A radius query scans the cells that cover its bounding box,
+ * choosing a cell size that keeps the number of scans small, then checks the exact
+ * distance of each candidate.
+ * 
+ * @author Derek
+ */
+public class GeohashLocationIndex {
+
+	/** Geohash precision used for stored keys (cells of a few meters) */
+	private static final int INDEX_PRECISION = 9;
+
+	/** Maximum number of cells scanned for a query */
+	private static final int MAX_QUERY_CELLS = 64;
+
+	/** Separates geohash from assignment token in keys */
+	private static final char KEY_SEPARATOR = '|';
+
+	/** Sorts after any character used in keys, so it ends a prefix range */
+	private static final char PREFIX_END = '~';
+
+	/** Locations keyed by geohash and assignment token */
+	private ConcurrentSkipListMap<String, IDeviceLocation> locations =
+			new ConcurrentSkipListMap<String, IDeviceLocation>();
+
+	/** Current key for each assignment token */
+	private Map<String, String> keys = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * Record a location as the last known location for its assignment. Locations older
+	 * than the one already stored are ignored.
+	 * 
+	 * @param location
+	 */
+	public synchronized void update(IDeviceLocation location) {
+		String token = location.getDeviceAssignmentToken();
+		if ((token == null) || (location.getLatitude() == null) || (location.getLongitude() == null)) {
+			return;
+		}
+		String existingKey = keys.get(token);
+		if (existingKey != null) {
+			IDeviceLocation existing = locations.get(existingKey);
+			if ((existing != null) && isOlder(location, existing)) {
+				return;
+			}
+			locations.remove(existingKey);
+		}
+		String key =
+				Geohash.encode(location.getLatitude(), location.getLongitude(), INDEX_PRECISION)
+						+ KEY_SEPARATOR + token;
+		locations.put(key, DeviceLocation.copy(location));
+		keys.put(token, key);
+	}
+
+	/**
+	 * Remove the location for an assignment.
+	 * 
+	 * @param assignmentToken
+	 */
+	public synchronized void remove(String assignmentToken) {
+		String key = keys.remove(assignmentToken);
+		if (key != null) {
+			locations.remove(key);
+		}
+	}
+
+	/**
+	 * Remove all locations.
+	 */
+	public synchronized void clear() {
+		locations.clear();
+		keys.clear();
+	}
+
+	/**
+	 * Get the number of assignments in the index.
+	 * 
+	 * @return
+	 */
+	public int getSize() {
+		return keys.size();
+	}
+
+	/**
+	 * Get the last known locations within a radius of a point, nearest first.
+	 * 
+	 * @param latitude
+	 * @param longitude
+	 * @param radiusKm
+	 * @param maxResults
+	 * @return
+	 */
+	public List<IDeviceLocation> getNearest(double latitude, double longitude, double radiusKm,
+			int maxResults) {
+		double latDelta = Math.toDegrees(radiusKm / GeoUtils.EARTH_RADIUS_KM);
+		double minLat = Math.max(-90, latitude - latDelta);
+		double maxLat = Math.min(90, latitude + latDelta);
+		double minLon = -180;
+		double maxLon = 180;
+		double widest = Math.max(Math.abs(minLat), Math.abs(maxLat));
+		if (widest < 89) {
+			double lonDelta =
+					Math.toDegrees(radiusKm / (GeoUtils.EARTH_RADIUS_KM * Math.cos(Math.toRadians(widest))));
+			if (lonDelta < 180) {
+				minLon = longitude - lonDelta;
+				maxLon = longitude + lonDelta;
+			}
+		}
+
+		List<Candidate> candidates = new ArrayList<Candidate>();
+		for (String cell : getCoveringCells(minLat, maxLat, minLon, maxLon)) {
+			for (IDeviceLocation location : locations.subMap(cell, cell + PREFIX_END).values()) {
+				double distance =
+						GeoUtils.getDistanceKm(latitude, longitude, location.getLatitude(),
+								location.getLongitude());
+				if (distance <= radiusKm) {
+					candidates.add(new Candidate(location, distance));
+				}
+			}
+		}
+		Collections.sort(candidates, new Comparator<Candidate>() {
+
+			@Override
+			public int compare(Candidate a, Candidate b) {
+				return Double.compare(a.distance, b.distance);
+			}
+		});
+		List<IDeviceLocation> results = new ArrayList<IDeviceLocation>();
+		for (Candidate candidate : candidates) {
+			if ((maxResults > 0) && (results.size() >= maxResults)) {
+				break;
+			}
+			results.add(candidate.location);
+		}
+		return results;
+	}
+
+	/**
+	 * Get geohash cells that cover a bounding box. Uses the finest precision that needs
+	 * no more than {@link #MAX_QUERY_CELLS} cells.
+	 * 
+	 * @param minLat
+	 * @param maxLat
+	 * @param minLon
+	 * @param maxLon
+	 * @return
+	 */
+	protected Set<String> getCoveringCells(double minLat, double maxLat, double minLon, double maxLon) {
+		int precision = INDEX_PRECISION;
+		while (precision > 1) {
+			long rows = (long) Math.ceil((maxLat - minLat) / Geohash.getCellHeight(precision)) + 1;
+			long cols = (long) Math.ceil((maxLon - minLon) / Geohash.getCellWidth(precision)) + 1;
+			if ((rows * cols) <= MAX_QUERY_CELLS) {
+				break;
+			}
+			precision--;
+		}
+		double height = Geohash.getCellHeight(precision);
+		double width = Geohash.getCellWidth(precision);
+		int rows = (int) Math.ceil((maxLat - minLat) / height) + 1;
+		int cols = (int) Math.ceil((maxLon - minLon) / width) + 1;
+		Set<String> cells = new HashSet<String>();
+		for (int row = 0; row < rows; row++) {
+			double lat = Math.min(minLat + (row * height), maxLat);
+			for (int col = 0; col < cols; col++) {
+				double lon = Math.min(minLon + (col * width), maxLon);
+				cells.add(Geohash.encode(lat, Geohash.normalizeLongitude(lon), precision));
+			}
+		}
+		return cells;
+	}
+
+	/**
+	 * Indicates whether a location happened before another.
+	 * 
+	 * @param location
+	 * @param existing
+	 * @return
+	 */
+	protected boolean isOlder(IDeviceLocation location, IDeviceLocation existing) {
+		if ((location.getEventDate() == null) || (existing.getEventDate() == null)) {
+			return false;
+		}
+		return location.getEventDate().before(existing.getEventDate());
+	}
+
+	/**
+	 * Location found by a query along with its distance from the query point.
+	 * 
+	 * @author Derek
+	 */
+	private static class Candidate {
+
+		/** Matched location */
+		private IDeviceLocation location;
+
+		/** Distance in kilometers */
+		private double distance;
+
+		public Candidate(IDeviceLocation location, double distance) {
+			this.location = location;
+			this.distance = distance;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.geospatial;
+
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import com.sitewhere.server.lifecycle.LifecycleComponent;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.IDeviceLocation;
+import com.sitewhere.spi.search.external.ILocationSearchProvider;
+import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
+
+/**
+ * Implementation of {@link ILocationSearchProvider} that answers queries from a
+ * {@link GeohashLocationIndex} held in memory. The index is kept up to date by a
+ * {@link LocationIndexEventProcessor} in the outbound processing chain, so no external
+ * search server is needed.
+ * 
+ * @author Derek
+ */
+public class GeohashLocationSearchProvider extends LifecycleComponent implements ILocationSearchProvider {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(GeohashLocationSearchProvider.class);
+
+	/** Id returned for provider */
+	private static final String ID = "locations";
+
+	/** Name returned for provider */
+	private static final String NAME = "In-Memory Location Index";
+
+	/** Provider id */
+	private String id = ID;
+
+	/** Provider name */
+	private String name = NAME;
+
+	/** Index that holds locations */
+	private GeohashLocationIndex index;
+
+	public GeohashLocationSearchProvider() {
+		super(LifecycleComponentType.SearchProvider);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#start()
+	 */
+	@Override
+	public void start() throws SiteWhereException {
+		if (getIndex() == null) {
+			throw new SiteWhereException("No location index provided to " + getClass().getName());
+		}
+		LOGGER.info("Location search provider started.");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#getLogger()
+	 */
+	@Override
+	public Logger getLogger() {
+		return LOGGER;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#stop()
+	 */
+	@Override
+	public void stop() throws SiteWhereException {
+		LOGGER.info("Stopped location search provider.");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.search.external.ILocationSearchProvider#getNearestLocations(double
+	 * , double, double, int)
+	 */
+	@Override
+	public List<IDeviceLocation> getNearestLocations(double latitude, double longitude, double radiusKm,
+			int maxResults) throws SiteWhereException {
+		return getIndex().getNearest(latitude, longitude, radiusKm, maxResults);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.search.external.ISearchProvider#getId()
+	 */
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.search.external.ISearchProvider#getName()
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public GeohashLocationIndex getIndex() {
+		return index;
+	}
+
+	public void setIndex(GeohashLocationIndex index) {
+		this.index = index;
+	}
+}
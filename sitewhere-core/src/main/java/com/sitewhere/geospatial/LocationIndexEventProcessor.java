@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.geospatial;
+
+import org.apache.log4j.Logger;
+
+import com.sitewhere.SiteWhere;
+import com.sitewhere.device.event.processor.OutboundEventProcessor;
+import com.sitewhere.rest.model.search.SearchCriteria;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.DeviceAssignmentStatus;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceManagement;
+import com.sitewhere.spi.device.ISite;
+import com.sitewhere.spi.device.event.IDeviceLocation;
+import com.sitewhere.spi.device.event.processor.IOutboundEventProcessor;
+import com.sitewhere.spi.search.ISearchResults;
+
+/**
+ * {@link IOutboundEventProcessor} that keeps a {@link GeohashLocationIndex} up to date
+ * with the last known location of each device assignment. On startup the index can be
+ * loaded from the last location stored in the state of each active assignment.
+ * 
+ * @author Derek
+ */
+public class LocationIndexEventProcessor extends OutboundEventProcessor {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(LocationIndexEventProcessor.class);
+
+	/** Index that holds locations */
+	private GeohashLocationIndex index;
+
+	/** Indicates whether the index is loaded from assignment state on startup */
+	private boolean preload = true;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#start()
+	 */
+	@Override
+	public void start() throws SiteWhereException {
+		if (getIndex() == null) {
+			throw new SiteWhereException("No location index provided to " + getClass().getName());
+		}
+		if (isPreload()) {
+			preloadIndex();
+		}
+	}
+
+	/**
+	 * Load the last location of each active assignment into the index.
+	 */
+	protected void preloadIndex() {
+		long start = System.currentTimeMillis();
+		try {
+			IDeviceManagement management = SiteWhere.getServer().getDeviceManagement();
+			for (ISite site : management.listSites(new SearchCriteria(1, 0)).getResults()) {
+				ISearchResults<IDeviceAssignment> assignments =
+						management.getDeviceAssignmentsForSite(site.getToken(), new SearchCriteria(1, 0));
+				for (IDeviceAssignment assignment : assignments.getResults()) {
+					if ((assignment.getStatus() == DeviceAssignmentStatus.Active)
+							&& (assignment.getState() != null)
+							&& (assignment.getState().getLastLocation() != null)) {
+						getIndex().update(assignment.getState().getLastLocation());
+					}
+				}
+			}
+			LOGGER.info("Loaded " + getIndex().getSize() + " assignment locations into location index in "
+					+ (System.currentTimeMillis() - start) + " ms.");
+		} catch (SiteWhereException e) {
+			LOGGER.warn("Unable to preload location index. Locations are indexed as events arrive.", e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#getLogger()
+	 */
+	@Override
+	public Logger getLogger() {
+		return LOGGER;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#stop()
+	 */
+	@Override
+	public void stop() throws SiteWhereException {
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.device.event.processor.OutboundEventProcessor#onLocation(com.sitewhere
+	 * .spi.device.event.IDeviceLocation)
+	 */
+	@Override
+	public void onLocation(IDeviceLocation location) throws SiteWhereException {
+		getIndex().update(location);
+	}
+
+	public GeohashLocationIndex getIndex() {
+		return index;
+	}
+
+	public void setIndex(GeohashLocationIndex index) {
+		this.index = index;
+	}
+
+	public boolean isPreload() {
+		return preload;
+	}
+
+	public void setPreload(boolean preload) {
+		this.preload = preload;
+	}
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hazelcast;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import com.sitewhere.common.MarshalUtils;
+import com.sitewhere.rest.model.device.event.DeviceAlert;
+import com.sitewhere.rest.model.device.event.DeviceCommandInvocation;
+import com.sitewhere.rest.model.device.event.DeviceCommandResponse;
+import com.sitewhere.rest.model.device.event.DeviceEvent;
+import com.sitewhere.rest.model.device.event.DeviceLocation;
+import com.sitewhere.rest.model.device.event.DeviceMeasurements;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.DeviceAssignmentType;
+import com.sitewhere.spi.device.event.AlertLevel;
+import com.sitewhere.spi.device.event.AlertSource;
+import com.sitewhere.spi.device.event.IDeviceAlert;
+import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
+import com.sitewhere.spi.device.event.IDeviceCommandResponse;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceLocation;
+import com.sitewhere.spi.device.event.IDeviceMeasurements;
+
+/**
+ * Group of device events published as a single Hazelcast message. Measurements, locations
+ * and alerts are written field by field, which is much smaller and faster than default
+ * Java serialization. Command invocations and responses have deeper object graphs and
+ * lower rates, so they are written as JSON.
+ * 
+ * Members that read batches must register {@link SiteWhereDataSerializableFactory}.
+ * 
+ * @author Derek
+ */
+public class DeviceEventBatch implements IdentifiedDataSerializable {
+
+	/** Marks a measurements event */
+	private static final byte MEASUREMENTS = 1;
+
+	/** Marks a location event */
+	private static final byte LOCATION = 2;
+
+	/** Marks an alert event */
+	private static final byte ALERT = 3;
+
+	/** Marks a command invocation event */
+	private static final byte COMMAND_INVOCATION = 4;
+
+	/** Marks a command response event */
+	private static final byte COMMAND_RESPONSE = 5;
+
+	/** Events in the batch */
+	private List<IDeviceEvent> events;
+
+	public DeviceEventBatch() {
+		this(new ArrayList<IDeviceEvent>());
+	}
+
+	public DeviceEventBatch(List<IDeviceEvent> events) {
+		this.events = events;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.hazelcast.nio.serialization.IdentifiedDataSerializable#getFactoryId()
+	 */
+	@Override
+	public int getFactoryId() {
+		return SiteWhereDataSerializableFactory.FACTORY_ID;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.hazelcast.nio.serialization.IdentifiedDataSerializable#getId()
+	 */
+	@Override
+	public int getId() {
+		return SiteWhereDataSerializableFactory.DEVICE_EVENT_BATCH;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.hazelcast.nio.serialization.DataSerializable#writeData(com.hazelcast.nio.ObjectDataOutput
+	 * )
+	 */
+	@Override
+	public void writeData(ObjectDataOutput out) throws IOException {
+		out.writeInt(events.size());
+		for (IDeviceEvent event : events) {
+			if (event instanceof IDeviceMeasurements) {
+				out.writeByte(MEASUREMENTS);
+				writeEvent(out, event);
+				Map<String, Double> measurements = ((IDeviceMeasurements) event).getMeasurements();
+				out.writeInt(measurements.size());
+				for (Map.Entry<String, Double> entry : measurements.entrySet()) {
+					out.writeUTF(entry.getKey());
+					writeDouble(out, entry.getValue());
+				}
+			} else if (event instanceof IDeviceLocation) {
+				IDeviceLocation location = (IDeviceLocation) event;
+				out.writeByte(LOCATION);
+				writeEvent(out, event);
+				writeDouble(out, location.getLatitude());
+				writeDouble(out, location.getLongitude());
+				writeDouble(out, location.getElevation());
+			} else if (event instanceof IDeviceAlert) {
+				IDeviceAlert alert = (IDeviceAlert) event;
+				out.writeByte(ALERT);
+				writeEvent(out, event);
+				out.writeUTF((alert.getSource() != null) ? alert.getSource().name() : null);
+				out.writeUTF((alert.getLevel() != null) ? alert.getLevel().name() : null);
+				out.writeUTF(alert.getType());
+				out.writeUTF(alert.getMessage());
+			} else if (event instanceof IDeviceCommandInvocation) {
+				out.writeByte(COMMAND_INVOCATION);
+				out.writeByteArray(marshal(event));
+			} else if (event instanceof IDeviceCommandResponse) {
+				out.writeByte(COMMAND_RESPONSE);
+				out.writeByteArray(marshal(event));
+			} else {
+				throw new IOException("Unable to write event of type " + event.getClass().getName());
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.hazelcast.nio.serialization.DataSerializable#readData(com.hazelcast.nio.ObjectDataInput
+	 * )
+	 */
+	@Override
+	public void readData(ObjectDataInput in) throws IOException {
+		int count = in.readInt();
+		events = new ArrayList<IDeviceEvent>(count);
+		for (int i = 0; i < count; i++) {
+			byte type = in.readByte();
+			switch (type) {
+			case MEASUREMENTS: {
+				DeviceMeasurements measurements = new DeviceMeasurements();
+				readEvent(in, measurements);
+				int size = in.readInt();
+				for (int j = 0; j < size; j++) {
+					measurements.addOrReplaceMeasurement(in.readUTF(), readDouble(in));
+				}
+				events.add(measurements);
+				break;
+			}
+			case LOCATION: {
+				DeviceLocation location = new DeviceLocation();
+				readEvent(in, location);
+				location.setLatitude(readDouble(in));
+				location.setLongitude(readDouble(in));
+				location.setElevation(readDouble(in));
+				events.add(location);
+				break;
+			}
+			case ALERT: {
+				DeviceAlert alert = new DeviceAlert();
+				readEvent(in, alert);
+				String source = in.readUTF();
+				alert.setSource((source != null) ? AlertSource.valueOf(source) : null);
+				String level = in.readUTF();
+				alert.setLevel((level != null) ? AlertLevel.valueOf(level) : null);
+				alert.setType(in.readUTF());
+				alert.setMessage(in.readUTF());
+				events.add(alert);
+				break;
+			}
+			case COMMAND_INVOCATION: {
+				events.add(unmarshal(in.readByteArray(), DeviceCommandInvocation.class));
+				break;
+			}
+			case COMMAND_RESPONSE: {
+				events.add(unmarshal(in.readByteArray(), DeviceCommandResponse.class));
+				break;
+			}
+			default: {
+				throw new IOException("Unknown event type in batch: " + type);
+			}
+			}
+		}
+	}
+
+	/**
+	 * Write fields common to all events.
+	 * 
+	 * @param out
+	 * @param event
+	 * @throws IOException
+	 */
+	protected void writeEvent(ObjectDataOutput out, IDeviceEvent event) throws IOException {
+		out.writeUTF(event.getId());
+		out.writeUTF(event.getSiteToken());
+		out.writeUTF(event.getDeviceAssignmentToken());
+		out.writeUTF((event.getAssignmentType() != null) ? event.getAssignmentType().name() : null);
+		out.writeUTF(event.getAssetModuleId());
+		out.writeUTF(event.getAssetId());
+		writeDate(out, event.getEventDate());
+		writeDate(out, event.getReceivedDate());
+		Map<String, String> metadata = event.getMetadata();
+		out.writeInt((metadata != null) ? metadata.size() : 0);
+		if (metadata != null) {
+			for (Map.Entry<String, String> entry : metadata.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeUTF(entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Read fields common to all events.
+	 * 
+	 * @param in
+	 * @param event
+	 * @throws IOException
+	 */
+	protected void readEvent(ObjectDataInput in, DeviceEvent event) throws IOException {
+		event.setId(in.readUTF());
+		event.setSiteToken(in.readUTF());
+		event.setDeviceAssignmentToken(in.readUTF());
+		String assignmentType = in.readUTF();
+		event.setAssignmentType((assignmentType != null) ? DeviceAssignmentType.valueOf(assignmentType)
+				: null);
+		event.setAssetModuleId(in.readUTF());
+		event.setAssetId(in.readUTF());
+		event.setEventDate(readDate(in));
+		event.setReceivedDate(readDate(in));
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			event.addOrReplaceMetadata(in.readUTF(), in.readUTF());
+		}
+	}
+
+	/**
+	 * Write a date that may be null.
+	 * 
+	 * @param out
+	 * @param date
+	 * @throws IOException
+	 */
+	protected void writeDate(ObjectDataOutput out, Date date) throws IOException {
+		out.writeBoolean(date != null);
+		if (date != null) {
+			out.writeLong(date.getTime());
+		}
+	}
+
+	/**
+	 * Read a date that may be null.
+	 * 
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	protected Date readDate(ObjectDataInput in) throws IOException {
+		return in.readBoolean() ? new Date(in.readLong()) : null;
+	}
+
+	/**
+	 * Write a double that may be null.
+	 * 
+	 * @param out
+	 * @param value
+	 * @throws IOException
+	 */
+	protected void writeDouble(ObjectDataOutput out, Double value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeDouble(value);
+		}
+	}
+
+	/**
+	 * Read a double that may be null.
+	 * 
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	protected Double readDouble(ObjectDataInput in) throws IOException {
+		return in.readBoolean() ? in.readDouble() : null;
+	}
+
+	/**
+	 * Marshal an event to JSON.
+	 * 
+	 * @param event
+	 * @return
+	 * @throws IOException
+	 */
+	protected byte[] marshal(IDeviceEvent event) throws IOException {
+		try {
+			return MarshalUtils.marshalJson(event);
+		} catch (SiteWhereException e) {
+			throw new IOException("Unable to marshal event.", e);
+		}
+	}
+
+	/**
+	 * Unmarshal an event from JSON.
+	 * 
+	 * @param json
+	 * @param type
+	 * @return
+	 * @throws IOException
+	 */
+	protected <T extends IDeviceEvent> T unmarshal(byte[] json, Class<T> type) throws IOException {
+		try {
+			return MarshalUtils.unmarshalJson(json, type);
+		} catch (SiteWhereException e) {
+			throw new IOException("Unable to unmarshal event.", e);
+		}
+	}
+
+	public List<IDeviceEvent> getEvents() {
+		return events;
+	}
+
+	public void setEvents(List<IDeviceEvent> events) {
+		this.events = events;
+	}
+}
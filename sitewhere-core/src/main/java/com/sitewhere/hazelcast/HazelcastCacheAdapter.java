@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hazelcast;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.hazelcast.core.IMap;
+import com.sitewhere.common.MarshalUtils;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.cache.CacheType;
+import com.sitewhere.spi.cache.ICache;
+import com.sitewhere.spi.device.IDeviceManagementCacheProvider;
+
+/**
+ * Wraps a Hazelcast {@link IMap} with the {@link ICache} interface for use in
+ * {@link IDeviceManagementCacheProvider} implementation. Values are stored as JSON so
+ * that model objects do not have to be serializable and are read back as the given
+ * model class.
+ * 
+ * @author Derek
+ * 
+ * @param <V>
+ */
+public class HazelcastCacheAdapter<V> implements ICache<String, V> {
+
+	/** Cache type */
+	private CacheType type;
+
+	/** Wrapped map */
+	private IMap<String, byte[]> map;
+
+	/** Class values are unmarshaled to */
+	private Class<? extends V> valueClass;
+
+	/** Counts to number of requests */
+	private AtomicLong requestCount = new AtomicLong();
+
+	/** Counts the number of hits */
+	private AtomicLong hitCount = new AtomicLong();
+
+	public HazelcastCacheAdapter(CacheType type, IMap<String, byte[]> map, Class<? extends V> valueClass) {
+		this.type = type;
+		this.map = map;
+		this.valueClass = valueClass;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.cache.ICache#getType()
+	 */
+	@Override
+	public CacheType getType() {
+		return type;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.cache.ICache#get(java.lang.Object)
+	 */
+	@Override
+	public V get(String key) throws SiteWhereException {
+		requestCount.incrementAndGet();
+		byte[] match = map.get(key);
+		if (match == null) {
+			return null;
+		}
+		hitCount.incrementAndGet();
+		return MarshalUtils.unmarshalJson(match, valueClass);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.cache.ICache#put(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public void put(String key, V value) throws SiteWhereException {
+		map.set(key, MarshalUtils.marshalJson(value));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.cache.ICache#remove(java.lang.Object)
+	 */
+	@Override
+	public void remove(String key) throws SiteWhereException {
+		map.delete(key);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.cache.ICache#getElementCount()
+	 */
+	@Override
+	public int getElementCount() throws SiteWhereException {
+		return map.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.cache.ICache#getRequestCount()
+	 */
+	@Override
+	public long getRequestCount() throws SiteWhereException {
+		return requestCount.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.cache.ICache#getHitCount()
+	 */
+	@Override
+	public long getHitCount() throws SiteWhereException {
+		return hitCount.get();
+	}
+}
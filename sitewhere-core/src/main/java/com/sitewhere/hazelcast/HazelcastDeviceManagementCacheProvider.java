@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hazelcast;
+
+import org.apache.log4j.Logger;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.MaxSizeConfig;
+import com.hazelcast.config.NearCacheConfig;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.sitewhere.rest.model.device.Device;
+import com.sitewhere.rest.model.device.DeviceAssignment;
+import com.sitewhere.rest.model.device.DeviceSpecification;
+import com.sitewhere.rest.model.device.Site;
+import com.sitewhere.server.lifecycle.LifecycleComponent;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.cache.CacheType;
+import com.sitewhere.spi.cache.ICache;
+import com.sitewhere.spi.device.IDevice;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceManagementCacheProvider;
+import com.sitewhere.spi.device.IDeviceSpecification;
+import com.sitewhere.spi.device.ISite;
+import com.sitewhere.spi.server.hazelcast.ISiteWhereHazelcast;
+import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
+
+/**
+ * Implementation of {@link IDeviceManagementCacheProvider} that stores entries in
+ * Hazelcast maps shared by all nodes in the cluster. Each node keeps a near cache of the
+ * entries it reads, and an update on any node invalidates the near cache entries on the
+ * others, so entries can use much longer TTLs than a cache local to each node.
+ * 
+ * Maps that are already configured in the Hazelcast configuration file are used as-is.
+ * Otherwise they are configured from the settings on this provider.
+ * 
+ * @author Derek
+ */
+public class HazelcastDeviceManagementCacheProvider extends LifecycleComponent implements
+		IDeviceManagementCacheProvider {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(HazelcastDeviceManagementCacheProvider.class);
+
+	/** Common Hazelcast configuration */
+	private SiteWhereHazelcastConfiguration configuration;
+
+	/** Max number of entries in site cache on each node */
+	private int siteCacheMaxEntries = 100;
+
+	/** Max number of entries in specification cache on each node */
+	private int deviceSpecificationCacheMaxEntries = 100;
+
+	/** Max number of entries in device cache on each node */
+	private int deviceCacheMaxEntries = 10000;
+
+	/** Max number of entries in assignment cache on each node */
+	private int deviceAssignmentCacheMaxEntries = 10000;
+
+	/** Time to live (seconds) for site entries */
+	private int siteCacheTtl = 3600;
+
+	/** Time to live (seconds) for specification entries */
+	private int deviceSpecificationCacheTtl = 3600;
+
+	/** Time to live (seconds) for device entries */
+	private int deviceCacheTtl = 900;
+
+	/** Time to live (seconds) for assignment entries */
+	private int deviceAssignmentCacheTtl = 900;
+
+	/** Number of backup copies kept for each entry */
+	private int backupCount = 1;
+
+	/** Cache for site data */
+	private HazelcastCacheAdapter<ISite> siteCache;
+
+	/** Cache for device specification data */
+	private HazelcastCacheAdapter<IDeviceSpecification> deviceSpecificationCache;
+
+	/** Cache for device data */
+	private HazelcastCacheAdapter<IDevice> deviceCache;
+
+	/** Cache for device assignment data */
+	private HazelcastCacheAdapter<IDeviceAssignment> deviceAssignmentCache;
+
+	public HazelcastDeviceManagementCacheProvider() {
+		super(LifecycleComponentType.CacheProvider);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#start()
+	 */
+	@Override
+	public void start() throws SiteWhereException {
+		if ((getConfiguration() == null) || (getConfiguration().getHazelcastInstance() == null)) {
+			throw new SiteWhereException("No Hazelcast configuration provided.");
+		}
+		LOGGER.info("Starting Hazelcast device management cache provider...");
+		HazelcastInstance instance = getConfiguration().getHazelcastInstance();
+
+		IMap<String, byte[]> sites =
+				createMap(instance, ISiteWhereHazelcast.MAP_SITE_CACHE, getSiteCacheMaxEntries(),
+						getSiteCacheTtl());
+		siteCache = new HazelcastCacheAdapter<ISite>(CacheType.SiteCache, sites, Site.class);
+
+		IMap<String, byte[]> specifications =
+				createMap(instance, ISiteWhereHazelcast.MAP_DEVICE_SPECIFICATION_CACHE,
+						getDeviceSpecificationCacheMaxEntries(), getDeviceSpecificationCacheTtl());
+		deviceSpecificationCache =
+				new HazelcastCacheAdapter<IDeviceSpecification>(CacheType.DeviceSpecificationCache,
+						specifications, DeviceSpecification.class);
+
+		IMap<String, byte[]> devices =
+				createMap(instance, ISiteWhereHazelcast.MAP_DEVICE_CACHE, getDeviceCacheMaxEntries(),
+						getDeviceCacheTtl());
+		deviceCache = new HazelcastCacheAdapter<IDevice>(CacheType.DeviceCache, devices, Device.class);
+
+		IMap<String, byte[]> assignments =
+				createMap(instance, ISiteWhereHazelcast.MAP_DEVICE_ASSIGNMENT_CACHE,
+						getDeviceAssignmentCacheMaxEntries(), getDeviceAssignmentCacheTtl());
+		deviceAssignmentCache =
+				new HazelcastCacheAdapter<IDeviceAssignment>(CacheType.DeviceAssignmentCache, assignments,
+						DeviceAssignment.class);
+	}
+
+	/**
+	 * Get a map for cached entries, adding configuration for it if none was provided in
+	 * the Hazelcast configuration file.
+	 * 
+	 * @param instance
+	 * @param name
+	 * @param maxEntries
+	 * @param ttl
+	 * @return
+	 */
+	protected IMap<String, byte[]> createMap(HazelcastInstance instance, String name, int maxEntries,
+			int ttl) {
+		Config config = instance.getConfig();
+		if (!config.getMapConfigs().containsKey(name)) {
+			NearCacheConfig nearCache = new NearCacheConfig();
+			nearCache.setMaxSize(maxEntries);
+			nearCache.setTimeToLiveSeconds(ttl);
+			nearCache.setEvictionPolicy("LRU");
+			nearCache.setInvalidateOnChange(true);
+
+			MapConfig mapConfig = new MapConfig(name);
+			mapConfig.setBackupCount(getBackupCount());
+			mapConfig.setTimeToLiveSeconds(ttl);
+			mapConfig.setMaxSizeConfig(new MaxSizeConfig(maxEntries, MaxSizeConfig.MaxSizePolicy.PER_NODE));
+			mapConfig.setEvictionPolicy(MapConfig.EvictionPolicy.LRU);
+			mapConfig.setNearCacheConfig(nearCache);
+			config.addMapConfig(mapConfig);
+			LOGGER.info("Cache map '" + name + "' created (entries: " + maxEntries + ", ttl: " + ttl + ").");
+		} else {
+			LOGGER.info("Cache map '" + name + "' using configuration from Hazelcast configuration file.");
+		}
+		return instance.getMap(name);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#getLogger()
+	 */
+	@Override
+	public Logger getLogger() {
+		return LOGGER;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#stop()
+	 */
+	@Override
+	public void stop() throws SiteWhereException {
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagementCacheProvider#getSiteCache()
+	 */
+	@Override
+	public ICache<String, ISite> getSiteCache() throws SiteWhereException {
+		return siteCache;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagementCacheProvider#getDeviceSpecificationCache
+	 * ()
+	 */
+	@Override
+	public ICache<String, IDeviceSpecification> getDeviceSpecificationCache() throws SiteWhereException {
+		return deviceSpecificationCache;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagementCacheProvider#getDeviceCache()
+	 */
+	@Override
+	public ICache<String, IDevice> getDeviceCache() throws SiteWhereException {
+		return deviceCache;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagementCacheProvider#getDeviceAssignmentCache()
+	 */
+	@Override
+	public ICache<String, IDeviceAssignment> getDeviceAssignmentCache() throws SiteWhereException {
+		return deviceAssignmentCache;
+	}
+
+	public SiteWhereHazelcastConfiguration getConfiguration() {
+		return configuration;
+	}
+
+	public void setConfiguration(SiteWhereHazelcastConfiguration configuration) {
+		this.configuration = configuration;
+	}
+
+	public int getSiteCacheMaxEntries() {
+		return siteCacheMaxEntries;
+	}
+
+	public void setSiteCacheMaxEntries(int siteCacheMaxEntries) {
+		this.siteCacheMaxEntries = siteCacheMaxEntries;
+	}
+
+	public int getDeviceSpecificationCacheMaxEntries() {
+		return deviceSpecificationCacheMaxEntries;
+	}
+
+	public void setDeviceSpecificationCacheMaxEntries(int deviceSpecificationCacheMaxEntries) {
+		this.deviceSpecificationCacheMaxEntries = deviceSpecificationCacheMaxEntries;
+	}
+
+	public int getDeviceCacheMaxEntries() {
+		return deviceCacheMaxEntries;
+	}
+
+	public void setDeviceCacheMaxEntries(int deviceCacheMaxEntries) {
+		this.deviceCacheMaxEntries = deviceCacheMaxEntries;
+	}
+
+	public int getDeviceAssignmentCacheMaxEntries() {
+		return deviceAssignmentCacheMaxEntries;
+	}
+
+	public void setDeviceAssignmentCacheMaxEntries(int deviceAssignmentCacheMaxEntries) {
+		this.deviceAssignmentCacheMaxEntries = deviceAssignmentCacheMaxEntries;
+	}
+
+	public int getSiteCacheTtl() {
+		return siteCacheTtl;
+	}
+
+	public void setSiteCacheTtl(int siteCacheTtl) {
+		this.siteCacheTtl = siteCacheTtl;
+	}
+
+	public int getDeviceSpecificationCacheTtl() {
+		return deviceSpecificationCacheTtl;
+	}
+
+	public void setDeviceSpecificationCacheTtl(int deviceSpecificationCacheTtl) {
+		this.deviceSpecificationCacheTtl = deviceSpecificationCacheTtl;
+	}
+
+	public int getDeviceCacheTtl() {
+		return deviceCacheTtl;
+	}
+
+	public void setDeviceCacheTtl(int deviceCacheTtl) {
+		this.deviceCacheTtl = deviceCacheTtl;
+	}
+
+	public int getDeviceAssignmentCacheTtl() {
+		return deviceAssignmentCacheTtl;
+	}
+
+	public void setDeviceAssignmentCacheTtl(int deviceAssignmentCacheTtl) {
+		this.deviceAssignmentCacheTtl = deviceAssignmentCacheTtl;
+	}
+
+	public int getBackupCount() {
+		return backupCount;
+	}
+
+	public void setBackupCount(int backupCount) {
+		this.backupCount = backupCount;
+	}
+}
@@ -7,9 +7,22 @@
  */
 package com.sitewhere.hazelcast;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.log4j.Logger;
 
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.ITopic;
+import com.sitewhere.SiteWhere;
 import com.sitewhere.device.event.processor.OutboundEventProcessor;
 import com.sitewhere.device.marshaling.DeviceCommandInvocationMarshalHelper;
 import com.sitewhere.rest.model.device.event.DeviceAlert;
@@ -21,6 +34,7 @@ import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.event.IDeviceAlert;
 import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
 import com.sitewhere.spi.device.event.IDeviceCommandResponse;
+import com.sitewhere.spi.device.event.IDeviceEvent;
 import com.sitewhere.spi.device.event.IDeviceLocation;
 import com.sitewhere.spi.device.event.IDeviceMeasurements;
 import com.sitewhere.spi.server.hazelcast.ISiteWhereHazelcast;
@@ -28,6 +42,11 @@ import com.sitewhere.spi.server.hazelcast.ISiteWhereHazelcast;
 /**
  * Sends processed device events out on Hazelcast topics for further processing.
  * 
+ * By default each event is copied to its REST model class and published by itself. In
+ * batched mode, events are collected for each topic and published as a
+ * {@link DeviceEventBatch} once the batch is full or the maximum delay has passed.
+ * Batches are sent on separate topics so existing subscribers are not affected.
+ * 
  * @author Derek
  */
 public class HazelcastEventProcessor extends OutboundEventProcessor {
@@ -38,20 +57,32 @@ public class HazelcastEventProcessor extends OutboundEventProcessor {
 	/** Common Hazelcast configuration */
 	private SiteWhereHazelcastConfiguration configuration;
 
-	/** Topic for device measurements */
-	private ITopic<DeviceMeasurements> measurementsTopic;
+	/** Indicates whether events are published in batches */
+	private boolean batched = false;
+
+	/** Maximum number of events in a batch */
+	private int maxBatchSize = 200;
+
+	/** Maximum time (ms) an event waits before its batch is published */
+	private long maxBatchDelay = 50;
+
+	/** Publisher for device measurements */
+	private TopicPublisher measurementsPublisher;
 
-	/** Topic for device locations */
-	private ITopic<DeviceLocation> locationsTopic;
+	/** Publisher for device locations */
+	private TopicPublisher locationsPublisher;
 
-	/** Topic for device alerts */
-	private ITopic<DeviceAlert> alertsTopic;
+	/** Publisher for device alerts */
+	private TopicPublisher alertsPublisher;
 
-	/** Topic for device command invocations */
-	private ITopic<DeviceCommandInvocation> commandInvocationsTopic;
+	/** Publisher for device command invocations */
+	private TopicPublisher commandInvocationsPublisher;
 
-	/** Topic for device command responses */
-	private ITopic<DeviceCommandResponse> commandResponsesTopic;
+	/** Publisher for device command responses */
+	private TopicPublisher commandResponsesPublisher;
+
+	/** Publishes partial batches that have waited long enough */
+	private ScheduledExecutorService flusher;
 
 	/** Used for marshaling command invocations */
 	private DeviceCommandInvocationMarshalHelper invocationHelper = new DeviceCommandInvocationMarshalHelper(
@@ -67,19 +98,71 @@ public class HazelcastEventProcessor extends OutboundEventProcessor {
 		if (getConfiguration() == null) {
 			throw new SiteWhereException("No Hazelcast configuration provided.");
 		}
-		this.measurementsTopic =
-				getConfiguration().getHazelcastInstance().getTopic(
-						ISiteWhereHazelcast.TOPIC_MEASUREMENTS_ADDED);
-		this.locationsTopic =
-				getConfiguration().getHazelcastInstance().getTopic(ISiteWhereHazelcast.TOPIC_LOCATION_ADDED);
-		this.alertsTopic =
-				getConfiguration().getHazelcastInstance().getTopic(ISiteWhereHazelcast.TOPIC_ALERT_ADDED);
-		this.commandInvocationsTopic =
-				getConfiguration().getHazelcastInstance().getTopic(
-						ISiteWhereHazelcast.TOPIC_COMMAND_INVOCATION_ADDED);
-		this.commandResponsesTopic =
-				getConfiguration().getHazelcastInstance().getTopic(
-						ISiteWhereHazelcast.TOPIC_COMMAND_RESPONSE_ADDED);
+		HazelcastInstance instance = getConfiguration().getHazelcastInstance();
+		if (isBatched()) {
+			this.measurementsPublisher =
+					new TopicPublisher(instance, ISiteWhereHazelcast.TOPIC_MEASUREMENTS_BATCH);
+			this.locationsPublisher = new TopicPublisher(instance, ISiteWhereHazelcast.TOPIC_LOCATION_BATCH);
+			this.alertsPublisher = new TopicPublisher(instance, ISiteWhereHazelcast.TOPIC_ALERT_BATCH);
+			this.commandInvocationsPublisher =
+					new TopicPublisher(instance, ISiteWhereHazelcast.TOPIC_COMMAND_INVOCATION_BATCH);
+			this.commandResponsesPublisher =
+					new TopicPublisher(instance, ISiteWhereHazelcast.TOPIC_COMMAND_RESPONSE_BATCH);
+			flusher = Executors.newSingleThreadScheduledExecutor(new FlusherThreadFactory());
+			flusher.scheduleWithFixedDelay(new Flusher(), getMaxBatchDelay(), getMaxBatchDelay(),
+					TimeUnit.MILLISECONDS);
+			LOGGER.info("Publishing events to Hazelcast in batches of up to " + getMaxBatchSize()
+					+ " events (max delay " + getMaxBatchDelay() + " ms).");
+		} else {
+			this.measurementsPublisher =
+					new TopicPublisher(instance, ISiteWhereHazelcast.TOPIC_MEASUREMENTS_ADDED);
+			this.locationsPublisher = new TopicPublisher(instance, ISiteWhereHazelcast.TOPIC_LOCATION_ADDED);
+			this.alertsPublisher = new TopicPublisher(instance, ISiteWhereHazelcast.TOPIC_ALERT_ADDED);
+			this.commandInvocationsPublisher =
+					new TopicPublisher(instance, ISiteWhereHazelcast.TOPIC_COMMAND_INVOCATION_ADDED);
+			this.commandResponsesPublisher =
+					new TopicPublisher(instance, ISiteWhereHazelcast.TOPIC_COMMAND_RESPONSE_ADDED);
+		}
+		registerMetrics();
+	}
+
+	/**
+	 * Register publishing metrics for each topic.
+	 */
+	protected void registerMetrics() {
+		MetricRegistry registry = SiteWhere.getServer().getMetricRegistry();
+		if (registry == null) {
+			return;
+		}
+		for (TopicPublisher publisher : getPublishers()) {
+			String events =
+					MetricRegistry.name(HazelcastEventProcessor.class, publisher.getName(), "events");
+			registry.remove(events);
+			registry.register(events, publisher.getEventMeter());
+			String messages =
+					MetricRegistry.name(HazelcastEventProcessor.class, publisher.getName(), "messages");
+			registry.remove(messages);
+			registry.register(messages, publisher.getMessageMeter());
+			String batchSize =
+					MetricRegistry.name(HazelcastEventProcessor.class, publisher.getName(), "batchSize");
+			registry.remove(batchSize);
+			registry.register(batchSize, publisher.getBatchSizes());
+		}
+	}
+
+	/**
+	 * Get publishers for all topics.
+	 * 
+	 * @return
+	 */
+	protected List<TopicPublisher> getPublishers() {
+		List<TopicPublisher> publishers = new ArrayList<TopicPublisher>();
+		publishers.add(measurementsPublisher);
+		publishers.add(locationsPublisher);
+		publishers.add(alertsPublisher);
+		publishers.add(commandInvocationsPublisher);
+		publishers.add(commandResponsesPublisher);
+		return publishers;
 	}
 
 	/*
@@ -99,6 +182,13 @@ public class HazelcastEventProcessor extends OutboundEventProcessor {
 	 */
 	@Override
 	public void stop() throws SiteWhereException {
+		if (flusher != null) {
+			flusher.shutdownNow();
+			flusher = null;
+			for (TopicPublisher publisher : getPublishers()) {
+				publisher.flush();
+			}
+		}
 	}
 
 	/*
@@ -110,8 +200,12 @@ public class HazelcastEventProcessor extends OutboundEventProcessor {
 	 */
 	@Override
 	public void onMeasurements(IDeviceMeasurements measurements) throws SiteWhereException {
+		if (isBatched()) {
+			measurementsPublisher.add(measurements);
+			return;
+		}
 		DeviceMeasurements marshaled = DeviceMeasurements.copy(measurements);
-		measurementsTopic.publish(marshaled);
+		measurementsPublisher.publish(marshaled);
 		LOGGER.debug("Published measurements event to Hazelcast (id=" + measurements.getId() + ")");
 	}
 
@@ -124,8 +218,12 @@ public class HazelcastEventProcessor extends OutboundEventProcessor {
 	 */
 	@Override
 	public void onLocation(IDeviceLocation location) throws SiteWhereException {
+		if (isBatched()) {
+			locationsPublisher.add(location);
+			return;
+		}
 		DeviceLocation marshaled = DeviceLocation.copy(location);
-		locationsTopic.publish(marshaled);
+		locationsPublisher.publish(marshaled);
 		LOGGER.debug("Published location event to Hazelcast (id=" + location.getId() + ")");
 	}
 
@@ -138,8 +236,12 @@ public class HazelcastEventProcessor extends OutboundEventProcessor {
 	 */
 	@Override
 	public void onAlert(IDeviceAlert alert) throws SiteWhereException {
+		if (isBatched()) {
+			alertsPublisher.add(alert);
+			return;
+		}
 		DeviceAlert marshaled = DeviceAlert.copy(alert);
-		alertsTopic.publish(marshaled);
+		alertsPublisher.publish(marshaled);
 		LOGGER.debug("Published alert event to Hazelcast (id=" + alert.getId() + ")");
 	}
 
@@ -152,7 +254,11 @@ public class HazelcastEventProcessor extends OutboundEventProcessor {
 	@Override
 	public void onCommandInvocation(IDeviceCommandInvocation invocation) throws SiteWhereException {
 		DeviceCommandInvocation converted = invocationHelper.convert(invocation);
-		commandInvocationsTopic.publish(converted);
+		if (isBatched()) {
+			commandInvocationsPublisher.add(converted);
+			return;
+		}
+		commandInvocationsPublisher.publish(converted);
 		LOGGER.debug("Published command invocation event to Hazelcast (id=" + invocation.getId() + ")");
 	}
 
@@ -164,11 +270,180 @@ public class HazelcastEventProcessor extends OutboundEventProcessor {
 	 */
 	@Override
 	public void onCommandResponse(IDeviceCommandResponse response) throws SiteWhereException {
+		if (isBatched()) {
+			commandResponsesPublisher.add(response);
+			return;
+		}
 		DeviceCommandResponse marshaled = DeviceCommandResponse.copy(response);
-		commandResponsesTopic.publish(marshaled);
+		commandResponsesPublisher.publish(marshaled);
 		LOGGER.debug("Published command response event to Hazelcast (id=" + response.getId() + ")");
 	}
 
+	/**
+	 * Publishes to a single topic, either one event at a time or in batches, and tracks
+	 * publishing metrics for the topic.
+	 * 
+	 * @author Derek
+	 */
+	private class TopicPublisher {
+
+		/** Topic name */
+		private String name;
+
+		/** Hazelcast topic */
+		private ITopic<Object> topic;
+
+		/** Events waiting to be published */
+		private List<IDeviceEvent> pending = new ArrayList<IDeviceEvent>();
+
+		/** Time first pending event was added */
+		private long pendingSince;
+
+		/** Held while detaching and publishing a batch so batches go out in order */
+		private Object publishLock = new Object();
+
+		/** Meter for events published */
+		private Meter eventMeter = new Meter();
+
+		/** Meter for messages published */
+		private Meter messageMeter = new Meter();
+
+		/** Number of events in each message */
+		private Histogram batchSizes = new Histogram(new ExponentiallyDecayingReservoir());
+
+		public TopicPublisher(HazelcastInstance instance, String name) {
+			this.name = name;
+			this.topic = instance.getTopic(name);
+		}
+
+		/**
+		 * Publish a single event.
+		 * 
+		 * @param event
+		 */
+		public void publish(IDeviceEvent event) {
+			topic.publish(event);
+			eventMeter.mark();
+			messageMeter.mark();
+			batchSizes.update(1);
+		}
+
+		/**
+		 * Add an event to the current batch, publishing the batch if it is full.
+		 * 
+		 * @param event
+		 */
+		public void add(IDeviceEvent event) {
+			boolean full;
+			synchronized (this) {
+				if (pending.isEmpty()) {
+					pendingSince = System.currentTimeMillis();
+				}
+				pending.add(event);
+				full = (pending.size() >= getMaxBatchSize());
+			}
+			if (full) {
+				publishPending(false);
+			}
+		}
+
+		/**
+		 * Publish pending events if the oldest has waited for the maximum delay.
+		 */
+		public void flushIfDue() {
+			publishPending(true);
+		}
+
+		/**
+		 * Publish all pending events.
+		 */
+		public void flush() {
+			publishPending(false);
+		}
+
+		/**
+		 * Detach pending events and publish them. The publish lock is held across both
+		 * steps so a batch detached by one thread cannot be overtaken by a later batch
+		 * detached by another.
+		 * 
+		 * @param onlyIfDue
+		 */
+		protected void publishPending(boolean onlyIfDue) {
+			synchronized (publishLock) {
+				List<IDeviceEvent> batch;
+				synchronized (this) {
+					if (pending.isEmpty()) {
+						return;
+					}
+					if ((onlyIfDue) && ((System.currentTimeMillis() - pendingSince) < getMaxBatchDelay())) {
+						return;
+					}
+					batch = pending;
+					pending = new ArrayList<IDeviceEvent>();
+				}
+				publishBatch(batch);
+			}
+		}
+
+		/**
+		 * Publish a batch of events as a single message.
+		 * 
+		 * @param events
+		 */
+		protected void publishBatch(List<IDeviceEvent> events) {
+			topic.publish(new DeviceEventBatch(events));
+			eventMeter.mark(events.size());
+			messageMeter.mark();
+			batchSizes.update(events.size());
+			LOGGER.debug("Published batch of " + events.size() + " events to Hazelcast topic " + name + ".");
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Meter getEventMeter() {
+			return eventMeter;
+		}
+
+		public Meter getMessageMeter() {
+			return messageMeter;
+		}
+
+		public Histogram getBatchSizes() {
+			return batchSizes;
+		}
+	}
+
+	/**
+	 * Publishes batches that have waited for the maximum delay.
+	 * 
+	 * @author Derek
+	 */
+	private class Flusher implements Runnable {
+
+		@Override
+		public void run() {
+			for (TopicPublisher publisher : getPublishers()) {
+				try {
+					publisher.flushIfDue();
+				} catch (Throwable e) {
+					LOGGER.error("Unable to publish event batch to Hazelcast.", e);
+				}
+			}
+		}
+	}
+
+	/** Used for naming batch flusher thread */
+	private class FlusherThreadFactory implements ThreadFactory {
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "SiteWhere Hazelcast Batch Flusher");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
 	public SiteWhereHazelcastConfiguration getConfiguration() {
 		return configuration;
 	}
@@ -176,4 +451,28 @@ public class HazelcastEventProcessor extends OutboundEventProcessor {
 	public void setConfiguration(SiteWhereHazelcastConfiguration configuration) {
 		this.configuration = configuration;
 	}
-}
\ No newline at end of file
+
+	public boolean isBatched() {
+		return batched;
+	}
+
+	public void setBatched(boolean batched) {
+		this.batched = batched;
+	}
+
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	public long getMaxBatchDelay() {
+		return maxBatchDelay;
+	}
+
+	public void setMaxBatchDelay(long maxBatchDelay) {
+		this.maxBatchDelay = maxBatchDelay;
+	}
+}
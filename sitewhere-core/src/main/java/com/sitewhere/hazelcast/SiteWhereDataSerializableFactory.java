@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hazelcast;
+
+import com.hazelcast.nio.serialization.DataSerializableFactory;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+
+/**
+ * Creates SiteWhere classes that use Hazelcast {@link IdentifiedDataSerializable}
+ * serialization. Must be registered on every member or client that reads them.
+ * 
+ * @author Derek
+ */
+public class SiteWhereDataSerializableFactory implements DataSerializableFactory {
+
+	/** Factory id for SiteWhere classes */
+	public static final int FACTORY_ID = 1000;
+
+	/** Class id for {@link DeviceEventBatch} */
+	public static final int DEVICE_EVENT_BATCH = 1;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.hazelcast.nio.serialization.DataSerializableFactory#create(int)
+	 */
+	@Override
+	public IdentifiedDataSerializable create(int typeId) {
+		switch (typeId) {
+		case DEVICE_EVENT_BATCH: {
+			return new DeviceEventBatch();
+		}
+		default: {
+			return null;
+		}
+		}
+	}
+}
@@ -54,6 +54,8 @@ public class SiteWhereHazelcastConfiguration implements InitializingBean, Lifecy
 					+ configFile.getAbsolutePath());
 		}
 		Config config = new XmlConfigBuilder(new FileInputStream(configFile)).build();
+		config.getSerializationConfig().addDataSerializableFactory(
+				SiteWhereDataSerializableFactory.FACTORY_ID, new SiteWhereDataSerializableFactory());
 		instance = Hazelcast.newHazelcastInstance(config);
 		instance.getLifecycleService().addLifecycleListener(this);
 		LOGGER.info("Hazelcast instance started.");
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.memory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import com.sitewhere.rest.model.search.SearchResults;
+import com.sitewhere.spi.common.IMetadataProviderEntity;
+import com.sitewhere.spi.search.IDateRangeSearchCriteria;
+import com.sitewhere.spi.search.ISearchCriteria;
+
+/**
+ * Common handlers for paging and filtering entities held in memory. Mirrors the
+ * semantics of the database-backed implementations so results are interchangeable.
+ * 
+ * @author Derek
+ */
+public class InMemoryPersistence {
+
+	/** Sorts entities with newest created date first */
+	public static final Comparator<IMetadataProviderEntity> CREATED_DATE_DESCENDING =
+			new Comparator<IMetadataProviderEntity>() {
+
+				public int compare(IMetadataProviderEntity first, IMetadataProviderEntity second) {
+					return compareDescending(first.getCreatedDate(), second.getCreatedDate());
+				}
+			};
+
+	/**
+	 * Sort the given matches and return the page requested by the search criteria.
+	 * 
+	 * @param matches
+	 * @param sort
+	 * @param criteria
+	 * @return
+	 */
+	public static <T> SearchResults<T> search(List<T> matches, Comparator<? super T> sort,
+			ISearchCriteria criteria) {
+		if (sort != null) {
+			Collections.sort(matches, sort);
+		}
+		return page(matches, matches.size(), criteria);
+	}
+
+	/**
+	 * Return the page of an already sorted collection requested by the search criteria.
+	 * A page size of zero returns all results.
+	 * 
+	 * @param sorted
+	 * @param total
+	 * @param criteria
+	 * @return
+	 */
+	public static <T> SearchResults<T> page(Collection<? extends T> sorted, int total,
+			ISearchCriteria criteria) {
+		List<T> page = new ArrayList<T>();
+		int offset = 0;
+		int limit = Integer.MAX_VALUE;
+		if ((criteria != null) && (criteria.getPageSize() > 0)) {
+			offset = Math.max(0, criteria.getPageNumber() - 1) * criteria.getPageSize();
+			limit = criteria.getPageSize();
+		}
+		Iterator<? extends T> it = sorted.iterator();
+		for (int i = 0; (i < offset) && it.hasNext(); i++) {
+			it.next();
+		}
+		while ((page.size() < limit) && it.hasNext()) {
+			page.add(it.next());
+		}
+		SearchResults<T> results = new SearchResults<T>(page);
+		results.setNumResults(total);
+		return results;
+	}
+
+	/**
+	 * Indicates if a date falls within the range specified by the criteria. Bounds are
+	 * inclusive and a missing bound is treated as open.
+	 * 
+	 * @param date
+	 * @param criteria
+	 * @return
+	 */
+	public static boolean isInDateRange(Date date, IDateRangeSearchCriteria criteria) {
+		if ((criteria.getStartDate() == null) && (criteria.getEndDate() == null)) {
+			return true;
+		}
+		if (date == null) {
+			return false;
+		}
+		if ((criteria.getStartDate() != null) && (date.before(criteria.getStartDate()))) {
+			return false;
+		}
+		if ((criteria.getEndDate() != null) && (date.after(criteria.getEndDate()))) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Compare dates so that later dates sort first. Null dates sort last.
+	 * 
+	 * @param first
+	 * @param second
+	 * @return
+	 */
+	public static int compareDescending(Date first, Date second) {
+		if (first == null) {
+			return (second == null) ? 0 : 1;
+		}
+		if (second == null) {
+			return -1;
+		}
+		return second.compareTo(first);
+	}
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.memory.device;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sitewhere.memory.InMemoryPersistence;
+import com.sitewhere.rest.model.device.event.DeviceEvent;
+import com.sitewhere.rest.model.search.SearchResults;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IPurgeableDeviceManagement;
+import com.sitewhere.spi.device.event.DeviceEventType;
+import com.sitewhere.spi.device.event.IDeviceCommandResponse;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventPurgeHandler;
+import com.sitewhere.spi.search.IDateRangeSearchCriteria;
+
+/**
+ * Holds device events in memory. Each event is indexed by assignment, by assignment and
+ * event type, and by site and event type. Indexes are skip lists ordered by event date
+ * descending, then received date descending, so date range queries are sub-map views
+ * and paging walks the index in the same order the database implementations return.
+ * 
+ * @author Derek
+ */
+public class InMemoryDeviceEventStore {
+
+	/** Used to generate unique event ids */
+	private AtomicLong sequence = new AtomicLong();
+
+	/** Events by id */
+	private ConcurrentMap<String, IDeviceEvent> eventsById = new ConcurrentHashMap<String, IDeviceEvent>();
+
+	/** Sorted event indexes by index key */
+	private ConcurrentMap<String, ConcurrentSkipListMap<EventKey, IDeviceEvent>> indexes =
+			new ConcurrentHashMap<String, ConcurrentSkipListMap<EventKey, IDeviceEvent>>();
+
+	/**
+	 * Assign an id to the event and add it to all indexes.
+	 * 
+	 * @param event
+	 * @return
+	 */
+	public <T extends DeviceEvent> T add(T event) {
+		long id = sequence.incrementAndGet();
+		event.setId(String.valueOf(id));
+		EventKey key = new EventKey(event.getEventDate(), event.getReceivedDate(), id);
+		eventsById.put(event.getId(), event);
+		getIndex(getAssignmentKey(event.getDeviceAssignmentToken(), null)).put(key, event);
+		getIndex(getAssignmentKey(event.getDeviceAssignmentToken(), event.getEventType())).put(key, event);
+		getIndex(getSiteKey(event.getSiteToken(), event.getEventType())).put(key, event);
+		if (event instanceof IDeviceCommandResponse) {
+			String originator = ((IDeviceCommandResponse) event).getOriginatingEventId();
+			if (originator != null) {
+				getIndex(getResponseKey(originator)).put(key, event);
+			}
+		}
+		return event;
+	}
+
+	/**
+	 * Get an event by unique id.
+	 * 
+	 * @param id
+	 * @return
+	 */
+	public IDeviceEvent getById(String id) {
+		return eventsById.get(id);
+	}
+
+	/**
+	 * Search events for an assignment. A null event type matches all events.
+	 * 
+	 * @param assignmentToken
+	 * @param type
+	 * @param criteria
+	 * @return
+	 */
+	public <T> SearchResults<T> searchByAssignment(String assignmentToken, DeviceEventType type,
+			IDateRangeSearchCriteria criteria) {
+		return search(getAssignmentKey(assignmentToken, type), criteria);
+	}
+
+	/**
+	 * Search events of a given type for a site.
+	 * 
+	 * @param siteToken
+	 * @param type
+	 * @param criteria
+	 * @return
+	 */
+	public <T> SearchResults<T> searchBySite(String siteToken, DeviceEventType type,
+			IDateRangeSearchCriteria criteria) {
+		return search(getSiteKey(siteToken, type), criteria);
+	}
+
+	/**
+	 * Search events of a given type across several assignments, merged into a single
+	 * sorted result.
+	 * 
+	 * @param assignmentTokens
+	 * @param type
+	 * @param criteria
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> SearchResults<T> searchByAssignments(List<String> assignmentTokens, DeviceEventType type,
+			IDateRangeSearchCriteria criteria) {
+		TreeMap<EventKey, IDeviceEvent> merged = new TreeMap<EventKey, IDeviceEvent>();
+		for (String token : assignmentTokens) {
+			ConcurrentSkipListMap<EventKey, IDeviceEvent> index = indexes.get(getAssignmentKey(token, type));
+			if (index != null) {
+				merged.putAll(getRange(index, criteria));
+			}
+		}
+		return (SearchResults<T>) InMemoryPersistence.page(merged.values(), merged.size(), criteria);
+	}
+
+	/**
+	 * Get all responses that reference the given command invocation.
+	 * 
+	 * @param invocationId
+	 * @return
+	 */
+	public <T> SearchResults<T> searchResponses(String invocationId) {
+		return search(getResponseKey(invocationId), null);
+	}
+
+	/**
+	 * Search a single index.
+	 * 
+	 * @param indexKey
+	 * @param criteria
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	protected <T> SearchResults<T> search(String indexKey, IDateRangeSearchCriteria criteria) {
+		ConcurrentSkipListMap<EventKey, IDeviceEvent> index = indexes.get(indexKey);
+		if (index == null) {
+			return new SearchResults<T>(new ArrayList<T>());
+		}
+		NavigableMap<EventKey, IDeviceEvent> range = getRange(index, criteria);
+		return (SearchResults<T>) InMemoryPersistence.page(range.values(), range.size(), criteria);
+	}
+
+	/**
+	 * Get the view of an index that falls within the date range for the criteria.
+	 * Because indexes are sorted newest first, the end date is the lower bound.
+	 * 
+	 * @param index
+	 * @param criteria
+	 * @return
+	 */
+	protected NavigableMap<EventKey, IDeviceEvent> getRange(
+			ConcurrentSkipListMap<EventKey, IDeviceEvent> index, IDateRangeSearchCriteria criteria) {
+		if (criteria == null) {
+			return index;
+		}
+		Date start = criteria.getStartDate();
+		Date end = criteria.getEndDate();
+		if ((start != null) && (end != null)) {
+			return index.subMap(EventKey.first(end), true, EventKey.last(start), true);
+		} else if (end != null) {
+			return index.tailMap(EventKey.first(end), true);
+		} else if (start != null) {
+			return index.headMap(EventKey.last(start), true);
+		}
+		return index;
+	}
+
+	/**
+	 * Get an index, creating it if it does not exist.
+	 * 
+	 * @param key
+	 * @return
+	 */
+	protected ConcurrentSkipListMap<EventKey, IDeviceEvent> getIndex(String key) {
+		ConcurrentSkipListMap<EventKey, IDeviceEvent> index = indexes.get(key);
+		if (index == null) {
+			ConcurrentSkipListMap<EventKey, IDeviceEvent> created =
+					new ConcurrentSkipListMap<EventKey, IDeviceEvent>();
+			index = indexes.putIfAbsent(key, created);
+			if (index == null) {
+				index = created;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Remove events that occurred before the given date. Null site token or event type
+	 * matches all sites or types.
+	 * 
+	 * @param siteToken
+	 * @param type
+	 * @param before
+	 * @param includeRollups
+	 * @param maxEvents
+	 * @param handler
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public int purge(String siteToken, DeviceEventType type, Date before, boolean includeRollups,
+			int maxEvents, IDeviceEventPurgeHandler handler) throws SiteWhereException {
+		List<IDeviceEvent> matches = new ArrayList<IDeviceEvent>();
+		for (String indexKey : indexes.keySet()) {
+			if (matches.size() >= maxEvents) {
+				break;
+			}
+			if (!isSiteIndexMatch(indexKey, siteToken, type)) {
+				continue;
+			}
+			for (IDeviceEvent event : indexes.get(indexKey).tailMap(EventKey.last(before), false).values()) {
+				if (matches.size() >= maxEvents) {
+					break;
+				}
+				if (includeRollups
+						|| (event.getMetadata(IPurgeableDeviceManagement.ROLLUP_INTERVAL_METADATA) == null)) {
+					matches.add(event);
+				}
+			}
+		}
+		if (matches.isEmpty()) {
+			return 0;
+		}
+		if (handler != null) {
+			handler.beforePurge(matches);
+		}
+		for (IDeviceEvent event : matches) {
+			remove(event);
+		}
+		return matches.size();
+	}
+
+	/**
+	 * Remove an event from all indexes.
+	 * 
+	 * @param event
+	 */
+	protected void remove(IDeviceEvent event) {
+		eventsById.remove(event.getId());
+		EventKey key =
+				new EventKey(event.getEventDate(), event.getReceivedDate(), Long.parseLong(event.getId()));
+		removeFromIndex(getAssignmentKey(event.getDeviceAssignmentToken(), null), key);
+		removeFromIndex(getAssignmentKey(event.getDeviceAssignmentToken(), event.getEventType()), key);
+		removeFromIndex(getSiteKey(event.getSiteToken(), event.getEventType()), key);
+		if (event instanceof IDeviceCommandResponse) {
+			String originator = ((IDeviceCommandResponse) event).getOriginatingEventId();
+			if (originator != null) {
+				removeFromIndex(getResponseKey(originator), key);
+			}
+		}
+	}
+
+	/**
+	 * Remove a key from an index if the index exists.
+	 * 
+	 * @param indexKey
+	 * @param key
+	 */
+	protected void removeFromIndex(String indexKey, EventKey key) {
+		ConcurrentSkipListMap<EventKey, IDeviceEvent> index = indexes.get(indexKey);
+		if (index != null) {
+			index.remove(key);
+		}
+	}
+
+	/**
+	 * Indicates whether an index key is a site index for the given site and type.
+	 * 
+	 * @param indexKey
+	 * @param siteToken
+	 * @param type
+	 * @return
+	 */
+	protected static boolean isSiteIndexMatch(String indexKey, String siteToken, DeviceEventType type) {
+		if (!indexKey.startsWith("s:")) {
+			return false;
+		}
+		if ((siteToken != null) && (!indexKey.startsWith("s:" + siteToken + ":"))) {
+			return false;
+		}
+		return (type == null) || indexKey.endsWith(":" + type.name());
+	}
+
+	/**
+	 * Get number of events held in the store.
+	 * 
+	 * @return
+	 */
+	public int getEventCount() {
+		return eventsById.size();
+	}
+
+	/**
+	 * Remove all events.
+	 */
+	public void clear() {
+		eventsById.clear();
+		indexes.clear();
+	}
+
+	protected static String getAssignmentKey(String assignmentToken, DeviceEventType type) {
+		return (type == null) ? "a:" + assignmentToken : "a:" + assignmentToken + ":" + type.name();
+	}
+
+	protected static String getSiteKey(String siteToken, DeviceEventType type) {
+		return "s:" + siteToken + ":" + type.name();
+	}
+
+	protected static String getResponseKey(String invocationId) {
+		return "r:" + invocationId;
+	}
+
+	/**
+	 * Index key that orders events by event date descending, received date descending,
+	 * then by insertion order.
+	 * 
+	 * @author Derek
+	 */
+	public static class EventKey implements Comparable<EventKey> {
+
+		/** Event date in milliseconds */
+		private final long eventDate;
+
+		/** Received date in milliseconds */
+		private final long receivedDate;
+
+		/** Unique sequence number */
+		private final long sequence;
+
+		public EventKey(Date eventDate, Date receivedDate, long sequence) {
+			this((eventDate != null) ? eventDate.getTime() : 0,
+					(receivedDate != null) ? receivedDate.getTime() : 0, sequence);
+		}
+
+		public EventKey(long eventDate, long receivedDate, long sequence) {
+			this.eventDate = eventDate;
+			this.receivedDate = receivedDate;
+			this.sequence = sequence;
+		}
+
+		/**
+		 * Key that sorts before all events with the given event date.
+		 * 
+		 * @param date
+		 * @return
+		 */
+		public static EventKey first(Date date) {
+			return new EventKey(date.getTime(), Long.MAX_VALUE, Long.MIN_VALUE);
+		}
+
+		/**
+		 * Key that sorts after all events with the given event date.
+		 * 
+		 * @param date
+		 * @return
+		 */
+		public static EventKey last(Date date) {
+			return new EventKey(date.getTime(), Long.MIN_VALUE, Long.MAX_VALUE);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		public int compareTo(EventKey other) {
+			if (eventDate != other.eventDate) {
+				return (eventDate > other.eventDate) ? -1 : 1;
+			}
+			if (receivedDate != other.receivedDate) {
+				return (receivedDate > other.receivedDate) ? -1 : 1;
+			}
+			if (sequence != other.sequence) {
+				return (sequence < other.sequence) ? -1 : 1;
+			}
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,2041 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.memory.device;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+
+import com.sitewhere.core.SiteWherePersistence;
+import com.sitewhere.memory.InMemoryPersistence;
+import com.sitewhere.rest.model.common.MetadataProvider;
+import com.sitewhere.rest.model.common.MetadataProviderEntity;
+import com.sitewhere.rest.model.device.Device;
+import com.sitewhere.rest.model.device.DeviceAssignment;
+import com.sitewhere.rest.model.device.DeviceAssignmentState;
+import com.sitewhere.rest.model.device.DeviceElementMapping;
+import com.sitewhere.rest.model.device.DeviceSpecification;
+import com.sitewhere.rest.model.device.Site;
+import com.sitewhere.rest.model.device.Zone;
+import com.sitewhere.rest.model.device.batch.BatchElement;
+import com.sitewhere.rest.model.device.batch.BatchOperation;
+import com.sitewhere.rest.model.device.command.DeviceCommand;
+import com.sitewhere.rest.model.device.element.DeviceElementSchema;
+import com.sitewhere.rest.model.device.event.DeviceAlert;
+import com.sitewhere.rest.model.device.event.DeviceCommandInvocation;
+import com.sitewhere.rest.model.device.event.DeviceCommandResponse;
+import com.sitewhere.rest.model.device.event.DeviceEventBatchResponse;
+import com.sitewhere.rest.model.device.event.DeviceLocation;
+import com.sitewhere.rest.model.device.event.DeviceMeasurements;
+import com.sitewhere.rest.model.device.event.DeviceStateChange;
+import com.sitewhere.rest.model.device.group.DeviceGroup;
+import com.sitewhere.rest.model.device.group.DeviceGroupElement;
+import com.sitewhere.rest.model.search.SearchResults;
+import com.sitewhere.server.lifecycle.LifecycleComponent;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.SiteWhereSystemException;
+import com.sitewhere.spi.common.IMetadataProvider;
+import com.sitewhere.spi.common.IMetadataProviderEntity;
+import com.sitewhere.spi.device.DeviceAssignmentStatus;
+import com.sitewhere.spi.device.IDevice;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceAssignmentState;
+import com.sitewhere.spi.device.IDeviceElementMapping;
+import com.sitewhere.spi.device.IDeviceManagement;
+import com.sitewhere.spi.device.IDeviceSpecification;
+import com.sitewhere.spi.device.IPurgeableDeviceManagement;
+import com.sitewhere.spi.device.ISite;
+import com.sitewhere.spi.device.IZone;
+import com.sitewhere.spi.device.batch.IBatchElement;
+import com.sitewhere.spi.device.batch.IBatchOperation;
+import com.sitewhere.spi.device.command.IDeviceCommand;
+import com.sitewhere.spi.device.event.DeviceEventType;
+import com.sitewhere.spi.device.event.IDeviceAlert;
+import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
+import com.sitewhere.spi.device.event.IDeviceCommandResponse;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventBatch;
+import com.sitewhere.spi.device.event.IDeviceEventBatchResponse;
+import com.sitewhere.spi.device.event.IDeviceEventPurgeHandler;
+import com.sitewhere.spi.device.event.IDeviceLocation;
+import com.sitewhere.spi.device.event.IDeviceMeasurements;
+import com.sitewhere.spi.device.event.IDeviceStateChange;
+import com.sitewhere.spi.device.event.request.IDeviceAlertCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceCommandInvocationCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceCommandResponseCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceLocationCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceMeasurementsCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceStateChangeCreateRequest;
+import com.sitewhere.spi.device.group.IDeviceGroup;
+import com.sitewhere.spi.device.group.IDeviceGroupElement;
+import com.sitewhere.spi.device.request.IBatchCommandInvocationRequest;
+import com.sitewhere.spi.device.request.IBatchElementUpdateRequest;
+import com.sitewhere.spi.device.request.IBatchOperationCreateRequest;
+import com.sitewhere.spi.device.request.IBatchOperationUpdateRequest;
+import com.sitewhere.spi.device.request.IDeviceAssignmentCreateRequest;
+import com.sitewhere.spi.device.request.IDeviceCommandCreateRequest;
+import com.sitewhere.spi.device.request.IDeviceCreateRequest;
+import com.sitewhere.spi.device.request.IDeviceGroupCreateRequest;
+import com.sitewhere.spi.device.request.IDeviceGroupElementCreateRequest;
+import com.sitewhere.spi.device.request.IDeviceSpecificationCreateRequest;
+import com.sitewhere.spi.device.request.ISiteCreateRequest;
+import com.sitewhere.spi.device.request.IZoneCreateRequest;
+import com.sitewhere.spi.error.ErrorCode;
+import com.sitewhere.spi.error.ErrorLevel;
+import com.sitewhere.spi.search.IDateRangeSearchCriteria;
+import com.sitewhere.spi.search.ISearchCriteria;
+import com.sitewhere.spi.search.ISearchResults;
+import com.sitewhere.spi.search.device.IBatchElementSearchCriteria;
+import com.sitewhere.spi.search.device.IDeviceSearchCriteria;
+import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
+
+/**
+ * Device management implementation that keeps all data in memory. Entities are held in
+ * concurrent maps and events in skip list indexes (see {@link InMemoryDeviceEventStore}
+ * ). Intended for load testing and benchmarking the processing pipeline without the
+ * cost of a database. Nothing is persisted across restarts.
+ * 
+ * Stored entities are never modified in place. Updates replace the entity in its map
+ * with an updated copy, so objects returned to callers are consistent snapshots that do
+ * not change underneath them. Callers should still treat results as read-only.
+ * 
+ * @author Derek
+ */
+public class InMemoryDeviceManagement extends LifecycleComponent implements IDeviceManagement,
+		IPurgeableDeviceManagement {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(InMemoryDeviceManagement.class);
+
+	/** Sorts commands by name */
+	private static final Comparator<IDeviceCommand> COMMAND_NAME_ASCENDING =
+			new Comparator<IDeviceCommand>() {
+
+				public int compare(IDeviceCommand first, IDeviceCommand second) {
+					return first.getName().compareTo(second.getName());
+				}
+			};
+
+	/** Sorts sites by name */
+	private static final Comparator<ISite> SITE_NAME_ASCENDING = new Comparator<ISite>() {
+
+		public int compare(ISite first, ISite second) {
+			return first.getName().compareTo(second.getName());
+		}
+	};
+
+	/** Sorts assignments with most recently activated first */
+	private static final Comparator<IDeviceAssignment> ACTIVE_DATE_DESCENDING =
+			new Comparator<IDeviceAssignment>() {
+
+				public int compare(IDeviceAssignment first, IDeviceAssignment second) {
+					return InMemoryPersistence.compareDescending(first.getActiveDate(),
+							second.getActiveDate());
+				}
+			};
+
+	/** Copies device specifications */
+	private static final EntityCopier<DeviceSpecification> SPECIFICATION_COPIER =
+			new EntityCopier<DeviceSpecification>() {
+
+				public DeviceSpecification copy(DeviceSpecification current) {
+					DeviceSpecification result = new DeviceSpecification();
+					result.setToken(current.getToken());
+					result.setName(current.getName());
+					result.setAssetModuleId(current.getAssetModuleId());
+					result.setAssetId(current.getAssetId());
+					result.setContainerPolicy(current.getContainerPolicy());
+					result.setDeviceElementSchema((DeviceElementSchema) current.getDeviceElementSchema());
+					MetadataProviderEntity.copy(current, result);
+					return result;
+				}
+			};
+
+	/** Copies device commands */
+	private static final EntityCopier<DeviceCommand> COMMAND_COPIER = new EntityCopier<DeviceCommand>() {
+
+		public DeviceCommand copy(DeviceCommand current) {
+			return DeviceCommand.copy(current);
+		}
+	};
+
+	/** Copies devices */
+	private static final EntityCopier<Device> DEVICE_COPIER = new EntityCopier<Device>() {
+
+		public Device copy(Device current) {
+			Device result = new Device();
+			result.setHardwareId(current.getHardwareId());
+			result.setSiteToken(current.getSiteToken());
+			result.setSpecificationToken(current.getSpecificationToken());
+			result.setParentHardwareId(current.getParentHardwareId());
+			List<DeviceElementMapping> mappings = new ArrayList<DeviceElementMapping>();
+			for (IDeviceElementMapping mapping : current.getDeviceElementMappings()) {
+				mappings.add(DeviceElementMapping.copy(mapping));
+			}
+			result.setDeviceElementMappings(mappings);
+			result.setComments(current.getComments());
+			result.setStatus(current.getStatus());
+			result.setAssignmentToken(current.getAssignmentToken());
+			MetadataProviderEntity.copy(current, result);
+			return result;
+		}
+	};
+
+	/** Copies device assignments. State is shared since it is replaced rather than updated */
+	private static final EntityCopier<DeviceAssignment> ASSIGNMENT_COPIER =
+			new EntityCopier<DeviceAssignment>() {
+
+				public DeviceAssignment copy(DeviceAssignment current) {
+					DeviceAssignment result = new DeviceAssignment();
+					result.setToken(current.getToken());
+					result.setDeviceHardwareId(current.getDeviceHardwareId());
+					result.setAssignmentType(current.getAssignmentType());
+					result.setAssetModuleId(current.getAssetModuleId());
+					result.setAssetId(current.getAssetId());
+					result.setSiteToken(current.getSiteToken());
+					result.setStatus(current.getStatus());
+					result.setActiveDate(current.getActiveDate());
+					result.setReleasedDate(current.getReleasedDate());
+					result.setState(current.getState());
+					MetadataProviderEntity.copy(current, result);
+					return result;
+				}
+			};
+
+	/** Copies sites */
+	private static final EntityCopier<Site> SITE_COPIER = new EntityCopier<Site>() {
+
+		public Site copy(Site current) {
+			return Site.copy(current);
+		}
+	};
+
+	/** Copies zones */
+	private static final EntityCopier<Zone> ZONE_COPIER = new EntityCopier<Zone>() {
+
+		public Zone copy(Zone current) {
+			return Zone.copy(current);
+		}
+	};
+
+	/** Copies device groups */
+	private static final EntityCopier<DeviceGroup> GROUP_COPIER = new EntityCopier<DeviceGroup>() {
+
+		public DeviceGroup copy(DeviceGroup current) {
+			return DeviceGroup.copy(current);
+		}
+	};
+
+	/** Copies batch operations */
+	private static final EntityCopier<BatchOperation> BATCH_OPERATION_COPIER =
+			new EntityCopier<BatchOperation>() {
+
+				public BatchOperation copy(BatchOperation current) {
+					return BatchOperation.copy(current);
+				}
+			};
+
+	/** Device specifications by token */
+	private ConcurrentMap<String, DeviceSpecification> specifications =
+			new ConcurrentHashMap<String, DeviceSpecification>();
+
+	/** Device commands by token */
+	private ConcurrentMap<String, DeviceCommand> commands = new ConcurrentHashMap<String, DeviceCommand>();
+
+	/** Devices by hardware id */
+	private ConcurrentMap<String, Device> devices = new ConcurrentHashMap<String, Device>();
+
+	/** Device assignments by token */
+	private ConcurrentMap<String, DeviceAssignment> assignments =
+			new ConcurrentHashMap<String, DeviceAssignment>();
+
+	/** Sites by token */
+	private ConcurrentMap<String, Site> sites = new ConcurrentHashMap<String, Site>();
+
+	/** Zones by token */
+	private ConcurrentMap<String, Zone> zones = new ConcurrentHashMap<String, Zone>();
+
+	/** Device groups by token */
+	private ConcurrentMap<String, DeviceGroup> groups = new ConcurrentHashMap<String, DeviceGroup>();
+
+	/** Device group elements by group token, ordered by index */
+	private ConcurrentMap<String, ConcurrentSkipListMap<Long, DeviceGroupElement>> groupElements =
+			new ConcurrentHashMap<String, ConcurrentSkipListMap<Long, DeviceGroupElement>>();
+
+	/** Last element index used for each device group */
+	private ConcurrentMap<String, AtomicLong> groupIndexes = new ConcurrentHashMap<String, AtomicLong>();
+
+	/** Batch operations by token */
+	private ConcurrentMap<String, BatchOperation> batchOperations =
+			new ConcurrentHashMap<String, BatchOperation>();
+
+	/** Batch elements by operation token, ordered by index */
+	private ConcurrentMap<String, ConcurrentSkipListMap<Long, BatchElement>> batchElements =
+			new ConcurrentHashMap<String, ConcurrentSkipListMap<Long, BatchElement>>();
+
+	/** Holds device events */
+	private InMemoryDeviceEventStore eventStore = new InMemoryDeviceEventStore();
+
+	public InMemoryDeviceManagement() {
+		super(LifecycleComponentType.DataStore);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#start()
+	 */
+	public void start() throws SiteWhereException {
+		LOGGER.warn("Using in-memory device management. Data will not be persisted.");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#getLogger()
+	 */
+	@Override
+	public Logger getLogger() {
+		return LOGGER;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#stop()
+	 */
+	public void stop() throws SiteWhereException {
+		LOGGER.info("In-memory device management stopped.");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#createDeviceSpecification(com.sitewhere
+	 * .spi.device.request.IDeviceSpecificationCreateRequest)
+	 */
+	@Override
+	public IDeviceSpecification createDeviceSpecification(IDeviceSpecificationCreateRequest request)
+			throws SiteWhereException {
+		String uuid = ((request.getToken() != null) ? request.getToken() : UUID.randomUUID().toString());
+
+		// Use common logic so all backend implementations work the same.
+		DeviceSpecification spec = SiteWherePersistence.deviceSpecificationCreateLogic(request, uuid);
+		specifications.put(uuid, spec);
+		return spec;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#getDeviceSpecificationByToken(java.lang
+	 * .String)
+	 */
+	@Override
+	public IDeviceSpecification getDeviceSpecificationByToken(String token) throws SiteWhereException {
+		return specifications.get(token);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#updateDeviceSpecification(java.lang.
+	 * String, com.sitewhere.spi.device.request.IDeviceSpecificationCreateRequest)
+	 */
+	@Override
+	public IDeviceSpecification updateDeviceSpecification(String token,
+			final IDeviceSpecificationCreateRequest request) throws SiteWhereException {
+		DeviceSpecification spec = assertDeviceSpecification(token);
+		return replace(specifications, token, spec, new EntityUpdate<DeviceSpecification>() {
+
+			public DeviceSpecification update(DeviceSpecification current) throws SiteWhereException {
+				DeviceSpecification updated = SPECIFICATION_COPIER.copy(current);
+				SiteWherePersistence.deviceSpecificationUpdateLogic(request, updated);
+				return updated;
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#listDeviceSpecifications(boolean,
+	 * com.sitewhere.spi.search.ISearchCriteria)
+	 */
+	@Override
+	public ISearchResults<IDeviceSpecification> listDeviceSpecifications(boolean includeDeleted,
+			ISearchCriteria criteria) throws SiteWhereException {
+		List<IDeviceSpecification> matches =
+				new ArrayList<IDeviceSpecification>(filterDeleted(specifications.values(), includeDeleted));
+		return InMemoryPersistence.search(matches, InMemoryPersistence.CREATED_DATE_DESCENDING, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#deleteDeviceSpecification(java.lang.
+	 * String, boolean)
+	 */
+	@Override
+	public IDeviceSpecification deleteDeviceSpecification(String token, boolean force)
+			throws SiteWhereException {
+		DeviceSpecification existing = assertDeviceSpecification(token);
+		return delete(specifications, token, existing, force, SPECIFICATION_COPIER);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#createDeviceCommand(com.sitewhere.spi
+	 * .device.IDeviceSpecification,
+	 * com.sitewhere.spi.device.request.IDeviceCommandCreateRequest)
+	 */
+	@Override
+	public IDeviceCommand createDeviceCommand(IDeviceSpecification spec, IDeviceCommandCreateRequest request)
+			throws SiteWhereException {
+		// Note: This allows duplicates if duplicate was marked deleted.
+		List<IDeviceCommand> existing = listDeviceCommands(spec.getToken(), false);
+
+		// Use common logic so all backend implementations work the same.
+		String uuid = ((request.getToken() != null) ? request.getToken() : UUID.randomUUID().toString());
+		DeviceCommand command = SiteWherePersistence.deviceCommandCreateLogic(spec, request, uuid, existing);
+		commands.put(uuid, command);
+		return command;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#getDeviceCommandByToken(java.lang.String
+	 * )
+	 */
+	@Override
+	public IDeviceCommand getDeviceCommandByToken(String token) throws SiteWhereException {
+		return commands.get(token);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#updateDeviceCommand(java.lang.String,
+	 * com.sitewhere.spi.device.request.IDeviceCommandCreateRequest)
+	 */
+	@Override
+	public IDeviceCommand updateDeviceCommand(String token, final IDeviceCommandCreateRequest request)
+			throws SiteWhereException {
+		DeviceCommand match = assertDeviceCommand(token);
+
+		// Check for duplicates against the other commands for the specification.
+		final List<IDeviceCommand> existing = new ArrayList<IDeviceCommand>();
+		for (IDeviceCommand current : listDeviceCommands(match.getSpecificationToken(), false)) {
+			if (!current.getToken().equals(token)) {
+				existing.add(current);
+			}
+		}
+
+		// Update a copy so a rejected update leaves the stored command untouched.
+		return replace(commands, token, match, new EntityUpdate<DeviceCommand>() {
+
+			public DeviceCommand update(DeviceCommand current) throws SiteWhereException {
+				DeviceCommand updated = COMMAND_COPIER.copy(current);
+				SiteWherePersistence.deviceCommandUpdateLogic(request, updated, existing);
+				return updated;
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#listDeviceCommands(java.lang.String,
+	 * boolean)
+	 */
+	@Override
+	public List<IDeviceCommand> listDeviceCommands(String token, boolean includeDeleted)
+			throws SiteWhereException {
+		List<IDeviceCommand> matches = new ArrayList<IDeviceCommand>();
+		for (DeviceCommand command : filterDeleted(commands.values(), includeDeleted)) {
+			if (command.getSpecificationToken().equals(token)) {
+				matches.add(command);
+			}
+		}
+		return InMemoryPersistence.search(matches, COMMAND_NAME_ASCENDING, null).getResults();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#deleteDeviceCommand(java.lang.String,
+	 * boolean)
+	 */
+	@Override
+	public IDeviceCommand deleteDeviceCommand(String token, boolean force) throws SiteWhereException {
+		DeviceCommand existing = assertDeviceCommand(token);
+		return delete(commands, token, existing, force, COMMAND_COPIER);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#createDevice(com.sitewhere.spi.device
+	 * .request. IDeviceCreateRequest)
+	 */
+	@Override
+	public IDevice createDevice(IDeviceCreateRequest request) throws SiteWhereException {
+		Device newDevice = SiteWherePersistence.deviceCreateLogic(request);
+		if (devices.putIfAbsent(newDevice.getHardwareId(), newDevice) != null) {
+			throw new SiteWhereSystemException(ErrorCode.DuplicateHardwareId, ErrorLevel.ERROR,
+					HttpServletResponse.SC_CONFLICT);
+		}
+		return newDevice;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#updateDevice(java.lang.String,
+	 * com.sitewhere.spi.device.request.IDeviceCreateRequest)
+	 */
+	@Override
+	public IDevice updateDevice(String hardwareId, final IDeviceCreateRequest request)
+			throws SiteWhereException {
+		Device device = assertDevice(hardwareId);
+		return replace(devices, hardwareId, device, new EntityUpdate<Device>() {
+
+			public Device update(Device current) throws SiteWhereException {
+				Device updated = DEVICE_COPIER.copy(current);
+				SiteWherePersistence.deviceUpdateLogic(request, updated);
+				return updated;
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#getDeviceByHardwareId(java
+	 * .lang.String)
+	 */
+	@Override
+	public IDevice getDeviceByHardwareId(String hardwareId) throws SiteWhereException {
+		return devices.get(hardwareId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#getCurrentDeviceAssignment
+	 * (com.sitewhere.spi.device .IDevice)
+	 */
+	@Override
+	public IDeviceAssignment getCurrentDeviceAssignment(IDevice device) throws SiteWhereException {
+		if (device.getAssignmentToken() == null) {
+			return null;
+		}
+		return assertDeviceAssignment(device.getAssignmentToken());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#listDevices(boolean,
+	 * com.sitewhere.spi.search.device.IDeviceSearchCriteria)
+	 */
+	@Override
+	public ISearchResults<IDevice> listDevices(boolean includeDeleted, IDeviceSearchCriteria criteria)
+			throws SiteWhereException {
+		String specificationToken = null;
+		String siteToken = null;
+		switch (criteria.getSearchType()) {
+		case All: {
+			break;
+		}
+		case UsesSpecification: {
+			if (criteria.getDeviceBySpecificationParameters() != null) {
+				specificationToken = criteria.getDeviceBySpecificationParameters().getSpecificationToken();
+				if (specificationToken == null) {
+					throw new SiteWhereException("Invalid device search. No specification token passed.");
+				}
+			}
+			break;
+		}
+		case UsesSite: {
+			if (criteria.getDeviceBySiteParameters() != null) {
+				siteToken = criteria.getDeviceBySiteParameters().getSiteToken();
+				if (siteToken == null) {
+					throw new SiteWhereException("Invalid device search. No site token passed.");
+				}
+			}
+			break;
+		}
+		}
+		List<IDevice> matches = new ArrayList<IDevice>();
+		for (Device device : filterDeleted(devices.values(), includeDeleted)) {
+			if (criteria.isExcludeAssigned() && (device.getAssignmentToken() != null)) {
+				continue;
+			}
+			if (!InMemoryPersistence.isInDateRange(device.getCreatedDate(), criteria)) {
+				continue;
+			}
+			if ((specificationToken != null)
+					&& (!specificationToken.equals(device.getSpecificationToken()))) {
+				continue;
+			}
+			if ((siteToken != null) && (!siteToken.equals(device.getSiteToken()))) {
+				continue;
+			}
+			matches.add(device);
+		}
+		return InMemoryPersistence.search(matches, InMemoryPersistence.CREATED_DATE_DESCENDING, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#createDeviceElementMapping(java.lang
+	 * .String, com.sitewhere.spi.device.IDeviceElementMapping)
+	 */
+	@Override
+	public IDevice createDeviceElementMapping(String hardwareId, IDeviceElementMapping mapping)
+			throws SiteWhereException {
+		return SiteWherePersistence.deviceElementMappingCreateLogic(this, hardwareId, mapping);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#deleteDeviceElementMapping(java.lang
+	 * .String, java.lang.String)
+	 */
+	@Override
+	public IDevice deleteDeviceElementMapping(String hardwareId, String path) throws SiteWhereException {
+		return SiteWherePersistence.deviceElementMappingDeleteLogic(this, hardwareId, path);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#deleteDevice(java.lang.String,
+	 * boolean)
+	 */
+	@Override
+	public IDevice deleteDevice(String hardwareId, boolean force) throws SiteWhereException {
+		// Retry if the device changed, so an assignment made meanwhile is not missed.
+		while (true) {
+			Device existing = assertDevice(hardwareId);
+			if (existing.getAssignmentToken() != null) {
+				throw new SiteWhereSystemException(ErrorCode.DeviceCanNotBeDeletedIfAssigned,
+						ErrorLevel.ERROR);
+			}
+			if (force) {
+				if (devices.remove(hardwareId, existing)) {
+					return existing;
+				}
+			} else {
+				Device deleted = DEVICE_COPIER.copy(existing);
+				deleted.setDeleted(true);
+				if (devices.replace(hardwareId, existing, deleted)) {
+					return deleted;
+				}
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#createDeviceAssignment(com.sitewhere
+	 * .spi.device.request. IDeviceAssignmentCreateRequest)
+	 */
+	@Override
+	public IDeviceAssignment createDeviceAssignment(IDeviceAssignmentCreateRequest request)
+			throws SiteWhereException {
+		Device device = assertDevice(request.getDeviceHardwareId());
+		if (device.getAssignmentToken() != null) {
+			throw new SiteWhereSystemException(ErrorCode.DeviceAlreadyAssigned, ErrorLevel.ERROR);
+		}
+
+		// Use common logic to load assignment from request.
+		final DeviceAssignment newAssignment =
+				SiteWherePersistence.deviceAssignmentCreateLogic(request, device,
+						UUID.randomUUID().toString());
+		assignments.put(newAssignment.getToken(), newAssignment);
+
+		// Update device to point to created assignment unless another assignment won.
+		try {
+			replace(devices, device.getHardwareId(), device, new EntityUpdate<Device>() {
+
+				public Device update(Device current) throws SiteWhereException {
+					if (current.getAssignmentToken() != null) {
+						throw new SiteWhereSystemException(ErrorCode.DeviceAlreadyAssigned, ErrorLevel.ERROR);
+					}
+					Device updated = DEVICE_COPIER.copy(current);
+					updated.setAssignmentToken(newAssignment.getToken());
+					return updated;
+				}
+			});
+		} catch (SiteWhereException e) {
+			assignments.remove(newAssignment.getToken());
+			throw e;
+		}
+		return newAssignment;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#getDeviceAssignmentByToken
+	 * (java.lang.String)
+	 */
+	@Override
+	public IDeviceAssignment getDeviceAssignmentByToken(String token) throws SiteWhereException {
+		return assignments.get(token);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#deleteDeviceAssignment(java.lang.String,
+	 * boolean)
+	 */
+	@Override
+	public IDeviceAssignment deleteDeviceAssignment(String token, boolean force) throws SiteWhereException {
+		DeviceAssignment existing = assertDeviceAssignment(token);
+		return delete(assignments, token, existing, force, ASSIGNMENT_COPIER);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#getDeviceForAssignment(com
+	 * .sitewhere.spi.device .IDeviceAssignment)
+	 */
+	@Override
+	public IDevice getDeviceForAssignment(IDeviceAssignment assignment) throws SiteWhereException {
+		return getDeviceByHardwareId(assignment.getDeviceHardwareId());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#getSiteForAssignment(com.sitewhere
+	 * .spi.device. IDeviceAssignment)
+	 */
+	@Override
+	public ISite getSiteForAssignment(IDeviceAssignment assignment) throws SiteWhereException {
+		return getSiteByToken(assignment.getSiteToken());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#updateDeviceAssignmentMetadata
+	 * (java.lang.String, com.sitewhere.spi.device.IMetadataProvider)
+	 */
+	@Override
+	public IDeviceAssignment updateDeviceAssignmentMetadata(String token, final IMetadataProvider metadata)
+			throws SiteWhereException {
+		DeviceAssignment assignment = assertDeviceAssignment(token);
+		return replace(assignments, token, assignment, new EntityUpdate<DeviceAssignment>() {
+
+			public DeviceAssignment update(DeviceAssignment current) throws SiteWhereException {
+				DeviceAssignment updated = ASSIGNMENT_COPIER.copy(current);
+				updated.clearMetadata();
+				MetadataProvider.copy(metadata, updated);
+				SiteWherePersistence.setUpdatedEntityMetadata(updated);
+				return updated;
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#updateDeviceAssignmentStatus
+	 * (java.lang.String, com.sitewhere.spi.device.DeviceAssignmentStatus)
+	 */
+	@Override
+	public IDeviceAssignment updateDeviceAssignmentStatus(String token, final DeviceAssignmentStatus status)
+			throws SiteWhereException {
+		DeviceAssignment assignment = assertDeviceAssignment(token);
+		return replace(assignments, token, assignment, new EntityUpdate<DeviceAssignment>() {
+
+			public DeviceAssignment update(DeviceAssignment current) throws SiteWhereException {
+				DeviceAssignment updated = ASSIGNMENT_COPIER.copy(current);
+				updated.setStatus(status);
+				return updated;
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#updateDeviceAssignmentState(java.lang
+	 * .String, com.sitewhere.spi.device.IDeviceEventBatch)
+	 */
+	@Override
+	public IDeviceAssignment updateDeviceAssignmentState(String token, IDeviceAssignmentState state)
+			throws SiteWhereException {
+		DeviceAssignment assignment = assertDeviceAssignment(token);
+		final DeviceAssignmentState copy = DeviceAssignmentState.copy(state);
+		return replace(assignments, token, assignment, new EntityUpdate<DeviceAssignment>() {
+
+			public DeviceAssignment update(DeviceAssignment current) throws SiteWhereException {
+				DeviceAssignment updated = ASSIGNMENT_COPIER.copy(current);
+				updated.setState(copy);
+				return updated;
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#addDeviceEventBatch(java.lang.String,
+	 * com.sitewhere.spi.device.IDeviceEventBatch)
+	 */
+	@Override
+	public IDeviceEventBatchResponse addDeviceEventBatch(String assignmentToken, IDeviceEventBatch batch)
+			throws SiteWhereException {
+		DeviceAssignment assignment = assertDeviceAssignment(assignmentToken);
+		DeviceEventBatchResponse response = new DeviceEventBatchResponse();
+		final List<DeviceMeasurements> mxUpdates = new ArrayList<DeviceMeasurements>();
+		final List<DeviceLocation> locationUpdates = new ArrayList<DeviceLocation>();
+		final List<DeviceAlert> alertUpdates = new ArrayList<DeviceAlert>();
+		for (IDeviceMeasurementsCreateRequest request : batch.getMeasurements()) {
+			DeviceMeasurements measurements =
+					SiteWherePersistence.deviceMeasurementsCreateLogic(request, assignment);
+			response.getCreatedMeasurements().add(eventStore.add(measurements));
+			if (request.isUpdateState()) {
+				mxUpdates.add(measurements);
+			}
+		}
+		for (IDeviceLocationCreateRequest request : batch.getLocations()) {
+			DeviceLocation location = SiteWherePersistence.deviceLocationCreateLogic(assignment, request);
+			response.getCreatedLocations().add(eventStore.add(location));
+			if (request.isUpdateState()) {
+				locationUpdates.add(location);
+			}
+		}
+		for (IDeviceAlertCreateRequest request : batch.getAlerts()) {
+			DeviceAlert alert = SiteWherePersistence.deviceAlertCreateLogic(assignment, request);
+			response.getCreatedAlerts().add(eventStore.add(alert));
+			if (request.isUpdateState()) {
+				alertUpdates.add(alert);
+			}
+		}
+		if (mxUpdates.isEmpty() && locationUpdates.isEmpty() && alertUpdates.isEmpty()) {
+			return response;
+		}
+
+		// Apply state updates in the order events were added as a single replacement.
+		replace(assignments, assignmentToken, assignment, new EntityUpdate<DeviceAssignment>() {
+
+			public DeviceAssignment update(DeviceAssignment current) throws SiteWhereException {
+				DeviceAssignment updated = ASSIGNMENT_COPIER.copy(current);
+				for (DeviceMeasurements measurements : mxUpdates) {
+					updated.setState(SiteWherePersistence.assignmentStateMeasurementsUpdateLogic(updated,
+							measurements));
+				}
+				for (DeviceLocation location : locationUpdates) {
+					updated.setState(
+							SiteWherePersistence.assignmentStateLocationUpdateLogic(updated, location));
+				}
+				for (DeviceAlert alert : alertUpdates) {
+					updated.setState(SiteWherePersistence.assignmentStateAlertUpdateLogic(updated, alert));
+				}
+				return updated;
+			}
+		});
+		return response;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#endDeviceAssignment(java.lang
+	 * .String)
+	 */
+	@Override
+	public IDeviceAssignment endDeviceAssignment(String token) throws SiteWhereException {
+		DeviceAssignment assignment = assertDeviceAssignment(token);
+		final Date released = Calendar.getInstance().getTime();
+		DeviceAssignment ended =
+				replace(assignments, token, assignment, new EntityUpdate<DeviceAssignment>() {
+
+					public DeviceAssignment update(DeviceAssignment current) throws SiteWhereException {
+						DeviceAssignment updated = ASSIGNMENT_COPIER.copy(current);
+						updated.setReleasedDate(released);
+						updated.setStatus(DeviceAssignmentStatus.Released);
+						return updated;
+					}
+				});
+
+		// Remove device assignment reference.
+		final String assignmentToken = token;
+		Device device = devices.get(assignment.getDeviceHardwareId());
+		if ((device != null) && (token.equals(device.getAssignmentToken()))) {
+			replace(devices, device.getHardwareId(), device, new EntityUpdate<Device>() {
+
+				public Device update(Device current) throws SiteWhereException {
+					if (!assignmentToken.equals(current.getAssignmentToken())) {
+						return current;
+					}
+					Device updated = DEVICE_COPIER.copy(current);
+					updated.setAssignmentToken(null);
+					return updated;
+				}
+			});
+		}
+		return ended;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#getDeviceAssignmentHistory(java.lang
+	 * .String, com.sitewhere.spi.common.ISearchCriteria)
+	 */
+	@Override
+	public ISearchResults<IDeviceAssignment> getDeviceAssignmentHistory(String hardwareId,
+			ISearchCriteria criteria) throws SiteWhereException {
+		List<IDeviceAssignment> matches = new ArrayList<IDeviceAssignment>();
+		for (DeviceAssignment assignment : assignments.values()) {
+			if (hardwareId.equals(assignment.getDeviceHardwareId())) {
+				matches.add(assignment);
+			}
+		}
+		return InMemoryPersistence.search(matches, ACTIVE_DATE_DESCENDING, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#getDeviceAssignmentsForSite(java.lang
+	 * .String, com.sitewhere.spi.common.ISearchCriteria)
+	 */
+	@Override
+	public ISearchResults<IDeviceAssignment> getDeviceAssignmentsForSite(String siteToken,
+			ISearchCriteria criteria) throws SiteWhereException {
+		List<IDeviceAssignment> matches = new ArrayList<IDeviceAssignment>();
+		for (DeviceAssignment assignment : assignments.values()) {
+			if (siteToken.equals(assignment.getSiteToken())) {
+				matches.add(assignment);
+			}
+		}
+		return InMemoryPersistence.search(matches, ACTIVE_DATE_DESCENDING, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#getDeviceEventById(java.lang.String)
+	 */
+	@Override
+	public IDeviceEvent getDeviceEventById(String id) throws SiteWhereException {
+		return eventStore.getById(id);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#listDeviceEvents(java.lang.String,
+	 * com.sitewhere.spi.search.IDateRangeSearchCriteria)
+	 */
+	@Override
+	public ISearchResults<IDeviceEvent> listDeviceEvents(String assignmentToken,
+			IDateRangeSearchCriteria criteria) throws SiteWhereException {
+		return eventStore.searchByAssignment(assignmentToken, null, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#addDeviceMeasurements(java.lang.String,
+	 * com.sitewhere.spi.device.event.request.IDeviceMeasurementsCreateRequest)
+	 */
+	@Override
+	public IDeviceMeasurements addDeviceMeasurements(String assignmentToken,
+			IDeviceMeasurementsCreateRequest request) throws SiteWhereException {
+		DeviceAssignment assignment = assertDeviceAssignment(assignmentToken);
+		DeviceMeasurements measurements =
+				eventStore.add(SiteWherePersistence.deviceMeasurementsCreateLogic(request, assignment));
+
+		// Update assignment state if requested.
+		if (request.isUpdateState()) {
+			final IDeviceMeasurements added = measurements;
+			replace(assignments, assignmentToken, assignment, new EntityUpdate<DeviceAssignment>() {
+
+				public DeviceAssignment update(DeviceAssignment current) throws SiteWhereException {
+					DeviceAssignment updated = ASSIGNMENT_COPIER.copy(current);
+					updated.setState(SiteWherePersistence.assignmentStateMeasurementsUpdateLogic(updated,
+							added));
+					return updated;
+				}
+			});
+		}
+		return measurements;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#listDeviceMeasurements(java.lang.String,
+	 * com.sitewhere.spi.common.IDateRangeSearchCriteria)
+	 */
+	@Override
+	public ISearchResults<IDeviceMeasurements> listDeviceMeasurements(String token,
+			IDateRangeSearchCriteria criteria) throws SiteWhereException {
+		return eventStore.searchByAssignment(token, DeviceEventType.Measurements, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#listDeviceMeasurementsForSite(java.lang
+	 * .String, com.sitewhere.spi.common.IDateRangeSearchCriteria)
+	 */
+	@Override
+	public ISearchResults<IDeviceMeasurements> listDeviceMeasurementsForSite(String siteToken,
+			IDateRangeSearchCriteria criteria) throws SiteWhereException {
+		return eventStore.searchBySite(siteToken, DeviceEventType.Measurements, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#addDeviceLocation(java.lang.String,
+	 * com.sitewhere.spi.device.event.request.IDeviceLocationCreateRequest)
+	 */
+	@Override
+	public IDeviceLocation addDeviceLocation(String assignmentToken, IDeviceLocationCreateRequest request)
+			throws SiteWhereException {
+		DeviceAssignment assignment = assertDeviceAssignment(assignmentToken);
+		DeviceLocation location =
+				eventStore.add(SiteWherePersistence.deviceLocationCreateLogic(assignment, request));
+
+		// Update assignment state if requested.
+		if (request.isUpdateState()) {
+			final IDeviceLocation added = location;
+			replace(assignments, assignmentToken, assignment, new EntityUpdate<DeviceAssignment>() {
+
+				public DeviceAssignment update(DeviceAssignment current) throws SiteWhereException {
+					DeviceAssignment updated = ASSIGNMENT_COPIER.copy(current);
+					updated.setState(SiteWherePersistence.assignmentStateLocationUpdateLogic(updated, added));
+					return updated;
+				}
+			});
+		}
+		return location;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#listDeviceLocations(java.lang.String,
+	 * com.sitewhere.spi.common.IDateRangeSearchCriteria)
+	 */
+	@Override
+	public ISearchResults<IDeviceLocation> listDeviceLocations(String assignmentToken,
+			IDateRangeSearchCriteria criteria) throws SiteWhereException {
+		return eventStore.searchByAssignment(assignmentToken, DeviceEventType.Location, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#listDeviceLocationsForSite(java.lang
+	 * .String, com.sitewhere.spi.search.IDateRangeSearchCriteria)
+	 */
+	@Override
+	public ISearchResults<IDeviceLocation> listDeviceLocationsForSite(String siteToken,
+			IDateRangeSearchCriteria criteria) throws SiteWhereException {
+		return eventStore.searchBySite(siteToken, DeviceEventType.Location, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#listDeviceLocations(java.util.List,
+	 * com.sitewhere.spi.search.IDateRangeSearchCriteria)
+	 */
+	@Override
+	public ISearchResults<IDeviceLocation> listDeviceLocations(List<String> assignmentTokens,
+			IDateRangeSearchCriteria criteria) throws SiteWhereException {
+		return eventStore.searchByAssignments(assignmentTokens, DeviceEventType.Location, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#addDeviceAlert(java.lang.String,
+	 * com.sitewhere.spi.device.event.request.IDeviceAlertCreateRequest)
+	 */
+	@Override
+	public IDeviceAlert addDeviceAlert(String assignmentToken, IDeviceAlertCreateRequest request)
+			throws SiteWhereException {
+		DeviceAssignment assignment = assertDeviceAssignment(assignmentToken);
+		DeviceAlert alert = eventStore.add(SiteWherePersistence.deviceAlertCreateLogic(assignment, request));
+
+		// Update assignment state if requested.
+		if (request.isUpdateState()) {
+			final IDeviceAlert added = alert;
+			replace(assignments, assignmentToken, assignment, new EntityUpdate<DeviceAssignment>() {
+
+				public DeviceAssignment update(DeviceAssignment current) throws SiteWhereException {
+					DeviceAssignment updated = ASSIGNMENT_COPIER.copy(current);
+					updated.setState(SiteWherePersistence.assignmentStateAlertUpdateLogic(updated, added));
+					return updated;
+				}
+			});
+		}
+		return alert;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#listDeviceAlerts(java.lang.String,
+	 * com.sitewhere.spi.common.IDateRangeSearchCriteria)
+	 */
+	@Override
+	public ISearchResults<IDeviceAlert> listDeviceAlerts(String assignmentToken,
+			IDateRangeSearchCriteria criteria) throws SiteWhereException {
+		return eventStore.searchByAssignment(assignmentToken, DeviceEventType.Alert, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#listDeviceAlertsForSite(java.lang.String
+	 * , com.sitewhere.spi.common.IDateRangeSearchCriteria)
+	 */
+	@Override
+	public ISearchResults<IDeviceAlert> listDeviceAlertsForSite(String siteToken,
+			IDateRangeSearchCriteria criteria) throws SiteWhereException {
+		return eventStore.searchBySite(siteToken, DeviceEventType.Alert, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#addDeviceCommandInvocation(java.lang
+	 * .String, com.sitewhere.spi.device.command.IDeviceCommand,
+	 * com.sitewhere.spi.device.event.request.IDeviceCommandInvocationCreateRequest)
+	 */
+	@Override
+	public IDeviceCommandInvocation addDeviceCommandInvocation(String assignmentToken,
+			IDeviceCommand command, IDeviceCommandInvocationCreateRequest request) throws SiteWhereException {
+		DeviceAssignment assignment = assertDeviceAssignment(assignmentToken);
+		DeviceCommandInvocation ci =
+				SiteWherePersistence.deviceCommandInvocationCreateLogic(assignment, command, request);
+		return eventStore.add(ci);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#listDeviceCommandInvocations(java.lang
+	 * .String, com.sitewhere.spi.search.IDateRangeSearchCriteria)
+	 */
+	@Override
+	public ISearchResults<IDeviceCommandInvocation> listDeviceCommandInvocations(String assignmentToken,
+			IDateRangeSearchCriteria criteria) throws SiteWhereException {
+		return eventStore.searchByAssignment(assignmentToken, DeviceEventType.CommandInvocation, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#listDeviceCommandInvocationsForSite(
+	 * java.lang.String, com.sitewhere.spi.search.IDateRangeSearchCriteria)
+	 */
+	@Override
+	public ISearchResults<IDeviceCommandInvocation> listDeviceCommandInvocationsForSite(String siteToken,
+			IDateRangeSearchCriteria criteria) throws SiteWhereException {
+		return eventStore.searchBySite(siteToken, DeviceEventType.CommandInvocation, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#listDeviceCommandInvocationResponses(
+	 * java.lang.String)
+	 */
+	@Override
+	public ISearchResults<IDeviceCommandResponse> listDeviceCommandInvocationResponses(String invocationId)
+			throws SiteWhereException {
+		return eventStore.searchResponses(invocationId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#addDeviceCommandResponse(java.lang.String
+	 * , com.sitewhere.spi.device.event.request.IDeviceCommandResponseCreateRequest)
+	 */
+	@Override
+	public IDeviceCommandResponse addDeviceCommandResponse(String assignmentToken,
+			IDeviceCommandResponseCreateRequest request) throws SiteWhereException {
+		DeviceAssignment assignment = assertDeviceAssignment(assignmentToken);
+		DeviceCommandResponse response =
+				SiteWherePersistence.deviceCommandResponseCreateLogic(assignment, request);
+		return eventStore.add(response);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#listDeviceCommandResponses(java.lang
+	 * .String, com.sitewhere.spi.search.IDateRangeSearchCriteria)
+	 */
+	@Override
+	public ISearchResults<IDeviceCommandResponse> listDeviceCommandResponses(String assignmentToken,
+			IDateRangeSearchCriteria criteria) throws SiteWhereException {
+		return eventStore.searchByAssignment(assignmentToken, DeviceEventType.CommandResponse, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#listDeviceCommandResponsesForSite(java
+	 * .lang.String, com.sitewhere.spi.search.IDateRangeSearchCriteria)
+	 */
+	@Override
+	public ISearchResults<IDeviceCommandResponse> listDeviceCommandResponsesForSite(String siteToken,
+			IDateRangeSearchCriteria criteria) throws SiteWhereException {
+		return eventStore.searchBySite(siteToken, DeviceEventType.CommandResponse, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#addDeviceStateChange(java.lang.String,
+	 * com.sitewhere.spi.device.event.request.IDeviceStateChangeCreateRequest)
+	 */
+	@Override
+	public IDeviceStateChange addDeviceStateChange(String assignmentToken,
+			IDeviceStateChangeCreateRequest request) throws SiteWhereException {
+		DeviceAssignment assignment = assertDeviceAssignment(assignmentToken);
+		DeviceStateChange state = SiteWherePersistence.deviceStateChangeCreateLogic(assignment, request);
+		return eventStore.add(state);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#listDeviceStateChanges(java.lang.String,
+	 * com.sitewhere.spi.search.IDateRangeSearchCriteria)
+	 */
+	@Override
+	public ISearchResults<IDeviceStateChange> listDeviceStateChanges(String assignmentToken,
+			IDateRangeSearchCriteria criteria) throws SiteWhereException {
+		return eventStore.searchByAssignment(assignmentToken, DeviceEventType.StateChange, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#listDeviceStateChangesForSite(java.lang
+	 * .String, com.sitewhere.spi.search.IDateRangeSearchCriteria)
+	 */
+	@Override
+	public ISearchResults<IDeviceStateChange> listDeviceStateChangesForSite(String siteToken,
+			IDateRangeSearchCriteria criteria) throws SiteWhereException {
+		return eventStore.searchBySite(siteToken, DeviceEventType.StateChange, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IPurgeableDeviceManagement#purgeDeviceEvents(java.lang.String
+	 * , com.sitewhere.spi.device.event.DeviceEventType, java.util.Date, boolean, int,
+	 * com.sitewhere.spi.device.event.IDeviceEventPurgeHandler)
+	 */
+	@Override
+	public int purgeDeviceEvents(String siteToken, DeviceEventType eventType, Date before,
+			boolean includeRollups, int maxEvents, IDeviceEventPurgeHandler handler)
+			throws SiteWhereException {
+		return eventStore.purge(siteToken, eventType, before, includeRollups, maxEvents, handler);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#createSite(com.sitewhere.spi.device.
+	 * request.ISiteCreateRequest )
+	 */
+	@Override
+	public ISite createSite(ISiteCreateRequest request) throws SiteWhereException {
+		// Use common logic so all backend implementations work the same.
+		Site site = SiteWherePersistence.siteCreateLogic(request, UUID.randomUUID().toString());
+		sites.put(site.getToken(), site);
+		return site;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#updateSite(java.lang.String,
+	 * com.sitewhere.spi.device.request.ISiteCreateRequest)
+	 */
+	@Override
+	public ISite updateSite(String token, final ISiteCreateRequest request) throws SiteWhereException {
+		Site site = sites.get(token);
+		if (site == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidSiteToken, ErrorLevel.ERROR);
+		}
+		return replace(sites, token, site, new EntityUpdate<Site>() {
+
+			public Site update(Site current) throws SiteWhereException {
+				Site updated = SITE_COPIER.copy(current);
+				SiteWherePersistence.siteUpdateLogic(request, updated);
+				return updated;
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#getSiteByToken(java.lang.String )
+	 */
+	@Override
+	public ISite getSiteByToken(String token) throws SiteWhereException {
+		return sites.get(token);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#deleteSite(java.lang.String,
+	 * boolean)
+	 */
+	@Override
+	public ISite deleteSite(String siteToken, boolean force) throws SiteWhereException {
+		Site existing = assertSite(siteToken);
+		return delete(sites, siteToken, existing, force, SITE_COPIER);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#listSites(com.sitewhere.spi.common.
+	 * ISearchCriteria)
+	 */
+	@Override
+	public ISearchResults<ISite> listSites(ISearchCriteria criteria) throws SiteWhereException {
+		List<ISite> matches = new ArrayList<ISite>(sites.values());
+		return InMemoryPersistence.search(matches, SITE_NAME_ASCENDING, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#createZone(com.sitewhere.spi.device.
+	 * ISite, com.sitewhere.spi.device.request.IZoneCreateRequest)
+	 */
+	@Override
+	public IZone createZone(ISite site, IZoneCreateRequest request) throws SiteWhereException {
+		Zone zone =
+				SiteWherePersistence.zoneCreateLogic(request, site.getToken(), UUID.randomUUID().toString());
+		zones.put(zone.getToken(), zone);
+		return zone;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#updateZone(java.lang.String,
+	 * com.sitewhere.spi.device.request.IZoneCreateRequest)
+	 */
+	@Override
+	public IZone updateZone(String token, final IZoneCreateRequest request) throws SiteWhereException {
+		Zone zone = assertZone(token);
+		return replace(zones, token, zone, new EntityUpdate<Zone>() {
+
+			public Zone update(Zone current) throws SiteWhereException {
+				Zone updated = ZONE_COPIER.copy(current);
+				SiteWherePersistence.zoneUpdateLogic(request, updated);
+				return updated;
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#getZone(java.lang.String)
+	 */
+	@Override
+	public IZone getZone(String zoneToken) throws SiteWhereException {
+		return assertZone(zoneToken);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#listZones(java.lang.String,
+	 * com.sitewhere.spi.common.ISearchCriteria)
+	 */
+	@Override
+	public ISearchResults<IZone> listZones(String siteToken, ISearchCriteria criteria)
+			throws SiteWhereException {
+		List<IZone> matches = new ArrayList<IZone>();
+		for (Zone zone : zones.values()) {
+			if (siteToken.equals(zone.getSiteToken())) {
+				matches.add(zone);
+			}
+		}
+		return InMemoryPersistence.search(matches, InMemoryPersistence.CREATED_DATE_DESCENDING, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#deleteZone(java.lang.String,
+	 * boolean)
+	 */
+	@Override
+	public IZone deleteZone(String zoneToken, boolean force) throws SiteWhereException {
+		Zone existing = assertZone(zoneToken);
+		return delete(zones, zoneToken, existing, force, ZONE_COPIER);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#createDeviceGroup(com.sitewhere.spi.
+	 * device.request.IDeviceGroupCreateRequest)
+	 */
+	@Override
+	public IDeviceGroup createDeviceGroup(IDeviceGroupCreateRequest request) throws SiteWhereException {
+		String uuid = ((request.getToken() != null) ? request.getToken() : UUID.randomUUID().toString());
+		DeviceGroup group = SiteWherePersistence.deviceGroupCreateLogic(request, uuid);
+		groups.put(uuid, group);
+		groupElements.putIfAbsent(uuid, new ConcurrentSkipListMap<Long, DeviceGroupElement>());
+		groupIndexes.putIfAbsent(uuid, new AtomicLong());
+		return group;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#updateDeviceGroup(java.lang.String,
+	 * com.sitewhere.spi.device.request.IDeviceGroupCreateRequest)
+	 */
+	@Override
+	public IDeviceGroup updateDeviceGroup(String token, final IDeviceGroupCreateRequest request)
+			throws SiteWhereException {
+		DeviceGroup group = assertDeviceGroup(token);
+		return replace(groups, token, group, new EntityUpdate<DeviceGroup>() {
+
+			public DeviceGroup update(DeviceGroup current) throws SiteWhereException {
+				DeviceGroup updated = GROUP_COPIER.copy(current);
+				SiteWherePersistence.deviceGroupUpdateLogic(request, updated);
+				return updated;
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#getDeviceGroup(java.lang.String)
+	 */
+	@Override
+	public IDeviceGroup getDeviceGroup(String token) throws SiteWhereException {
+		return assertDeviceGroup(token);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#listDeviceGroups(boolean,
+	 * com.sitewhere.spi.search.ISearchCriteria)
+	 */
+	@Override
+	public ISearchResults<IDeviceGroup> listDeviceGroups(boolean includeDeleted, ISearchCriteria criteria)
+			throws SiteWhereException {
+		List<IDeviceGroup> matches =
+				new ArrayList<IDeviceGroup>(filterDeleted(groups.values(), includeDeleted));
+		return InMemoryPersistence.search(matches, InMemoryPersistence.CREATED_DATE_DESCENDING, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#listDeviceGroupsWithRole(java.lang.String
+	 * , boolean, com.sitewhere.spi.search.ISearchCriteria)
+	 */
+	@Override
+	public ISearchResults<IDeviceGroup> listDeviceGroupsWithRole(String role, boolean includeDeleted,
+			ISearchCriteria criteria) throws SiteWhereException {
+		List<IDeviceGroup> matches = new ArrayList<IDeviceGroup>();
+		for (DeviceGroup group : filterDeleted(groups.values(), includeDeleted)) {
+			if ((group.getRoles() != null) && (group.getRoles().contains(role))) {
+				matches.add(group);
+			}
+		}
+		return InMemoryPersistence.search(matches, InMemoryPersistence.CREATED_DATE_DESCENDING, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#deleteDeviceGroup(java.lang.String,
+	 * boolean)
+	 */
+	@Override
+	public IDeviceGroup deleteDeviceGroup(String token, boolean force) throws SiteWhereException {
+		DeviceGroup existing = assertDeviceGroup(token);
+		if (force) {
+			// Delete group elements as well.
+			groupElements.remove(token);
+			groupIndexes.remove(token);
+		}
+		return delete(groups, token, existing, force, GROUP_COPIER);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#addDeviceGroupElements(java.lang.String,
+	 * java.util.List)
+	 */
+	@Override
+	public List<IDeviceGroupElement> addDeviceGroupElements(String groupToken,
+			List<IDeviceGroupElementCreateRequest> elements) throws SiteWhereException {
+		assertDeviceGroup(groupToken);
+		ConcurrentSkipListMap<Long, DeviceGroupElement> existing = groupElements.get(groupToken);
+		AtomicLong lastIndex = groupIndexes.get(groupToken);
+		List<IDeviceGroupElement> results = new ArrayList<IDeviceGroupElement>();
+		for (IDeviceGroupElementCreateRequest request : elements) {
+			long index = lastIndex.incrementAndGet();
+			DeviceGroupElement element =
+					SiteWherePersistence.deviceGroupElementCreateLogic(request, groupToken, index);
+			existing.put(index, element);
+			results.add(element);
+		}
+		return results;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#removeDeviceGroupElements(java.lang.
+	 * String, java.util.List)
+	 */
+	@Override
+	public List<IDeviceGroupElement> removeDeviceGroupElements(String groupToken,
+			List<IDeviceGroupElementCreateRequest> elements) throws SiteWhereException {
+		List<IDeviceGroupElement> deleted = new ArrayList<IDeviceGroupElement>();
+		ConcurrentSkipListMap<Long, DeviceGroupElement> existing = groupElements.get(groupToken);
+		if (existing == null) {
+			return deleted;
+		}
+		for (IDeviceGroupElementCreateRequest request : elements) {
+			for (DeviceGroupElement current : existing.values()) {
+				if ((current.getType() == request.getType())
+						&& (current.getElementId().equals(request.getElementId()))) {
+					if (existing.remove(current.getIndex()) != null) {
+						deleted.add(current);
+					}
+				}
+			}
+		}
+		return deleted;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#listDeviceGroupElements(java.lang.String
+	 * , com.sitewhere.spi.search.ISearchCriteria)
+	 */
+	@Override
+	public SearchResults<IDeviceGroupElement> listDeviceGroupElements(String groupToken,
+			ISearchCriteria criteria) throws SiteWhereException {
+		ConcurrentSkipListMap<Long, DeviceGroupElement> existing = groupElements.get(groupToken);
+		if (existing == null) {
+			return new SearchResults<IDeviceGroupElement>(new ArrayList<IDeviceGroupElement>());
+		}
+		List<IDeviceGroupElement> matches = new ArrayList<IDeviceGroupElement>(existing.values());
+		return InMemoryPersistence.search(matches, null, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#createBatchOperation(com.sitewhere.spi
+	 * .device.request.IBatchOperationCreateRequest)
+	 */
+	@Override
+	public IBatchOperation createBatchOperation(IBatchOperationCreateRequest request)
+			throws SiteWhereException {
+		String uuid = ((request.getToken() != null) ? request.getToken() : UUID.randomUUID().toString());
+		BatchOperation batch = SiteWherePersistence.batchOperationCreateLogic(request, uuid);
+
+		// Create element for each hardware id.
+		long index = 0;
+		ConcurrentSkipListMap<Long, BatchElement> elements = new ConcurrentSkipListMap<Long, BatchElement>();
+		for (String hardwareId : request.getHardwareIds()) {
+			BatchElement element =
+					SiteWherePersistence.batchElementCreateLogic(batch.getToken(), hardwareId, ++index);
+			elements.put(element.getIndex(), element);
+		}
+		batchElements.put(uuid, elements);
+		batchOperations.put(uuid, batch);
+		return batch;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#updateBatchOperation(java.lang.String,
+	 * com.sitewhere.spi.device.request.IBatchOperationUpdateRequest)
+	 */
+	@Override
+	public IBatchOperation updateBatchOperation(String token, final IBatchOperationUpdateRequest request)
+			throws SiteWhereException {
+		BatchOperation operation = assertBatchOperation(token);
+		return replace(batchOperations, token, operation, new EntityUpdate<BatchOperation>() {
+
+			public BatchOperation update(BatchOperation current) throws SiteWhereException {
+				BatchOperation updated = BATCH_OPERATION_COPIER.copy(current);
+				SiteWherePersistence.batchOperationUpdateLogic(request, updated);
+				return updated;
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#getBatchOperation(java.lang.String)
+	 */
+	@Override
+	public IBatchOperation getBatchOperation(String token) throws SiteWhereException {
+		return assertBatchOperation(token);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#listBatchOperations(boolean,
+	 * com.sitewhere.spi.search.ISearchCriteria)
+	 */
+	@Override
+	public ISearchResults<IBatchOperation> listBatchOperations(boolean includeDeleted,
+			ISearchCriteria criteria) throws SiteWhereException {
+		List<IBatchOperation> matches =
+				new ArrayList<IBatchOperation>(filterDeleted(batchOperations.values(), includeDeleted));
+		return InMemoryPersistence.search(matches, InMemoryPersistence.CREATED_DATE_DESCENDING, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#deleteBatchOperation(java.lang.String,
+	 * boolean)
+	 */
+	@Override
+	public IBatchOperation deleteBatchOperation(String token, boolean force) throws SiteWhereException {
+		BatchOperation existing = assertBatchOperation(token);
+		if (force) {
+			// Delete operation elements as well.
+			batchElements.remove(token);
+		}
+		return delete(batchOperations, token, existing, force, BATCH_OPERATION_COPIER);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.device.IDeviceManagement#listBatchElements(java.lang.String,
+	 * com.sitewhere.spi.search.device.IBatchElementSearchCriteria)
+	 */
+	@Override
+	public SearchResults<IBatchElement> listBatchElements(String batchToken,
+			IBatchElementSearchCriteria criteria) throws SiteWhereException {
+		List<IBatchElement> matches = new ArrayList<IBatchElement>();
+		ConcurrentSkipListMap<Long, BatchElement> elements = batchElements.get(batchToken);
+		if (elements != null) {
+			for (BatchElement element : elements.values()) {
+				if ((criteria.getProcessingStatus() == null)
+						|| (criteria.getProcessingStatus() == element.getProcessingStatus())) {
+					matches.add(element);
+				}
+			}
+		}
+		return InMemoryPersistence.search(matches, null, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#updateBatchElement(java.lang.String,
+	 * long, com.sitewhere.spi.device.request.IBatchElementUpdateRequest)
+	 */
+	@Override
+	public IBatchElement updateBatchElement(String operationToken, long index,
+			final IBatchElementUpdateRequest request) throws SiteWhereException {
+		BatchElement element = assertBatchElement(operationToken, index);
+		return replace(batchElements.get(operationToken), index, element, new EntityUpdate<BatchElement>() {
+
+			public BatchElement update(BatchElement current) throws SiteWhereException {
+				BatchElement updated = new BatchElement();
+				updated.setBatchOperationToken(current.getBatchOperationToken());
+				updated.setHardwareId(current.getHardwareId());
+				updated.setIndex(current.getIndex());
+				updated.setProcessingStatus(current.getProcessingStatus());
+				updated.setProcessedDate(current.getProcessedDate());
+				MetadataProvider.copy(current, updated);
+				SiteWherePersistence.batchElementUpdateLogic(request, updated);
+				return updated;
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IDeviceManagement#createBatchCommandInvocation(com.sitewhere
+	 * .spi.device.request.IBatchCommandInvocationRequest)
+	 */
+	@Override
+	public IBatchOperation createBatchCommandInvocation(IBatchCommandInvocationRequest request)
+			throws SiteWhereException {
+		String uuid = ((request.getToken() != null) ? request.getToken() : UUID.randomUUID().toString());
+		IBatchOperationCreateRequest generic =
+				SiteWherePersistence.batchCommandInvocationCreateLogic(request, uuid);
+		return createBatchOperation(generic);
+	}
+
+	/**
+	 * Replace a stored entity with an updated copy. If another thread replaced the entity
+	 * first, the update is applied again to the newer value so no update is lost.
+	 * 
+	 * @param map
+	 * @param key
+	 * @param current
+	 * @param update
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected <K, T> T replace(ConcurrentMap<K, T> map, K key, T current, EntityUpdate<T> update)
+			throws SiteWhereException {
+		while (true) {
+			T updated = update.update(current);
+			if ((updated == current) || (map.replace(key, current, updated))) {
+				return updated;
+			}
+			current = map.get(key);
+			if (current == null) {
+				throw new SiteWhereException("Entity was removed while being updated: " + key);
+			}
+		}
+	}
+
+	/**
+	 * Remove an entity or replace it with a copy marked as deleted.
+	 * 
+	 * @param map
+	 * @param key
+	 * @param existing
+	 * @param force
+	 * @param copier
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected <K, T extends MetadataProviderEntity> T delete(ConcurrentMap<K, T> map, K key, T existing,
+			boolean force, final EntityCopier<T> copier) throws SiteWhereException {
+		if (force) {
+			map.remove(key);
+			return existing;
+		}
+		return replace(map, key, existing, new EntityUpdate<T>() {
+
+			public T update(T current) throws SiteWhereException {
+				T deleted = copier.copy(current);
+				deleted.setDeleted(true);
+				return deleted;
+			}
+		});
+	}
+
+	/**
+	 * Return entities from the collection, excluding those marked deleted unless
+	 * requested.
+	 * 
+	 * @param all
+	 * @param includeDeleted
+	 * @return
+	 */
+	protected <T extends IMetadataProviderEntity> List<T> filterDeleted(Collection<T> all,
+			boolean includeDeleted) {
+		List<T> matches = new ArrayList<T>();
+		for (T entity : all) {
+			if (includeDeleted || (!entity.isDeleted())) {
+				matches.add(entity);
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Return the device specification with the given token. Throws an exception if the
+	 * token is not valid.
+	 * 
+	 * @param token
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected DeviceSpecification assertDeviceSpecification(String token) throws SiteWhereException {
+		DeviceSpecification match = specifications.get(token);
+		if (match == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidDeviceSpecificationToken, ErrorLevel.ERROR);
+		}
+		return match;
+	}
+
+	/**
+	 * Return the device command with the given token. Throws an exception if the token is
+	 * not valid.
+	 * 
+	 * @param token
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected DeviceCommand assertDeviceCommand(String token) throws SiteWhereException {
+		DeviceCommand match = commands.get(token);
+		if (match == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidDeviceCommandToken, ErrorLevel.ERROR);
+		}
+		return match;
+	}
+
+	/**
+	 * Return the device with the given hardware id. Throws an exception if the hardware
+	 * id is not found.
+	 * 
+	 * @param hardwareId
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected Device assertDevice(String hardwareId) throws SiteWhereException {
+		Device match = devices.get(hardwareId);
+		if (match == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidHardwareId, ErrorLevel.INFO);
+		}
+		return match;
+	}
+
+	/**
+	 * Return the assignment with the given token. Throws an exception if the token is not
+	 * valid.
+	 * 
+	 * @param token
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected DeviceAssignment assertDeviceAssignment(String token) throws SiteWhereException {
+		DeviceAssignment match = assignments.get(token);
+		if (match == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidDeviceAssignmentToken, ErrorLevel.ERROR);
+		}
+		return match;
+	}
+
+	/**
+	 * Return the site with the given token. Throws an exception if the token is not
+	 * found.
+	 * 
+	 * @param token
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected Site assertSite(String token) throws SiteWhereException {
+		Site match = sites.get(token);
+		if (match == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidSiteToken, ErrorLevel.INFO);
+		}
+		return match;
+	}
+
+	/**
+	 * Return the zone with the given token. Throws an exception if the token is not
+	 * valid.
+	 * 
+	 * @param token
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected Zone assertZone(String token) throws SiteWhereException {
+		Zone match = zones.get(token);
+		if (match == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidZoneToken, ErrorLevel.ERROR);
+		}
+		return match;
+	}
+
+	/**
+	 * Return the device group with the given token. Throws an exception if the token is
+	 * not valid.
+	 * 
+	 * @param token
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected DeviceGroup assertDeviceGroup(String token) throws SiteWhereException {
+		DeviceGroup match = groups.get(token);
+		if (match == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidDeviceGroupToken, ErrorLevel.ERROR);
+		}
+		return match;
+	}
+
+	/**
+	 * Return the batch operation with the given token. Throws an exception if the token
+	 * is not valid.
+	 * 
+	 * @param token
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected BatchOperation assertBatchOperation(String token) throws SiteWhereException {
+		BatchOperation match = batchOperations.get(token);
+		if (match == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidBatchOperationToken, ErrorLevel.ERROR);
+		}
+		return match;
+	}
+
+	/**
+	 * Return the batch element based on the token for its parent operation and its index.
+	 * Throws an exception if not found.
+	 * 
+	 * @param operationToken
+	 * @param index
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected BatchElement assertBatchElement(String operationToken, long index) throws SiteWhereException {
+		ConcurrentSkipListMap<Long, BatchElement> elements = batchElements.get(operationToken);
+		BatchElement match = (elements != null) ? elements.get(index) : null;
+		if (match == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidBatchElement, ErrorLevel.ERROR);
+		}
+		return match;
+	}
+
+	/**
+	 * Creates a copy of a stored entity that can be modified without affecting readers of
+	 * the original.
+	 * 
+	 * @author Derek
+	 * 
+	 * @param <T>
+	 */
+	private static interface EntityCopier<T> {
+
+		/**
+		 * Copy the entity.
+		 * 
+		 * @param current
+		 * @return
+		 */
+		public T copy(T current);
+	}
+
+	/**
+	 * Creates an updated copy of a stored entity.
+	 * 
+	 * @author Derek
+	 * 
+	 * @param <T>
+	 */
+	private static interface EntityUpdate<T> {
+
+		/**
+		 * Create an updated copy of the current entity, or return the current entity if
+		 * no change is needed.
+		 * 
+		 * @param current
+		 * @return
+		 * @throws SiteWhereException
+		 */
+		public T update(T current) throws SiteWhereException;
+	}
+
+	public InMemoryDeviceEventStore getEventStore() {
+		return eventStore;
+	}
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.memory.user;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+
+import com.sitewhere.core.SiteWherePersistence;
+import com.sitewhere.memory.InMemoryPersistence;
+import com.sitewhere.rest.model.user.GrantedAuthority;
+import com.sitewhere.rest.model.user.User;
+import com.sitewhere.server.lifecycle.LifecycleComponent;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.SiteWhereSystemException;
+import com.sitewhere.spi.error.ErrorCode;
+import com.sitewhere.spi.error.ErrorLevel;
+import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
+import com.sitewhere.spi.user.IGrantedAuthority;
+import com.sitewhere.spi.user.IGrantedAuthoritySearchCriteria;
+import com.sitewhere.spi.user.IUser;
+import com.sitewhere.spi.user.IUserManagement;
+import com.sitewhere.spi.user.IUserSearchCriteria;
+import com.sitewhere.spi.user.request.IGrantedAuthorityCreateRequest;
+import com.sitewhere.spi.user.request.IUserCreateRequest;
+
+/**
+ * User management implementation that keeps users and granted authorities in memory.
+ * Paired with the in-memory device management for load testing. Nothing is persisted
+ * across restarts.
+ * 
+ * @author Derek
+ */
+public class InMemoryUserManagement extends LifecycleComponent implements IUserManagement {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(InMemoryUserManagement.class);
+
+	/** Sorts users by username */
+	private static final Comparator<IUser> USERNAME_ASCENDING = new Comparator<IUser>() {
+
+		public int compare(IUser first, IUser second) {
+			return first.getUsername().compareTo(second.getUsername());
+		}
+	};
+
+	/** Sorts granted authorities by name */
+	private static final Comparator<IGrantedAuthority> AUTHORITY_ASCENDING =
+			new Comparator<IGrantedAuthority>() {
+
+				public int compare(IGrantedAuthority first, IGrantedAuthority second) {
+					return first.getAuthority().compareTo(second.getAuthority());
+				}
+			};
+
+	/** Users by username */
+	private ConcurrentMap<String, User> users = new ConcurrentHashMap<String, User>();
+
+	/** Granted authorities by name */
+	private ConcurrentMap<String, GrantedAuthority> authorities =
+			new ConcurrentHashMap<String, GrantedAuthority>();
+
+	public InMemoryUserManagement() {
+		super(LifecycleComponentType.DataStore);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#start()
+	 */
+	public void start() throws SiteWhereException {
+		LOGGER.warn("Using in-memory user management. Data will not be persisted.");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#getLogger()
+	 */
+	@Override
+	public Logger getLogger() {
+		return LOGGER;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#stop()
+	 */
+	public void stop() throws SiteWhereException {
+		LOGGER.info("In-memory user management stopped.");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.user.IUserManagement#createUser(com.sitewhere.spi.user.request
+	 * .IUserCreateRequest)
+	 */
+	public IUser createUser(IUserCreateRequest request) throws SiteWhereException {
+		User user = SiteWherePersistence.userCreateLogic(request);
+		if (users.putIfAbsent(user.getUsername(), user) != null) {
+			throw new SiteWhereSystemException(ErrorCode.DuplicateUser, ErrorLevel.ERROR,
+					HttpServletResponse.SC_CONFLICT);
+		}
+		return user;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.user.IUserManagement#authenticate(java.lang.String,
+	 * java.lang.String)
+	 */
+	public IUser authenticate(String username, String password) throws SiteWhereException {
+		if (password == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidPassword, ErrorLevel.ERROR,
+					HttpServletResponse.SC_BAD_REQUEST);
+		}
+		User match = assertUser(username);
+		String inPassword = SiteWherePersistence.encodePassoword(password);
+		if (!match.getHashedPassword().equals(inPassword)) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidPassword, ErrorLevel.ERROR,
+					HttpServletResponse.SC_UNAUTHORIZED);
+		}
+
+		// Update last login date.
+		match.setLastLogin(new Date());
+		return match;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.user.IUserManagement#updateUser(java.lang.String,
+	 * com.sitewhere.spi.user.request.IUserCreateRequest)
+	 */
+	public IUser updateUser(String username, IUserCreateRequest request) throws SiteWhereException {
+		User existing = assertUser(username);
+		synchronized (existing) {
+			SiteWherePersistence.userUpdateLogic(request, existing);
+		}
+		return existing;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.user.IUserManagement#getUserByUsername(java.lang.String)
+	 */
+	public IUser getUserByUsername(String username) throws SiteWhereException {
+		return users.get(username);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.user.IUserManagement#getGrantedAuthorities(java.lang.String)
+	 */
+	public List<IGrantedAuthority> getGrantedAuthorities(String username) throws SiteWhereException {
+		User user = assertUser(username);
+		List<IGrantedAuthority> matched = new ArrayList<IGrantedAuthority>();
+		for (String name : user.getAuthorities()) {
+			GrantedAuthority auth = authorities.get(name);
+			if (auth != null) {
+				matched.add(auth);
+			}
+		}
+		return InMemoryPersistence.search(matched, AUTHORITY_ASCENDING, null).getResults();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.user.IUserManagement#addGrantedAuthorities(java.lang.String,
+	 * java.util.List)
+	 */
+	public List<IGrantedAuthority> addGrantedAuthorities(String username, List<String> added)
+			throws SiteWhereException {
+		User user = assertUser(username);
+		for (String name : added) {
+			assertGrantedAuthority(name);
+		}
+
+		// Replace the list rather than modifying it so readers never see a partial update.
+		synchronized (user) {
+			List<String> updated = new ArrayList<String>(user.getAuthorities());
+			for (String name : added) {
+				if (!updated.contains(name)) {
+					updated.add(name);
+				}
+			}
+			user.setAuthorities(updated);
+		}
+		return getGrantedAuthorities(username);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.user.IUserManagement#removeGrantedAuthorities(java.lang.String,
+	 * java.util.List)
+	 */
+	public List<IGrantedAuthority> removeGrantedAuthorities(String username, List<String> removed)
+			throws SiteWhereException {
+		User user = assertUser(username);
+		synchronized (user) {
+			List<String> updated = new ArrayList<String>(user.getAuthorities());
+			updated.removeAll(removed);
+			user.setAuthorities(updated);
+		}
+		return getGrantedAuthorities(username);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.user.IUserManagement#listUsers(com.sitewhere.spi.user.request
+	 * .IUserSearchCriteria)
+	 */
+	public List<IUser> listUsers(IUserSearchCriteria criteria) throws SiteWhereException {
+		List<IUser> matches = new ArrayList<IUser>();
+		for (User user : users.values()) {
+			if (criteria.isIncludeDeleted() || (!user.isDeleted())) {
+				matches.add(user);
+			}
+		}
+		return InMemoryPersistence.search(matches, USERNAME_ASCENDING, null).getResults();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.user.IUserManagement#deleteUser(java.lang.String, boolean)
+	 */
+	public IUser deleteUser(String username, boolean force) throws SiteWhereException {
+		User existing = assertUser(username);
+		if (force) {
+			users.remove(username);
+		} else {
+			existing.setDeleted(true);
+		}
+		return existing;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.user.IUserManagement#createGrantedAuthority(com.sitewhere.spi
+	 * .user.request. IGrantedAuthorityCreateRequest)
+	 */
+	public IGrantedAuthority createGrantedAuthority(IGrantedAuthorityCreateRequest request)
+			throws SiteWhereException {
+		GrantedAuthority auth = SiteWherePersistence.grantedAuthorityCreateLogic(request);
+		if (authorities.putIfAbsent(auth.getAuthority(), auth) != null) {
+			throw new SiteWhereSystemException(ErrorCode.DuplicateAuthority, ErrorLevel.ERROR,
+					HttpServletResponse.SC_CONFLICT);
+		}
+		return auth;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.user.IUserManagement#getGrantedAuthorityByName(java.lang.String)
+	 */
+	public IGrantedAuthority getGrantedAuthorityByName(String name) throws SiteWhereException {
+		return authorities.get(name);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.user.IUserManagement#updateGrantedAuthority(java.lang.String,
+	 * com.sitewhere.spi.user.request.IGrantedAuthorityCreateRequest)
+	 */
+	public IGrantedAuthority updateGrantedAuthority(String name, IGrantedAuthorityCreateRequest request)
+			throws SiteWhereException {
+		GrantedAuthority existing = assertGrantedAuthority(name);
+		if ((request.getAuthority() != null) && (!request.getAuthority().equals(name))) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidAuthority, ErrorLevel.ERROR,
+					HttpServletResponse.SC_BAD_REQUEST);
+		}
+		if (request.getDescription() != null) {
+			existing.setDescription(request.getDescription());
+		}
+		return existing;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.user.IUserManagement#listGrantedAuthorities(com.sitewhere.spi
+	 * .user. IGrantedAuthoritySearchCriteria)
+	 */
+	public List<IGrantedAuthority> listGrantedAuthorities(IGrantedAuthoritySearchCriteria criteria)
+			throws SiteWhereException {
+		List<IGrantedAuthority> matches = new ArrayList<IGrantedAuthority>(authorities.values());
+		return InMemoryPersistence.search(matches, AUTHORITY_ASCENDING, null).getResults();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.user.IUserManagement#deleteGrantedAuthority(java.lang.String)
+	 */
+	public void deleteGrantedAuthority(String authority) throws SiteWhereException {
+		if (authorities.remove(authority) == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidAuthority, ErrorLevel.ERROR,
+					HttpServletResponse.SC_NOT_FOUND);
+		}
+	}
+
+	/**
+	 * Get a user given username. Throw an exception if not found.
+	 * 
+	 * @param username
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected User assertUser(String username) throws SiteWhereException {
+		User match = users.get(username);
+		if (match == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidUsername, ErrorLevel.ERROR,
+					HttpServletResponse.SC_NOT_FOUND);
+		}
+		return match;
+	}
+
+	/**
+	 * Get a granted authority given name. Throw an exception if not found.
+	 * 
+	 * @param name
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected GrantedAuthority assertGrantedAuthority(String name) throws SiteWhereException {
+		GrantedAuthority match = authorities.get(name);
+		if (match == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidAuthority, ErrorLevel.ERROR,
+					HttpServletResponse.SC_NOT_FOUND);
+		}
+		return match;
+	}
+}
@@ -31,12 +31,14 @@ import com.sitewhere.security.SitewhereAuthentication;
 import com.sitewhere.security.SitewhereUserDetails;
 import com.sitewhere.server.debug.NullTracer;
 import com.sitewhere.server.lifecycle.LifecycleComponent;
+import com.sitewhere.server.lifecycle.StartupOrchestrator;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.asset.IAssetModuleManager;
 import com.sitewhere.spi.configuration.IConfigurationResolver;
 import com.sitewhere.spi.device.ICachingDeviceManagement;
 import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.IDeviceManagementCacheProvider;
+import com.sitewhere.spi.device.IPreloadableCacheProvider;
 import com.sitewhere.spi.device.ISite;
 import com.sitewhere.spi.device.event.processor.IInboundEventProcessorChain;
 import com.sitewhere.spi.device.event.processor.IOutboundEventProcessorChain;
@@ -47,6 +49,7 @@ import com.sitewhere.spi.server.ISiteWhereServer;
 import com.sitewhere.spi.server.debug.ITracer;
 import com.sitewhere.spi.server.device.IDeviceModelInitializer;
 import com.sitewhere.spi.server.lifecycle.ILifecycleComponent;
+import com.sitewhere.spi.server.lifecycle.IStartupReport;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 import com.sitewhere.spi.server.user.IUserModelInitializer;
 import com.sitewhere.spi.system.IVersion;
@@ -65,6 +68,45 @@ public class SiteWhereServer extends LifecycleComponent implements ISiteWhereSer
 	/** Private logger instance */
 	private static Logger LOGGER = Logger.getLogger(SiteWhereServer.class);
 
+	/** Maximum number of components started in parallel */
+	private static final int STARTUP_THREAD_COUNT = 4;
+
+	/** Startup step for device management cache provider */
+	private static final String STEP_CACHE_PROVIDER = "Device Management Cache Provider";
+
+	/** Startup step for device management */
+	private static final String STEP_DEVICE_MANAGEMENT = "Device Management";
+
+	/** Startup step for user management */
+	private static final String STEP_USER_MANAGEMENT = "User Management";
+
+	/** Startup step for asset module manager */
+	private static final String STEP_ASSET_MODULE_MANAGER = "Asset Module Manager";
+
+	/** Startup step for search provider manager */
+	private static final String STEP_SEARCH_PROVIDER_MANAGER = "Search Provider Manager";
+
+	/** Startup step that populates user model */
+	private static final String STEP_VERIFY_USER_MODEL = "Verify User Model";
+
+	/** Startup step that populates device model */
+	private static final String STEP_VERIFY_DEVICE_MODEL = "Verify Device Model";
+
+	/** Startup step that loads device management caches from a snapshot */
+	private static final String STEP_PRELOAD_CACHE = "Preload Device Management Cache";
+
+	/** Startup step for outbound processor chain */
+	private static final String STEP_OUTBOUND_CHAIN = "Outbound Processor Chain";
+
+	/** Startup step that enables outbound processing */
+	private static final String STEP_ENABLE_OUTBOUND = "Enable Outbound Processing";
+
+	/** Startup step for inbound processor chain */
+	private static final String STEP_INBOUND_CHAIN = "Inbound Processor Chain";
+
+	/** Startup step for device provisioning */
+	private static final String STEP_DEVICE_PROVISIONING = "Device Provisioning";
+
 	/** Spring context for server */
 	public static ApplicationContext SERVER_SPRING_CONTEXT;
 
@@ -117,6 +159,9 @@ public class SiteWhereServer extends LifecycleComponent implements ISiteWhereSer
 	/** Health check registry */
 	private HealthCheckRegistry healthCheckRegistry = new HealthCheckRegistry();
 
+	/** Timing recorded during last startup */
+	private IStartupReport startupReport;
+
 	public SiteWhereServer() {
 		super(LifecycleComponentType.System);
 	}
@@ -265,6 +310,15 @@ public class SiteWhereServer extends LifecycleComponent implements ISiteWhereSer
 		return healthCheckRegistry;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.server.ISiteWhereServer#getStartupReport()
+	 */
+	public IStartupReport getStartupReport() {
+		return startupReport;
+	}
+
 	/**
 	 * Returns a fake account used for operations on the data model done by the system.
 	 * 
@@ -289,46 +343,102 @@ public class SiteWhereServer extends LifecycleComponent implements ISiteWhereSer
 		// Clear the component list.
 		getLifecycleComponents().clear();
 
-		// Start all lifecycle components.
+		// Registered components (such as datastore clients) start before everything else.
+		StartupOrchestrator startup = new StartupOrchestrator(STARTUP_THREAD_COUNT);
+		List<String> registered = new ArrayList<String>();
 		for (ILifecycleComponent component : getRegisteredLifecycleComponents()) {
-			startNestedComponent(component, component.getComponentName() + " startup failed.", true);
+			String name = component.getComponentName();
+			for (int i = 2; startup.hasStep(name); i++) {
+				name = component.getComponentName() + " #" + i;
+			}
+			startup.addComponent(name, component, component.getComponentName() + " startup failed.", true);
+			registered.add(name);
 		}
-
-		// Start device management.
-		startNestedComponent(getDeviceManagement(), "Device management startup failed.", true);
+		String[] afterRegistered = registered.toArray(new String[registered.size()]);
 
 		// Start device management cache provider if specificed.
+		List<String> beforeDeviceManagement = new ArrayList<String>(registered);
 		if (getDeviceManagementCacheProvider() != null) {
-			startNestedComponent(getDeviceManagementCacheProvider(),
+			startup.addComponent(STEP_CACHE_PROVIDER, getDeviceManagementCacheProvider(),
 					"Device management chace provider startup failed.", true);
+			beforeDeviceManagement.add(STEP_CACHE_PROVIDER);
 		}
 
-		// Start user management.
-		startNestedComponent(getUserManagement(), "User management startup failed.", true);
-
-		// Start asset module manager.
-		startNestedComponent(getAssetModuleManager(), "Asset module manager startup failed.", true);
-
-		// Start search provider manager.
-		startNestedComponent(getSearchProviderManager(), "Search provider manager startup failed.", true);
+		// Core management implementations are independent of each other.
+		startup.addComponent(STEP_DEVICE_MANAGEMENT, getDeviceManagement(),
+				"Device management startup failed.", true,
+				beforeDeviceManagement.toArray(new String[beforeDeviceManagement.size()]));
+		startup.addComponent(STEP_USER_MANAGEMENT, getUserManagement(), "User management startup failed.",
+				true, afterRegistered);
+		startup.addComponent(STEP_ASSET_MODULE_MANAGER, getAssetModuleManager(),
+				"Asset module manager startup failed.", true, afterRegistered);
+		startup.addComponent(STEP_SEARCH_PROVIDER_MANAGER, getSearchProviderManager(),
+				"Search provider manager startup failed.", true, afterRegistered);
+
+		// Populate data if requested. Runs one at a time since both may prompt on console.
+		startup.addTask(STEP_VERIFY_USER_MODEL, new StartupOrchestrator.IStartupTask() {
+
+			@Override
+			public void run() throws SiteWhereException {
+				verifyUserModel();
+			}
+		}, STEP_USER_MANAGEMENT);
+		startup.addTask(STEP_VERIFY_DEVICE_MODEL, new StartupOrchestrator.IStartupTask() {
 
-		// Populate data if requested.
-		verifyUserModel();
-		verifyDeviceModel();
+			@Override
+			public void run() throws SiteWhereException {
+				verifyDeviceModel();
+			}
+		}, STEP_DEVICE_MANAGEMENT, STEP_ASSET_MODULE_MANAGER, STEP_VERIFY_USER_MODEL);
+
+		// Warm caches before events arrive. A failed preload only means a cold start.
+		List<String> beforeEvents = new ArrayList<String>();
+		beforeEvents.add(STEP_VERIFY_DEVICE_MODEL);
+		beforeEvents.add(STEP_SEARCH_PROVIDER_MANAGER);
+		beforeEvents.add(STEP_ASSET_MODULE_MANAGER);
+		if (getDeviceManagementCacheProvider() instanceof IPreloadableCacheProvider) {
+			startup.addTask(STEP_PRELOAD_CACHE, new StartupOrchestrator.IStartupTask() {
+
+				@Override
+				public void run() throws SiteWhereException {
+					IPreloadableCacheProvider preloadable =
+							(IPreloadableCacheProvider) getDeviceManagementCacheProvider();
+					try {
+						preloadable.preload(getDeviceManagement());
+					} catch (SiteWhereException e) {
+						LOGGER.warn("Unable to preload device management caches.", e);
+					}
+				}
+			}, STEP_VERIFY_DEVICE_MODEL);
+			beforeEvents.add(STEP_PRELOAD_CACHE);
+		}
 
-		// Enable provisioning.
+		// Enable provisioning once the data model is ready.
+		String[] beforeInbound = beforeEvents.toArray(new String[beforeEvents.size()]);
 		if (getOutboundEventProcessorChain() != null) {
-			startNestedComponent(getOutboundEventProcessorChain(),
-					"Outbound processor chain startup failed.", true);
-			getOutboundEventProcessorChain().setProcessingEnabled(true);
+			startup.addComponent(STEP_OUTBOUND_CHAIN, getOutboundEventProcessorChain(),
+					"Outbound processor chain startup failed.", true, beforeInbound);
+			startup.addTask(STEP_ENABLE_OUTBOUND, new StartupOrchestrator.IStartupTask() {
+
+				@Override
+				public void run() throws SiteWhereException {
+					getOutboundEventProcessorChain().setProcessingEnabled(true);
+				}
+			}, STEP_OUTBOUND_CHAIN);
+			beforeInbound = new String[] { STEP_ENABLE_OUTBOUND };
 		}
+		String[] beforeProvisioning = beforeInbound;
 		if (getInboundEventProcessorChain() != null) {
-			startNestedComponent(getInboundEventProcessorChain(), "Inbound processor chain startup failed.",
-					true);
+			startup.addComponent(STEP_INBOUND_CHAIN, getInboundEventProcessorChain(),
+					"Inbound processor chain startup failed.", true, beforeInbound);
+			beforeProvisioning = new String[] { STEP_INBOUND_CHAIN };
 		}
 
 		// Start device provisioning.
-		startNestedComponent(getDeviceProvisioning(), "Device provisioning startup failed.", true);
+		startup.addComponent(STEP_DEVICE_PROVISIONING, getDeviceProvisioning(),
+				"Device provisioning startup failed.", true, beforeProvisioning);
+
+		this.startupReport = startNestedComponents(startup);
 
 		// Force refresh on components-by-id map.
 		refreshLifecycleComponentMap(this, lifecycleComponentsById);
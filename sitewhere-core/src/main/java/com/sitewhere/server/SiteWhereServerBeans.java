@@ -54,6 +54,13 @@ public interface SiteWhereServerBeans {
 	/** Bean id for device management cache provider */
 	public static final String BEAN_DEVICE_MANAGEMENT_CACHE_PROVIDER = "deviceManagementCacheProvider";
 
+	/*******************
+	 * EVENT RETENTION *
+	 *******************/
+
+	/** Bean id for event retention manager */
+	public static final String BEAN_EVENT_RETENTION_MANAGER = "eventRetentionManager";
+
 	/*****************************
 	 * SEARCH PROVIDER MANAGMENT *
 	 *****************************/
@@ -61,6 +68,9 @@ public interface SiteWhereServerBeans {
 	/** Bean id for search provider manager */
 	public static final String BEAN_SEARCH_PROVIDER_MANAGER = "searchProviderManager";
 
+	/** Bean id for index of last known device locations */
+	public static final String BEAN_LOCATION_INDEX = "locationIndex";
+
 	/*********************
 	 * DATA INITIALIZERS *
 	 *********************/
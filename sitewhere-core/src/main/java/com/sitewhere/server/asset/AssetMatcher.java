@@ -90,6 +90,52 @@ public class AssetMatcher {
 		return false;
 	}
 
+	/**
+	 * Get the values of the fields that searches compare against. Values are trimmed and
+	 * lower case, and null fields are left out.
+	 * 
+	 * @param type
+	 * @param asset
+	 * @return
+	 */
+	public String[] getSearchFields(AssetType type, IAsset asset) {
+		switch (type) {
+		case Device:
+		case Hardware: {
+			IHardwareAsset hardware = (IHardwareAsset) asset;
+			return normalize(hardware.getName(), hardware.getDescription(), hardware.getId());
+		}
+		case Person: {
+			IPersonAsset person = (IPersonAsset) asset;
+			return normalize(person.getName(), person.getEmailAddress(), person.getUserName(),
+					person.getId());
+		}
+		case Location: {
+			return normalize(asset.getName());
+		}
+		}
+		return new String[0];
+	}
+
+	/**
+	 * Trim and lower case field values, leaving out nulls.
+	 * 
+	 * @param fields
+	 * @return
+	 */
+	protected String[] normalize(String... fields) {
+		int count = 0;
+		String[] values = new String[fields.length];
+		for (String field : fields) {
+			if (field != null) {
+				values[count++] = field.trim().toLowerCase();
+			}
+		}
+		String[] result = new String[count];
+		System.arraycopy(values, 0, result, 0, count);
+		return result;
+	}
+
 	/**
 	 * Simplifies comparing possibly null non-case sensitive values.
 	 * 
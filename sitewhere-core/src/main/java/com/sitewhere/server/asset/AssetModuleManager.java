@@ -15,12 +15,16 @@ import java.util.Map;
 
 import org.apache.log4j.Logger;
 
+import com.sitewhere.memory.InMemoryPersistence;
 import com.sitewhere.server.lifecycle.LifecycleComponent;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.asset.IAsset;
 import com.sitewhere.spi.asset.IAssetModule;
 import com.sitewhere.spi.asset.IAssetModuleManager;
+import com.sitewhere.spi.asset.IIndexedAssetModule;
 import com.sitewhere.spi.command.ICommandResponse;
+import com.sitewhere.spi.search.ISearchCriteria;
+import com.sitewhere.spi.search.ISearchResults;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 
 /**
@@ -97,10 +101,29 @@ public class AssetModuleManager extends LifecycleComponent implements IAssetModu
 	public List<? extends IAsset> search(String assetModuleId, String criteria) throws SiteWhereException {
 		IAssetModule<?> match = assertAssetModule(assetModuleId);
 		List<? extends IAsset> results = match.search(criteria);
-		Collections.sort(results);
+		if (!(match instanceof IIndexedAssetModule)) {
+			Collections.sort(results);
+		}
 		return results;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.asset.IAssetModuleManager#search(java.lang.String,
+	 * java.lang.String, com.sitewhere.spi.search.ISearchCriteria)
+	 */
+	public ISearchResults<? extends IAsset> search(String assetModuleId, String criteria,
+			ISearchCriteria paging) throws SiteWhereException {
+		IAssetModule<?> match = assertAssetModule(assetModuleId);
+		if (match instanceof IIndexedAssetModule) {
+			return ((IIndexedAssetModule<?>) match).search(criteria, paging);
+		}
+		List<? extends IAsset> results = match.search(criteria);
+		Collections.sort(results);
+		return InMemoryPersistence.page(results, results.size(), paging);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
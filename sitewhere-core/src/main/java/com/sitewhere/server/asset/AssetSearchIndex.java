@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.server.asset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sitewhere.rest.model.search.SearchResults;
+import com.sitewhere.spi.asset.AssetType;
+import com.sitewhere.spi.asset.IAsset;
+import com.sitewhere.spi.search.ISearchCriteria;
+import com.sitewhere.spi.search.ISearchResults;
+
+/**
+ * Read-only n-gram index over the searchable fields of a set of assets. Every substring
+ * of one to three characters in each field maps to the assets that contain it. The rank
+ * of each asset for the gram is worked out when the index is built, and the list is
+ * stored best matches first, so criteria of up to three characters are answered by
+ * returning a slice of a single list. Longer criteria check only the assets in the list
+ * for their rarest three character gram.
+ * 
+ * Matches return the same assets as {@link AssetMatcher}, ranked with exact field
+ * matches first, then field prefixes, then word prefixes, then other substrings. Assets
+ * with the same rank are ordered by name. The index is rebuilt rather than updated, so
+ * it can be shared by any number of threads.
+ * 
+ * @author Derek
+ */
+public class AssetSearchIndex<T extends IAsset> {
+
+	/** Longest gram that is indexed */
+	private static final int MAX_GRAM = 3;
+
+	/** Rank for a field equal to the criteria */
+	private static final int RANK_EXACT = 3;
+
+	/** Rank for a field that starts with the criteria */
+	private static final int RANK_PREFIX = 2;
+
+	/** Rank for a word within a field that starts with the criteria */
+	private static final int RANK_WORD = 1;
+
+	/** Rank for any other substring */
+	private static final int RANK_SUBSTRING = 0;
+
+	/** Orders assets by name, then id */
+	private static final Comparator<IAsset> NAME_ORDER = new Comparator<IAsset>() {
+
+		@Override
+		public int compare(IAsset a, IAsset b) {
+			int result = compareNullable(a.getName(), b.getName());
+			return (result != 0) ? result : compareNullable(a.getId(), b.getId());
+		}
+	};
+
+	/** Assets in name order, indexed by document number */
+	private List<T> assets;
+
+	/** Searchable field values for each document */
+	private String[][] fields;
+
+	/** Document numbers for each gram, best rank first, then in name order */
+	private Map<String, int[]> postings = new HashMap<String, int[]>();
+
+	public AssetSearchIndex(AssetType type, Collection<T> values, AssetMatcher matcher) {
+		this.assets = new ArrayList<T>(values);
+		Collections.sort(assets, NAME_ORDER);
+		this.fields = new String[assets.size()][];
+
+		Map<String, PostingBuilder> building = new HashMap<String, PostingBuilder>();
+		for (int doc = 0; doc < assets.size(); doc++) {
+			fields[doc] = matcher.getSearchFields(type, assets.get(doc));
+			for (String field : fields[doc]) {
+				for (int length = 1; length <= MAX_GRAM; length++) {
+					for (int start = 0; start + length <= field.length(); start++) {
+						String gram = field.substring(start, start + length);
+						PostingBuilder builder = building.get(gram);
+						if (builder == null) {
+							builder = new PostingBuilder();
+							building.put(gram, builder);
+						}
+						builder.add(doc, getRank(field, start, length));
+					}
+				}
+			}
+		}
+		for (Map.Entry<String, PostingBuilder> entry : building.entrySet()) {
+			postings.put(entry.getKey(), entry.getValue().build());
+		}
+	}
+
+	/**
+	 * Get all assets that match the criteria, best matches first.
+	 * 
+	 * @param criteria
+	 * @return
+	 */
+	public List<T> search(String criteria) {
+		return search(criteria, null).getResults();
+	}
+
+	/**
+	 * Get a page of assets that match the criteria, best matches first. A missing paging
+	 * criteria or page size of zero returns all matches.
+	 * 
+	 * @param criteria
+	 * @param paging
+	 * @return
+	 */
+	public ISearchResults<T> search(String criteria, ISearchCriteria paging) {
+		int offset = 0;
+		int limit = Integer.MAX_VALUE;
+		if ((paging != null) && (paging.getPageSize() > 0)) {
+			offset = Math.max(0, paging.getPageNumber() - 1) * paging.getPageSize();
+			limit = paging.getPageSize();
+		}
+		String query = (criteria == null) ? "" : criteria.toLowerCase();
+		List<T> page = new ArrayList<T>();
+		if (query.length() == 0) {
+			for (int doc = offset; (doc < assets.size()) && (page.size() < limit); doc++) {
+				page.add(assets.get(doc));
+			}
+			return new SearchResults<T>(page, assets.size());
+		}
+		if (query.length() <= MAX_GRAM) {
+			int[] docs = postings.get(query);
+			if (docs == null) {
+				return new SearchResults<T>(page, 0);
+			}
+			for (int i = offset; (i < docs.length) && (page.size() < limit); i++) {
+				page.add(assets.get(docs[i]));
+			}
+			return new SearchResults<T>(page, docs.length);
+		}
+
+		IntList[] ranked = new IntList[RANK_EXACT + 1];
+		for (int i = 0; i < ranked.length; i++) {
+			ranked[i] = new IntList();
+		}
+		for (int doc : getCandidates(query)) {
+			int rank = getRank(fields[doc], query);
+			if (rank >= 0) {
+				ranked[rank].add(doc);
+			}
+		}
+		int total = 0;
+		for (int rank = RANK_EXACT; rank >= RANK_SUBSTRING; rank--) {
+			int[] docs = ranked[rank].toArray();
+			Arrays.sort(docs);
+			for (int i = Math.max(0, offset - total); (i < docs.length) && (page.size() < limit); i++) {
+				page.add(assets.get(docs[i]));
+			}
+			total += docs.length;
+		}
+		return new SearchResults<T>(page, total);
+	}
+
+	/**
+	 * Get the documents for the rarest three character gram in the criteria. Every match
+	 * is in the list, but not everything in the list is a match.
+	 * 
+	 * @param query
+	 * @return
+	 */
+	protected int[] getCandidates(String query) {
+		int[] rarest = null;
+		for (int start = 0; start + MAX_GRAM <= query.length(); start++) {
+			int[] docs = postings.get(query.substring(start, start + MAX_GRAM));
+			if (docs == null) {
+				return new int[0];
+			}
+			if ((rarest == null) || (docs.length < rarest.length)) {
+				rarest = docs;
+			}
+		}
+		return rarest;
+	}
+
+	/**
+	 * Get the rank of a substring based on where it occurs in a field.
+	 * 
+	 * @param field
+	 * @param start
+	 * @param length
+	 * @return
+	 */
+	protected static int getRank(String field, int start, int length) {
+		if (start == 0) {
+			return (length == field.length()) ? RANK_EXACT : RANK_PREFIX;
+		}
+		return Character.isLetterOrDigit(field.charAt(start - 1)) ? RANK_SUBSTRING : RANK_WORD;
+	}
+
+	/**
+	 * Get the best rank of the criteria in any field.
+	 * 
+	 * @param values
+	 * @param query
+	 * @return rank or -1 if no field contains the criteria
+	 */
+	protected static int getRank(String[] values, String query) {
+		int best = -1;
+		for (String value : values) {
+			int index = value.indexOf(query);
+			while (index >= 0) {
+				best = Math.max(best, getRank(value, index, query.length()));
+				if (best >= RANK_WORD) {
+					break;
+				}
+				index = value.indexOf(query, index + 1);
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Compare strings that may be null, with nulls last.
+	 * 
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	protected static int compareNullable(String a, String b) {
+		if (a == null) {
+			return (b == null) ? 0 : 1;
+		}
+		return (b == null) ? -1 : a.compareTo(b);
+	}
+
+	/**
+	 * Get the number of assets in the index.
+	 * 
+	 * @return
+	 */
+	public int getSize() {
+		return assets.size();
+	}
+
+	/**
+	 * Get the number of distinct grams in the index.
+	 * 
+	 * @return
+	 */
+	public int getGramCount() {
+		return postings.size();
+	}
+
+	/**
+	 * Collects the documents and best rank for a gram while the index is built.
+	 * 
+	 * @author Derek
+	 */
+	private static class PostingBuilder {
+
+		/** Documents in the order they were added */
+		private IntList docs = new IntList();
+
+		/** Best rank for each document */
+		private IntList ranks = new IntList();
+
+		/**
+		 * Add an occurrence of the gram, keeping the best rank for each document.
+		 * 
+		 * @param doc
+		 * @param rank
+		 */
+		public void add(int doc, int rank) {
+			int last = docs.size() - 1;
+			if ((last >= 0) && (docs.get(last) == doc)) {
+				ranks.set(last, Math.max(ranks.get(last), rank));
+			} else {
+				docs.add(doc);
+				ranks.add(rank);
+			}
+		}
+
+		/**
+		 * Get the documents ordered by rank. Documents were added in name order, so a
+		 * stable sort by rank keeps name order within each rank.
+		 * 
+		 * @return
+		 */
+		public int[] build() {
+			int[] starts = new int[RANK_EXACT + 2];
+			for (int i = 0; i < ranks.size(); i++) {
+				starts[RANK_EXACT - ranks.get(i) + 1]++;
+			}
+			for (int i = 1; i < starts.length; i++) {
+				starts[i] += starts[i - 1];
+			}
+			int[] result = new int[docs.size()];
+			for (int i = 0; i < docs.size(); i++) {
+				result[starts[RANK_EXACT - ranks.get(i)]++] = docs.get(i);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Growable list of primitive ints.
+	 * 
+	 * @author Derek
+	 */
+	private static class IntList {
+
+		/** Values */
+		private int[] values = new int[4];
+
+		/** Number of values */
+		private int size;
+
+		/**
+		 * Add a value.
+		 * 
+		 * @param value
+		 */
+		public void add(int value) {
+			if (size == values.length) {
+				int[] grown = new int[size * 2];
+				System.arraycopy(values, 0, grown, 0, size);
+				values = grown;
+			}
+			values[size++] = value;
+		}
+
+		public int get(int index) {
+			return values[index];
+		}
+
+		public void set(int index, int value) {
+			values[index] = value;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public int[] toArray() {
+			int[] result = new int[size];
+			System.arraycopy(values, 0, result, 0, size);
+			return result;
+		}
+	}
+}
@@ -8,43 +8,91 @@
 package com.sitewhere.server.asset.filesystem;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.sitewhere.SiteWhere;
 import com.sitewhere.configuration.TomcatConfigurationResolver;
 import com.sitewhere.rest.model.asset.Asset;
 import com.sitewhere.rest.model.command.CommandResponse;
 import com.sitewhere.server.asset.AssetMatcher;
+import com.sitewhere.server.asset.AssetSearchIndex;
 import com.sitewhere.server.lifecycle.LifecycleComponent;
 import com.sitewhere.spi.SiteWhereException;
-import com.sitewhere.spi.asset.IAssetModule;
+import com.sitewhere.spi.asset.IIndexedAssetModule;
 import com.sitewhere.spi.command.CommandResult;
 import com.sitewhere.spi.command.ICommandResponse;
+import com.sitewhere.spi.search.ISearchCriteria;
+import com.sitewhere.spi.search.ISearchResults;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 
 /**
- * Base class for asset modules that load asset information from the filesystem.
+ * Base class for asset modules that load asset information from the filesystem. Assets
+ * are held in memory along with an {@link AssetSearchIndex} that is rebuilt on each
+ * reload.
+ * 
+ * The asset file is checked for changes on a background thread. When it changes, the
+ * new file is parsed and indexed off the request path and the results replace the
+ * current assets in a single step, so lookups never wait on a reload and never see a
+ * partly loaded catalogue. If the new file can not be parsed, the current assets are
+ * kept.
  * 
  * @author Derek
  *
  * @param <T>
  */
 public abstract class FileSystemAssetModule<T extends Asset> extends LifecycleComponent implements
-		IAssetModule<T> {
+		IIndexedAssetModule<T> {
 
 	/** Static logger instance */
 	private static Logger LOGGER = Logger.getLogger(FileSystemAssetModule.class);
 
-	/** Map of assets by unique id */
-	protected Map<String, T> assetsById;
+	/** Default time between checks for asset file changes in milliseconds */
+	private static final long DEFAULT_RELOAD_CHECK_INTERVAL = 5 * 1000;
+
+	/** Time a changed file must go unmodified before it is reloaded in milliseconds */
+	private static final long RELOAD_SETTLE_TIME = 1000;
 
 	/** Matcher used for searches */
 	protected AssetMatcher matcher = new AssetMatcher();
 
+	/** Assets currently in use */
+	private volatile AssetSnapshot<T> snapshot;
+
+	/** Time between checks for asset file changes in milliseconds (0 to disable) */
+	private long reloadCheckInterval = DEFAULT_RELOAD_CHECK_INTERVAL;
+
+	/** Checks for asset file changes */
+	private ScheduledExecutorService watcher;
+
+	/** Modification time of a file that failed to load */
+	private long failedModified = -1;
+
+	/** Length of a file that failed to load */
+	private long failedLength = -1;
+
+	/** Meter for successful reloads */
+	private Meter reloads = new Meter();
+
+	/** Meter for failed reloads */
+	private Meter reloadFailures = new Meter();
+
+	/** Histogram of reload times in milliseconds */
+	private Histogram reloadTime = new Histogram(new ExponentiallyDecayingReservoir());
+
 	/** Filename used to load assets */
 	private String filename;
 
@@ -67,7 +115,41 @@ public abstract class FileSystemAssetModule<T extends Asset> extends LifecycleCo
 	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#start()
 	 */
 	public void start() throws SiteWhereException {
+		registerMetrics();
 		reload();
+		if (getReloadCheckInterval() > 0) {
+			watcher = Executors.newSingleThreadScheduledExecutor(new WatcherThreadFactory());
+			watcher.scheduleWithFixedDelay(new AssetFileChecker(), getReloadCheckInterval(),
+					getReloadCheckInterval(), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Register reload metrics for the module.
+	 */
+	protected void registerMetrics() {
+		MetricRegistry registry = SiteWhere.getServer().getMetricRegistry();
+		if (registry != null) {
+			String reloadsName = MetricRegistry.name(FileSystemAssetModule.class, getModuleId(), "reloads");
+			registry.remove(reloadsName);
+			registry.register(reloadsName, reloads);
+			String failuresName =
+					MetricRegistry.name(FileSystemAssetModule.class, getModuleId(), "reloadFailures");
+			registry.remove(failuresName);
+			registry.register(failuresName, reloadFailures);
+			String timeName = MetricRegistry.name(FileSystemAssetModule.class, getModuleId(), "reloadTime");
+			registry.remove(timeName);
+			registry.register(timeName, reloadTime);
+			String assetsName = MetricRegistry.name(FileSystemAssetModule.class, getModuleId(), "assets");
+			registry.remove(assetsName);
+			registry.register(assetsName, new Gauge<Integer>() {
+
+				@Override
+				public Integer getValue() {
+					return getAssetCount();
+				}
+			});
+		}
 	}
 
 	/*
@@ -76,12 +158,74 @@ public abstract class FileSystemAssetModule<T extends Asset> extends LifecycleCo
 	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#stop()
 	 */
 	public void stop() throws SiteWhereException {
+		if (watcher != null) {
+			watcher.shutdownNow();
+			watcher = null;
+		}
+	}
+
+	/**
+	 * Load assets from the filesystem and replace the current assets once they are parsed
+	 * and indexed.
+	 * 
+	 * @throws SiteWhereException
+	 */
+	protected synchronized void reload() throws SiteWhereException {
+		File configFile = getAssetsFile();
+		long modified = configFile.lastModified();
+		long length = configFile.length();
+		LOGGER.info("Loading assets from: " + configFile.getAbsolutePath());
+		long start = System.currentTimeMillis();
+
+		// Unmarshal assets from XML file and store in data object.
+		List<T> assets = unmarshal(configFile);
+		Map<String, T> assetsById = new HashMap<String, T>();
+		for (T asset : assets) {
+			assetsById.put(asset.getId(), asset);
+		}
+		AssetSearchIndex<T> index = new AssetSearchIndex<T>(getAssetType(), assetsById.values(), matcher);
+		AssetSnapshot<T> previous = snapshot;
+		snapshot =
+				new AssetSnapshot<T>(Collections.unmodifiableMap(assetsById), index, modified, length);
+
+		long elapsed = System.currentTimeMillis() - start;
+		reloads.mark();
+		reloadTime.update(elapsed);
+		showChanges(previous, snapshot, elapsed);
 	}
 
 	/**
-	 * Reloads list of person assets from the filesystem.
+	 * Log what changed between two sets of assets.
+	 * 
+	 * @param previous
+	 * @param current
+	 * @param elapsed
 	 */
-	protected void reload() throws SiteWhereException {
+	protected void showChanges(AssetSnapshot<T> previous, AssetSnapshot<T> current, long elapsed) {
+		if (previous == null) {
+			LOGGER.info("Parsed and indexed " + current.getAssetsById().size() + " assets in " + elapsed
+					+ " ms.");
+			return;
+		}
+		int added = 0;
+		for (String id : current.getAssetsById().keySet()) {
+			if (!previous.getAssetsById().containsKey(id)) {
+				added++;
+			}
+		}
+		int kept = current.getAssetsById().size() - added;
+		int removed = previous.getAssetsById().size() - kept;
+		LOGGER.info("Reloaded " + current.getAssetsById().size() + " assets in " + elapsed + " ms ("
+				+ added + " added, " + removed + " removed, " + kept + " kept).");
+	}
+
+	/**
+	 * Get the file that assets are loaded from.
+	 * 
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected File getAssetsFile() throws SiteWhereException {
 		File config = TomcatConfigurationResolver.getSiteWhereConfigFolder();
 		File assetsFolder = new File(config, IFileSystemAssetModuleConstants.ASSETS_FOLDER);
 		if (!assetsFolder.exists()) {
@@ -93,25 +237,27 @@ public abstract class FileSystemAssetModule<T extends Asset> extends LifecycleCo
 			throw new SiteWhereException("Asset module file missing. Looking for: "
 					+ configFile.getAbsolutePath());
 		}
-		LOGGER.info("Loading assets from: " + configFile.getAbsolutePath());
-
-		// Unmarshal assets from XML file and store in data object.
-		List<T> assets = unmarshal(configFile);
-		this.assetsById = new HashMap<String, T>();
-		for (T asset : assets) {
-			assetsById.put(asset.getId(), asset);
-		}
-		showLoadResults();
+		return configFile;
 	}
 
 	/**
 	 * Log the number of assets loaded for each type.
 	 */
 	protected void showLoadResults() {
-		String message = "Loaded " + assetsById.size() + " assets.";
+		String message = "Loaded " + getAssetCount() + " assets.";
 		LOGGER.info(message);
 	}
 
+	/**
+	 * Get the number of assets currently loaded.
+	 * 
+	 * @return
+	 */
+	public int getAssetCount() {
+		AssetSnapshot<T> current = snapshot;
+		return (current == null) ? 0 : current.getAssetsById().size();
+	}
+
 	/**
 	 * Implemented in subclasses to unmarshal file into assets.
 	 * 
@@ -155,7 +301,7 @@ public abstract class FileSystemAssetModule<T extends Asset> extends LifecycleCo
 	 * @see com.sitewhere.spi.asset.IAssetModule#getAssetById(java.lang.String)
 	 */
 	public T getAssetById(String id) throws SiteWhereException {
-		return assetsById.get(id);
+		return snapshot.getAssetsById().get(id);
 	}
 
 	/*
@@ -164,18 +310,17 @@ public abstract class FileSystemAssetModule<T extends Asset> extends LifecycleCo
 	 * @see com.sitewhere.spi.asset.IAssetModule#search(java.lang.String)
 	 */
 	public List<T> search(String criteria) throws SiteWhereException {
-		criteria = criteria.toLowerCase();
-		List<T> results = new ArrayList<T>();
-		if (criteria.length() == 0) {
-			results.addAll(assetsById.values());
-			return results;
-		}
-		for (T asset : assetsById.values()) {
-			if (matcher.isMatch(getAssetType(), asset, criteria)) {
-				results.add(asset);
-			}
-		}
-		return results;
+		return snapshot.getIndex().search(criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.spi.asset.IIndexedAssetModule#search(java.lang.String,
+	 * com.sitewhere.spi.search.ISearchCriteria)
+	 */
+	public ISearchResults<T> search(String criteria, ISearchCriteria paging) throws SiteWhereException {
+		return snapshot.getIndex().search(criteria, paging);
 	}
 
 	/*
@@ -193,6 +338,117 @@ public abstract class FileSystemAssetModule<T extends Asset> extends LifecycleCo
 		}
 	}
 
+	/**
+	 * Reloads assets when the asset file has changed and has not been modified for a
+	 * short time. A file that failed to load is not tried again until it changes.
+	 * 
+	 * @author Derek
+	 */
+	private class AssetFileChecker implements Runnable {
+
+		@Override
+		public void run() {
+			try {
+				File file;
+				try {
+					file = getAssetsFile();
+				} catch (SiteWhereException e) {
+					LOGGER.debug("Asset file not available. Keeping previously loaded assets.");
+					return;
+				}
+				long modified = file.lastModified();
+				long length = file.length();
+				AssetSnapshot<T> current = snapshot;
+				if ((current != null) && (current.getModified() == modified)
+						&& (current.getLength() == length)) {
+					return;
+				}
+				if ((modified == failedModified) && (length == failedLength)) {
+					return;
+				}
+				if ((System.currentTimeMillis() - modified) < RELOAD_SETTLE_TIME) {
+					return;
+				}
+				LOGGER.info("Asset file changed. Reloading assets for module '" + getModuleId() + "'.");
+				try {
+					reload();
+				} catch (SiteWhereException e) {
+					failedModified = modified;
+					failedLength = length;
+					reloadFailures.mark();
+					LOGGER.warn("Unable to reload assets. Keeping previously loaded assets.", e);
+				}
+			} catch (Throwable e) {
+				LOGGER.error("Unable to check asset file for changes.", e);
+			}
+		}
+	}
+
+	/**
+	 * Immutable set of loaded assets with the index built from them and the state of the
+	 * file they were loaded from.
+	 * 
+	 * @author Derek
+	 * 
+	 * @param <A>
+	 */
+	protected static class AssetSnapshot<A extends Asset> {
+
+		/** Assets by unique id */
+		private Map<String, A> assetsById;
+
+		/** Index used for searches */
+		private AssetSearchIndex<A> index;
+
+		/** Modification time of the file when loaded */
+		private long modified;
+
+		/** Length of the file when loaded */
+		private long length;
+
+		public AssetSnapshot(Map<String, A> assetsById, AssetSearchIndex<A> index, long modified,
+				long length) {
+			this.assetsById = assetsById;
+			this.index = index;
+			this.modified = modified;
+			this.length = length;
+		}
+
+		public Map<String, A> getAssetsById() {
+			return assetsById;
+		}
+
+		public AssetSearchIndex<A> getIndex() {
+			return index;
+		}
+
+		public long getModified() {
+			return modified;
+		}
+
+		public long getLength() {
+			return length;
+		}
+	}
+
+	/** Used for naming asset file watcher thread */
+	private class WatcherThreadFactory implements ThreadFactory {
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "SiteWhere Asset Watcher (" + getModuleId() + ")");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	public long getReloadCheckInterval() {
+		return reloadCheckInterval;
+	}
+
+	public void setReloadCheckInterval(long reloadCheckInterval) {
+		this.reloadCheckInterval = reloadCheckInterval;
+	}
+
 	public String getFilename() {
 		return filename;
 	}
@@ -14,6 +14,7 @@ import org.mule.util.UUID;
 
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.server.lifecycle.ILifecycleComponent;
+import com.sitewhere.spi.server.lifecycle.IStartupReport;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 import com.sitewhere.spi.server.lifecycle.LifecycleStatus;
 
@@ -249,6 +250,23 @@ public abstract class LifecycleComponent implements ILifecycleComponent {
 		getLifecycleComponents().add(component);
 	}
 
+	/**
+	 * Starts nested components in parallel based on the dependencies registered with the
+	 * {@link StartupOrchestrator}. Started components are added to the nested component
+	 * list in the order they were registered.
+	 * 
+	 * @param orchestrator
+	 * @return timing for each startup step
+	 * @throws SiteWhereException
+	 */
+	public IStartupReport startNestedComponents(StartupOrchestrator orchestrator) throws SiteWhereException {
+		try {
+			return orchestrator.run();
+		} finally {
+			getLifecycleComponents().addAll(orchestrator.getStartedComponents());
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.server.lifecycle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import com.sitewhere.rest.model.system.StartupReport;
+import com.sitewhere.rest.model.system.StartupStepTime;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.server.lifecycle.ILifecycleComponent;
+import com.sitewhere.spi.server.lifecycle.LifecycleStatus;
+
+/**
+ * Starts a group of {@link ILifecycleComponent} instances and tasks based on the
+ * dependencies between them. Each step names the steps that must finish before it can
+ * start. Steps whose dependencies have finished are run in parallel on a fixed pool of
+ * threads, so independent parts of the system start at the same time rather than one
+ * after another. The time taken by each step is recorded in a {@link StartupReport}.
+ * 
+ * If a required step fails, no further steps are started. Steps already running are
+ * allowed to finish before the error is reported.
+ * 
+ * @author Derek
+ */
+public class StartupOrchestrator {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(StartupOrchestrator.class);
+
+	/** Steps by unique name in the order they were added */
+	private Map<String, Step> steps = new LinkedHashMap<String, Step>();
+
+	/** Maximum number of steps run in parallel */
+	private int threadCount;
+
+	/** Time startup began */
+	private long startTime;
+
+	public StartupOrchestrator(int threadCount) {
+		this.threadCount = Math.max(1, threadCount);
+	}
+
+	/**
+	 * Add a step that starts a lifecycle component.
+	 * 
+	 * @param name
+	 * @param component
+	 * @param errorMessage
+	 * @param require
+	 * @param dependsOn
+	 * @throws SiteWhereException
+	 */
+	public void addComponent(String name, ILifecycleComponent component, String errorMessage,
+			boolean require, String... dependsOn) throws SiteWhereException {
+		addStep(new Step(name, component, null, errorMessage, require, dependsOn));
+	}
+
+	/**
+	 * Add a step that runs a task. A task that throws an exception stops startup.
+	 * 
+	 * @param name
+	 * @param task
+	 * @param dependsOn
+	 * @throws SiteWhereException
+	 */
+	public void addTask(String name, IStartupTask task, String... dependsOn) throws SiteWhereException {
+		addStep(new Step(name, null, task, name + " failed.", true, dependsOn));
+	}
+
+	/**
+	 * Add a step, checking that its name is unique.
+	 * 
+	 * @param step
+	 * @throws SiteWhereException
+	 */
+	protected void addStep(Step step) throws SiteWhereException {
+		if (steps.containsKey(step.name)) {
+			throw new SiteWhereException("Duplicate startup step: " + step.name);
+		}
+		steps.put(step.name, step);
+	}
+
+	/**
+	 * Indicates whether a step with the given name has been added.
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public boolean hasStep(String name) {
+		return steps.containsKey(name);
+	}
+
+	/**
+	 * Run all steps, honoring dependencies.
+	 * 
+	 * @return timing for each step that was run
+	 * @throws SiteWhereException if a required step failed or the dependencies are invalid
+	 */
+	public StartupReport run() throws SiteWhereException {
+		Map<String, Integer> waiting = new HashMap<String, Integer>();
+		Map<String, List<Step>> dependents = new HashMap<String, List<Step>>();
+		for (Step step : steps.values()) {
+			for (String dependency : step.dependsOn) {
+				if (!steps.containsKey(dependency)) {
+					throw new SiteWhereException("Startup step '" + step.name
+							+ "' depends on unknown step '" + dependency + "'.");
+				}
+				List<Step> list = dependents.get(dependency);
+				if (list == null) {
+					list = new ArrayList<Step>();
+					dependents.put(dependency, list);
+				}
+				list.add(step);
+			}
+			waiting.put(step.name, step.dependsOn.size());
+		}
+
+		startTime = System.currentTimeMillis();
+		ExecutorService pool =
+				Executors.newFixedThreadPool(Math.min(threadCount, Math.max(1, steps.size())),
+						new StartupThreadFactory());
+		CompletionService<Step> completion = new ExecutorCompletionService<Step>(pool);
+		int running = 0;
+		int finished = 0;
+		SiteWhereException failure = null;
+		try {
+			for (Step step : steps.values()) {
+				if (waiting.get(step.name) == 0) {
+					completion.submit(step);
+					running++;
+				}
+			}
+			while (running > 0) {
+				Step done = completion.take().get();
+				running--;
+				finished++;
+				if ((!done.successful) && (done.require) && (failure == null)) {
+					failure =
+							new SiteWhereException("Server startup aborted. " + done.errorMessage, done.error);
+				}
+				if ((failure != null) || (!dependents.containsKey(done.name))) {
+					continue;
+				}
+				for (Step dependent : dependents.get(done.name)) {
+					int remaining = waiting.get(dependent.name) - 1;
+					waiting.put(dependent.name, remaining);
+					if (remaining == 0) {
+						completion.submit(dependent);
+						running++;
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new SiteWhereException("Interrupted while waiting for startup steps.", e);
+		} catch (ExecutionException e) {
+			pool.shutdownNow();
+			throw new SiteWhereException("Unexpected error in startup step.", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+
+		StartupReport report = getReport();
+		LOGGER.info(getSummary(report));
+		if (failure != null) {
+			throw failure;
+		}
+		if (finished < steps.size()) {
+			List<String> blocked = new ArrayList<String>();
+			for (Step step : steps.values()) {
+				if (!step.ran) {
+					blocked.add(step.name);
+				}
+			}
+			throw new SiteWhereException("Circular startup dependency among steps: " + blocked);
+		}
+		return report;
+	}
+
+	/**
+	 * Get components that were started, in the order they were added. Components that
+	 * failed a required start are not included.
+	 * 
+	 * @return
+	 */
+	public List<ILifecycleComponent> getStartedComponents() {
+		List<ILifecycleComponent> started = new ArrayList<ILifecycleComponent>();
+		for (Step step : steps.values()) {
+			if ((step.component != null) && (step.ran) && (step.successful || !step.require)) {
+				started.add(step.component);
+			}
+		}
+		return started;
+	}
+
+	/**
+	 * Build a report with timing for each step that was run, ordered by start time.
+	 * 
+	 * @return
+	 */
+	protected StartupReport getReport() {
+		StartupReport report = new StartupReport();
+		report.setStartDate(new Date(startTime));
+		report.setDuration(System.currentTimeMillis() - startTime);
+		report.setThreadCount(threadCount);
+		for (Step step : steps.values()) {
+			if (!step.ran) {
+				continue;
+			}
+			StartupStepTime time = new StartupStepTime();
+			time.setName(step.name);
+			time.setComponentType((step.component != null) ? step.component.getComponentType() : null);
+			time.setDependencies(step.dependsOn);
+			time.setOffset(step.offset);
+			time.setDuration(step.duration);
+			time.setThreadName(step.threadName);
+			time.setSuccessful(step.successful);
+			if (step.error != null) {
+				time.setError(step.error.getMessage());
+			}
+			report.getSteps().add(time);
+		}
+		Collections.sort(report.getSteps(), new Comparator<StartupStepTime>() {
+
+			@Override
+			public int compare(StartupStepTime a, StartupStepTime b) {
+				return (a.getOffset() < b.getOffset()) ? -1 : ((a.getOffset() == b.getOffset()) ? 0 : 1);
+			}
+		});
+		return report;
+	}
+
+	/**
+	 * Get a printable summary of step timing.
+	 * 
+	 * @param report
+	 * @return
+	 */
+	protected String getSummary(StartupReport report) {
+		StringBuilder summary = new StringBuilder();
+		summary.append("Started " + report.getSteps().size() + " steps in " + report.getDuration()
+				+ " ms using up to " + report.getThreadCount() + " threads:");
+		for (StartupStepTime time : report.getSteps()) {
+			summary.append("\n  " + String.format("%6d ms +%6d ms  ", time.getOffset(), time.getDuration())
+					+ time.getName() + (time.isSuccessful() ? "" : " (FAILED)"));
+		}
+		return summary.toString();
+	}
+
+	/**
+	 * Work done by a startup step that is not a lifecycle component.
+	 * 
+	 * @author Derek
+	 */
+	public static interface IStartupTask {
+
+		/**
+		 * Run the task.
+		 * 
+		 * @throws SiteWhereException
+		 */
+		public void run() throws SiteWhereException;
+	}
+
+	/** Used for naming startup threads */
+	private class StartupThreadFactory implements ThreadFactory {
+
+		/** Counts threads */
+		private AtomicInteger counter = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			return new Thread(r, "SiteWhere Startup " + counter.incrementAndGet());
+		}
+	}
+
+	/**
+	 * Single startup step along with the timing recorded when it ran.
+	 * 
+	 * @author Derek
+	 */
+	private class Step implements Callable<Step> {
+
+		/** Unique step name */
+		private String name;
+
+		/** Component started by step */
+		private ILifecycleComponent component;
+
+		/** Task run by step */
+		private IStartupTask task;
+
+		/** Message used if step fails */
+		private String errorMessage;
+
+		/** Indicates whether failure stops startup */
+		private boolean require;
+
+		/** Names of steps that must finish first */
+		private List<String> dependsOn;
+
+		/** Indicates whether step was run */
+		private volatile boolean ran;
+
+		/** Indicates whether step completed without error */
+		private volatile boolean successful;
+
+		/** Error if step failed */
+		private volatile Throwable error;
+
+		/** Milliseconds from start of startup until step started */
+		private volatile long offset;
+
+		/** Milliseconds taken by step */
+		private volatile long duration;
+
+		/** Thread that ran step */
+		private volatile String threadName;
+
+		public Step(String name, ILifecycleComponent component, IStartupTask task, String errorMessage,
+				boolean require, String[] dependsOn) {
+			this.name = name;
+			this.component = component;
+			this.task = task;
+			this.errorMessage = errorMessage;
+			this.require = require;
+			this.dependsOn = Arrays.asList(dependsOn);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		@Override
+		public Step call() {
+			long start = System.currentTimeMillis();
+			offset = start - startTime;
+			threadName = Thread.currentThread().getName();
+			try {
+				if (component != null) {
+					component.lifecycleStart();
+					successful = (component.getLifecycleStatus() != LifecycleStatus.Error);
+					if (!successful) {
+						error = component.getLifecycleError();
+					}
+				} else {
+					task.run();
+					successful = true;
+				}
+			} catch (Throwable t) {
+				LOGGER.error("Startup step '" + name + "' failed.", t);
+				successful = false;
+				error = t;
+			} finally {
+				duration = System.currentTimeMillis() - start;
+				ran = true;
+			}
+			return this;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.event.processor.ratelimit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sitewhere.rest.model.device.event.request.DeviceAlertCreateRequest;
+
+/**
+ * Tests for {@link TokenBucket} and the downsampling applied by {@link RateLimitFilter}.
+ * Times are passed in explicitly so results do not depend on the clock.
+ * 
+ * @author Derek
+ */
+public class TokenBucketTest {
+
+	/** Time to add one token */
+	private static final long INTERVAL = 10;
+
+	/** Number of tokens in a full bucket */
+	private static final int BURST_SIZE = 5;
+
+	/** Time to fill the bucket */
+	private static final long BURST = INTERVAL * BURST_SIZE;
+
+	@Test
+	public void testBurst() {
+		TokenBucket bucket = new TokenBucket();
+		for (int i = 0; i < BURST_SIZE; i++) {
+			Assert.assertEquals(0, bucket.acquire(0, INTERVAL, BURST, 0));
+		}
+		Assert.assertEquals(-1, bucket.acquire(0, INTERVAL, BURST, 0));
+		Assert.assertEquals(-1, bucket.acquire(INTERVAL - 1, INTERVAL, BURST, 0));
+	}
+
+	@Test
+	public void testRefill() {
+		TokenBucket bucket = new TokenBucket();
+		for (int i = 0; i < BURST_SIZE; i++) {
+			bucket.acquire(0, INTERVAL, BURST, 0);
+		}
+
+		// One token is added per interval.
+		Assert.assertEquals(0, bucket.acquire(INTERVAL, INTERVAL, BURST, 0));
+		Assert.assertEquals(-1, bucket.acquire(INTERVAL, INTERVAL, BURST, 0));
+
+		// An idle bucket refills to the burst size and no further.
+		long later = 100 * INTERVAL;
+		for (int i = 0; i < BURST_SIZE; i++) {
+			Assert.assertEquals(0, bucket.acquire(later, INTERVAL, BURST, 0));
+		}
+		Assert.assertEquals(-1, bucket.acquire(later, INTERVAL, BURST, 0));
+	}
+
+	@Test
+	public void testMaxWaitCutoff() {
+		TokenBucket bucket = new TokenBucket();
+		for (int i = 0; i < BURST_SIZE; i++) {
+			bucket.acquire(0, INTERVAL, BURST, 0);
+		}
+		long maxWait = 2 * INTERVAL + (INTERVAL / 2);
+		Assert.assertEquals(INTERVAL, bucket.acquire(0, INTERVAL, BURST, maxWait));
+		Assert.assertEquals(2 * INTERVAL, bucket.acquire(0, INTERVAL, BURST, maxWait));
+		Assert.assertEquals(-1, bucket.acquire(0, INTERVAL, BURST, maxWait));
+
+		// A rejected request does not take a token.
+		Assert.assertEquals(0, bucket.acquire(3 * INTERVAL, INTERVAL, BURST, 0));
+	}
+
+	@Test
+	public void testRelease() {
+		TokenBucket bucket = new TokenBucket();
+		for (int i = 0; i < BURST_SIZE; i++) {
+			bucket.acquire(0, INTERVAL, BURST, 0);
+		}
+		bucket.release(INTERVAL);
+		Assert.assertEquals(0, bucket.acquire(0, INTERVAL, BURST, 0));
+		Assert.assertEquals(-1, bucket.acquire(0, INTERVAL, BURST, 0));
+	}
+
+	@Test
+	public void testDownsampleRatios() throws Exception {
+		int[] ratios = { 1, 3, 10 };
+		for (int ratio : ratios) {
+			RateLimitFilter filter = new RateLimitFilter();
+			filter.setAction(RateLimitAction.Downsample);
+			filter.setDownsampleRatio(ratio);
+			filter.setDeviceBurst(BURST_SIZE);
+
+			// Rate is low enough that no tokens are added while the test runs.
+			filter.setDeviceEventsPerSecond(0.001);
+
+			int over = 30 * ratio;
+			int kept = 0;
+			for (int i = 0; i < BURST_SIZE + over; i++) {
+				if (!filter.isFiltered("downsample-" + ratio, null, new DeviceAlertCreateRequest())) {
+					kept++;
+				}
+			}
+			Assert.assertEquals("Wrong number kept for ratio " + ratio, BURST_SIZE + (over / ratio), kept);
+			Assert.assertEquals(over, filter.getThrottledCount("downsample-" + ratio));
+		}
+	}
+
+	@Test
+	public void testDropAction() throws Exception {
+		RateLimitFilter filter = new RateLimitFilter();
+		filter.setAction(RateLimitAction.Drop);
+		filter.setDeviceBurst(BURST_SIZE);
+		filter.setDeviceEventsPerSecond(0.001);
+		for (int i = 0; i < BURST_SIZE; i++) {
+			Assert.assertFalse(filter.isFiltered("drop", null, new DeviceAlertCreateRequest()));
+		}
+		Assert.assertTrue(filter.isFiltered("drop", null, new DeviceAlertCreateRequest()));
+		Assert.assertEquals(1, filter.getThrottledCount("drop"));
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.provisioning;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.codahale.metrics.MetricRegistry;
+import com.sitewhere.SiteWhere;
+import com.sitewhere.memory.device.InMemoryDeviceManagement;
+import com.sitewhere.rest.model.device.command.RegistrationAckCommand;
+import com.sitewhere.rest.model.device.event.request.DeviceRegistrationRequest;
+import com.sitewhere.rest.model.device.request.DeviceSpecificationCreateRequest;
+import com.sitewhere.rest.model.device.request.SiteCreateRequest;
+import com.sitewhere.server.SiteWhereServer;
+import com.sitewhere.spi.device.DeviceContainerPolicy;
+import com.sitewhere.spi.device.IDevice;
+import com.sitewhere.spi.device.command.ISystemCommand;
+import com.sitewhere.spi.device.command.RegistrationSuccessReason;
+import com.sitewhere.spi.device.provisioning.IDeviceProvisioning;
+import com.sitewhere.spi.server.ISiteWhereServer;
+
+/**
+ * Tests for {@link RegistrationManager} handling registrations on its own threads.
+ * 
+ * @author Derek
+ */
+public class RegistrationManagerTest {
+
+	/** Hardware id used for registrations */
+	private static final String HARDWARE_ID = "registration-test-device";
+
+	/** Device management holding registered devices */
+	private InMemoryDeviceManagement management;
+
+	/** Registration manager being tested */
+	private RegistrationManager manager;
+
+	/** Specification token used for registrations */
+	private String specificationToken;
+
+	/** Commands delivered to devices */
+	private BlockingQueue<ISystemCommand> delivered = new LinkedBlockingQueue<ISystemCommand>();
+
+	@Before
+	public void setup() throws Exception {
+		management = new InMemoryDeviceManagement();
+		installServer();
+
+		// Fixtures are created on the test thread, which needs its own authentication.
+		SecurityContextHolder.getContext().setAuthentication(SiteWhereServer.getSystemAuthentication());
+		DeviceSpecificationCreateRequest spec = new DeviceSpecificationCreateRequest();
+		spec.setName("Registration Test");
+		spec.setAssetModuleId("fs-devices");
+		spec.setAssetId("175");
+		spec.setContainerPolicy(DeviceContainerPolicy.Standalone);
+		specificationToken = management.createDeviceSpecification(spec).getToken();
+		SiteCreateRequest site = new SiteCreateRequest();
+		site.setName("Registration Test Site");
+		String siteToken = management.createSite(site).getToken();
+		SecurityContextHolder.getContext().setAuthentication(null);
+
+		manager = new RegistrationManager();
+		manager.setAutoAssignSiteToken(siteToken);
+		manager.start();
+	}
+
+	@After
+	public void teardown() throws Exception {
+		manager.stop();
+		setServer(null);
+	}
+
+	@Test
+	public void testRegisterUnknownDevice() throws Exception {
+		manager.handleDeviceRegistration(createRequest());
+		ISystemCommand command = delivered.poll(10, TimeUnit.SECONDS);
+		Assert.assertTrue(command instanceof RegistrationAckCommand);
+		Assert.assertEquals(RegistrationSuccessReason.NewRegistration,
+				((RegistrationAckCommand) command).getReason());
+		IDevice device = management.getDeviceByHardwareId(HARDWARE_ID);
+		Assert.assertNotNull(device);
+		Assert.assertNotNull(device.getAssignmentToken());
+	}
+
+	@Test
+	public void testRegisterKnownDevice() throws Exception {
+		manager.handleDeviceRegistration(createRequest());
+		Assert.assertNotNull(delivered.poll(10, TimeUnit.SECONDS));
+		manager.handleDeviceRegistration(createRequest());
+		ISystemCommand command = delivered.poll(10, TimeUnit.SECONDS);
+		Assert.assertTrue(command instanceof RegistrationAckCommand);
+		Assert.assertEquals(RegistrationSuccessReason.AlreadyRegistered,
+				((RegistrationAckCommand) command).getReason());
+	}
+
+	@Test
+	public void testReassignAfterAssignmentEnded() throws Exception {
+		manager.handleDeviceRegistration(createRequest());
+		Assert.assertNotNull(delivered.poll(10, TimeUnit.SECONDS));
+		String first = management.getDeviceByHardwareId(HARDWARE_ID).getAssignmentToken();
+		SecurityContextHolder.getContext().setAuthentication(SiteWhereServer.getSystemAuthentication());
+		management.endDeviceAssignment(first);
+		Assert.assertNull(management.getDeviceByHardwareId(HARDWARE_ID).getAssignmentToken());
+
+		manager.handleDeviceRegistration(createRequest());
+		Assert.assertNotNull(delivered.poll(10, TimeUnit.SECONDS));
+		String second = management.getDeviceByHardwareId(HARDWARE_ID).getAssignmentToken();
+		Assert.assertNotNull(second);
+		Assert.assertFalse(first.equals(second));
+	}
+
+	@Test
+	public void testRegisterAfterDeviceDeleted() throws Exception {
+		manager.handleDeviceRegistration(createRequest());
+		Assert.assertNotNull(delivered.poll(10, TimeUnit.SECONDS));
+		SecurityContextHolder.getContext().setAuthentication(SiteWhereServer.getSystemAuthentication());
+		management.endDeviceAssignment(management.getDeviceByHardwareId(HARDWARE_ID).getAssignmentToken());
+		management.deleteDevice(HARDWARE_ID, true);
+
+		manager.handleDeviceRegistration(createRequest());
+		ISystemCommand command = delivered.poll(10, TimeUnit.SECONDS);
+		Assert.assertTrue(command instanceof RegistrationAckCommand);
+		Assert.assertEquals(RegistrationSuccessReason.NewRegistration,
+				((RegistrationAckCommand) command).getReason());
+		Assert.assertNotNull(management.getDeviceByHardwareId(HARDWARE_ID));
+	}
+
+	/**
+	 * Create a registration request for the test device.
+	 * 
+	 * @return
+	 */
+	protected DeviceRegistrationRequest createRequest() {
+		DeviceRegistrationRequest request = new DeviceRegistrationRequest();
+		request.setHardwareId(HARDWARE_ID);
+		request.setSpecificationToken(specificationToken);
+		return request;
+	}
+
+	/**
+	 * Install a server that provides device management, metrics and a provisioning
+	 * implementation that records delivered commands.
+	 * 
+	 * @throws Exception
+	 */
+	protected void installServer() throws Exception {
+		final MetricRegistry metrics = new MetricRegistry();
+		final IDeviceProvisioning provisioning =
+				(IDeviceProvisioning) Proxy.newProxyInstance(IDeviceProvisioning.class.getClassLoader(),
+						new Class<?>[] { IDeviceProvisioning.class }, new InvocationHandler() {
+
+							@Override
+							public Object invoke(Object proxy, Method method, Object[] args)
+									throws Throwable {
+								if ("deliverSystemCommand".equals(method.getName())) {
+									delivered.add((ISystemCommand) args[1]);
+								}
+								return null;
+							}
+						});
+		ISiteWhereServer server =
+				(ISiteWhereServer) Proxy.newProxyInstance(ISiteWhereServer.class.getClassLoader(),
+						new Class<?>[] { ISiteWhereServer.class }, new InvocationHandler() {
+
+							@Override
+							public Object invoke(Object proxy, Method method, Object[] args)
+									throws Throwable {
+								if ("getDeviceManagement".equals(method.getName())) {
+									return management;
+								} else if ("getDeviceProvisioning".equals(method.getName())) {
+									return provisioning;
+								} else if ("getMetricRegistry".equals(method.getName())) {
+									return metrics;
+								}
+								return null;
+							}
+						});
+		setServer(server);
+	}
+
+	/**
+	 * Set the {@link SiteWhere} singleton, which is only created from configuration.
+	 * 
+	 * @param server
+	 * @throws Exception
+	 */
+	protected void setServer(ISiteWhereServer server) throws Exception {
+		Field field = SiteWhere.class.getDeclaredField("SERVER");
+		field.setAccessible(true);
+		field.set(null, server);
+	}
+}
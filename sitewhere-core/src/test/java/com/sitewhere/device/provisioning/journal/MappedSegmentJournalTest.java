@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.provisioning.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Tests for {@link MappedSegmentJournal} covering segment rollover, recovery after a
+ * restart and behavior once the size cap is reached.
+ * 
+ * @author Derek
+ */
+public class MappedSegmentJournalTest {
+
+	/** Segment size that holds a few small records */
+	private static final int SEGMENT_SIZE = 64;
+
+	/** Directory holding segment files */
+	private File directory;
+
+	/** Journal under test */
+	private MappedSegmentJournal journal;
+
+	@Before
+	public void setup() throws IOException {
+		directory = File.createTempFile("sitewhere-journal", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	@After
+	public void teardown() {
+		if (journal != null) {
+			journal.close();
+		}
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testWraparound() throws Exception {
+		journal = new MappedSegmentJournal(directory, SEGMENT_SIZE, 3);
+		journal.open();
+
+		// Keep a few records in flight so reads cross segment boundaries many times.
+		int appended = 0;
+		int read = 0;
+		for (int round = 0; round < 50; round++) {
+			for (int i = 0; i < 5; i++) {
+				Assert.assertTrue(journal.append(createRecord(appended++)));
+			}
+			for (int i = 0; i < 5; i++) {
+				assertRecord(read++, journal.peek(0));
+				journal.commit();
+			}
+			Assert.assertTrue(journal.getAllocatedBytes() <= 3 * SEGMENT_SIZE);
+		}
+		Assert.assertTrue(journal.isEmpty());
+		Assert.assertEquals(appended, journal.getAppendedCount());
+		Assert.assertEquals(read, journal.getCommittedCount());
+		Assert.assertEquals(0, journal.getRejectedCount());
+
+		// Fully read segments are deleted, leaving only the one being reused.
+		Assert.assertEquals(1, directory.listFiles().length);
+	}
+
+	@Test
+	public void testReplayAfterRestart() throws Exception {
+		journal = new MappedSegmentJournal(directory, SEGMENT_SIZE, 10);
+		journal.open();
+		for (int i = 0; i < 20; i++) {
+			Assert.assertTrue(journal.append(createRecord(i)));
+		}
+		for (int i = 0; i < 7; i++) {
+			assertRecord(i, journal.peek(0));
+			journal.commit();
+		}
+
+		// Record peeked but not committed must be replayed after restart.
+		assertRecord(7, journal.peek(0));
+		journal.close();
+
+		journal = new MappedSegmentJournal(directory, SEGMENT_SIZE, 10);
+		journal.open();
+		Assert.assertEquals(13, journal.getDepth());
+		for (int i = 7; i < 20; i++) {
+			assertRecord(i, journal.peek(0));
+			journal.commit();
+		}
+		Assert.assertTrue(journal.isEmpty());
+		Assert.assertNull(journal.peek(1));
+
+		// Appends after recovery continue in order.
+		Assert.assertTrue(journal.append(createRecord(20)));
+		assertRecord(20, journal.peek(0));
+	}
+
+	@Test
+	public void testFullJournal() throws Exception {
+		journal = new MappedSegmentJournal(directory, SEGMENT_SIZE, 2);
+		journal.open();
+		int appended = 0;
+		while (journal.append(createRecord(appended))) {
+			appended++;
+		}
+		Assert.assertTrue(appended > 0);
+		Assert.assertEquals(1, journal.getRejectedCount());
+		Assert.assertEquals(2 * SEGMENT_SIZE, journal.getAllocatedBytes());
+
+		// A writer waiting for space is released once the oldest segment is read.
+		final CountDownLatch released = new CountDownLatch(1);
+		Thread waiter = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					journal.awaitSpace(10 * 1000);
+					released.countDown();
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		waiter.start();
+		int read = 0;
+		while (journal.getAllocatedBytes() == 2 * SEGMENT_SIZE) {
+			assertRecord(read++, journal.peek(0));
+			journal.commit();
+		}
+		Assert.assertTrue(released.await(5, TimeUnit.SECONDS));
+		Assert.assertTrue(journal.append(createRecord(appended++)));
+
+		// Rejected record was not stored, so order continues without a gap.
+		while (read < appended) {
+			assertRecord(read++, journal.peek(0));
+			journal.commit();
+		}
+		Assert.assertTrue(journal.isEmpty());
+	}
+
+	@Test
+	public void testAwaitSpaceReturnsWhenClosed() throws Exception {
+		journal = new MappedSegmentJournal(directory, SEGMENT_SIZE, 1);
+		journal.open();
+		while (journal.append(createRecord(0))) {
+		}
+		journal.close();
+		long start = System.currentTimeMillis();
+		journal.awaitSpace(10 * 1000);
+		Assert.assertTrue((System.currentTimeMillis() - start) < 5 * 1000);
+		try {
+			journal.append(createRecord(0));
+			Assert.fail("Append to closed journal should fail.");
+		} catch (SiteWhereException e) {
+		}
+		journal = null;
+	}
+
+	/**
+	 * Create a record that encodes its index.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	protected byte[] createRecord(int index) {
+		return ("record-" + index).getBytes();
+	}
+
+	/**
+	 * Verify a record has the expected index.
+	 * 
+	 * @param index
+	 * @param record
+	 */
+	protected void assertRecord(int index, byte[] record) {
+		Assert.assertNotNull("Missing record " + index, record);
+		Assert.assertEquals("record-" + index, new String(record));
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hazelcast;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazelcast.core.Hazelcast;
+import com.sitewhere.rest.model.device.Device;
+import com.sitewhere.spi.device.IDevice;
+
+/**
+ * Tests the Hazelcast device management cache provider with a two member cluster running
+ * in the same JVM.
+ * 
+ * @author Derek
+ */
+public class HazelcastCacheProviderTest {
+
+	/** Configuration shared by both members */
+	private static final String CONFIG =
+			"<hazelcast xmlns=\"http://www.hazelcast.com/schema/config\">"
+					+ "<group><name>sitewhere-test</name><password>sitewhere-test</password></group>"
+					+ "<network><port auto-increment=\"true\">5801</port><join>"
+					+ "<multicast enabled=\"false\"/><tcp-ip enabled=\"true\"><member>127.0.0.1:5801</member>"
+					+ "<member>127.0.0.1:5802</member></tcp-ip></join></network></hazelcast>";
+
+	/** Temporary Hazelcast configuration file */
+	private File configFile;
+
+	/** Cache provider on first member */
+	private HazelcastDeviceManagementCacheProvider first;
+
+	/** Cache provider on second member */
+	private HazelcastDeviceManagementCacheProvider second;
+
+	@Before
+	public void setup() throws Exception {
+		configFile = File.createTempFile("hazelcast", ".xml");
+		FileWriter writer = new FileWriter(configFile);
+		try {
+			writer.write(CONFIG);
+		} finally {
+			writer.close();
+		}
+		first = createProvider();
+		second = createProvider();
+	}
+
+	@After
+	public void teardown() {
+		Hazelcast.shutdownAll();
+		configFile.delete();
+	}
+
+	@Test
+	public void testUpdateVisibleOnOtherMember() throws Exception {
+		Device device = new Device();
+		device.setHardwareId("cache-test-device");
+		device.setComments("original");
+		first.getDeviceCache().put(device.getHardwareId(), device);
+
+		// Read twice so the second member holds the entry in its near cache.
+		IDevice found = second.getDeviceCache().get(device.getHardwareId());
+		Assert.assertNotNull(found);
+		Assert.assertEquals("original", found.getComments());
+		second.getDeviceCache().get(device.getHardwareId());
+
+		// Invalidation is asynchronous, so allow some time for it to arrive.
+		device.setComments("updated");
+		first.getDeviceCache().put(device.getHardwareId(), device);
+		long deadline = System.currentTimeMillis() + 5000;
+		String comments = null;
+		while (System.currentTimeMillis() < deadline) {
+			comments = second.getDeviceCache().get(device.getHardwareId()).getComments();
+			if ("updated".equals(comments)) {
+				break;
+			}
+			Thread.sleep(50);
+		}
+		Assert.assertEquals("updated", comments);
+
+		first.getDeviceCache().remove(device.getHardwareId());
+		deadline = System.currentTimeMillis() + 5000;
+		while ((second.getDeviceCache().get(device.getHardwareId()) != null)
+				&& (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(50);
+		}
+		Assert.assertNull(second.getDeviceCache().get(device.getHardwareId()));
+	}
+
+	/**
+	 * Start a cluster member and a cache provider that uses it.
+	 * 
+	 * @return
+	 * @throws Exception
+	 */
+	protected HazelcastDeviceManagementCacheProvider createProvider() throws Exception {
+		SiteWhereHazelcastConfiguration configuration = new SiteWhereHazelcastConfiguration();
+		configuration.setConfigFileLocation(configFile.getAbsolutePath());
+		configuration.afterPropertiesSet();
+		HazelcastDeviceManagementCacheProvider provider = new HazelcastDeviceManagementCacheProvider();
+		provider.setConfiguration(configuration);
+		provider.start();
+		return provider;
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.server.asset;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sitewhere.rest.model.asset.HardwareAsset;
+import com.sitewhere.rest.model.search.SearchCriteria;
+import com.sitewhere.spi.asset.AssetType;
+import com.sitewhere.spi.search.ISearchResults;
+
+/**
+ * Checks {@link AssetSearchIndex} results against {@link AssetMatcher}. Typeahead query
+ * times are measured by AssetSearchIndexBenchmark in sitewhere-benchmarks.
+ * 
+ * @author Derek
+ */
+public class AssetSearchIndexTest {
+
+	/** Words used to generate asset names */
+	private static final String[] WORDS = { "Raspberry", "Arduino", "Sensor", "Gateway", "Beacon",
+			"Tracker", "Controller", "Thermostat", "Camera", "Meter" };
+
+	@Test
+	public void testMatchesAndRanking() throws Exception {
+		List<HardwareAsset> assets = new ArrayList<HardwareAsset>();
+		assets.add(createAsset("1", "Sensor", "Exact match"));
+		assets.add(createAsset("2", "Sensor Hub", "Prefix match"));
+		assets.add(createAsset("3", "Wireless Sensor", "Word match"));
+		assets.add(createAsset("4", "Multisensor", "Substring match"));
+		assets.add(createAsset("5", "Gateway", "Description has a sensor"));
+		assets.add(createAsset("6", "Gateway", "No match"));
+		AssetSearchIndex<HardwareAsset> index =
+				new AssetSearchIndex<HardwareAsset>(AssetType.Hardware, assets, new AssetMatcher());
+
+		List<HardwareAsset> results = index.search("sensor");
+		Assert.assertEquals(5, results.size());
+		Assert.assertEquals("1", results.get(0).getId());
+		Assert.assertEquals("2", results.get(1).getId());
+		Assert.assertEquals("4", results.get(4).getId());
+
+		ISearchResults<HardwareAsset> page = index.search("sensor", new SearchCriteria(2, 2));
+		Assert.assertEquals(5, page.getNumResults());
+		Assert.assertEquals(2, page.getResults().size());
+		Assert.assertEquals(6, index.search("", null).getNumResults());
+		Assert.assertEquals(0, index.search("zzz").size());
+	}
+
+	@Test
+	public void testAgreesWithMatcher() throws Exception {
+		List<HardwareAsset> assets = createCatalogue(5000);
+		AssetMatcher matcher = new AssetMatcher();
+		AssetSearchIndex<HardwareAsset> index =
+				new AssetSearchIndex<HardwareAsset>(AssetType.Hardware, assets, matcher);
+		String[] queries = { "r", "ra", "ras", "rry 1", "sor", "gateway 12", "-4", "xyz" };
+		for (String query : queries) {
+			Set<String> expected = new HashSet<String>();
+			for (HardwareAsset asset : assets) {
+				if (matcher.isMatch(AssetType.Hardware, asset, query)) {
+					expected.add(asset.getId());
+				}
+			}
+			Set<String> actual = new HashSet<String>();
+			for (HardwareAsset asset : index.search(query)) {
+				actual.add(asset.getId());
+			}
+			Assert.assertEquals("Results differ for '" + query + "'.", expected, actual);
+		}
+	}
+
+	/**
+	 * Create a catalogue of hardware assets with generated names.
+	 * 
+	 * @param count
+	 * @return
+	 */
+	protected List<HardwareAsset> createCatalogue(int count) {
+		Random random = new Random(42);
+		List<HardwareAsset> assets = new ArrayList<HardwareAsset>();
+		for (int i = 0; i < count; i++) {
+			String name = WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(1000);
+			String description = "Model " + WORDS[random.nextInt(WORDS.length)] + "-" + i;
+			assets.add(createAsset("hw-" + i, name, description));
+		}
+		return assets;
+	}
+
+	/**
+	 * Create a hardware asset.
+	 * 
+	 * @param id
+	 * @param name
+	 * @param description
+	 * @return
+	 */
+	protected HardwareAsset createAsset(String id, String name, String description) {
+		HardwareAsset asset = new HardwareAsset();
+		asset.setId(id);
+		asset.setName(name);
+		asset.setDescription(description);
+		return asset;
+	}
+}
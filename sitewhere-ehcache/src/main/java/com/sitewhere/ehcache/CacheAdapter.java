@@ -7,6 +7,10 @@
  */
 package com.sitewhere.ehcache;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 import net.sf.ehcache.Cache;
@@ -127,4 +131,40 @@ public class CacheAdapter<K, V> implements ICache<K, V> {
 	public long getHitCount() throws SiteWhereException {
 		return hitCount.get();
 	}
+
+	/**
+	 * Get keys currently in the cache ordered by number of hits, most used first. Entries
+	 * are read without updating their statistics.
+	 * 
+	 * @param max
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public List<K> getHottestKeys(int max) {
+		List<Element> elements = new ArrayList<Element>();
+		for (Object key : cache.getKeys()) {
+			Element element = cache.getQuiet(key);
+			if ((element != null) && (!element.isExpired())) {
+				elements.add(element);
+			}
+		}
+		Collections.sort(elements, new Comparator<Element>() {
+
+			@Override
+			public int compare(Element a, Element b) {
+				if (a.getHitCount() == b.getHitCount()) {
+					return 0;
+				}
+				return (a.getHitCount() > b.getHitCount()) ? -1 : 1;
+			}
+		});
+		List<K> keys = new ArrayList<K>();
+		for (Element element : elements) {
+			if (keys.size() >= max) {
+				break;
+			}
+			keys.add((K) element.getObjectKey());
+		}
+		return keys;
+	}
 }
\ No newline at end of file
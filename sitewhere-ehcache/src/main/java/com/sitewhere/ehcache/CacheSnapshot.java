@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.ehcache;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sitewhere.spi.cache.CacheType;
+
+/**
+ * Reads and writes the list of keys held in each device management cache. The file has
+ * one line per key with the cache type and key separated by a tab. Keys are written
+ * hottest first so a partial load still gets the most used entries.
+ * 
+ * @author Derek
+ */
+public class CacheSnapshot {
+
+	/** Character set used for snapshot files */
+	private static final String CHARSET = "UTF-8";
+
+	/** Separates cache type from key */
+	private static final char SEPARATOR = '\t';
+
+	/** Keys by cache type */
+	private Map<CacheType, List<String>> keys = new EnumMap<CacheType, List<String>>(CacheType.class);
+
+	/**
+	 * Get keys for a cache type.
+	 * 
+	 * @param type
+	 * @return
+	 */
+	public List<String> getKeys(CacheType type) {
+		List<String> list = keys.get(type);
+		if (list == null) {
+			list = new ArrayList<String>();
+			keys.put(type, list);
+		}
+		return list;
+	}
+
+	/**
+	 * Get total number of keys in the snapshot.
+	 * 
+	 * @return
+	 */
+	public int getSize() {
+		int size = 0;
+		for (List<String> list : keys.values()) {
+			size += list.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Write the snapshot. Data is written to a temporary file which then replaces the
+	 * target, so a crash while writing does not leave a truncated snapshot.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		BufferedWriter writer =
+				new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), CHARSET));
+		try {
+			for (Map.Entry<CacheType, List<String>> entry : keys.entrySet()) {
+				for (String key : entry.getValue()) {
+					if ((key.indexOf('\n') >= 0) || (key.indexOf('\r') >= 0)) {
+						continue;
+					}
+					writer.write(entry.getKey().name());
+					writer.write(SEPARATOR);
+					writer.write(key);
+					writer.newLine();
+				}
+			}
+		} finally {
+			writer.close();
+		}
+		if ((!temp.renameTo(file)) && ((!file.delete()) || (!temp.renameTo(file)))) {
+			throw new IOException("Unable to replace cache snapshot: " + file.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Read a snapshot. Lines that can not be parsed are ignored.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static CacheSnapshot read(File file) throws IOException {
+		CacheSnapshot snapshot = new CacheSnapshot();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), CHARSET));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int separator = line.indexOf(SEPARATOR);
+				if (separator <= 0) {
+					continue;
+				}
+				try {
+					CacheType type = CacheType.valueOf(line.substring(0, separator));
+					snapshot.getKeys(type).add(line.substring(separator + 1));
+				} catch (IllegalArgumentException e) {
+					continue;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return snapshot;
+	}
+}
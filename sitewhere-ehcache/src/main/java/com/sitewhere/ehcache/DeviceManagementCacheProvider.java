@@ -7,6 +7,21 @@
  */
 package com.sitewhere.ehcache;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
 import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.config.CacheConfiguration;
@@ -14,24 +29,35 @@ import net.sf.ehcache.config.Configuration;
 
 import org.apache.log4j.Logger;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.sitewhere.SiteWhere;
+import com.sitewhere.rest.model.search.SearchCriteria;
 import com.sitewhere.server.lifecycle.LifecycleComponent;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.cache.CacheType;
 import com.sitewhere.spi.cache.ICache;
 import com.sitewhere.spi.device.IDevice;
 import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.IDeviceManagementCacheProvider;
 import com.sitewhere.spi.device.IDeviceSpecification;
+import com.sitewhere.spi.device.IPreloadableCacheProvider;
 import com.sitewhere.spi.device.ISite;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 
 /**
  * Implementation of {@link IDeviceManagementCacheProvider} that uses EHCache for caching.
  * 
+ * If a snapshot file is configured, the keys of the most used entries in each cache are
+ * written to the file periodically and on shutdown. On the next startup the entries are
+ * loaded back from the datastore before events are processed, so devices reconnecting
+ * after a restart do not all miss the cache at once.
+ * 
  * @author Derek
  */
 public class DeviceManagementCacheProvider extends LifecycleComponent implements
-		IDeviceManagementCacheProvider {
+		IDeviceManagementCacheProvider, IPreloadableCacheProvider {
 
 	/** Static logger instance */
 	private static final Logger LOGGER = Logger.getLogger(DeviceManagementCacheProvider.class);
@@ -72,6 +98,12 @@ public class DeviceManagementCacheProvider extends LifecycleComponent implements
 	/** Time to live (seconds) for assignment entries */
 	public long deviceAssignmentCacheTtl = 60;
 
+	/** Seconds between hit ratio samples */
+	private static final int HIT_RATIO_SAMPLE_INTERVAL = 10;
+
+	/** Minimum requests in a sample for its hit ratio to count */
+	private static final long HIT_RATIO_MIN_REQUESTS = 100;
+
 	/** Cache for site data */
 	private CacheAdapter<String, ISite> siteCache;
 
@@ -84,6 +116,39 @@ public class DeviceManagementCacheProvider extends LifecycleComponent implements
 	/** Cache for device assignment data */
 	private CacheAdapter<String, IDeviceAssignment> deviceAssignmentCache;
 
+	/** File that holds cache snapshot (null for no snapshots) */
+	private String snapshotFile;
+
+	/** Seconds between snapshots */
+	private int snapshotInterval = 300;
+
+	/** Number of threads used to load entries on startup */
+	private int preloadThreads = 4;
+
+	/** Hit ratio at which caches are considered warm */
+	private double steadyStateHitRatio = 0.9;
+
+	/** Runs snapshots and hit ratio sampling */
+	private ScheduledExecutorService executor;
+
+	/** Time caches were created */
+	private long startTime;
+
+	/** Request count at last hit ratio sample */
+	private long lastRequests;
+
+	/** Hit count at last hit ratio sample */
+	private long lastHits;
+
+	/** Hit ratio measured over the last sample interval */
+	private volatile double recentHitRatio;
+
+	/** Milliseconds from startup until hit ratio reached steady state (-1 if not yet) */
+	private volatile long timeToSteadyState = -1;
+
+	/** Milliseconds taken to preload caches */
+	private volatile long preloadTime;
+
 	public DeviceManagementCacheProvider() {
 		super(LifecycleComponentType.CacheProvider);
 	}
@@ -125,6 +190,217 @@ public class DeviceManagementCacheProvider extends LifecycleComponent implements
 				createCache(manager, IDeviceAssignment.class, DEVICE_ASSIGNMENT_CACHE_ID,
 						CacheType.DeviceAssignmentCache, getDeviceAssignmentCacheMaxEntries(),
 						getDeviceAssignmentCacheTtl());
+
+		startTime = System.currentTimeMillis();
+		lastRequests = 0;
+		lastHits = 0;
+		timeToSteadyState = -1;
+		registerMetrics();
+		executor = Executors.newSingleThreadScheduledExecutor(new CacheThreadFactory());
+		executor.scheduleWithFixedDelay(new HitRatioSampler(), HIT_RATIO_SAMPLE_INTERVAL,
+				HIT_RATIO_SAMPLE_INTERVAL, TimeUnit.SECONDS);
+		if (getSnapshotFile() != null) {
+			executor.scheduleWithFixedDelay(new SnapshotWriter(), getSnapshotInterval(),
+					getSnapshotInterval(), TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Register cache metrics with the server.
+	 */
+	protected void registerMetrics() {
+		MetricRegistry registry = SiteWhere.getServer().getMetricRegistry();
+		if (registry == null) {
+			return;
+		}
+		registry.remove(MetricRegistry.name(DeviceManagementCacheProvider.class, "recentHitRatio"));
+		registry.register(MetricRegistry.name(DeviceManagementCacheProvider.class, "recentHitRatio"),
+				new Gauge<Double>() {
+
+					@Override
+					public Double getValue() {
+						return recentHitRatio;
+					}
+				});
+		registry.remove(MetricRegistry.name(DeviceManagementCacheProvider.class, "timeToSteadyState"));
+		registry.register(MetricRegistry.name(DeviceManagementCacheProvider.class, "timeToSteadyState"),
+				new Gauge<Long>() {
+
+					@Override
+					public Long getValue() {
+						return timeToSteadyState;
+					}
+				});
+		registry.remove(MetricRegistry.name(DeviceManagementCacheProvider.class, "preloadTime"));
+		registry.register(MetricRegistry.name(DeviceManagementCacheProvider.class, "preloadTime"),
+				new Gauge<Long>() {
+
+					@Override
+					public Long getValue() {
+						return preloadTime;
+					}
+				});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IPreloadableCacheProvider#preload(com.sitewhere.spi.device
+	 * .IDeviceManagement)
+	 */
+	@Override
+	public void preload(final IDeviceManagement management) throws SiteWhereException {
+		if (getSnapshotFile() == null) {
+			return;
+		}
+		File file = new File(getSnapshotFile());
+		if (!file.exists()) {
+			LOGGER.info("No cache snapshot found at " + file.getAbsolutePath() + ". Caches start empty.");
+			return;
+		}
+		long start = System.currentTimeMillis();
+		CacheSnapshot snapshot;
+		try {
+			snapshot = CacheSnapshot.read(file);
+		} catch (IOException e) {
+			throw new SiteWhereException("Unable to read cache snapshot.", e);
+		}
+
+		// Sites and specifications are few, so load them with a single list call each.
+		Set<String> siteTokens = new HashSet<String>(snapshot.getKeys(CacheType.SiteCache));
+		if (!siteTokens.isEmpty()) {
+			for (ISite site : management.listSites(new SearchCriteria(1, 0)).getResults()) {
+				if (siteTokens.contains(site.getToken())) {
+					siteCache.put(site.getToken(), site);
+				}
+			}
+		}
+		Set<String> specTokens = new HashSet<String>(snapshot.getKeys(CacheType.DeviceSpecificationCache));
+		if (!specTokens.isEmpty()) {
+			for (IDeviceSpecification spec : management.listDeviceSpecifications(false,
+					new SearchCriteria(1, 0)).getResults()) {
+				if (specTokens.contains(spec.getToken())) {
+					deviceSpecificationCache.put(spec.getToken(), spec);
+				}
+			}
+		}
+
+		// Devices and assignments are loaded by key on several threads.
+		ExecutorService loaders = Executors.newFixedThreadPool(Math.max(1, getPreloadThreads()));
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		for (final String hardwareId : snapshot.getKeys(CacheType.DeviceCache)) {
+			results.add(loaders.submit(new Callable<Object>() {
+
+				@Override
+				public Object call() throws Exception {
+					IDevice device = management.getDeviceByHardwareId(hardwareId);
+					if (device != null) {
+						deviceCache.put(hardwareId, device);
+					}
+					return null;
+				}
+			}));
+		}
+		for (final String token : snapshot.getKeys(CacheType.DeviceAssignmentCache)) {
+			results.add(loaders.submit(new Callable<Object>() {
+
+				@Override
+				public Object call() throws Exception {
+					IDeviceAssignment assignment = management.getDeviceAssignmentByToken(token);
+					if (assignment != null) {
+						deviceAssignmentCache.put(token, assignment);
+					}
+					return null;
+				}
+			}));
+		}
+		int failed = 0;
+		try {
+			for (Future<?> result : results) {
+				try {
+					result.get();
+				} catch (ExecutionException e) {
+					failed++;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SiteWhereException("Interrupted while preloading caches.", e);
+		} finally {
+			loaders.shutdownNow();
+		}
+		preloadTime = System.currentTimeMillis() - start;
+		LOGGER.info("Preloaded " + (snapshot.getSize() - failed) + " cache entries from snapshot in "
+				+ preloadTime + " ms" + ((failed > 0) ? " (" + failed + " failed)." : "."));
+	}
+
+	/**
+	 * Write the keys of the most used entries in each cache to the snapshot file.
+	 * 
+	 * @throws SiteWhereException
+	 */
+	public void writeSnapshot() throws SiteWhereException {
+		if ((getSnapshotFile() == null) || (siteCache == null)) {
+			return;
+		}
+		CacheSnapshot snapshot = new CacheSnapshot();
+		snapshot.getKeys(CacheType.SiteCache).addAll(
+				siteCache.getHottestKeys((int) getSiteCacheMaxEntries()));
+		snapshot.getKeys(CacheType.DeviceSpecificationCache).addAll(
+				deviceSpecificationCache.getHottestKeys((int) getDeviceSpecificationCacheMaxEntries()));
+		snapshot.getKeys(CacheType.DeviceCache).addAll(
+				deviceCache.getHottestKeys((int) getDeviceCacheMaxEntries()));
+		snapshot.getKeys(CacheType.DeviceAssignmentCache).addAll(
+				deviceAssignmentCache.getHottestKeys((int) getDeviceAssignmentCacheMaxEntries()));
+		try {
+			snapshot.write(new File(getSnapshotFile()));
+			LOGGER.debug("Wrote " + snapshot.getSize() + " keys to cache snapshot.");
+		} catch (IOException e) {
+			throw new SiteWhereException("Unable to write cache snapshot.", e);
+		}
+	}
+
+	/**
+	 * Measure the combined hit ratio since the last sample. The first time it reaches the
+	 * steady state ratio, the time since startup is recorded.
+	 * 
+	 * @throws SiteWhereException
+	 */
+	protected void sampleHitRatio() throws SiteWhereException {
+		long requests = 0;
+		long hits = 0;
+		for (CacheAdapter<String, ?> cache : getCaches()) {
+			requests += cache.getRequestCount();
+			hits += cache.getHitCount();
+		}
+		long windowRequests = requests - lastRequests;
+		long windowHits = hits - lastHits;
+		lastRequests = requests;
+		lastHits = hits;
+		if (windowRequests < HIT_RATIO_MIN_REQUESTS) {
+			return;
+		}
+		recentHitRatio = (double) windowHits / windowRequests;
+		if ((timeToSteadyState < 0) && (recentHitRatio >= getSteadyStateHitRatio())) {
+			timeToSteadyState = System.currentTimeMillis() - startTime;
+			LOGGER.info("Device management caches reached " + Math.round(recentHitRatio * 100)
+					+ "% hit ratio " + timeToSteadyState + " ms after startup.");
+		}
+	}
+
+	/**
+	 * Get all caches.
+	 * 
+	 * @return
+	 */
+	protected List<CacheAdapter<String, ?>> getCaches() {
+		List<CacheAdapter<String, ?>> caches = new ArrayList<CacheAdapter<String, ?>>();
+		caches.add(siteCache);
+		caches.add(deviceSpecificationCache);
+		caches.add(deviceCache);
+		caches.add(deviceAssignmentCache);
+		return caches;
 	}
 
 	/*
@@ -165,6 +441,55 @@ public class DeviceManagementCacheProvider extends LifecycleComponent implements
 	 */
 	@Override
 	public void stop() throws SiteWhereException {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		writeSnapshot();
+	}
+
+	/** Used for naming cache maintenance thread */
+	private class CacheThreadFactory implements ThreadFactory {
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "SiteWhere Cache Maintenance");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * Writes a snapshot, logging errors so later snapshots are still scheduled.
+	 * 
+	 * @author Derek
+	 */
+	private class SnapshotWriter implements Runnable {
+
+		@Override
+		public void run() {
+			try {
+				writeSnapshot();
+			} catch (Throwable e) {
+				LOGGER.warn("Unable to write cache snapshot.", e);
+			}
+		}
+	}
+
+	/**
+	 * Samples the hit ratio, logging errors so later samples are still scheduled.
+	 * 
+	 * @author Derek
+	 */
+	private class HitRatioSampler implements Runnable {
+
+		@Override
+		public void run() {
+			try {
+				sampleHitRatio();
+			} catch (Throwable e) {
+				LOGGER.warn("Unable to sample cache hit ratio.", e);
+			}
+		}
 	}
 
 	/*
@@ -273,4 +598,36 @@ public class DeviceManagementCacheProvider extends LifecycleComponent implements
 	public void setDeviceAssignmentCacheTtl(long deviceAssignmentCacheTtl) {
 		this.deviceAssignmentCacheTtl = deviceAssignmentCacheTtl;
 	}
+
+	public String getSnapshotFile() {
+		return snapshotFile;
+	}
+
+	public void setSnapshotFile(String snapshotFile) {
+		this.snapshotFile = snapshotFile;
+	}
+
+	public int getSnapshotInterval() {
+		return snapshotInterval;
+	}
+
+	public void setSnapshotInterval(int snapshotInterval) {
+		this.snapshotInterval = snapshotInterval;
+	}
+
+	public int getPreloadThreads() {
+		return preloadThreads;
+	}
+
+	public void setPreloadThreads(int preloadThreads) {
+		this.preloadThreads = preloadThreads;
+	}
+
+	public double getSteadyStateHitRatio() {
+		return steadyStateHitRatio;
+	}
+
+	public void setSteadyStateHitRatio(double steadyStateHitRatio) {
+		this.steadyStateHitRatio = steadyStateHitRatio;
+	}
 }
\ No newline at end of file
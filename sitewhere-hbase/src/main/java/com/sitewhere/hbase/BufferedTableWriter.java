@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.log4j.Logger;
+
+import com.sitewhere.hbase.common.HBaseUtils;
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Thread-safe, client-side write buffer for a single HBase table. Puts are accumulated in
+ * memory and sent to HBase as a single batch when the buffer reaches its size or count
+ * limit, when {@link #flush()} is called explicitly, or when the owning
+ * {@link BufferedTableWriters} timer fires. HBase 0.94 has no BufferedMutator, so batches
+ * are written through a pooled {@link HTableInterface} with auto-flush disabled.
+ * 
+ * If a batch can not be written, its puts are returned to the head of the buffer and
+ * retried on the next timed or explicit flush. While writes are failing the buffer may
+ * grow to {@link #MAX_RETAINED_BUFFERS} times its normal size, after which new puts are
+ * rejected with an exception so callers learn their data was not accepted.
+ * 
+ * @author Derek
+ */
+public class BufferedTableWriter {
+
+	/** Static logger instance */
+	private static final Logger LOGGER = Logger.getLogger(BufferedTableWriter.class);
+
+	/** Default maximum number of buffered puts before a flush */
+	public static final int DEFAULT_MAX_BUFFERED_PUTS = 1000;
+
+	/** Default maximum heap size of buffered puts before a flush */
+	public static final long DEFAULT_MAX_BUFFERED_BYTES = 2 * 1024 * 1024;
+
+	/** Multiple of the maximum buffer size that may be retained while writes fail */
+	public static final int MAX_RETAINED_BUFFERS = 4;
+
+	/** Client used to access pooled table interfaces */
+	private ISiteWhereHBaseClient client;
+
+	/** Name of table written by this writer */
+	private byte[] tableName;
+
+	/** Maximum number of buffered puts */
+	private int maxBufferedPuts = DEFAULT_MAX_BUFFERED_PUTS;
+
+	/** Maximum heap size of buffered puts */
+	private long maxBufferedBytes = DEFAULT_MAX_BUFFERED_BYTES;
+
+	/** Puts waiting to be written */
+	private List<Put> buffer = new ArrayList<Put>();
+
+	/** Estimated heap size of buffered puts */
+	private long bufferedBytes = 0;
+
+	/** Indicates the last write failed and buffered puts are waiting to be retried */
+	private boolean retrying = false;
+
+	/** Number of puts written to HBase */
+	private AtomicLong writtenCount = new AtomicLong();
+
+	/** Number of batches written to HBase */
+	private AtomicLong flushCount = new AtomicLong();
+
+	/** Number of puts in batches that failed to write */
+	private AtomicLong failedCount = new AtomicLong();
+
+	/** Number of puts rejected because the buffer was full while writes were failing */
+	private AtomicLong rejectedCount = new AtomicLong();
+
+	public BufferedTableWriter(ISiteWhereHBaseClient client, byte[] tableName) {
+		this.client = client;
+		this.tableName = tableName;
+	}
+
+	/**
+	 * Add a put to the buffer, flushing if the buffer limits have been reached.
+	 * 
+	 * @param put
+	 * @throws SiteWhereException
+	 */
+	public void put(Put put) throws SiteWhereException {
+		put(put, false);
+	}
+
+	/**
+	 * Add a put to the buffer. If <code>flush</code> is true, the buffer (including the
+	 * given put) is written to HBase before the method returns, so callers that need
+	 * durability can request it per call. An exception is thrown if the put could not be
+	 * accepted or, when flushing, could not be written.
+	 * 
+	 * @param put
+	 * @param flush
+	 * @throws SiteWhereException
+	 */
+	public void put(Put put, boolean flush) throws SiteWhereException {
+		List<Put> batch = null;
+		synchronized (this) {
+			assureCapacity();
+			buffer.add(put);
+			bufferedBytes += put.heapSize();
+			if (flush || isFull()) {
+				batch = drain();
+			}
+		}
+		if (batch != null) {
+			write(batch, flush);
+		}
+	}
+
+	/**
+	 * Add a list of puts to the buffer, flushing if the buffer limits have been reached.
+	 * 
+	 * @param puts
+	 * @throws SiteWhereException
+	 */
+	public void put(List<Put> puts) throws SiteWhereException {
+		List<Put> batch = null;
+		synchronized (this) {
+			assureCapacity();
+			for (Put put : puts) {
+				buffer.add(put);
+				bufferedBytes += put.heapSize();
+			}
+			if (isFull()) {
+				batch = drain();
+			}
+		}
+		if (batch != null) {
+			write(batch, false);
+		}
+	}
+
+	/**
+	 * Write all buffered puts to HBase.
+	 * 
+	 * @throws SiteWhereException
+	 */
+	public void flush() throws SiteWhereException {
+		List<Put> batch;
+		synchronized (this) {
+			batch = drain();
+		}
+		if (batch != null) {
+			write(batch, true);
+		}
+	}
+
+	/**
+	 * Get the number of puts currently buffered.
+	 * 
+	 * @return
+	 */
+	public synchronized int getBufferedCount() {
+		return buffer.size();
+	}
+
+	/**
+	 * Indicates whether the buffer limits have been reached. While a failed batch is
+	 * waiting to be retried, only timed and explicit flushes write to HBase so that a
+	 * failing cluster is not retried on every put. Must be called while holding the lock.
+	 * 
+	 * @return
+	 */
+	protected boolean isFull() {
+		return (!retrying) && ((buffer.size() >= maxBufferedPuts) || (bufferedBytes >= maxBufferedBytes));
+	}
+
+	/**
+	 * Reject new puts if writes are failing and the retained buffer has reached its limit.
+	 * Must be called while holding the lock.
+	 * 
+	 * @throws SiteWhereException
+	 */
+	protected void assureCapacity() throws SiteWhereException {
+		if (retrying && (bufferedBytes >= maxBufferedBytes * MAX_RETAINED_BUFFERS)) {
+			rejectedCount.incrementAndGet();
+			throw new SiteWhereException("Write buffer for " + Bytes.toString(tableName)
+					+ " is full while HBase writes are failing.");
+		}
+	}
+
+	/**
+	 * Swap out the current buffer. Must be called while holding the lock.
+	 * 
+	 * @return the buffered puts or null if buffer is empty
+	 */
+	protected List<Put> drain() {
+		if (buffer.isEmpty()) {
+			return null;
+		}
+		List<Put> batch = buffer;
+		buffer = new ArrayList<Put>();
+		bufferedBytes = 0;
+		return batch;
+	}
+
+	/**
+	 * Write a batch of puts using a pooled table interface. If the write fails, the puts
+	 * are returned to the head of the buffer so they are retried before newer puts.
+	 * 
+	 * @param batch
+	 * @param explicit
+	 *            true if the caller requested the flush and should be told it failed
+	 * @throws SiteWhereException
+	 */
+	protected void write(List<Put> batch, boolean explicit) throws SiteWhereException {
+		int size = batch.size();
+		HTableInterface table = null;
+		try {
+			table = client.getTableInterface(tableName);
+			table.setAutoFlush(false);
+			table.put(batch);
+			table.flushCommits();
+			writtenCount.addAndGet(size);
+			flushCount.incrementAndGet();
+			synchronized (this) {
+				retrying = false;
+			}
+		} catch (IOException e) {
+			failedCount.addAndGet(size);
+			requeue(batch);
+			LOGGER.error("Unable to write " + size + " buffered puts to " + Bytes.toString(tableName)
+					+ ". Puts will be retried on the next flush.", e);
+			if (explicit) {
+				throw new SiteWhereException("Unable to write buffered puts.", e);
+			}
+		} finally {
+			if (table != null) {
+				table.setAutoFlush(true);
+			}
+			HBaseUtils.closeCleanly(table);
+		}
+	}
+
+	/**
+	 * Return puts from a failed batch to the head of the buffer.
+	 * 
+	 * @param batch
+	 */
+	protected synchronized void requeue(List<Put> batch) {
+		for (Put put : batch) {
+			bufferedBytes += put.heapSize();
+		}
+		batch.addAll(buffer);
+		buffer = batch;
+		retrying = true;
+	}
+
+	public byte[] getTableName() {
+		return tableName;
+	}
+
+	public int getMaxBufferedPuts() {
+		return maxBufferedPuts;
+	}
+
+	public void setMaxBufferedPuts(int maxBufferedPuts) {
+		this.maxBufferedPuts = maxBufferedPuts;
+	}
+
+	public long getMaxBufferedBytes() {
+		return maxBufferedBytes;
+	}
+
+	public void setMaxBufferedBytes(long maxBufferedBytes) {
+		this.maxBufferedBytes = maxBufferedBytes;
+	}
+
+	public long getWrittenCount() {
+		return writtenCount.get();
+	}
+
+	public long getFlushCount() {
+		return flushCount.get();
+	}
+
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+}
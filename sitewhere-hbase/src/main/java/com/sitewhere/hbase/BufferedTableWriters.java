@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.log4j.Logger;
+
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Manages the shared {@link BufferedTableWriter} instances for an HBase client and
+ * periodically flushes them so buffered data is never held longer than the configured
+ * interval.
+ * 
+ * @author Derek
+ */
+public class BufferedTableWriters {
+
+	/** Static logger instance */
+	private static final Logger LOGGER = Logger.getLogger(BufferedTableWriters.class);
+
+	/** Default interval in milliseconds between timed flushes */
+	public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+	/** Client used by writers */
+	private ISiteWhereHBaseClient client;
+
+	/** Writers indexed by table name */
+	private ConcurrentMap<String, BufferedTableWriter> writers =
+			new ConcurrentHashMap<String, BufferedTableWriter>();
+
+	/** Maximum number of buffered puts per table */
+	private int maxBufferedPuts = BufferedTableWriter.DEFAULT_MAX_BUFFERED_PUTS;
+
+	/** Maximum heap size of buffered puts per table */
+	private long maxBufferedBytes = BufferedTableWriter.DEFAULT_MAX_BUFFERED_BYTES;
+
+	/** Interval between timed flushes */
+	private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+	/** Executor for timed flushes */
+	private ScheduledExecutorService flusher;
+
+	public BufferedTableWriters(ISiteWhereHBaseClient client) {
+		this.client = client;
+	}
+
+	/**
+	 * Start the timed flush thread.
+	 */
+	public synchronized void start() {
+		if ((flusher != null) || (flushInterval <= 0)) {
+			return;
+		}
+		flusher = Executors.newSingleThreadScheduledExecutor(new FlusherThreadFactory());
+		flusher.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				flushQuietly();
+			}
+		}, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop the timed flush thread and write any remaining buffered data.
+	 */
+	public synchronized void stop() {
+		if (flusher != null) {
+			flusher.shutdown();
+			try {
+				flusher.awaitTermination(flushInterval * 2, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			flusher = null;
+		}
+		flushQuietly();
+		for (BufferedTableWriter writer : writers.values()) {
+			int remaining = writer.getBufferedCount();
+			if (remaining > 0) {
+				LOGGER.error("Discarding " + remaining + " puts for " + Bytes.toString(writer.getTableName())
+						+ " that could not be written before shutdown.");
+			}
+		}
+	}
+
+	/**
+	 * Get the shared writer for a table, creating it if necessary.
+	 * 
+	 * @param tableName
+	 * @return
+	 */
+	public BufferedTableWriter getWriter(byte[] tableName) {
+		String key = Bytes.toString(tableName);
+		BufferedTableWriter writer = writers.get(key);
+		if (writer == null) {
+			BufferedTableWriter created = new BufferedTableWriter(client, tableName);
+			created.setMaxBufferedPuts(getMaxBufferedPuts());
+			created.setMaxBufferedBytes(getMaxBufferedBytes());
+			writer = writers.putIfAbsent(key, created);
+			if (writer == null) {
+				writer = created;
+			}
+		}
+		return writer;
+	}
+
+	/**
+	 * Flush all writers.
+	 * 
+	 * @throws SiteWhereException
+	 */
+	public void flush() throws SiteWhereException {
+		SiteWhereException first = null;
+		for (BufferedTableWriter writer : writers.values()) {
+			try {
+				writer.flush();
+			} catch (SiteWhereException e) {
+				if (first == null) {
+					first = e;
+				}
+			}
+		}
+		if (first != null) {
+			throw first;
+		}
+	}
+
+	/**
+	 * Flush all writers, logging rather than propagating errors.
+	 */
+	protected void flushQuietly() {
+		try {
+			flush();
+		} catch (SiteWhereException e) {
+			LOGGER.error("Timed flush of buffered HBase writes failed.", e);
+		} catch (Throwable t) {
+			LOGGER.error("Unexpected error in timed flush of buffered HBase writes.", t);
+		}
+	}
+
+	public int getMaxBufferedPuts() {
+		return maxBufferedPuts;
+	}
+
+	public void setMaxBufferedPuts(int maxBufferedPuts) {
+		this.maxBufferedPuts = maxBufferedPuts;
+	}
+
+	public long getMaxBufferedBytes() {
+		return maxBufferedBytes;
+	}
+
+	public void setMaxBufferedBytes(long maxBufferedBytes) {
+		this.maxBufferedBytes = maxBufferedBytes;
+	}
+
+	public long getFlushInterval() {
+		return flushInterval;
+	}
+
+	public void setFlushInterval(long flushInterval) {
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * Creates a daemon thread for timed flushes.
+	 * 
+	 * @author Derek
+	 */
+	private class FlusherThreadFactory implements ThreadFactory {
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "SiteWhere HBase Write Flusher");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
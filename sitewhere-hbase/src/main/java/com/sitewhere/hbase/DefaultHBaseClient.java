@@ -15,7 +15,10 @@ import org.apache.hadoop.hbase.client.HBaseAdmin;
 import org.apache.hadoop.hbase.client.HConnection;
 import org.apache.hadoop.hbase.client.HConnectionManager;
 import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.HTableInterfaceFactory;
+import org.apache.hadoop.hbase.client.HTablePool;
 import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 
 import com.sitewhere.spi.SiteWhereException;
@@ -25,11 +28,15 @@ import com.sitewhere.spi.SiteWhereException;
  * 
  * @author Derek
  */
-public class DefaultHBaseClient implements InitializingBean, ISiteWhereHBaseClient {
+@SuppressWarnings("deprecation")
+public class DefaultHBaseClient implements InitializingBean, DisposableBean, ISiteWhereHBaseClient {
 
 	/** Static logger instance */
 	private static final Logger LOGGER = Logger.getLogger(DefaultHBaseClient.class);
 
+	/** Default maximum number of idle table interfaces kept per table */
+	public static final int DEFAULT_TABLE_POOL_SIZE = 25;
+
 	/** Zookeeper quorum */
 	private String quorum;
 
@@ -42,6 +49,15 @@ public class DefaultHBaseClient implements InitializingBean, ISiteWhereHBaseClie
 	/** Standard admin interface */
 	private HBaseAdmin admin;
 
+	/** Pool of table interfaces backed by the shared connection */
+	private HTablePool pool;
+
+	/** Maximum number of idle table interfaces kept per table */
+	private int tablePoolSize = DEFAULT_TABLE_POOL_SIZE;
+
+	/** Shared buffered writers */
+	private BufferedTableWriters writers = new BufferedTableWriters(this);
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -53,21 +69,46 @@ public class DefaultHBaseClient implements InitializingBean, ISiteWhereHBaseClie
 			configuration.set("hbase.zookeeper.quorum", quorum);
 			this.admin = new HBaseAdmin(configuration);
 			this.connection = HConnectionManager.createConnection(configuration);
+			this.pool = new HTablePool(configuration, getTablePoolSize(), new ConnectionTableFactory());
+			writers.start();
 		} catch (Exception e) {
 			throw new SiteWhereException(e);
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.springframework.beans.factory.DisposableBean#destroy()
+	 */
+	@Override
+	public void destroy() throws Exception {
+		stop();
+	}
+
 	/**
-	 * Stop all connectivity. TODO: Where does this eventually get called?
+	 * Flush buffered writes and stop all connectivity. Called when the Spring context is
+	 * closed.
 	 */
 	public void stop() {
+		writers.stop();
+		if (pool != null) {
+			try {
+				pool.close();
+			} catch (IOException e) {
+				LOGGER.error("HTablePool did not close cleanly.", e);
+			}
+			pool = null;
+		}
+		// Close rather than shut down the admin, since shutdown stops the whole cluster.
 		if (getAdmin() != null) {
 			try {
-				getAdmin().shutdown();
+				getAdmin().close();
 			} catch (IOException e) {
-				LOGGER.error("HBaseAdmin did not shut down cleanly.", e);
+				LOGGER.error("HBaseAdmin did not close cleanly.", e);
 			}
+		}
+		if (getConnection() != null) {
 			try {
 				getConnection().close();
 			} catch (IOException e) {
@@ -104,12 +145,32 @@ public class DefaultHBaseClient implements InitializingBean, ISiteWhereHBaseClie
 	@Override
 	public HTableInterface getTableInterface(byte[] tableName) throws SiteWhereException {
 		try {
-			return getConnection().getTable(tableName);
-		} catch (IOException e) {
-			throw new SiteWhereException("IOException getting HBase table interface.", e);
+			return pool.getTable(tableName);
+		} catch (RuntimeException e) {
+			throw new SiteWhereException("Error getting HBase table interface.", e);
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.hbase.ISiteWhereHBaseClient#getBufferedWriter(byte[])
+	 */
+	@Override
+	public BufferedTableWriter getBufferedWriter(byte[] tableName) throws SiteWhereException {
+		return writers.getWriter(tableName);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.hbase.ISiteWhereHBaseClient#flushBufferedWriters()
+	 */
+	@Override
+	public void flushBufferedWriters() throws SiteWhereException {
+		writers.flush();
+	}
+
 	public HConnection getConnection() {
 		return connection;
 	}
@@ -121,4 +182,57 @@ public class DefaultHBaseClient implements InitializingBean, ISiteWhereHBaseClie
 	public void setQuorum(String quorum) {
 		this.quorum = quorum;
 	}
+
+	public int getTablePoolSize() {
+		return tablePoolSize;
+	}
+
+	public void setTablePoolSize(int tablePoolSize) {
+		this.tablePoolSize = tablePoolSize;
+	}
+
+	public int getMaxBufferedPuts() {
+		return writers.getMaxBufferedPuts();
+	}
+
+	public void setMaxBufferedPuts(int maxBufferedPuts) {
+		writers.setMaxBufferedPuts(maxBufferedPuts);
+	}
+
+	public long getMaxBufferedBytes() {
+		return writers.getMaxBufferedBytes();
+	}
+
+	public void setMaxBufferedBytes(long maxBufferedBytes) {
+		writers.setMaxBufferedBytes(maxBufferedBytes);
+	}
+
+	public long getFlushInterval() {
+		return writers.getFlushInterval();
+	}
+
+	public void setFlushInterval(long flushInterval) {
+		writers.setFlushInterval(flushInterval);
+	}
+
+	/**
+	 * Creates pooled table interfaces from the shared connection rather than opening a
+	 * new connection per table.
+	 * 
+	 * @author Derek
+	 */
+	private class ConnectionTableFactory implements HTableInterfaceFactory {
+
+		public HTableInterface createHTableInterface(Configuration config, byte[] tableName) {
+			try {
+				return getConnection().getTable(tableName);
+			} catch (IOException e) {
+				throw new RuntimeException("Unable to create HBase table interface.", e);
+			}
+		}
+
+		public void releaseHTableInterface(HTableInterface table) throws IOException {
+			table.close();
+		}
+	}
 }
\ No newline at end of file
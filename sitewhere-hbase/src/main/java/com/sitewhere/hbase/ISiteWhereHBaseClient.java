@@ -42,4 +42,21 @@ public interface ISiteWhereHBaseClient {
 	 * @throws SiteWhereException
 	 */
 	public HTableInterface getTableInterface(byte[] tableName) throws SiteWhereException;
+
+	/**
+	 * Get the shared, thread-safe buffered writer for the named table. Writes are batched
+	 * and sent to HBase based on size and time limits.
+	 * 
+	 * @param tableName
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public BufferedTableWriter getBufferedWriter(byte[] tableName) throws SiteWhereException;
+
+	/**
+	 * Write all buffered data for all tables to HBase.
+	 * 
+	 * @throws SiteWhereException
+	 */
+	public void flushBufferedWriters() throws SiteWhereException;
 }
\ No newline at end of file
@@ -75,4 +75,8 @@ public class Pager<T> {
 	public long getTotal() {
 		return total;
 	}
+
+	public void setTotal(long total) {
+		this.total = total;
+	}
 }
\ No newline at end of file
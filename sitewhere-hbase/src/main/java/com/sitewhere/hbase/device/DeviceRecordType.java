@@ -24,7 +24,16 @@ public enum DeviceRecordType {
 	DeviceGroup((byte) 0x02),
 
 	/** Batch operation record */
-	BatchOperation((byte) 0x03);
+	BatchOperation((byte) 0x03),
+
+	/** Index of devices by specification token */
+	SpecificationIndex((byte) 0x04),
+
+	/** Index of devices by site token */
+	SiteIndex((byte) 0x05),
+
+	/** Tracks version of device index layout */
+	DeviceIndexState((byte) 0x06);
 
 	/** Type indicator */
 	private byte type;
@@ -49,6 +49,7 @@ import com.sitewhere.spi.error.ErrorCode;
 import com.sitewhere.spi.error.ErrorLevel;
 import com.sitewhere.spi.search.ISearchCriteria;
 import com.sitewhere.spi.search.device.DeviceSearchType;
+import com.sitewhere.spi.search.device.IDeviceBySiteParameters;
 import com.sitewhere.spi.search.device.IDeviceBySpecificationParameters;
 import com.sitewhere.spi.search.device.IDeviceSearchCriteria;
 import com.sitewhere.spi.server.debug.TracerCategory;
@@ -103,7 +104,9 @@ public class HBaseDevice {
 			IdManager.getInstance().getDeviceKeys().create(request.getHardwareId(), inverse);
 
 			Device device = SiteWherePersistence.deviceCreateLogic(request);
-			return putDeviceJson(hbase, device, cache);
+			putDeviceJson(hbase, device, cache);
+			HBaseDeviceIndex.addDevice(hbase, device);
+			return device;
 		} finally {
 			Tracer.pop(LOGGER);
 		}
@@ -127,8 +130,14 @@ public class HBaseDevice {
 			if (updated == null) {
 				throw new SiteWhereSystemException(ErrorCode.InvalidHardwareId, ErrorLevel.ERROR);
 			}
+			Device before = new Device();
+			before.setHardwareId(updated.getHardwareId());
+			before.setSpecificationToken(updated.getSpecificationToken());
+			before.setSiteToken(updated.getSiteToken());
 			SiteWherePersistence.deviceUpdateLogic(request, updated);
-			return putDeviceJson(hbase, updated, cache);
+			putDeviceJson(hbase, updated, cache);
+			HBaseDeviceIndex.updateDevice(hbase, before, updated);
+			return updated;
 		} finally {
 			Tracer.pop(LOGGER);
 		}
@@ -140,14 +149,15 @@ public class HBaseDevice {
 	 * @param hbase
 	 * @param includeDeleted
 	 * @param criteria
+	 * @param cache
 	 * @return
 	 * @throws SiteWhereException
 	 */
 	public static SearchResults<IDevice> listDevices(ISiteWhereHBaseClient hbase, boolean includeDeleted,
-			IDeviceSearchCriteria criteria) throws SiteWhereException {
+			IDeviceSearchCriteria criteria, IDeviceManagementCacheProvider cache) throws SiteWhereException {
 		Tracer.push(TracerCategory.DeviceManagementApiCall, "listDevices (HBase)", LOGGER);
 		try {
-			Pager<IDevice> matches = getFilteredDevices(hbase, includeDeleted, criteria);
+			Pager<IDevice> matches = getFilteredDevices(hbase, includeDeleted, criteria, cache);
 			return new SearchResults<IDevice>(matches.getResults(), matches.getTotal());
 		} finally {
 			Tracer.pop(LOGGER);
@@ -155,32 +165,42 @@ public class HBaseDevice {
 	}
 
 	/**
-	 * Get a list of devices filtered with certain criteria.
+	 * Get a list of devices filtered with certain criteria. Searches by specification or
+	 * site use a prefix scan of the matching index rows and only load JSON for devices on
+	 * the requested page.
 	 * 
 	 * @param hbase
 	 * @param includeDeleted
 	 * @param criteria
+	 * @param cache
 	 * @return
 	 * @throws SiteWhereException
 	 */
 	protected static Pager<IDevice> getFilteredDevices(ISiteWhereHBaseClient hbase, boolean includeDeleted,
-			IDeviceSearchCriteria criteria) throws SiteWhereException {
-		HTableInterface devices = null;
-		ResultScanner scanner = null;
-
-		String specificationToken = null;
+			IDeviceSearchCriteria criteria, IDeviceManagementCacheProvider cache) throws SiteWhereException {
 		if (criteria.getSearchType() == DeviceSearchType.UsesSpecification) {
 			IDeviceBySpecificationParameters params = criteria.getDeviceBySpecificationParameters();
 			if (params == null) {
 				throw new SiteWhereException(
 						"Querying devices by specification token, but parameters were not passed.");
 			}
-			specificationToken = params.getSpecificationToken();
+			String specificationToken = params.getSpecificationToken();
 			if (specificationToken == null) {
 				throw new SiteWhereException("No specification token passed for device query.");
 			}
+			return getIndexedDevices(hbase, DeviceRecordType.SpecificationIndex, specificationToken,
+					includeDeleted, criteria, cache);
+		} else if (criteria.getSearchType() == DeviceSearchType.UsesSite) {
+			IDeviceBySiteParameters params = criteria.getDeviceBySiteParameters();
+			if ((params == null) || (params.getSiteToken() == null)) {
+				throw new SiteWhereException("No site token passed for device query.");
+			}
+			return getIndexedDevices(hbase, DeviceRecordType.SiteIndex, params.getSiteToken(),
+					includeDeleted, criteria, cache);
 		}
 
+		HTableInterface devices = null;
+		ResultScanner scanner = null;
 		try {
 			devices = hbase.getTableInterface(ISiteWhereHBase.DEVICES_TABLE_NAME);
 			Scan scan = new Scan();
@@ -205,18 +225,7 @@ public class HBaseDevice {
 					}
 				}
 				if ((shouldAdd) && (json != null)) {
-					Device device = MarshalUtils.unmarshalJson(json, Device.class);
-					switch (criteria.getSearchType()) {
-					case All: {
-						break;
-					}
-					case UsesSpecification: {
-						if (!specificationToken.equals(device.getSpecificationToken())) {
-							continue;
-						}
-					}
-					}
-					pager.process(device);
+					pager.process(MarshalUtils.unmarshalJson(json, Device.class));
 				}
 			}
 			return pager;
@@ -230,6 +239,36 @@ public class HBaseDevice {
 		}
 	}
 
+	/**
+	 * Use an index to find hardware ids for matching devices, then load the devices for
+	 * the requested page.
+	 * 
+	 * @param hbase
+	 * @param index
+	 * @param token
+	 * @param includeDeleted
+	 * @param criteria
+	 * @param cache
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected static Pager<IDevice> getIndexedDevices(ISiteWhereHBaseClient hbase, DeviceRecordType index,
+			String token, boolean includeDeleted, IDeviceSearchCriteria criteria,
+			IDeviceManagementCacheProvider cache) throws SiteWhereException {
+		Pager<String> ids = HBaseDeviceIndex.getHardwareIds(hbase, index, token, includeDeleted, criteria);
+		List<IDevice> page = new ArrayList<IDevice>();
+		for (String hardwareId : ids.getResults()) {
+			Device device = getDeviceByHardwareId(hbase, hardwareId, cache);
+			if (device != null) {
+				page.add(device);
+			}
+		}
+		Pager<IDevice> pager = new Pager<IDevice>(criteria);
+		pager.setResults(page);
+		pager.setTotal(ids.getTotal());
+		return pager;
+	}
+
 	/**
 	 * Save the JSON representation of a device.
 	 * 
@@ -346,6 +385,7 @@ public class HBaseDevice {
 
 			Device existing = getDeviceByHardwareId(hbase, hardwareId, cache);
 			existing.setDeleted(true);
+			HBaseDeviceIndex.deleteDevice(hbase, existing, force);
 			byte[] primary = getDeviceRowKey(deviceId);
 			if (force) {
 				IdManager.getInstance().getDeviceKeys().delete(hardwareId);
@@ -479,6 +519,7 @@ public class HBaseDevice {
 				put.add(ISiteWhereHBase.FAMILY_ID, CURRENT_ASSIGNMENT, assignmentToken.getBytes());
 				put.add(ISiteWhereHBase.FAMILY_ID, assnHistory, assignmentToken.getBytes());
 				devices.put(put);
+				HBaseDeviceIndex.setAssignment(hbase, updated, assignmentToken);
 
 				// Make sure that cache is using updated device information.
 				if (cache != null) {
@@ -526,6 +567,7 @@ public class HBaseDevice {
 				Delete delete = new Delete(primary);
 				delete.deleteColumn(ISiteWhereHBase.FAMILY_ID, CURRENT_ASSIGNMENT);
 				devices.delete(delete);
+				HBaseDeviceIndex.setAssignment(hbase, updated, null);
 
 				// Make sure that cache is using updated device information.
 				if (cache != null) {
@@ -10,6 +10,7 @@ package com.sitewhere.hbase.device;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
@@ -19,12 +20,14 @@ import java.util.Map;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.log4j.Logger;
 
@@ -50,11 +53,14 @@ import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.SiteWhereSystemException;
 import com.sitewhere.spi.device.IDeviceAssignment;
 import com.sitewhere.spi.device.IDeviceManagementCacheProvider;
+import com.sitewhere.spi.device.IPurgeableDeviceManagement;
 import com.sitewhere.spi.device.command.IDeviceCommand;
+import com.sitewhere.spi.device.event.DeviceEventType;
 import com.sitewhere.spi.device.event.IDeviceAlert;
 import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
 import com.sitewhere.spi.device.event.IDeviceCommandResponse;
 import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventPurgeHandler;
 import com.sitewhere.spi.device.event.IDeviceLocation;
 import com.sitewhere.spi.device.event.IDeviceMeasurements;
 import com.sitewhere.spi.device.event.IDeviceStateChange;
@@ -82,6 +88,16 @@ public class HBaseDeviceEvent {
 	/** Size of a row in milliseconds */
 	private static final long ROW_IN_MS = (1 << 24);
 
+	/** Length of an event row key */
+	private static final int EVENT_ROW_KEY_LENGTH =
+			HBaseSite.SITE_IDENTIFIER_LENGTH + 1 + HBaseDeviceAssignment.ASSIGNMENT_IDENTIFIER_LENGTH + 5;
+
+	/** Qualifier time bytes that decode to the earliest time in a row */
+	private static final byte[] ROW_START_QUALIFIER = { (byte) 0xff, (byte) 0xff, (byte) 0xff };
+
+	/** Number of rows fetched per scanner call when purging */
+	private static final int PURGE_SCAN_CACHING = 500;
+
 	/**
 	 * List measurements associated with an assignment based on the given criteria.
 	 * 
@@ -125,17 +141,9 @@ public class HBaseDeviceEvent {
 		measurements.setId(id);
 		byte[] json = MarshalUtils.marshalJson(measurements);
 
-		HTableInterface events = null;
-		try {
-			events = hbase.getTableInterface(ISiteWhereHBase.EVENTS_TABLE_NAME);
-			Put put = new Put(rowkey);
-			put.add(ISiteWhereHBase.FAMILY_ID, qualifier, json);
-			events.put(put);
-		} catch (IOException e) {
-			throw new SiteWhereException("Unable to create measurements.", e);
-		} finally {
-			HBaseUtils.closeCleanly(events);
-		}
+		Put put = new Put(rowkey);
+		put.add(ISiteWhereHBase.FAMILY_ID, qualifier, json);
+		hbase.getBufferedWriter(ISiteWhereHBase.EVENTS_TABLE_NAME).put(put);
 
 		// Update state if requested.
 		if (request.isUpdateState()) {
@@ -203,17 +211,9 @@ public class HBaseDeviceEvent {
 		location.setId(id);
 		byte[] json = MarshalUtils.marshalJson(location);
 
-		HTableInterface events = null;
-		try {
-			events = hbase.getTableInterface(ISiteWhereHBase.EVENTS_TABLE_NAME);
-			Put put = new Put(rowkey);
-			put.add(ISiteWhereHBase.FAMILY_ID, qualifier, json);
-			events.put(put);
-		} catch (IOException e) {
-			throw new SiteWhereException("Unable to create location.", e);
-		} finally {
-			HBaseUtils.closeCleanly(events);
-		}
+		Put put = new Put(rowkey);
+		put.add(ISiteWhereHBase.FAMILY_ID, qualifier, json);
+		hbase.getBufferedWriter(ISiteWhereHBase.EVENTS_TABLE_NAME).put(put);
 
 		// Update state if requested.
 		if (request.isUpdateState()) {
@@ -280,17 +280,9 @@ public class HBaseDeviceEvent {
 		alert.setId(id);
 		byte[] json = MarshalUtils.marshalJson(alert);
 
-		HTableInterface events = null;
-		try {
-			events = hbase.getTableInterface(ISiteWhereHBase.EVENTS_TABLE_NAME);
-			Put put = new Put(rowkey);
-			put.add(ISiteWhereHBase.FAMILY_ID, qualifier, json);
-			events.put(put);
-		} catch (IOException e) {
-			throw new SiteWhereException("Unable to create alert.", e);
-		} finally {
-			HBaseUtils.closeCleanly(events);
-		}
+		Put put = new Put(rowkey);
+		put.add(ISiteWhereHBase.FAMILY_ID, qualifier, json);
+		hbase.getBufferedWriter(ISiteWhereHBase.EVENTS_TABLE_NAME).put(put);
 
 		// Update state if requested.
 		if (request.isUpdateState()) {
@@ -357,17 +349,10 @@ public class HBaseDeviceEvent {
 		ci.setId(id);
 		byte[] json = MarshalUtils.marshalJson(ci);
 
-		HTableInterface events = null;
-		try {
-			events = hbase.getTableInterface(ISiteWhereHBase.EVENTS_TABLE_NAME);
-			Put put = new Put(rowkey);
-			put.add(ISiteWhereHBase.FAMILY_ID, qualifier, json);
-			events.put(put);
-		} catch (IOException e) {
-			throw new SiteWhereException("Unable to create command invocation.", e);
-		} finally {
-			HBaseUtils.closeCleanly(events);
-		}
+		// Flush immediately since invocations are delivered and read back right away.
+		Put put = new Put(rowkey);
+		put.add(ISiteWhereHBase.FAMILY_ID, qualifier, json);
+		hbase.getBufferedWriter(ISiteWhereHBase.EVENTS_TABLE_NAME).put(put, true);
 
 		return ci;
 	}
@@ -440,17 +425,9 @@ public class HBaseDeviceEvent {
 		ci.setId(id);
 		byte[] json = MarshalUtils.marshalJson(ci);
 
-		HTableInterface events = null;
-		try {
-			events = hbase.getTableInterface(ISiteWhereHBase.EVENTS_TABLE_NAME);
-			Put put = new Put(rowkey);
-			put.add(ISiteWhereHBase.FAMILY_ID, qualifier, json);
-			events.put(put);
-		} catch (IOException e) {
-			throw new SiteWhereException("Unable to create state change.", e);
-		} finally {
-			HBaseUtils.closeCleanly(events);
-		}
+		Put put = new Put(rowkey);
+		put.add(ISiteWhereHBase.FAMILY_ID, qualifier, json);
+		hbase.getBufferedWriter(ISiteWhereHBase.EVENTS_TABLE_NAME).put(put);
 
 		return ci;
 	}
@@ -510,17 +487,10 @@ public class HBaseDeviceEvent {
 		cr.setId(id);
 		byte[] json = MarshalUtils.marshalJson(cr);
 
-		HTableInterface events = null;
-		try {
-			events = hbase.getTableInterface(ISiteWhereHBase.EVENTS_TABLE_NAME);
-			Put put = new Put(rowkey);
-			put.add(ISiteWhereHBase.FAMILY_ID, qualifier, json);
-			events.put(put);
-		} catch (IOException e) {
-			throw new SiteWhereException("Unable to create command response.", e);
-		} finally {
-			HBaseUtils.closeCleanly(events);
-		}
+		// Flush immediately so the response exists before it is linked to the invocation.
+		Put put = new Put(rowkey);
+		put.add(ISiteWhereHBase.FAMILY_ID, qualifier, json);
+		hbase.getBufferedWriter(ISiteWhereHBase.EVENTS_TABLE_NAME).put(put, true);
 
 		linkDeviceCommandResponseToInvocation(hbase, cr);
 		return cr;
@@ -668,6 +638,233 @@ public class HBaseDeviceEvent {
 		return convertMatches(matches);
 	}
 
+	/**
+	 * Delete events that occurred before the given date. Row keys hold the inverted event
+	 * time, so each row covers a fixed slice of time for one assignment and rows that
+	 * start after the cutoff are skipped without looking at their cells. Rows are scanned
+	 * with a key-only filter unless cell values are needed to exclude rollups or to pass
+	 * events to a handler. Rows are processed whole, so the number of events deleted may
+	 * exceed <code>maxEvents</code> by up to one row.
+	 * 
+	 * Only the versions of the selected cells that were read are deleted. Rollups written
+	 * by the handler land in the same rows, so a row or column delete at the current time
+	 * would remove them along with the purged events.
+	 * 
+	 * The cursor records the last row examined, so each call resumes where the previous
+	 * one stopped instead of scanning the rows that were kept again.
+	 * 
+	 * @param hbase
+	 * @param siteToken
+	 * @param eventType
+	 * @param before
+	 * @param includeRollups
+	 * @param maxEvents
+	 * @param handler
+	 * @param cursor
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static int purgeDeviceEvents(ISiteWhereHBaseClient hbase, String siteToken,
+			DeviceEventType eventType, Date before, boolean includeRollups, int maxEvents,
+			IDeviceEventPurgeHandler handler, PurgeCursor cursor) throws SiteWhereException {
+		List<EventRecordType> types = getRecordTypesForPurge(eventType);
+		boolean needValues =
+				(handler != null) || (!includeRollups && types.contains(EventRecordType.Measurement));
+		long cutoff = before.getTime();
+
+		HTableInterface events = null;
+		ResultScanner scanner = null;
+		try {
+			events = hbase.getTableInterface(ISiteWhereHBase.EVENTS_TABLE_NAME);
+			Scan scan = new Scan();
+			if (siteToken != null) {
+				Long siteId = IdManager.getInstance().getSiteKeys().getValue(siteToken);
+				if (siteId == null) {
+					throw new SiteWhereSystemException(ErrorCode.InvalidSiteToken, ErrorLevel.ERROR);
+				}
+				scan.setStartRow(HBaseSite.getAssignmentRowKey(siteId));
+				scan.setStopRow(HBaseSite.getAfterAssignmentRowKey(siteId));
+			}
+			if (cursor.getLastRow() != null) {
+				scan.setStartRow(Bytes.add(cursor.getLastRow(), new byte[] { 0 }));
+			}
+			scan.addFamily(ISiteWhereHBase.FAMILY_ID);
+			scan.setCaching(PURGE_SCAN_CACHING);
+			if (!needValues) {
+				scan.setFilter(new KeyOnlyFilter());
+			}
+			scanner = events.getScanner(scan);
+
+			List<Delete> deletes = new ArrayList<Delete>();
+			List<IDeviceEvent> purged = new ArrayList<IDeviceEvent>();
+			int count = 0;
+			byte[] lastRow = null;
+			Iterator<Result> results = scanner.iterator();
+			while (results.hasNext() && (count < maxEvents)) {
+				Result current = results.next();
+				byte[] key = current.getRow();
+				lastRow = key;
+				if (key.length != EVENT_ROW_KEY_LENGTH) {
+					continue;
+				}
+				if (getDateForEventKeyValue(key, ROW_START_QUALIFIER).getTime() >= cutoff) {
+					continue;
+				}
+				Delete delete = new Delete(key);
+				int selected = 0;
+				for (KeyValue cell : current.raw()) {
+					byte[] qual = cell.getQualifier();
+					if (qual.length < 4) {
+						continue;
+					}
+					EventRecordType type = EventRecordType.decode(qual[3]);
+					if ((type == null) || (!types.contains(type))) {
+						continue;
+					}
+					if (getDateForEventKeyValue(key, qual).getTime() >= cutoff) {
+						continue;
+					}
+					if ((type != EventRecordType.CommandResponseCounter)
+							&& (type != EventRecordType.CommandResponseEntry)) {
+						if (needValues) {
+							Class<? extends IDeviceEvent> eventClass = getEventClassForIndicator(qual[3]);
+							IDeviceEvent event = MarshalUtils.unmarshalJson(cell.getValue(), eventClass);
+							if ((!includeRollups) && (event.getMetadata(
+									IPurgeableDeviceManagement.ROLLUP_INTERVAL_METADATA) != null)) {
+								continue;
+							}
+							if (handler != null) {
+								purged.add(event);
+							}
+						}
+						count++;
+					}
+					delete.deleteColumn(ISiteWhereHBase.FAMILY_ID, qual, cell.getTimestamp());
+					selected++;
+				}
+				if (selected > 0) {
+					deletes.add(delete);
+				}
+			}
+			if (deletes.isEmpty()) {
+				cursor.setLastRow(null);
+				return 0;
+			}
+			if ((handler != null) && (!purged.isEmpty())) {
+				handler.beforePurge(purged);
+			}
+			events.delete(deletes);
+			cursor.setLastRow(lastRow);
+			return count;
+		} catch (IOException e) {
+			throw new SiteWhereException("Error purging event rows.", e);
+		} finally {
+			if (scanner != null) {
+				scanner.close();
+			}
+			HBaseUtils.closeCleanly(events);
+		}
+	}
+
+	/**
+	 * Position reached by a series of purge calls for the same arguments.
+	 * 
+	 * @author Derek
+	 */
+	public static class PurgeCursor {
+
+		/** Site being purged */
+		private String siteToken;
+
+		/** Event type being purged */
+		private DeviceEventType eventType;
+
+		/** Cutoff date */
+		private Date before;
+
+		/** Indicates whether rollups are purged */
+		private boolean includeRollups;
+
+		/** Last row examined */
+		private byte[] lastRow;
+
+		public PurgeCursor(String siteToken, DeviceEventType eventType, Date before, boolean includeRollups) {
+			this.siteToken = siteToken;
+			this.eventType = eventType;
+			this.before = before;
+			this.includeRollups = includeRollups;
+		}
+
+		/**
+		 * Indicates whether the cursor belongs to a purge with the given arguments.
+		 * 
+		 * @param siteToken
+		 * @param eventType
+		 * @param before
+		 * @param includeRollups
+		 * @return
+		 */
+		public boolean matches(String siteToken, DeviceEventType eventType, Date before,
+				boolean includeRollups) {
+			return ((this.siteToken == null) ? (siteToken == null) : this.siteToken.equals(siteToken))
+					&& (this.eventType == eventType) && this.before.equals(before)
+					&& (this.includeRollups == includeRollups);
+		}
+
+		public byte[] getLastRow() {
+			return lastRow;
+		}
+
+		public void setLastRow(byte[] lastRow) {
+			this.lastRow = lastRow;
+		}
+	}
+
+	/**
+	 * Get the record types deleted when purging an event type. Response counters and
+	 * entries are stored with the command invocation they belong to.
+	 * 
+	 * @param eventType
+	 * @return
+	 */
+	protected static List<EventRecordType> getRecordTypesForPurge(DeviceEventType eventType) {
+		List<EventRecordType> types = new ArrayList<EventRecordType>();
+		if (eventType == null) {
+			types.addAll(Arrays.asList(EventRecordType.values()));
+			return types;
+		}
+		switch (eventType) {
+		case Measurements:
+		case Measurement: {
+			types.add(EventRecordType.Measurement);
+			break;
+		}
+		case Location: {
+			types.add(EventRecordType.Location);
+			break;
+		}
+		case Alert: {
+			types.add(EventRecordType.Alert);
+			break;
+		}
+		case CommandInvocation: {
+			types.add(EventRecordType.CommandInvocation);
+			types.add(EventRecordType.CommandResponseCounter);
+			types.add(EventRecordType.CommandResponseEntry);
+			break;
+		}
+		case CommandResponse: {
+			types.add(EventRecordType.CommandResponse);
+			break;
+		}
+		case StateChange: {
+			types.add(EventRecordType.StateChange);
+			break;
+		}
+		}
+		return types;
+	}
+
 	/**
 	 * Get the event row key bytes.
 	 * 
@@ -0,0 +1,483 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.device;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.log4j.Logger;
+
+import com.sitewhere.common.MarshalUtils;
+import com.sitewhere.hbase.ISiteWhereHBase;
+import com.sitewhere.hbase.ISiteWhereHBaseClient;
+import com.sitewhere.hbase.common.HBaseUtils;
+import com.sitewhere.hbase.common.Pager;
+import com.sitewhere.rest.model.device.Device;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDevice;
+import com.sitewhere.spi.search.device.IDeviceSearchCriteria;
+
+/**
+ * Maintains secondary index rows in the devices table so that devices can be listed by
+ * specification or site with a prefix scan rather than a scan of every device. Index rows
+ * are keyed by record type, token, a zero separator byte and the device hardware id. The
+ * assignment and deleted qualifiers are mirrored onto index rows so that listings can be
+ * filtered without loading device JSON.
+ * 
+ * @author Derek
+ */
+public class HBaseDeviceIndex {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(HBaseDeviceIndex.class);
+
+	/** Separates token from hardware id in index row keys */
+	public static final byte SEPARATOR = (byte) 0x00;
+
+	/** Version of the index layout. Bump to force a rebuild on startup */
+	public static final long INDEX_VERSION = 1;
+
+	/** Row key for index state row */
+	private static final byte[] INDEX_STATE_ROW = { DeviceRecordType.DeviceIndexState.getType() };
+
+	/** Column qualifier for index version */
+	private static final byte[] INDEX_VERSION_QUAL = Bytes.toBytes("v");
+
+	/** Marker value for deleted devices */
+	private static final byte[] DELETED_MARKER = { (byte) 0x01 };
+
+	/**
+	 * Add index rows for a newly created device.
+	 * 
+	 * @param hbase
+	 * @param device
+	 * @throws SiteWhereException
+	 */
+	public static void addDevice(ISiteWhereHBaseClient hbase, IDevice device) throws SiteWhereException {
+		HTableInterface devices = null;
+		try {
+			devices = hbase.getTableInterface(ISiteWhereHBase.DEVICES_TABLE_NAME);
+			devices.put(createIndexPuts(device));
+		} catch (IOException e) {
+			throw new SiteWhereException("Unable to create device index rows.", e);
+		} finally {
+			HBaseUtils.closeCleanly(devices);
+		}
+	}
+
+	/**
+	 * Move index rows if the specification or site for a device has changed. Assignment and
+	 * deleted state are preserved on the new rows.
+	 * 
+	 * @param hbase
+	 * @param before
+	 * @param after
+	 * @throws SiteWhereException
+	 */
+	public static void updateDevice(ISiteWhereHBaseClient hbase, IDevice before, IDevice after)
+			throws SiteWhereException {
+		List<Delete> deletes = new ArrayList<Delete>();
+		List<Put> puts = new ArrayList<Put>();
+		if (!equal(before.getSpecificationToken(), after.getSpecificationToken())) {
+			deletes.add(new Delete(getSpecificationIndexKey(before.getSpecificationToken(),
+					before.getHardwareId())));
+			puts.add(createIndexPut(getSpecificationIndexKey(after.getSpecificationToken(),
+					after.getHardwareId()), after));
+		}
+		if (!equal(before.getSiteToken(), after.getSiteToken())) {
+			deletes.add(new Delete(getSiteIndexKey(before.getSiteToken(), before.getHardwareId())));
+			puts.add(createIndexPut(getSiteIndexKey(after.getSiteToken(), after.getHardwareId()), after));
+		}
+		if (puts.isEmpty()) {
+			return;
+		}
+		HTableInterface devices = null;
+		try {
+			devices = hbase.getTableInterface(ISiteWhereHBase.DEVICES_TABLE_NAME);
+
+			// Carry the deleted marker over from the rows being replaced.
+			Get get = new Get(deletes.get(0).getRow());
+			get.addColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.DELETED);
+			if (!devices.get(get).isEmpty()) {
+				for (Put put : puts) {
+					put.add(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.DELETED, DELETED_MARKER);
+				}
+			}
+			devices.delete(deletes);
+			devices.put(puts);
+		} catch (IOException e) {
+			throw new SiteWhereException("Unable to update device index rows.", e);
+		} finally {
+			HBaseUtils.closeCleanly(devices);
+		}
+	}
+
+	/**
+	 * Mark index rows for a device as deleted or remove them entirely.
+	 * 
+	 * @param hbase
+	 * @param device
+	 * @param force
+	 * @throws SiteWhereException
+	 */
+	public static void deleteDevice(ISiteWhereHBaseClient hbase, IDevice device, boolean force)
+			throws SiteWhereException {
+		byte[][] keys = getIndexKeys(device);
+		HTableInterface devices = null;
+		try {
+			devices = hbase.getTableInterface(ISiteWhereHBase.DEVICES_TABLE_NAME);
+			if (force) {
+				List<Delete> deletes = new ArrayList<Delete>();
+				for (byte[] key : keys) {
+					deletes.add(new Delete(key));
+				}
+				devices.delete(deletes);
+			} else {
+				List<Put> puts = new ArrayList<Put>();
+				for (byte[] key : keys) {
+					Put put = new Put(key);
+					put.add(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.DELETED, DELETED_MARKER);
+					puts.add(put);
+				}
+				devices.put(puts);
+			}
+		} catch (IOException e) {
+			throw new SiteWhereException("Unable to delete device index rows.", e);
+		} finally {
+			HBaseUtils.closeCleanly(devices);
+		}
+	}
+
+	/**
+	 * Record the current assignment on index rows for a device. Passing a null assignment
+	 * token clears the assignment.
+	 * 
+	 * @param hbase
+	 * @param device
+	 * @param assignmentToken
+	 * @throws SiteWhereException
+	 */
+	public static void setAssignment(ISiteWhereHBaseClient hbase, IDevice device, String assignmentToken)
+			throws SiteWhereException {
+		byte[][] keys = getIndexKeys(device);
+		HTableInterface devices = null;
+		try {
+			devices = hbase.getTableInterface(ISiteWhereHBase.DEVICES_TABLE_NAME);
+			if (assignmentToken != null) {
+				List<Put> puts = new ArrayList<Put>();
+				for (byte[] key : keys) {
+					Put put = new Put(key);
+					put.add(ISiteWhereHBase.FAMILY_ID, HBaseDevice.CURRENT_ASSIGNMENT,
+							Bytes.toBytes(assignmentToken));
+					puts.add(put);
+				}
+				devices.put(puts);
+			} else {
+				List<Delete> deletes = new ArrayList<Delete>();
+				for (byte[] key : keys) {
+					Delete delete = new Delete(key);
+					delete.deleteColumns(ISiteWhereHBase.FAMILY_ID, HBaseDevice.CURRENT_ASSIGNMENT);
+					deletes.add(delete);
+				}
+				devices.delete(deletes);
+			}
+		} catch (IOException e) {
+			throw new SiteWhereException("Unable to update device index assignment.", e);
+		} finally {
+			HBaseUtils.closeCleanly(devices);
+		}
+	}
+
+	/**
+	 * Get hardware ids for devices in an index partition, applying assignment and deleted
+	 * filters and paging based on the search criteria.
+	 * 
+	 * @param hbase
+	 * @param type
+	 * @param token
+	 * @param includeDeleted
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static Pager<String> getHardwareIds(ISiteWhereHBaseClient hbase, DeviceRecordType type,
+			String token, boolean includeDeleted, IDeviceSearchCriteria criteria) throws SiteWhereException {
+		byte[] prefix = getIndexPrefix(type, token);
+		byte[] stop = prefix.clone();
+		stop[stop.length - 1] = (byte) (SEPARATOR + 1);
+
+		HTableInterface devices = null;
+		ResultScanner scanner = null;
+		try {
+			devices = hbase.getTableInterface(ISiteWhereHBase.DEVICES_TABLE_NAME);
+			Scan scan = new Scan();
+			scan.setStartRow(prefix);
+			scan.setStopRow(stop);
+			scan.setCaching(500);
+			scanner = devices.getScanner(scan);
+
+			Pager<String> pager = new Pager<String>(criteria);
+			for (Result result : scanner) {
+				boolean shouldAdd = true;
+				for (KeyValue column : result.raw()) {
+					byte[] qualifier = column.getQualifier();
+					if ((Bytes.equals(HBaseDevice.CURRENT_ASSIGNMENT, qualifier)) && (criteria.isExcludeAssigned())) {
+						shouldAdd = false;
+					}
+					if ((Bytes.equals(ISiteWhereHBase.DELETED, qualifier)) && (!includeDeleted)) {
+						shouldAdd = false;
+					}
+				}
+				if (shouldAdd) {
+					byte[] row = result.getRow();
+					pager.process(new String(row, prefix.length, row.length - prefix.length));
+				}
+			}
+			return pager;
+		} catch (IOException e) {
+			throw new SiteWhereException("Error scanning device index rows.", e);
+		} finally {
+			if (scanner != null) {
+				scanner.close();
+			}
+			HBaseUtils.closeCleanly(devices);
+		}
+	}
+
+	/**
+	 * Rebuild index rows if the stored index version does not match the current layout.
+	 * 
+	 * @param hbase
+	 * @throws SiteWhereException
+	 */
+	public static void assureIndexes(ISiteWhereHBaseClient hbase) throws SiteWhereException {
+		HTableInterface devices = null;
+		try {
+			devices = hbase.getTableInterface(ISiteWhereHBase.DEVICES_TABLE_NAME);
+			Get get = new Get(INDEX_STATE_ROW);
+			get.addColumn(ISiteWhereHBase.FAMILY_ID, INDEX_VERSION_QUAL);
+			Result result = devices.get(get);
+			if ((!result.isEmpty()) && (Bytes.toLong(result.value()) == INDEX_VERSION)) {
+				return;
+			}
+		} catch (IOException e) {
+			throw new SiteWhereException("Unable to read device index state.", e);
+		} finally {
+			HBaseUtils.closeCleanly(devices);
+		}
+		LOGGER.info("Device indexes missing or out of date. Rebuilding...");
+		rebuild(hbase);
+	}
+
+	/**
+	 * Drop all device index rows and recreate them from the primary device rows.
+	 * 
+	 * @param hbase
+	 * @return number of devices indexed
+	 * @throws SiteWhereException
+	 */
+	public static int rebuild(ISiteWhereHBaseClient hbase) throws SiteWhereException {
+		long start = System.currentTimeMillis();
+		HTableInterface devices = null;
+		ResultScanner scanner = null;
+		try {
+			devices = hbase.getTableInterface(ISiteWhereHBase.DEVICES_TABLE_NAME);
+
+			// Remove existing index rows.
+			Scan scan = new Scan();
+			scan.setStartRow(new byte[] { DeviceRecordType.SpecificationIndex.getType() });
+			scan.setStopRow(new byte[] { (byte) (DeviceRecordType.SiteIndex.getType() + 1) });
+			scan.setCaching(1000);
+			scanner = devices.getScanner(scan);
+			List<Delete> deletes = new ArrayList<Delete>();
+			for (Result result : scanner) {
+				deletes.add(new Delete(result.getRow()));
+			}
+			scanner.close();
+			devices.delete(deletes);
+
+			// Create index rows for all devices.
+			scan = new Scan();
+			scan.setStartRow(new byte[] { DeviceRecordType.Device.getType() });
+			scan.setStopRow(new byte[] { DeviceRecordType.DeviceSpecification.getType() });
+			scan.setCaching(1000);
+			scanner = devices.getScanner(scan);
+			int count = 0;
+			List<Put> puts = new ArrayList<Put>();
+			for (Result result : scanner) {
+				byte[] json = null;
+				byte[] assignment = null;
+				boolean deleted = false;
+				for (KeyValue column : result.raw()) {
+					byte[] qualifier = column.getQualifier();
+					if (Bytes.equals(ISiteWhereHBase.JSON_CONTENT, qualifier)) {
+						json = column.getValue();
+					} else if (Bytes.equals(HBaseDevice.CURRENT_ASSIGNMENT, qualifier)) {
+						assignment = column.getValue();
+					} else if (Bytes.equals(ISiteWhereHBase.DELETED, qualifier)) {
+						deleted = true;
+					}
+				}
+				if (json == null) {
+					continue;
+				}
+				Device device = MarshalUtils.unmarshalJson(json, Device.class);
+				for (Put put : createIndexPuts(device)) {
+					if (assignment != null) {
+						put.add(ISiteWhereHBase.FAMILY_ID, HBaseDevice.CURRENT_ASSIGNMENT, assignment);
+					}
+					if (deleted) {
+						put.add(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.DELETED, DELETED_MARKER);
+					}
+					puts.add(put);
+				}
+				count++;
+				if (puts.size() >= 1000) {
+					devices.put(puts);
+					puts = new ArrayList<Put>();
+				}
+			}
+			devices.put(puts);
+
+			Put state = new Put(INDEX_STATE_ROW);
+			state.add(ISiteWhereHBase.FAMILY_ID, INDEX_VERSION_QUAL, Bytes.toBytes(INDEX_VERSION));
+			devices.put(state);
+
+			LOGGER.info("Rebuilt device indexes for " + count + " devices in "
+					+ (System.currentTimeMillis() - start) + "ms.");
+			return count;
+		} catch (IOException e) {
+			throw new SiteWhereException("Unable to rebuild device indexes.", e);
+		} finally {
+			if (scanner != null) {
+				scanner.close();
+			}
+			HBaseUtils.closeCleanly(devices);
+		}
+	}
+
+	/**
+	 * Create puts for all index rows that reference a device.
+	 * 
+	 * @param device
+	 * @return
+	 */
+	protected static List<Put> createIndexPuts(IDevice device) {
+		List<Put> puts = new ArrayList<Put>();
+		for (byte[] key : getIndexKeys(device)) {
+			puts.add(createIndexPut(key, device));
+		}
+		return puts;
+	}
+
+	/**
+	 * Create put for a single index row.
+	 * 
+	 * @param key
+	 * @param device
+	 * @return
+	 */
+	protected static Put createIndexPut(byte[] key, IDevice device) {
+		Put put = new Put(key);
+		put.add(ISiteWhereHBase.FAMILY_ID, HBaseDevice.CURRENT_SITE, Bytes.toBytes(device.getSiteToken()));
+		if (device.getAssignmentToken() != null) {
+			put.add(ISiteWhereHBase.FAMILY_ID, HBaseDevice.CURRENT_ASSIGNMENT,
+					Bytes.toBytes(device.getAssignmentToken()));
+		}
+		return put;
+	}
+
+	/**
+	 * Get keys for all index rows that reference a device.
+	 * 
+	 * @param device
+	 * @return
+	 */
+	protected static byte[][] getIndexKeys(IDevice device) {
+		return new byte[][] {
+				getSpecificationIndexKey(device.getSpecificationToken(), device.getHardwareId()),
+				getSiteIndexKey(device.getSiteToken(), device.getHardwareId()) };
+	}
+
+	/**
+	 * Get row key for specification index entry.
+	 * 
+	 * @param specificationToken
+	 * @param hardwareId
+	 * @return
+	 */
+	public static byte[] getSpecificationIndexKey(String specificationToken, String hardwareId) {
+		return getIndexKey(DeviceRecordType.SpecificationIndex, specificationToken, hardwareId);
+	}
+
+	/**
+	 * Get row key for site index entry.
+	 * 
+	 * @param siteToken
+	 * @param hardwareId
+	 * @return
+	 */
+	public static byte[] getSiteIndexKey(String siteToken, String hardwareId) {
+		return getIndexKey(DeviceRecordType.SiteIndex, siteToken, hardwareId);
+	}
+
+	/**
+	 * Get row key for an index entry.
+	 * 
+	 * @param type
+	 * @param token
+	 * @param hardwareId
+	 * @return
+	 */
+	protected static byte[] getIndexKey(DeviceRecordType type, String token, String hardwareId) {
+		byte[] prefix = getIndexPrefix(type, token);
+		byte[] hwid = Bytes.toBytes(hardwareId);
+		ByteBuffer buffer = ByteBuffer.allocate(prefix.length + hwid.length);
+		buffer.put(prefix);
+		buffer.put(hwid);
+		return buffer.array();
+	}
+
+	/**
+	 * Get the row key prefix shared by all index entries for a token.
+	 * 
+	 * @param type
+	 * @param token
+	 * @return
+	 */
+	protected static byte[] getIndexPrefix(DeviceRecordType type, String token) {
+		byte[] tokenBytes = Bytes.toBytes(token);
+		ByteBuffer buffer = ByteBuffer.allocate(tokenBytes.length + 2);
+		buffer.put(type.getType());
+		buffer.put(tokenBytes);
+		buffer.put(SEPARATOR);
+		return buffer.array();
+	}
+
+	/**
+	 * Null-safe string comparison.
+	 * 
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	protected static boolean equal(String a, String b) {
+		return (a == null) ? (b == null) : a.equals(b);
+	}
+}
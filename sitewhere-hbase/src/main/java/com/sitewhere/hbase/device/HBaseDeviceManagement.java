@@ -7,12 +7,14 @@
  */
 package com.sitewhere.hbase.device;
 
+import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
 import org.apache.hadoop.hbase.regionserver.StoreFile.BloomType;
 import org.apache.log4j.Logger;
 
+import com.sitewhere.SiteWhere;
 import com.sitewhere.core.SiteWherePersistence;
 import com.sitewhere.hbase.ISiteWhereHBase;
 import com.sitewhere.hbase.ISiteWhereHBaseClient;
@@ -32,17 +34,20 @@ import com.sitewhere.spi.device.IDeviceElementMapping;
 import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.IDeviceManagementCacheProvider;
 import com.sitewhere.spi.device.IDeviceSpecification;
+import com.sitewhere.spi.device.IPurgeableDeviceManagement;
 import com.sitewhere.spi.device.ISite;
 import com.sitewhere.spi.device.IZone;
 import com.sitewhere.spi.device.batch.IBatchElement;
 import com.sitewhere.spi.device.batch.IBatchOperation;
 import com.sitewhere.spi.device.command.IDeviceCommand;
+import com.sitewhere.spi.device.event.DeviceEventType;
 import com.sitewhere.spi.device.event.IDeviceAlert;
 import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
 import com.sitewhere.spi.device.event.IDeviceCommandResponse;
 import com.sitewhere.spi.device.event.IDeviceEvent;
 import com.sitewhere.spi.device.event.IDeviceEventBatch;
 import com.sitewhere.spi.device.event.IDeviceEventBatchResponse;
+import com.sitewhere.spi.device.event.IDeviceEventPurgeHandler;
 import com.sitewhere.spi.device.event.IDeviceLocation;
 import com.sitewhere.spi.device.event.IDeviceMeasurements;
 import com.sitewhere.spi.device.event.IDeviceStateChange;
@@ -81,7 +86,7 @@ import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
  * @author Derek
  */
 public class HBaseDeviceManagement extends LifecycleComponent implements IDeviceManagement,
-		ICachingDeviceManagement {
+		ICachingDeviceManagement, IPurgeableDeviceManagement {
 
 	/** Static logger instance */
 	private static final Logger LOGGER = Logger.getLogger(HBaseDeviceManagement.class);
@@ -92,6 +97,9 @@ public class HBaseDeviceManagement extends LifecycleComponent implements IDevice
 	/** Injected cache provider */
 	private IDeviceManagementCacheProvider cacheProvider;
 
+	/** Position of the purge in progress, so batches resume after the rows already examined */
+	private volatile HBaseDeviceEvent.PurgeCursor purgeCursor;
+
 	public HBaseDeviceManagement() {
 		super(LifecycleComponentType.DataStore);
 	}
@@ -109,6 +117,10 @@ public class HBaseDeviceManagement extends LifecycleComponent implements IDevice
 
 		LOGGER.info("Loading id management...");
 		IdManager.getInstance().load(client);
+		IdManager.getInstance().registerMetrics(SiteWhere.getServer().getMetricRegistry());
+
+		LOGGER.info("Verifying device indexes...");
+		HBaseDeviceIndex.assureIndexes(client);
 
 		LOGGER.info("HBase device management started.");
 	}
@@ -135,12 +147,24 @@ public class HBaseDeviceManagement extends LifecycleComponent implements IDevice
 		SiteWhereTables.assureTable(client, ISiteWhereHBase.DEVICES_TABLE_NAME, BloomType.ROW);
 	}
 
+	/**
+	 * Drop and recreate the secondary indexes used for device listings.
+	 * 
+	 * @return number of devices indexed
+	 * @throws SiteWhereException
+	 */
+	public int rebuildDeviceIndexes() throws SiteWhereException {
+		return HBaseDeviceIndex.rebuild(client);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
 	 * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#stop()
 	 */
 	public void stop() throws SiteWhereException {
+		LOGGER.info("Flushing buffered HBase writes...");
+		client.flushBufferedWriters();
 		LOGGER.info("HBase device management stopped.");
 	}
 
@@ -341,7 +365,7 @@ public class HBaseDeviceManagement extends LifecycleComponent implements IDevice
 	 */
 	public SearchResults<IDevice> listDevices(boolean includeDeleted, IDeviceSearchCriteria criteria)
 			throws SiteWhereException {
-		return HBaseDevice.listDevices(client, includeDeleted, criteria);
+		return HBaseDevice.listDevices(client, includeDeleted, criteria, cacheProvider);
 	}
 
 	/*
@@ -1124,6 +1148,27 @@ public class HBaseDeviceManagement extends LifecycleComponent implements IDevice
 		return createBatchOperation(generic);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IPurgeableDeviceManagement#purgeDeviceEvents(java.lang.String
+	 * , com.sitewhere.spi.device.event.DeviceEventType, java.util.Date, boolean, int,
+	 * com.sitewhere.spi.device.event.IDeviceEventPurgeHandler)
+	 */
+	@Override
+	public int purgeDeviceEvents(String siteToken, DeviceEventType eventType, Date before,
+			boolean includeRollups, int maxEvents, IDeviceEventPurgeHandler handler)
+			throws SiteWhereException {
+		HBaseDeviceEvent.PurgeCursor cursor = purgeCursor;
+		if ((cursor == null) || (!cursor.matches(siteToken, eventType, before, includeRollups))) {
+			cursor = new HBaseDeviceEvent.PurgeCursor(siteToken, eventType, before, includeRollups);
+			purgeCursor = cursor;
+		}
+		return HBaseDeviceEvent.purgeDeviceEvents(client, siteToken, eventType, before, includeRollups,
+				maxEvents, handler, cursor);
+	}
+
 	/**
 	 * Verify that the given assignment exists.
 	 * 
@@ -7,6 +7,7 @@
  */
 package com.sitewhere.hbase.uid;
 
+import com.codahale.metrics.MetricRegistry;
 import com.sitewhere.hbase.ISiteWhereHBaseClient;
 import com.sitewhere.spi.SiteWhereException;
 
@@ -47,7 +48,7 @@ public class IdManager {
 	private IdManager() {
 	}
 
-	public static IdManager getInstance() {
+	public static synchronized IdManager getInstance() {
 		if (SINGLETON == null) {
 			SINGLETON = new IdManager();
 		}
@@ -91,6 +92,23 @@ public class IdManager {
 		assignmentKeys.refresh();
 	}
 
+	/**
+	 * Register size and hit metrics for each key manager.
+	 * 
+	 * @param registry
+	 */
+	public void registerMetrics(MetricRegistry registry) {
+		siteKeys.registerMetrics(registry, MetricRegistry.name(IdManager.class, "siteKeys"));
+		deviceKeys.registerMetrics(registry, MetricRegistry.name(IdManager.class, "deviceKeys"));
+		specificationKeys.registerMetrics(registry, MetricRegistry.name(IdManager.class, "specificationKeys"));
+		deviceGroupKeys.registerMetrics(registry, MetricRegistry.name(IdManager.class, "deviceGroupKeys"));
+		batchOperationKeys.registerMetrics(registry,
+				MetricRegistry.name(IdManager.class, "batchOperationKeys"));
+		commandKeys.registerMetrics(registry, MetricRegistry.name(IdManager.class, "commandKeys"));
+		zoneKeys.registerMetrics(registry, MetricRegistry.name(IdManager.class, "zoneKeys"));
+		assignmentKeys.registerMetrics(registry, MetricRegistry.name(IdManager.class, "assignmentKeys"));
+	}
+
 	public UniqueIdCounterMap getSiteKeys() {
 		return siteKeys;
 	}
@@ -10,9 +10,10 @@ package com.sitewhere.hbase.uid;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
@@ -24,6 +25,8 @@ import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.log4j.Logger;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.sitewhere.Tracer;
 import com.sitewhere.hbase.ISiteWhereHBase;
 import com.sitewhere.hbase.ISiteWhereHBaseClient;
@@ -31,7 +34,10 @@ import com.sitewhere.hbase.common.HBaseUtils;
 import com.sitewhere.spi.SiteWhereException;
 
 /**
- * Handles conversions to/from a given type of unique id.
+ * Handles conversions to/from a given type of unique id. Mappings are held in concurrent
+ * maps so that lookups from ingest threads do not require synchronization. Names that
+ * are known not to exist are kept in a bounded negative cache so that repeated lookups
+ * for bad ids do not each cost a round trip to the UID table.
  * 
  * @author Derek
  */
@@ -43,6 +49,12 @@ public abstract class UniqueIdMap<N, V> {
 	/** Qualifier for columns containing values */
 	public static final byte[] VALUE_QUAL = Bytes.toBytes("value");
 
+	/** Default maximum number of names held in the negative cache */
+	public static final int DEFAULT_NEGATIVE_CACHE_SIZE = 10000;
+
+	/** Default time in milliseconds that a missing name is remembered */
+	public static final long DEFAULT_NEGATIVE_CACHE_EXPIRATION = 60 * 1000;
+
 	/** HBase client */
 	protected ISiteWhereHBaseClient hbase;
 
@@ -53,10 +65,28 @@ public abstract class UniqueIdMap<N, V> {
 	protected UniqueIdType valueIndicator;
 
 	/** Map of names to values */
-	private Map<N, V> nameToValue = new HashMap<N, V>();
+	private ConcurrentMap<N, V> nameToValue = new ConcurrentHashMap<N, V>();
+
+	/** Maps of values to names (keyed by {@link #getValueKey(Object)}) */
+	private ConcurrentMap<Object, N> valueToName = new ConcurrentHashMap<Object, N>();
+
+	/** Names known not to exist mapped to the time they were found missing */
+	private ConcurrentMap<N, Long> missingNames = new ConcurrentHashMap<N, Long>();
+
+	/** Maximum number of names held in the negative cache */
+	private int negativeCacheSize = DEFAULT_NEGATIVE_CACHE_SIZE;
 
-	/** Maps of values to names */
-	private Map<V, N> valueToName = new HashMap<V, N>();
+	/** Time in milliseconds that a missing name is remembered */
+	private long negativeCacheExpiration = DEFAULT_NEGATIVE_CACHE_EXPIRATION;
+
+	/** Number of lookups answered from memory */
+	private AtomicLong hits = new AtomicLong();
+
+	/** Number of lookups answered from the negative cache */
+	private AtomicLong negativeHits = new AtomicLong();
+
+	/** Number of lookups that required a read from the UID table */
+	private AtomicLong misses = new AtomicLong();
 
 	public UniqueIdMap(ISiteWhereHBaseClient hbase, UniqueIdType keyIndicator, UniqueIdType valueIndicator) {
 		this.hbase = hbase;
@@ -85,8 +115,13 @@ public abstract class UniqueIdMap<N, V> {
 	 */
 	public void delete(N name) throws SiteWhereException {
 		V value = nameToValue.get(name);
+		if (value == null) {
+			value = getValueFromTable(name);
+		}
 		deleteNameToValue(name);
-		deleteValueToName(value);
+		if (value != null) {
+			deleteValueToName(value);
+		}
 	}
 
 	/**
@@ -115,6 +150,7 @@ public abstract class UniqueIdMap<N, V> {
 			HBaseUtils.closeCleanly(uids);
 		}
 		nameToValue.put(name, value);
+		missingNames.remove(name);
 	}
 
 	/**
@@ -167,7 +203,7 @@ public abstract class UniqueIdMap<N, V> {
 		} finally {
 			HBaseUtils.closeCleanly(uids);
 		}
-		valueToName.put(value, name);
+		valueToName.put(getValueKey(value), name);
 	}
 
 	/**
@@ -192,34 +228,33 @@ public abstract class UniqueIdMap<N, V> {
 		} finally {
 			HBaseUtils.closeCleanly(uids);
 		}
-		valueToName.remove(value);
+		valueToName.remove(getValueKey(value));
 	}
 
 	/**
-	 * Refresh from HBase UID table.
+	 * Refresh from HBase UID table. Key and value rows for a type use adjacent indicator
+	 * bytes, so both directions are bulk loaded with a single prefix scan.
 	 * 
 	 * @throws SiteWhereException
 	 */
 	public void refresh() throws SiteWhereException {
 		try {
-			List<Result> ntvList = getValuesForType(keyIndicator);
-			for (Result ntv : ntvList) {
-				byte[] key = ntv.getRow();
-				byte[] nameBytes = new byte[key.length - 1];
-				System.arraycopy(key, 1, nameBytes, 0, nameBytes.length);
-				N name = convertName(nameBytes);
-				V value = convertValue(ntv.value());
-				nameToValue.put(name, value);
-			}
-			List<Result> vtnList = getValuesForType(valueIndicator);
-			for (Result vtn : vtnList) {
-				byte[] key = vtn.getRow();
-				byte[] valueBytes = new byte[key.length - 1];
-				System.arraycopy(key, 1, valueBytes, 0, valueBytes.length);
-				V value = convertValue(valueBytes);
-				N name = convertName(vtn.value());
-				valueToName.put(value, name);
+			byte low = (byte) Math.min(keyIndicator.getIndicator(), valueIndicator.getIndicator());
+			byte high = (byte) Math.max(keyIndicator.getIndicator(), valueIndicator.getIndicator());
+			List<Result> results = scanIndicatorRange(low, high);
+			missingNames.clear();
+			for (Result result : results) {
+				byte[] key = result.getRow();
+				byte[] stored = new byte[key.length - 1];
+				System.arraycopy(key, 1, stored, 0, stored.length);
+				if (key[0] == keyIndicator.getIndicator()) {
+					nameToValue.put(convertName(stored), convertValue(result.value()));
+				} else if (key[0] == valueIndicator.getIndicator()) {
+					V value = convertValue(stored);
+					valueToName.put(getValueKey(value), convertName(result.value()));
+				}
 			}
+			LOGGER.info("Loaded " + nameToValue.size() + " " + keyIndicator.name() + " mappings.");
 		} catch (Throwable t) {
 			throw new SiteWhereException(t);
 		}
@@ -228,16 +263,27 @@ public abstract class UniqueIdMap<N, V> {
 	/**
 	 * Get all {@link Result} results for the given uid type.
 	 * 
-	 * @param start
-	 * @param end
+	 * @param type
 	 * @return
 	 * @throws Exception
 	 */
 	protected List<Result> getValuesForType(UniqueIdType type) throws Exception {
-		byte startByte = keyIndicator.getIndicator();
-		byte stopByte = keyIndicator.getIndicator();
+		return scanIndicatorRange(type.getIndicator(), type.getIndicator());
+	}
+
+	/**
+	 * Get all {@link Result} results for rows whose indicator byte falls within the given
+	 * inclusive range.
+	 * 
+	 * @param first
+	 * @param last
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected List<Result> scanIndicatorRange(byte first, byte last) throws SiteWhereException {
+		byte stopByte = last;
 		stopByte++;
-		byte[] startKey = { startByte };
+		byte[] startKey = { first };
 		byte[] stopKey = { stopByte };
 
 		HTableInterface uids = null;
@@ -247,6 +293,7 @@ public abstract class UniqueIdMap<N, V> {
 			Scan scan = new Scan();
 			scan.setStartRow(startKey);
 			scan.setStopRow(stopKey);
+			scan.setCaching(1000);
 			scanner = uids.getScanner(scan);
 
 			List<Result> results = new ArrayList<Result>();
@@ -255,7 +302,7 @@ public abstract class UniqueIdMap<N, V> {
 			}
 			return results;
 		} catch (IOException e) {
-			throw new SiteWhereException("Error scanning site rows.", e);
+			throw new SiteWhereException("Error scanning UID rows.", e);
 		} finally {
 			if (scanner != null) {
 				scanner.close();
@@ -273,20 +320,58 @@ public abstract class UniqueIdMap<N, V> {
 	 */
 	public V getValue(N name) throws SiteWhereException {
 		V result = nameToValue.get(name);
-		if (result == null) {
-			Tracer.debug("Id value for " + keyIndicator.name() + " '" + name
-					+ "' not cached. Loading from table.", LOGGER);
-			result = getValueFromTable(name);
-			if (result != null) {
-				nameToValue.put(name, result);
-				valueToName.put(result, name);
-			}
+		if (result != null) {
+			hits.incrementAndGet();
+			return result;
+		}
+		if (isKnownMissing(name)) {
+			negativeHits.incrementAndGet();
+			return null;
+		}
+		misses.incrementAndGet();
+		Tracer.debug("Id value for " + keyIndicator.name() + " '" + name + "' not cached. Loading from table.",
+				LOGGER);
+		result = getValueFromTable(name);
+		if (result != null) {
+			nameToValue.put(name, result);
+			valueToName.put(getValueKey(result), name);
 		} else {
-			Tracer.debug("Id value for " + keyIndicator.name() + " '" + name + "' was cached.", LOGGER);
+			markMissing(name);
 		}
 		return result;
 	}
 
+	/**
+	 * Indicates whether a name was recently found not to exist in the UID table.
+	 * 
+	 * @param name
+	 * @return
+	 */
+	protected boolean isKnownMissing(N name) {
+		Long missingSince = missingNames.get(name);
+		if (missingSince == null) {
+			return false;
+		}
+		if ((System.currentTimeMillis() - missingSince) > negativeCacheExpiration) {
+			missingNames.remove(name);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Remember that a name does not exist. The cache is cleared when full rather than
+	 * tracking recency since entries are only hints and expire quickly anyway.
+	 * 
+	 * @param name
+	 */
+	protected void markMissing(N name) {
+		if (missingNames.size() >= negativeCacheSize) {
+			missingNames.clear();
+		}
+		missingNames.put(name, System.currentTimeMillis());
+	}
+
 	/**
 	 * Get the current value for name from UID table.
 	 * 
@@ -324,13 +409,16 @@ public abstract class UniqueIdMap<N, V> {
 	 * @throws SiteWhereException
 	 */
 	public N getName(V value) throws SiteWhereException {
-		N result = valueToName.get(value);
-		if (result == null) {
-			result = getNameFromTable(value);
-			if (result != null) {
-				nameToValue.put(result, value);
-				valueToName.put(value, result);
-			}
+		N result = valueToName.get(getValueKey(value));
+		if (result != null) {
+			hits.incrementAndGet();
+			return result;
+		}
+		misses.incrementAndGet();
+		result = getNameFromTable(value);
+		if (result != null) {
+			nameToValue.put(result, value);
+			valueToName.put(getValueKey(value), result);
 		}
 		return result;
 	}
@@ -364,6 +452,63 @@ public abstract class UniqueIdMap<N, V> {
 		}
 	}
 
+	/**
+	 * Get the key used to index a value in the reverse map. Subclasses whose values do not
+	 * implement value-based equality (such as byte arrays) should override this.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	protected Object getValueKey(V value) {
+		return value;
+	}
+
+	/**
+	 * Register gauges for map size and lookup statistics.
+	 * 
+	 * @param registry
+	 * @param prefix
+	 */
+	public void registerMetrics(MetricRegistry registry, String prefix) {
+		registerGauge(registry, MetricRegistry.name(prefix, "size"), new Gauge<Integer>() {
+			public Integer getValue() {
+				return nameToValue.size();
+			}
+		});
+		registerGauge(registry, MetricRegistry.name(prefix, "negativeSize"), new Gauge<Integer>() {
+			public Integer getValue() {
+				return missingNames.size();
+			}
+		});
+		registerGauge(registry, MetricRegistry.name(prefix, "hits"), new Gauge<Long>() {
+			public Long getValue() {
+				return hits.get();
+			}
+		});
+		registerGauge(registry, MetricRegistry.name(prefix, "negativeHits"), new Gauge<Long>() {
+			public Long getValue() {
+				return negativeHits.get();
+			}
+		});
+		registerGauge(registry, MetricRegistry.name(prefix, "misses"), new Gauge<Long>() {
+			public Long getValue() {
+				return misses.get();
+			}
+		});
+	}
+
+	/**
+	 * Register a gauge, replacing any existing metric with the same name.
+	 * 
+	 * @param registry
+	 * @param name
+	 * @param gauge
+	 */
+	protected void registerGauge(MetricRegistry registry, String name, Gauge<?> gauge) {
+		registry.remove(name);
+		registry.register(name, gauge);
+	}
+
 	/** Used to convert stored name to correct datatype */
 	public abstract N convertName(byte[] bytes);
 
@@ -390,4 +535,40 @@ public abstract class UniqueIdMap<N, V> {
 	public UniqueIdType getValueIndicator() {
 		return valueIndicator;
 	}
+
+	/** Get number of names currently mapped in memory */
+	public int getSize() {
+		return nameToValue.size();
+	}
+
+	/** Get number of lookups answered from memory */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/** Get number of lookups answered from the negative cache */
+	public long getNegativeHits() {
+		return negativeHits.get();
+	}
+
+	/** Get number of lookups that required a read from the UID table */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public int getNegativeCacheSize() {
+		return negativeCacheSize;
+	}
+
+	public void setNegativeCacheSize(int negativeCacheSize) {
+		this.negativeCacheSize = negativeCacheSize;
+	}
+
+	public long getNegativeCacheExpiration() {
+		return negativeCacheExpiration;
+	}
+
+	public void setNegativeCacheExpiration(long negativeCacheExpiration) {
+		this.negativeCacheExpiration = negativeCacheExpiration;
+	}
 }
\ No newline at end of file
@@ -7,6 +7,7 @@
  */
 package com.sitewhere.hbase.uid;
 
+import java.nio.ByteBuffer;
 import java.util.UUID;
 
 import com.sitewhere.hbase.ISiteWhereHBaseClient;
@@ -36,6 +37,16 @@ public class UuidRowKeyMap extends UniqueIdMap<String, byte[]> {
 		return uuid;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.hbase.uid.UniqueIdMap#getValueKey(java.lang.Object)
+	 */
+	@Override
+	protected Object getValueKey(byte[] value) {
+		return ByteBuffer.wrap(value);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
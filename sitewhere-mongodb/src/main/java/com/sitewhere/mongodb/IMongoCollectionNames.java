@@ -41,6 +41,9 @@ public interface IMongoCollectionNames {
 	/** Default collection name for SiteWhere events */
 	public static final String DEFAULT_EVENTS_COLLECTION_NAME = "events";
 
+	/** Default collection name for SiteWhere time-bucketed measurements */
+	public static final String DEFAULT_MEASUREMENT_BUCKETS_COLLECTION_NAME = "measurementbuckets";
+
 	/** Default collection name for SiteWhere batch operations */
 	public static final String DEFAULT_BATCH_OPERATIONS_COLLECTION_NAME = "batchoperations";
 
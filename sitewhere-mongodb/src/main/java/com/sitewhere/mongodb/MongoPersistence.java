@@ -59,6 +59,24 @@ public class MongoPersistence {
 		}
 	}
 
+	/**
+	 * Common handler for inserting a list of objects in a single request. Objects are
+	 * assigned ids on insert just as with {@link #insert(DBCollection, DBObject)}.
+	 * 
+	 * @param collection
+	 * @param objects
+	 * @throws SiteWhereException
+	 */
+	public static void insertBatch(DBCollection collection, List<DBObject> objects) throws SiteWhereException {
+		if (objects.isEmpty()) {
+			return;
+		}
+		WriteResult result = collection.insert(objects);
+		if (!result.getLastError().ok()) {
+			throw new SiteWhereException("Error during batch insert: " + result.getLastError().toString());
+		}
+	}
+
 	/**
 	 * Common handler for updating existing objects. Assures that errors are handled in a
 	 * consistent way.
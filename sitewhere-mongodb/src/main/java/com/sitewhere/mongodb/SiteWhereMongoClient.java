@@ -85,6 +85,10 @@ public class SiteWhereMongoClient extends LifecycleComponent implements Initiali
 	/** Injected name used for events collection */
 	private String eventsCollectionName = IMongoCollectionNames.DEFAULT_EVENTS_COLLECTION_NAME;
 
+	/** Injected name used for time-bucketed measurements collection */
+	private String measurementBucketsCollectionName =
+			IMongoCollectionNames.DEFAULT_MEASUREMENT_BUCKETS_COLLECTION_NAME;
+
 	/** Injected name used for batch operations collection */
 	private String batchOperationsCollectionName =
 			IMongoCollectionNames.DEFAULT_BATCH_OPERATIONS_COLLECTION_NAME;
@@ -142,6 +146,7 @@ public class SiteWhereMongoClient extends LifecycleComponent implements Initiali
 			messages.add("Sites collection name: " + getSitesCollectionName());
 			messages.add("Zones collection name: " + getZonesCollectionName());
 			messages.add("Events collection name: " + getEventsCollectionName());
+			messages.add("Measurement buckets collection name: " + getMeasurementBucketsCollectionName());
 			messages.add("Batch operations collection name: " + getBatchOperationsCollectionName());
 			messages.add("Batch operation elements collection name: "
 					+ getBatchOperationElementsCollectionName());
@@ -228,6 +233,10 @@ public class SiteWhereMongoClient extends LifecycleComponent implements Initiali
 		return getSiteWhereDatabase().getCollection(getEventsCollectionName());
 	}
 
+	public DBCollection getMeasurementBucketsCollection() {
+		return getSiteWhereDatabase().getCollection(getMeasurementBucketsCollectionName());
+	}
+
 	public DBCollection getBatchOperationsCollection() {
 		return getSiteWhereDatabase().getCollection(getBatchOperationsCollectionName());
 	}
@@ -340,6 +349,14 @@ public class SiteWhereMongoClient extends LifecycleComponent implements Initiali
 		this.eventsCollectionName = eventsCollectionName;
 	}
 
+	public String getMeasurementBucketsCollectionName() {
+		return measurementBucketsCollectionName;
+	}
+
+	public void setMeasurementBucketsCollectionName(String measurementBucketsCollectionName) {
+		this.measurementBucketsCollectionName = measurementBucketsCollectionName;
+	}
+
 	public String getBatchOperationsCollectionName() {
 		return batchOperationsCollectionName;
 	}
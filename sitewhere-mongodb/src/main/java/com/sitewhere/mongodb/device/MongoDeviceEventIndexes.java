@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.mongodb.device;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.CommandResult;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+
+/**
+ * Index definitions for the device events collection. Each index matches the equality
+ * filters of a query in {@link MongoDeviceManagement} followed by the
+ * (eventDate desc, receivedDate desc) sort so that queries neither scan the collection
+ * nor sort in memory.
+ * 
+ * @author Derek
+ */
+public class MongoDeviceEventIndexes {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(MongoDeviceEventIndexes.class);
+
+	/** Index for all events for an assignment */
+	public static final DBObject BY_ASSIGNMENT = new BasicDBObject(
+			MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, 1).append(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
+			MongoDeviceEvent.PROP_RECEIVED_DATE, -1);
+
+	/** Index for events of a given type for an assignment */
+	public static final DBObject BY_ASSIGNMENT_AND_TYPE = new BasicDBObject(
+			MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, 1).append(MongoDeviceEvent.PROP_EVENT_TYPE, 1).append(
+			MongoDeviceEvent.PROP_EVENT_DATE, -1).append(MongoDeviceEvent.PROP_RECEIVED_DATE, -1);
+
+	/** Index for events of a given type for a site */
+	public static final DBObject BY_SITE_AND_TYPE = new BasicDBObject(MongoDeviceEvent.PROP_SITE_TOKEN, 1).append(
+			MongoDeviceEvent.PROP_EVENT_TYPE, 1).append(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
+			MongoDeviceEvent.PROP_RECEIVED_DATE, -1);
+
+	/** Index for responses to a command invocation */
+	public static final DBObject BY_ORIGINATING_EVENT = new BasicDBObject(
+			MongoDeviceCommandResponse.PROP_ORIGINATING_EVENT_ID, 1).append(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
+			MongoDeviceEvent.PROP_RECEIVED_DATE, -1);
+
+	/** Index on event date that expires events when a TTL is configured */
+	public static final DBObject BY_DATE = new BasicDBObject(MongoDeviceEvent.PROP_EVENT_DATE, 1);
+
+	/** Index option that sets the TTL in seconds */
+	private static final String EXPIRE_AFTER_SECONDS = "expireAfterSeconds";
+
+	/** Indexes created by earlier versions that are superseded by the ones above */
+	private static final DBObject[] LEGACY = {
+			new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, 1).append(
+					MongoDeviceEvent.PROP_EVENT_DATE, -1).append(MongoDeviceEvent.PROP_EVENT_TYPE, 1),
+			new BasicDBObject(MongoDeviceEvent.PROP_SITE_TOKEN, 1).append(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
+					MongoDeviceEvent.PROP_EVENT_TYPE, 1) };
+
+	/**
+	 * Create all event indexes and drop superseded ones.
+	 * 
+	 * @param events
+	 */
+	public static void ensureIndexes(DBCollection events) {
+		events.ensureIndex(BY_ASSIGNMENT);
+		events.ensureIndex(BY_ASSIGNMENT_AND_TYPE);
+		events.ensureIndex(BY_SITE_AND_TYPE);
+		events.ensureIndex(BY_ORIGINATING_EVENT);
+		dropLegacyIndexes(events);
+	}
+
+	/**
+	 * Create, update or drop the TTL index that expires events by event date. MongoDB
+	 * removes expired documents in the background, so no purge requests are needed. A TTL
+	 * of zero or less removes the index.
+	 * 
+	 * @param events
+	 * @param ttlSeconds
+	 */
+	public static void ensureTtlIndex(DBCollection events, long ttlSeconds) {
+		DBObject existing = null;
+		for (DBObject index : events.getIndexInfo()) {
+			if (isSameKey(BY_DATE, (DBObject) index.get("key"))) {
+				existing = index;
+			}
+		}
+		if (ttlSeconds <= 0) {
+			if ((existing != null) && (existing.get(EXPIRE_AFTER_SECONDS) != null)) {
+				LOGGER.info("Dropping event TTL index.");
+				events.dropIndex(BY_DATE);
+			}
+			return;
+		}
+		if (existing == null) {
+			LOGGER.info("Creating event TTL index. Events expire after " + ttlSeconds + " seconds.");
+			events.ensureIndex(BY_DATE, new BasicDBObject(EXPIRE_AFTER_SECONDS, ttlSeconds));
+			return;
+		}
+		Object current = existing.get(EXPIRE_AFTER_SECONDS);
+		if ((current instanceof Number) && (((Number) current).longValue() == ttlSeconds)) {
+			return;
+		}
+		LOGGER.info("Updating event TTL index. Events expire after " + ttlSeconds + " seconds.");
+		BasicDBObject index =
+				new BasicDBObject("keyPattern", BY_DATE).append(EXPIRE_AFTER_SECONDS, ttlSeconds);
+		CommandResult result =
+				events.getDB().command(new BasicDBObject("collMod", events.getName()).append("index", index));
+		if (!result.ok()) {
+			LOGGER.warn("Unable to update event TTL index: " + result.getErrorMessage());
+		}
+	}
+
+	/**
+	 * Drop indexes that are no longer used by any query. Each unused index adds cost to
+	 * every event insert.
+	 * 
+	 * @param events
+	 */
+	protected static void dropLegacyIndexes(DBCollection events) {
+		List<DBObject> existing = events.getIndexInfo();
+		for (DBObject legacy : LEGACY) {
+			for (DBObject index : existing) {
+				if (isSameKey(legacy, (DBObject) index.get("key"))) {
+					LOGGER.info("Dropping superseded event index " + index.get("name") + ".");
+					events.dropIndex(legacy);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compare index keys by field order and direction. Directions may be stored as
+	 * integers or doubles depending on the client that created the index.
+	 * 
+	 * @param expected
+	 * @param actual
+	 * @return
+	 */
+	protected static boolean isSameKey(DBObject expected, DBObject actual) {
+		if (actual == null) {
+			return false;
+		}
+		List<String> expectedFields = new ArrayList<String>(expected.keySet());
+		List<String> actualFields = new ArrayList<String>(actual.keySet());
+		if (!expectedFields.equals(actualFields)) {
+			return false;
+		}
+		for (String field : expectedFields) {
+			Object direction = actual.get(field);
+			if (!(direction instanceof Number)) {
+				return false;
+			}
+			if (((Number) direction).intValue() != ((Number) expected.get(field)).intValue()) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
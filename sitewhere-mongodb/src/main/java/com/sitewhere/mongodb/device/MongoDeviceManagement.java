@@ -9,6 +9,7 @@ package com.sitewhere.mongodb.device;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
@@ -39,11 +40,13 @@ import com.sitewhere.rest.model.device.command.DeviceCommand;
 import com.sitewhere.rest.model.device.event.DeviceAlert;
 import com.sitewhere.rest.model.device.event.DeviceCommandInvocation;
 import com.sitewhere.rest.model.device.event.DeviceCommandResponse;
+import com.sitewhere.rest.model.device.event.DeviceEventBatchResponse;
 import com.sitewhere.rest.model.device.event.DeviceLocation;
 import com.sitewhere.rest.model.device.event.DeviceMeasurements;
 import com.sitewhere.rest.model.device.event.DeviceStateChange;
 import com.sitewhere.rest.model.device.group.DeviceGroup;
 import com.sitewhere.rest.model.device.group.DeviceGroupElement;
+import com.sitewhere.rest.model.search.DateRangeSearchCriteria;
 import com.sitewhere.rest.model.search.SearchResults;
 import com.sitewhere.server.lifecycle.LifecycleComponent;
 import com.sitewhere.spi.SiteWhereException;
@@ -58,6 +61,7 @@ import com.sitewhere.spi.device.IDeviceElementMapping;
 import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.IDeviceManagementCacheProvider;
 import com.sitewhere.spi.device.IDeviceSpecification;
+import com.sitewhere.spi.device.IPurgeableDeviceManagement;
 import com.sitewhere.spi.device.ISite;
 import com.sitewhere.spi.device.IZone;
 import com.sitewhere.spi.device.batch.IBatchElement;
@@ -70,6 +74,7 @@ import com.sitewhere.spi.device.event.IDeviceCommandResponse;
 import com.sitewhere.spi.device.event.IDeviceEvent;
 import com.sitewhere.spi.device.event.IDeviceEventBatch;
 import com.sitewhere.spi.device.event.IDeviceEventBatchResponse;
+import com.sitewhere.spi.device.event.IDeviceEventPurgeHandler;
 import com.sitewhere.spi.device.event.IDeviceLocation;
 import com.sitewhere.spi.device.event.IDeviceMeasurements;
 import com.sitewhere.spi.device.event.IDeviceStateChange;
@@ -108,7 +113,7 @@ import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
  * @author dadams
  */
 public class MongoDeviceManagement extends LifecycleComponent implements IDeviceManagement,
-		ICachingDeviceManagement {
+		ICachingDeviceManagement, IPurgeableDeviceManagement {
 
 	/** Static logger instance */
 	private static Logger LOGGER = Logger.getLogger(MongoDeviceManagement.class);
@@ -119,6 +124,15 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 	/** Provides caching for device management entities */
 	private IDeviceManagementCacheProvider cacheProvider;
 
+	/** Indicates if measurements are stored in time-bucketed documents */
+	private boolean useMeasurementBuckets = false;
+
+	/** Interval in milliseconds covered by each measurement bucket */
+	private long measurementBucketInterval = MongoDeviceMeasurementBuckets.DEFAULT_BUCKET_INTERVAL;
+
+	/** Number of days after which MongoDB expires events (0 to keep events) */
+	private int eventTtlDays = 0;
+
 	public MongoDeviceManagement() {
 		super(LifecycleComponentType.DataStore);
 	}
@@ -172,12 +186,12 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 				new BasicDBObject(MongoDevice.PROP_HARDWARE_ID, 1), new BasicDBObject("unique", true));
 		getMongoClient().getDeviceAssignmentsCollection().ensureIndex(
 				new BasicDBObject(MongoDeviceAssignment.PROP_TOKEN, 1), new BasicDBObject("unique", true));
-		getMongoClient().getEventsCollection().ensureIndex(
-				new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, 1).append(
-						MongoDeviceEvent.PROP_EVENT_DATE, -1).append(MongoDeviceEvent.PROP_EVENT_TYPE, 1));
-		getMongoClient().getEventsCollection().ensureIndex(
-				new BasicDBObject(MongoDeviceEvent.PROP_SITE_TOKEN, 1).append(
-						MongoDeviceEvent.PROP_EVENT_DATE, -1).append(MongoDeviceEvent.PROP_EVENT_TYPE, 1));
+		MongoDeviceEventIndexes.ensureIndexes(getMongoClient().getEventsCollection());
+		MongoDeviceEventIndexes.ensureTtlIndex(getMongoClient().getEventsCollection(),
+				getEventTtlDays() * 24L * 60 * 60);
+		if (isUseMeasurementBuckets()) {
+			MongoDeviceMeasurementBuckets.ensureIndexes(getMongoClient().getMeasurementBucketsCollection());
+		}
 		getMongoClient().getDeviceGroupsCollection().ensureIndex(
 				new BasicDBObject(MongoDeviceGroup.PROP_TOKEN, 1), new BasicDBObject("unique", true));
 		getMongoClient().getDeviceGroupsCollection().ensureIndex(
@@ -622,6 +636,16 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 			}
 			break;
 		}
+		case UsesSite: {
+			if (criteria.getDeviceBySiteParameters() != null) {
+				String token = criteria.getDeviceBySiteParameters().getSiteToken();
+				if (token == null) {
+					throw new SiteWhereException("Invalid device search. No site token passed.");
+				}
+				dbCriteria.put(MongoDevice.PROP_SITE_TOKEN, token);
+			}
+			break;
+		}
 		}
 		BasicDBObject sort = new BasicDBObject(MongoSiteWhereEntity.PROP_CREATED_DATE, -1);
 		return MongoPersistence.search(IDevice.class, devices, dbCriteria, sort, criteria);
@@ -666,17 +690,20 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 		if (assignment != null) {
 			throw new SiteWhereSystemException(ErrorCode.DeviceCanNotBeDeletedIfAssigned, ErrorLevel.ERROR);
 		}
+		DBCollection devices = getMongoClient().getDevicesCollection();
 		if (force) {
-			DBCollection devices = getMongoClient().getDevicesCollection();
 			MongoPersistence.delete(devices, existing);
-			return MongoDevice.fromDBObject(existing);
 		} else {
 			MongoSiteWhereEntity.setDeleted(existing, true);
 			BasicDBObject query = new BasicDBObject(MongoDevice.PROP_HARDWARE_ID, hardwareId);
-			DBCollection devices = getMongoClient().getDevicesCollection();
 			MongoPersistence.update(devices, query, existing);
-			return MongoDevice.fromDBObject(existing);
 		}
+
+		// Remove the device from the cache so it is not found after being deleted.
+		if (getCacheProvider() != null) {
+			getCacheProvider().getDeviceCache().remove(hardwareId);
+		}
+		return MongoDevice.fromDBObject(existing);
 	}
 
 	/**
@@ -891,7 +918,88 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 	@Override
 	public IDeviceEventBatchResponse addDeviceEventBatch(String assignmentToken, IDeviceEventBatch batch)
 			throws SiteWhereException {
-		return SiteWherePersistence.deviceEventBatchLogic(assignmentToken, batch, this);
+		IDeviceAssignment assignment = assertApiDeviceAssignment(assignmentToken);
+
+		// Build all events up front so they can be inserted in a single request.
+		List<DeviceMeasurements> mList = new ArrayList<DeviceMeasurements>();
+		List<DeviceMeasurements> bucketed = new ArrayList<DeviceMeasurements>();
+		List<DBObject> mObjects = new ArrayList<DBObject>();
+		for (IDeviceMeasurementsCreateRequest request : batch.getMeasurements()) {
+			DeviceMeasurements measurements =
+					SiteWherePersistence.deviceMeasurementsCreateLogic(request, assignment);
+			mList.add(measurements);
+
+			// Rollups are stored as single documents so that bucket purges do not remove them.
+			if (isUseMeasurementBuckets() && (measurements.getMetadata(ROLLUP_INTERVAL_METADATA) == null)) {
+				bucketed.add(measurements);
+				mObjects.add(null);
+			} else {
+				mObjects.add(MongoDeviceMeasurements.toDBObject(measurements, false));
+			}
+		}
+		if (!bucketed.isEmpty()) {
+			MongoDeviceMeasurementBuckets.add(getMongoClient().getMeasurementBucketsCollection(), bucketed,
+					getMeasurementBucketInterval());
+		}
+		List<DBObject> locObjects = new ArrayList<DBObject>();
+		for (IDeviceLocationCreateRequest request : batch.getLocations()) {
+			DeviceLocation location = SiteWherePersistence.deviceLocationCreateLogic(assignment, request);
+			locObjects.add(MongoDeviceLocation.toDBObject(location, false));
+		}
+		List<DBObject> alertObjects = new ArrayList<DBObject>();
+		for (IDeviceAlertCreateRequest request : batch.getAlerts()) {
+			DeviceAlert alert = SiteWherePersistence.deviceAlertCreateLogic(assignment, request);
+			alertObjects.add(MongoDeviceAlert.toDBObject(alert, false));
+		}
+		List<DBObject> all = new ArrayList<DBObject>();
+		for (DBObject mObject : mObjects) {
+			if (mObject != null) {
+				all.add(mObject);
+			}
+		}
+		all.addAll(locObjects);
+		all.addAll(alertObjects);
+		MongoPersistence.insertBatch(getMongoClient().getEventsCollection(), all);
+
+		// Apply state updates in order and persist the final state once. State is tracked on a
+		// separate holder so that a cached assignment is not modified.
+		DeviceEventBatchResponse response = new DeviceEventBatchResponse();
+		DeviceAssignment state = new DeviceAssignment();
+		if (assignment.getState() != null) {
+			state.setState(DeviceAssignmentState.copy(assignment.getState()));
+		}
+		boolean updateState = false;
+		for (int i = 0; i < mList.size(); i++) {
+			DeviceMeasurements measurements =
+					(mObjects.get(i) == null) ? mList.get(i) : MongoDeviceMeasurements.fromDBObject(
+							mObjects.get(i), false);
+			response.getCreatedMeasurements().add(measurements);
+			if (batch.getMeasurements().get(i).isUpdateState()) {
+				state.setState(SiteWherePersistence.assignmentStateMeasurementsUpdateLogic(state,
+						measurements));
+				updateState = true;
+			}
+		}
+		for (int i = 0; i < locObjects.size(); i++) {
+			DeviceLocation location = MongoDeviceLocation.fromDBObject(locObjects.get(i), false);
+			response.getCreatedLocations().add(location);
+			if (batch.getLocations().get(i).isUpdateState()) {
+				state.setState(SiteWherePersistence.assignmentStateLocationUpdateLogic(state, location));
+				updateState = true;
+			}
+		}
+		for (int i = 0; i < alertObjects.size(); i++) {
+			DeviceAlert alert = MongoDeviceAlert.fromDBObject(alertObjects.get(i), false);
+			response.getCreatedAlerts().add(alert);
+			if (batch.getAlerts().get(i).isUpdateState()) {
+				state.setState(SiteWherePersistence.assignmentStateAlertUpdateLogic(state, alert));
+				updateState = true;
+			}
+		}
+		if (updateState) {
+			updateDeviceAssignmentState(assignmentToken, state.getState());
+		}
+		return response;
 	}
 
 	/*
@@ -987,6 +1095,9 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 	 */
 	@Override
 	public IDeviceEvent getDeviceEventById(String id) throws SiteWhereException {
+		if (MongoDeviceMeasurementBuckets.isBucketedId(id)) {
+			return MongoDeviceMeasurementBuckets.getById(getMongoClient().getMeasurementBucketsCollection(), id);
+		}
 		DBObject searchById = new BasicDBObject("_id", new ObjectId(id));
 		DBObject found = getMongoClient().getEventsCollection().findOne(searchById);
 		if (found == null) {
@@ -1013,7 +1124,14 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 						MongoDeviceEvent.PROP_RECEIVED_DATE, -1);
 
 		int offset = Math.max(0, criteria.getPageNumber() - 1) * criteria.getPageSize();
-		DBCursor cursor = events.find(query).skip(offset).limit(criteria.getPageSize()).sort(sort);
+		int limit = criteria.getPageSize();
+
+		// Bucketed measurements are merged in, so read from the start of the range.
+		if (isUseMeasurementBuckets()) {
+			limit = offset + limit;
+			offset = 0;
+		}
+		DBCursor cursor = events.find(query).skip(offset).limit(limit).sort(sort);
 		List<IDeviceEvent> matches = new ArrayList<IDeviceEvent>();
 		SearchResults<IDeviceEvent> results = new SearchResults<IDeviceEvent>(matches);
 		try {
@@ -1025,6 +1143,12 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 		} finally {
 			cursor.close();
 		}
+		if (isUseMeasurementBuckets()) {
+			BasicDBObject bucketQuery =
+					new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, assignmentToken);
+			return MongoDeviceMeasurementBuckets.search(getMongoClient().getMeasurementBucketsCollection(),
+					bucketQuery, criteria, results);
+		}
 		return results;
 	}
 
@@ -1042,12 +1166,20 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 		DeviceMeasurements measurements =
 				SiteWherePersistence.deviceMeasurementsCreateLogic(request, assignment);
 
-		DBCollection events = getMongoClient().getEventsCollection();
-		DBObject mObject = MongoDeviceMeasurements.toDBObject(measurements, false);
-		MongoPersistence.insert(events, mObject);
+		// Rollups are stored as single documents so that bucket purges do not remove them.
+		if (isUseMeasurementBuckets() && (measurements.getMetadata(ROLLUP_INTERVAL_METADATA) == null)) {
+			List<DeviceMeasurements> list = new ArrayList<DeviceMeasurements>();
+			list.add(measurements);
+			MongoDeviceMeasurementBuckets.add(getMongoClient().getMeasurementBucketsCollection(), list,
+					getMeasurementBucketInterval());
+		} else {
+			DBCollection events = getMongoClient().getEventsCollection();
+			DBObject mObject = MongoDeviceMeasurements.toDBObject(measurements, false);
+			MongoPersistence.insert(events, mObject);
+			measurements = MongoDeviceMeasurements.fromDBObject(mObject, false);
+		}
 
 		// Update assignment state if requested.
-		measurements = MongoDeviceMeasurements.fromDBObject(mObject, false);
 		if (request.isUpdateState()) {
 			DeviceAssignmentState updated =
 					SiteWherePersistence.assignmentStateMeasurementsUpdateLogic(assignment, measurements);
@@ -1075,6 +1207,10 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 		BasicDBObject sort =
 				new BasicDBObject(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
 						MongoDeviceEvent.PROP_RECEIVED_DATE, -1);
+		if (isUseMeasurementBuckets()) {
+			BasicDBObject bucketQuery = new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, token);
+			return searchMeasurementBuckets(events, query, sort, bucketQuery, criteria);
+		}
 		return MongoPersistence.search(IDeviceMeasurements.class, events, query, sort, criteria);
 	}
 
@@ -1096,9 +1232,38 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 		BasicDBObject sort =
 				new BasicDBObject(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
 						MongoDeviceEvent.PROP_RECEIVED_DATE, -1);
+		if (isUseMeasurementBuckets()) {
+			BasicDBObject bucketQuery = new BasicDBObject(MongoDeviceEvent.PROP_SITE_TOKEN, siteToken);
+			return searchMeasurementBuckets(events, query, sort, bucketQuery, criteria);
+		}
 		return MongoPersistence.search(IDeviceMeasurements.class, events, query, sort, criteria);
 	}
 
+	/**
+	 * Search measurements stored in time buckets, merging in any measurements stored as
+	 * individual documents in the events collection.
+	 * 
+	 * @param events
+	 * @param query
+	 * @param sort
+	 * @param bucketQuery
+	 * @param criteria
+	 * @return
+	 */
+	protected SearchResults<IDeviceMeasurements> searchMeasurementBuckets(DBCollection events,
+			BasicDBObject query, BasicDBObject sort, BasicDBObject bucketQuery, IDateRangeSearchCriteria criteria) {
+		int pageSize = criteria.getPageSize();
+		if (pageSize > 0) {
+			pageSize = criteria.getPageNumber() * pageSize;
+		}
+		DateRangeSearchCriteria head =
+				new DateRangeSearchCriteria(1, pageSize, criteria.getStartDate(), criteria.getEndDate());
+		SearchResults<IDeviceMeasurements> legacy =
+				MongoPersistence.search(IDeviceMeasurements.class, events, query, sort, head);
+		return MongoDeviceMeasurementBuckets.search(getMongoClient().getMeasurementBucketsCollection(),
+				bucketQuery, criteria, legacy);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -2231,4 +2396,108 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 	public void setMongoClient(SiteWhereMongoClient mongoClient) {
 		this.mongoClient = mongoClient;
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.IPurgeableDeviceManagement#purgeDeviceEvents(java.lang.String
+	 * , com.sitewhere.spi.device.event.DeviceEventType, java.util.Date, boolean, int,
+	 * com.sitewhere.spi.device.event.IDeviceEventPurgeHandler)
+	 */
+	@Override
+	public int purgeDeviceEvents(String siteToken, DeviceEventType eventType, Date before,
+			boolean includeRollups, int maxEvents, IDeviceEventPurgeHandler handler)
+			throws SiteWhereException {
+		int purged = purgeEventDocuments(siteToken, eventType, before, includeRollups, maxEvents, handler);
+		if ((purged < maxEvents) && isUseMeasurementBuckets()
+				&& ((eventType == null) || (eventType == DeviceEventType.Measurements))) {
+			purged +=
+					MongoDeviceMeasurementBuckets.purge(getMongoClient().getMeasurementBucketsCollection(),
+							siteToken, before, maxEvents - purged, handler);
+		}
+		return purged;
+	}
+
+	/**
+	 * Delete documents from the events collection with a ranged query. Only ids are read
+	 * unless a handler needs the events. Events are returned in assignment and date order
+	 * using the assignment index, so each batch holds runs of events for a few assignments
+	 * rather than an interleaving of many, which keeps the number of rollups per batch low.
+	 * 
+	 * @param siteToken
+	 * @param eventType
+	 * @param before
+	 * @param includeRollups
+	 * @param maxEvents
+	 * @param handler
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected int purgeEventDocuments(String siteToken, DeviceEventType eventType, Date before,
+			boolean includeRollups, int maxEvents, IDeviceEventPurgeHandler handler)
+			throws SiteWhereException {
+		DBCollection events = getMongoClient().getEventsCollection();
+		BasicDBObject query = new BasicDBObject();
+		if (siteToken != null) {
+			query.append(MongoDeviceEvent.PROP_SITE_TOKEN, siteToken);
+		}
+		if (eventType != null) {
+			query.append(MongoDeviceEvent.PROP_EVENT_TYPE, eventType.name());
+		}
+		query.append(MongoDeviceEvent.PROP_EVENT_DATE, new BasicDBObject("$lt", before));
+		if (!includeRollups) {
+			query.append(MongoMetadataProvider.PROP_METADATA + "." + ROLLUP_INTERVAL_METADATA,
+					new BasicDBObject("$exists", false));
+		}
+		DBObject fields = (handler == null) ? new BasicDBObject("_id", 1) : null;
+		DBCursor cursor =
+				events.find(query, fields).sort(MongoDeviceEventIndexes.BY_ASSIGNMENT).limit(maxEvents);
+
+		List<Object> ids = new ArrayList<Object>();
+		List<IDeviceEvent> found = new ArrayList<IDeviceEvent>();
+		try {
+			while (cursor.hasNext()) {
+				DBObject match = cursor.next();
+				ids.add(match.get("_id"));
+				if (handler != null) {
+					found.add(MongoPersistence.unmarshalEvent(match));
+				}
+			}
+		} finally {
+			cursor.close();
+		}
+		if (ids.isEmpty()) {
+			return 0;
+		}
+		if (handler != null) {
+			handler.beforePurge(found);
+		}
+		MongoPersistence.delete(events, new BasicDBObject("_id", new BasicDBObject("$in", ids)));
+		return ids.size();
+	}
+
+	public boolean isUseMeasurementBuckets() {
+		return useMeasurementBuckets;
+	}
+
+	public void setUseMeasurementBuckets(boolean useMeasurementBuckets) {
+		this.useMeasurementBuckets = useMeasurementBuckets;
+	}
+
+	public long getMeasurementBucketInterval() {
+		return measurementBucketInterval;
+	}
+
+	public void setMeasurementBucketInterval(long measurementBucketInterval) {
+		this.measurementBucketInterval = measurementBucketInterval;
+	}
+
+	public int getEventTtlDays() {
+		return eventTtlDays;
+	}
+
+	public void setEventTtlDays(int eventTtlDays) {
+		this.eventTtlDays = eventTtlDays;
+	}
 }
\ No newline at end of file
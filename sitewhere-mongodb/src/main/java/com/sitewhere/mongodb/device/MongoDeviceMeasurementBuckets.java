@@ -0,0 +1,585 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.mongodb.device;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.types.ObjectId;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.CommandResult;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.WriteResult;
+import com.sitewhere.mongodb.common.MongoMetadataProvider;
+import com.sitewhere.rest.model.device.event.DeviceMeasurements;
+import com.sitewhere.rest.model.search.SearchResults;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.DeviceEventType;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventPurgeHandler;
+import com.sitewhere.spi.search.IDateRangeSearchCriteria;
+
+/**
+ * Stores device measurements in time-bucketed documents. All measurements for an
+ * assignment that fall in the same bucket interval are appended to a single document
+ * with a <code>$push</code> upsert, so the collection holds one document and one set of
+ * index entries per assignment per interval rather than per event. Each bucket keeps
+ * its sample count, first/last event dates and per-measurement min/max values.
+ * 
+ * To stay well clear of the MongoDB document size limit, a bucket holds at most
+ * {@link #MAX_BUCKET_SAMPLES} samples. Once it is full, further samples for the same
+ * interval go to an overflow bucket with the next sequence number. The first bucket for
+ * an interval has the id <code>assignmentToken:bucketStartMillis</code> and overflow
+ * buckets append <code>:sequence</code>.
+ * 
+ * Ids of bucketed measurements have the form <code>bucketId:objectId</code>, so an event
+ * can be located without indexing individual samples.
+ * 
+ * @author Derek
+ */
+public class MongoDeviceMeasurementBuckets {
+
+	/** Default bucket interval (one hour) */
+	public static final long DEFAULT_BUCKET_INTERVAL = 60 * 60 * 1000;
+
+	/** Separator used in bucket and event ids */
+	public static final char ID_SEPARATOR = ':';
+
+	/** Maximum number of samples stored in a single bucket document */
+	public static final int MAX_BUCKET_SAMPLES = 500;
+
+	/** Maximum number of intervals for which the current bucket sequence is remembered */
+	private static final int MAX_SEQUENCE_HINTS = 10000;
+
+	/** Property for bucket id */
+	public static final String PROP_ID = "_id";
+
+	/** Property for start of bucket interval */
+	public static final String PROP_BUCKET_START = "bucketStart";
+
+	/** Property for earliest event date in bucket */
+	public static final String PROP_FIRST_EVENT_DATE = "firstEventDate";
+
+	/** Property for latest event date in bucket */
+	public static final String PROP_LAST_EVENT_DATE = "lastEventDate";
+
+	/** Property for number of samples in bucket */
+	public static final String PROP_COUNT = "count";
+
+	/** Property for list of samples */
+	public static final String PROP_SAMPLES = "samples";
+
+	/** Property for per-measurement statistics */
+	public static final String PROP_STATS = "stats";
+
+	/** Property for minimum measurement value */
+	public static final String PROP_MIN = "min";
+
+	/** Property for maximum measurement value */
+	public static final String PROP_MAX = "max";
+
+	/** Last sequence number used for each interval, so full buckets are not retried */
+	@SuppressWarnings("serial")
+	private static final Map<String, Integer> SEQUENCE_HINTS = Collections.synchronizedMap(
+			new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+					return size() > MAX_SEQUENCE_HINTS;
+				}
+			});
+
+	/** Sorts events newest first, matching the event collection sort */
+	private static final Comparator<IDeviceEvent> NEWEST_FIRST = new Comparator<IDeviceEvent>() {
+
+		@Override
+		public int compare(IDeviceEvent o1, IDeviceEvent o2) {
+			int result = compareDates(o2.getEventDate(), o1.getEventDate());
+			if (result == 0) {
+				result = compareDates(o2.getReceivedDate(), o1.getReceivedDate());
+			}
+			return result;
+		}
+	};
+
+	/**
+	 * Ensure that bucket indexes exist.
+	 * 
+	 * @param buckets
+	 */
+	public static void ensureIndexes(DBCollection buckets) {
+		buckets.ensureIndex(new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, 1).append(
+				PROP_BUCKET_START, -1));
+		buckets.ensureIndex(new BasicDBObject(MongoDeviceEvent.PROP_SITE_TOKEN, 1).append(PROP_BUCKET_START, -1));
+	}
+
+	/**
+	 * Append measurements to the buckets they belong in. Measurements are grouped so that
+	 * a single upsert is issued per bucket. Ids are assigned to each of the measurements.
+	 * 
+	 * @param buckets
+	 * @param measurements
+	 * @param interval
+	 * @throws SiteWhereException
+	 */
+	public static void add(DBCollection buckets, List<DeviceMeasurements> measurements, long interval)
+			throws SiteWhereException {
+		Map<String, List<DeviceMeasurements>> byBucket = new LinkedHashMap<String, List<DeviceMeasurements>>();
+		for (DeviceMeasurements current : measurements) {
+			String bucketId = getBucketId(current.getDeviceAssignmentToken(), current.getEventDate(), interval);
+			List<DeviceMeasurements> list = byBucket.get(bucketId);
+			if (list == null) {
+				list = new ArrayList<DeviceMeasurements>();
+				byBucket.put(bucketId, list);
+			}
+			list.add(current);
+		}
+		for (String bucketId : byBucket.keySet()) {
+			upsert(buckets, bucketId, byBucket.get(bucketId), interval);
+		}
+	}
+
+	/**
+	 * Append a group of measurements that share a bucket interval, moving on to overflow
+	 * buckets as buckets fill up.
+	 * 
+	 * @param buckets
+	 * @param bucketId
+	 * @param group
+	 * @param interval
+	 * @throws SiteWhereException
+	 */
+	protected static void upsert(DBCollection buckets, String bucketId, List<DeviceMeasurements> group,
+			long interval) throws SiteWhereException {
+		for (int i = 0; i < group.size(); i += MAX_BUCKET_SAMPLES) {
+			List<DeviceMeasurements> chunk =
+					group.subList(i, Math.min(group.size(), i + MAX_BUCKET_SAMPLES));
+			Integer hint = SEQUENCE_HINTS.get(bucketId);
+			int sequence = (hint == null) ? 0 : hint;
+			while (!append(buckets, getSequencedBucketId(bucketId, sequence), chunk, interval)) {
+				sequence++;
+			}
+			SEQUENCE_HINTS.put(bucketId, sequence);
+		}
+	}
+
+	/**
+	 * Append measurements to a bucket if it has room for all of them, creating the bucket
+	 * if it does not exist.
+	 * 
+	 * @param buckets
+	 * @param bucketId
+	 * @param group
+	 * @param interval
+	 * @return false if the bucket is full
+	 * @throws SiteWhereException
+	 */
+	protected static boolean append(DBCollection buckets, String bucketId, List<DeviceMeasurements> group,
+			long interval) throws SiteWhereException {
+		DeviceMeasurements first = group.get(0);
+		BasicDBObject header = new BasicDBObject();
+		header.append(MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.Measurements.name());
+		header.append(MongoDeviceEvent.PROP_SITE_TOKEN, first.getSiteToken());
+		header.append(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, first.getDeviceAssignmentToken());
+		header.append(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TYPE, first.getAssignmentType().name());
+		header.append(MongoDeviceEvent.PROP_ASSET_MODULE_ID, first.getAssetModuleId());
+		header.append(MongoDeviceEvent.PROP_ASSET_ID, first.getAssetId());
+		header.append(PROP_BUCKET_START, getBucketStart(first.getEventDate(), interval));
+
+		List<DBObject> samples = new ArrayList<DBObject>();
+		Date firstDate = null;
+		Date lastDate = null;
+		Map<String, Double> mins = new LinkedHashMap<String, Double>();
+		Map<String, Double> maxes = new LinkedHashMap<String, Double>();
+		for (DeviceMeasurements current : group) {
+			current.setId(bucketId + ID_SEPARATOR + new ObjectId().toString());
+			samples.add(toSample(current));
+			if ((firstDate == null) || (current.getEventDate().before(firstDate))) {
+				firstDate = current.getEventDate();
+			}
+			if ((lastDate == null) || (current.getEventDate().after(lastDate))) {
+				lastDate = current.getEventDate();
+			}
+			for (String name : current.getMeasurements().keySet()) {
+				Double value = current.getMeasurement(name);
+				if (value == null) {
+					continue;
+				}
+				String key = PROP_STATS + "." + escapeKey(name);
+				Double min = mins.get(key + "." + PROP_MIN);
+				if ((min == null) || (value < min)) {
+					mins.put(key + "." + PROP_MIN, value);
+				}
+				Double max = maxes.get(key + "." + PROP_MAX);
+				if ((max == null) || (value > max)) {
+					maxes.put(key + "." + PROP_MAX, value);
+				}
+			}
+		}
+
+		BasicDBObject min = new BasicDBObject(PROP_FIRST_EVENT_DATE, firstDate);
+		min.putAll(mins);
+		BasicDBObject max = new BasicDBObject(PROP_LAST_EVENT_DATE, lastDate);
+		max.putAll(maxes);
+		BasicDBObject update = new BasicDBObject();
+		update.append("$setOnInsert", header);
+		update.append("$push", new BasicDBObject(PROP_SAMPLES, new BasicDBObject("$each", samples)));
+		update.append("$inc", new BasicDBObject(PROP_COUNT, group.size()));
+		update.append("$min", min);
+		update.append("$max", max);
+
+		// A full bucket does not match, so the upsert fails with a duplicate id.
+		BasicDBObject query = new BasicDBObject(PROP_ID, bucketId);
+		query.append(PROP_COUNT, new BasicDBObject("$lte", MAX_BUCKET_SAMPLES - group.size()));
+		try {
+			WriteResult result = buckets.update(query, update, true, false);
+			CommandResult error = result.getLastError();
+			if (error.getException() instanceof MongoException.DuplicateKey) {
+				return false;
+			}
+			if (!error.ok()) {
+				throw new SiteWhereException("Error during measurement bucket update: " + error.toString());
+			}
+		} catch (MongoException.DuplicateKey e) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Delete buckets whose samples all occurred before the given date. Buckets that span
+	 * the date are kept until all of their samples are old enough, so purging has the
+	 * granularity of the bucket interval. Whole buckets are deleted, so the number of
+	 * samples deleted may exceed <code>maxEvents</code> by up to one bucket.
+	 * 
+	 * @param buckets
+	 * @param siteToken
+	 * @param before
+	 * @param maxEvents
+	 * @param handler
+	 * @return number of samples deleted
+	 * @throws SiteWhereException
+	 */
+	@SuppressWarnings("unchecked")
+	public static int purge(DBCollection buckets, String siteToken, Date before, int maxEvents,
+			IDeviceEventPurgeHandler handler) throws SiteWhereException {
+		BasicDBObject query = new BasicDBObject();
+		if (siteToken != null) {
+			query.append(MongoDeviceEvent.PROP_SITE_TOKEN, siteToken);
+		}
+		query.append(PROP_BUCKET_START, new BasicDBObject("$lt", before));
+		query.append(PROP_LAST_EVENT_DATE, new BasicDBObject("$lt", before));
+		DBObject fields = (handler == null) ? new BasicDBObject(PROP_SAMPLES, 0) : null;
+		DBCursor cursor = buckets.find(query, fields);
+
+		List<Object> ids = new ArrayList<Object>();
+		List<IDeviceEvent> events = new ArrayList<IDeviceEvent>();
+		int count = 0;
+		try {
+			while (cursor.hasNext() && (count < maxEvents)) {
+				DBObject bucket = cursor.next();
+				ids.add(bucket.get(PROP_ID));
+				count += ((Number) bucket.get(PROP_COUNT)).intValue();
+				if (handler != null) {
+					List<DBObject> samples = (List<DBObject>) bucket.get(PROP_SAMPLES);
+					if (samples != null) {
+						for (DBObject sample : samples) {
+							events.add(fromSample(bucket, sample));
+						}
+					}
+				}
+			}
+		} finally {
+			cursor.close();
+		}
+		if (ids.isEmpty()) {
+			return 0;
+		}
+		if (handler != null) {
+			handler.beforePurge(events);
+		}
+		WriteResult result = buckets.remove(new BasicDBObject(PROP_ID, new BasicDBObject("$in", ids)));
+		if (!result.getLastError().ok()) {
+			throw new SiteWhereException("Error during measurement bucket purge: "
+					+ result.getLastError().toString());
+		}
+		return count;
+	}
+
+	/**
+	 * Indicates whether an event id refers to a bucketed measurement.
+	 * 
+	 * @param id
+	 * @return
+	 */
+	public static boolean isBucketedId(String id) {
+		return (!ObjectId.isValid(id)) && (id.indexOf(ID_SEPARATOR) > 0);
+	}
+
+	/**
+	 * Get a bucketed measurement by id.
+	 * 
+	 * @param buckets
+	 * @param id
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public static DeviceMeasurements getById(DBCollection buckets, String id) {
+		String bucketId = id.substring(0, id.lastIndexOf(ID_SEPARATOR));
+		DBObject bucket = buckets.findOne(new BasicDBObject(PROP_ID, bucketId));
+		if (bucket == null) {
+			return null;
+		}
+		List<DBObject> samples = (List<DBObject>) bucket.get(PROP_SAMPLES);
+		if (samples != null) {
+			for (DBObject sample : samples) {
+				if (id.equals(sample.get(MongoDeviceEvent.PROP_NESTED_ID))) {
+					return fromSample(bucket, sample);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Merge bucketed measurements with results from the events collection. The
+	 * <code>legacy</code> results must hold the total count of matching event documents
+	 * and, sorted newest first, at least as many of them as are needed to fill the
+	 * requested page. Buckets are read newest first and only loaded in full when their
+	 * samples are needed for the page or when they only partially overlap the date range.
+	 * 
+	 * @param buckets
+	 * @param query
+	 * @param criteria
+	 * @param legacy
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends IDeviceEvent> SearchResults<T> search(DBCollection buckets, BasicDBObject query,
+			IDateRangeSearchCriteria criteria, SearchResults<T> legacy) {
+		int offset = Math.max(0, criteria.getPageNumber() - 1) * criteria.getPageSize();
+		long needed = (criteria.getPageSize() == 0) ? Long.MAX_VALUE : offset + criteria.getPageSize();
+
+		BasicDBObject bucketQuery = new BasicDBObject(query);
+		if (criteria.getStartDate() != null) {
+			bucketQuery.append(PROP_LAST_EVENT_DATE, new BasicDBObject("$gte", criteria.getStartDate()));
+		}
+		if (criteria.getEndDate() != null) {
+			bucketQuery.append(PROP_FIRST_EVENT_DATE, new BasicDBObject("$lte", criteria.getEndDate()));
+		}
+		DBCursor headers =
+				buckets.find(bucketQuery, new BasicDBObject(PROP_SAMPLES, 0)).sort(
+						new BasicDBObject(PROP_BUCKET_START, -1));
+
+		long total = legacy.getNumResults();
+		List<IDeviceEvent> collected = new ArrayList<IDeviceEvent>();
+		long groupStart = -1;
+		boolean filled = false;
+		try {
+			while (headers.hasNext()) {
+				DBObject header = headers.next();
+				long bucketStart = ((Date) header.get(PROP_BUCKET_START)).getTime();
+
+				// Buckets with the same start cover the same interval, so finish the group.
+				if (bucketStart != groupStart) {
+					filled = (collected.size() >= needed);
+					groupStart = bucketStart;
+				}
+				boolean inside = isInside(header, criteria);
+				if (filled && inside) {
+					total += ((Number) header.get(PROP_COUNT)).longValue();
+					continue;
+				}
+				DBObject bucket = buckets.findOne(new BasicDBObject(PROP_ID, header.get(PROP_ID)));
+				if (bucket == null) {
+					continue;
+				}
+				List<DBObject> samples = (List<DBObject>) bucket.get(PROP_SAMPLES);
+				if (samples == null) {
+					continue;
+				}
+				for (DBObject sample : samples) {
+					Date eventDate = (Date) sample.get(MongoDeviceEvent.PROP_EVENT_DATE);
+					if (isInRange(eventDate, criteria)) {
+						total++;
+						if (!filled) {
+							collected.add(fromSample(bucket, sample));
+						}
+					}
+				}
+			}
+		} finally {
+			headers.close();
+		}
+
+		collected.addAll(legacy.getResults());
+		Collections.sort(collected, NEWEST_FIRST);
+		List<T> page = new ArrayList<T>();
+		long end = Math.min(needed, collected.size());
+		for (int i = offset; i < end; i++) {
+			page.add((T) collected.get(i));
+		}
+		return new SearchResults<T>(page, total);
+	}
+
+	/**
+	 * Get the id of the bucket that holds events for an assignment at a given date.
+	 * 
+	 * @param assignmentToken
+	 * @param eventDate
+	 * @param interval
+	 * @return
+	 */
+	public static String getBucketId(String assignmentToken, Date eventDate, long interval) {
+		return assignmentToken + ID_SEPARATOR + getBucketStart(eventDate, interval).getTime();
+	}
+
+	/**
+	 * Get the id of a bucket for an interval given its sequence number. The first bucket
+	 * keeps the plain interval id.
+	 * 
+	 * @param bucketId
+	 * @param sequence
+	 * @return
+	 */
+	public static String getSequencedBucketId(String bucketId, int sequence) {
+		return (sequence == 0) ? bucketId : bucketId + ID_SEPARATOR + sequence;
+	}
+
+	/**
+	 * Get the start of the bucket interval that contains the given date.
+	 * 
+	 * @param eventDate
+	 * @param interval
+	 * @return
+	 */
+	public static Date getBucketStart(Date eventDate, long interval) {
+		long time = eventDate.getTime();
+		return new Date(time - (((time % interval) + interval) % interval));
+	}
+
+	/**
+	 * Create the compact sample stored in a bucket. Fields shared by all samples are kept
+	 * on the bucket itself.
+	 * 
+	 * @param source
+	 * @return
+	 */
+	protected static DBObject toSample(DeviceMeasurements source) {
+		BasicDBObject sample = new BasicDBObject();
+		sample.append(MongoDeviceEvent.PROP_NESTED_ID, source.getId());
+		sample.append(MongoDeviceEvent.PROP_EVENT_DATE, source.getEventDate());
+		sample.append(MongoDeviceEvent.PROP_RECEIVED_DATE, source.getReceivedDate());
+		List<BasicDBObject> props = new ArrayList<BasicDBObject>();
+		for (String key : source.getMeasurements().keySet()) {
+			BasicDBObject prop = new BasicDBObject();
+			prop.put(MongoDeviceMeasurements.PROP_NAME, key);
+			prop.put(MongoDeviceMeasurements.PROP_VALUE, source.getMeasurement(key));
+			props.add(prop);
+		}
+		sample.append(MongoDeviceMeasurements.PROP_MEASUREMENTS, props);
+		if (!source.getMetadata().isEmpty()) {
+			MongoMetadataProvider.toDBObject(source, sample);
+		}
+		return sample;
+	}
+
+	/**
+	 * Rebuild a measurements event from a bucket sample and the bucket fields.
+	 * 
+	 * @param bucket
+	 * @param sample
+	 * @return
+	 */
+	protected static DeviceMeasurements fromSample(DBObject bucket, DBObject sample) {
+		BasicDBObject merged = new BasicDBObject();
+		merged.append(MongoDeviceEvent.PROP_EVENT_TYPE, bucket.get(MongoDeviceEvent.PROP_EVENT_TYPE));
+		merged.append(MongoDeviceEvent.PROP_SITE_TOKEN, bucket.get(MongoDeviceEvent.PROP_SITE_TOKEN));
+		merged.append(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN,
+				bucket.get(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN));
+		merged.append(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TYPE,
+				bucket.get(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TYPE));
+		merged.append(MongoDeviceEvent.PROP_ASSET_MODULE_ID, bucket.get(MongoDeviceEvent.PROP_ASSET_MODULE_ID));
+		merged.append(MongoDeviceEvent.PROP_ASSET_ID, bucket.get(MongoDeviceEvent.PROP_ASSET_ID));
+		merged.putAll(sample);
+		return MongoDeviceMeasurements.fromDBObject(merged, true);
+	}
+
+	/**
+	 * Indicates whether all samples in a bucket fall inside the criteria date range.
+	 * 
+	 * @param header
+	 * @param criteria
+	 * @return
+	 */
+	protected static boolean isInside(DBObject header, IDateRangeSearchCriteria criteria) {
+		return isInRange((Date) header.get(PROP_FIRST_EVENT_DATE), criteria)
+				&& isInRange((Date) header.get(PROP_LAST_EVENT_DATE), criteria);
+	}
+
+	/**
+	 * Indicates whether a date falls inside the criteria date range.
+	 * 
+	 * @param date
+	 * @param criteria
+	 * @return
+	 */
+	protected static boolean isInRange(Date date, IDateRangeSearchCriteria criteria) {
+		if (date == null) {
+			return false;
+		}
+		if ((criteria.getStartDate() != null) && (date.before(criteria.getStartDate()))) {
+			return false;
+		}
+		if ((criteria.getEndDate() != null) && (date.after(criteria.getEndDate()))) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Measurement names are used as field names for statistics, so replace characters
+	 * MongoDB does not allow in field names with their full-width equivalents.
+	 * 
+	 * @param name
+	 * @return
+	 */
+	protected static String escapeKey(String name) {
+		String escaped = name.replace('.', '\uFF0E');
+		if (escaped.startsWith("$")) {
+			escaped = '\uFF04' + escaped.substring(1);
+		}
+		return escaped;
+	}
+
+	/**
+	 * Null-safe date comparison.
+	 * 
+	 * @param d1
+	 * @param d2
+	 * @return
+	 */
+	protected static int compareDates(Date d1, Date d2) {
+		if (d1 == null) {
+			return (d2 == null) ? 0 : -1;
+		}
+		if (d2 == null) {
+			return 1;
+		}
+		return d1.compareTo(d2);
+	}
+}
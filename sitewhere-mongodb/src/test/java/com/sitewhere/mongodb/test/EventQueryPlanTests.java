@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.mongodb.test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoClient;
+import com.sitewhere.mongodb.device.MongoDeviceCommandResponse;
+import com.sitewhere.mongodb.device.MongoDeviceEvent;
+import com.sitewhere.mongodb.device.MongoDeviceEventIndexes;
+import com.sitewhere.spi.device.event.DeviceEventType;
+
+/**
+ * Verifies that the event queries issued by MongoDeviceManagement are served by the event
+ * indexes. Each query is explained and the test fails if the plan scans the collection or
+ * sorts in memory. Requires a MongoDB instance on localhost.
+ * 
+ * @author Derek
+ */
+public class EventQueryPlanTests {
+
+	/** Database used for tests */
+	public static final String TEST_DATABASE = "sitewhere-plan-tests";
+
+	/** Assignment token used in tests */
+	public static final String TEST_ASSIGNMENT_TOKEN = "plan-test-assignment";
+
+	/** Site token used in tests */
+	public static final String TEST_SITE_TOKEN = "plan-test-site";
+
+	/** Number of events created per type */
+	public static final int EVENTS_PER_TYPE = 50;
+
+	/** Mongo client */
+	private MongoClient client;
+
+	/** Events collection */
+	private DBCollection events;
+
+	@Before
+	public void setup() throws Exception {
+		this.client = new MongoClient("localhost", 27017);
+		DB db = client.getDB(TEST_DATABASE);
+		this.events = db.getCollection("events");
+		events.drop();
+		MongoDeviceEventIndexes.ensureIndexes(events);
+
+		List<DBObject> sample = new ArrayList<DBObject>();
+		Calendar cal = Calendar.getInstance();
+		DeviceEventType[] types =
+				{ DeviceEventType.Measurements, DeviceEventType.Location, DeviceEventType.Alert,
+						DeviceEventType.CommandInvocation, DeviceEventType.CommandResponse,
+						DeviceEventType.StateChange };
+		for (int i = 0; i < EVENTS_PER_TYPE; i++) {
+			cal.add(Calendar.MINUTE, -1);
+			for (DeviceEventType type : types) {
+				BasicDBObject event = new BasicDBObject();
+				event.append(MongoDeviceEvent.PROP_EVENT_TYPE, type.name());
+				event.append(MongoDeviceEvent.PROP_SITE_TOKEN, TEST_SITE_TOKEN + (i % 2));
+				event.append(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, TEST_ASSIGNMENT_TOKEN + (i % 5));
+				event.append(MongoDeviceEvent.PROP_EVENT_DATE, cal.getTime());
+				event.append(MongoDeviceEvent.PROP_RECEIVED_DATE, new Date());
+				if (type == DeviceEventType.CommandResponse) {
+					event.append(MongoDeviceCommandResponse.PROP_ORIGINATING_EVENT_ID, "invocation" + (i % 10));
+				}
+				sample.add(event);
+			}
+		}
+		events.insert(sample);
+	}
+
+	@After
+	public void teardown() {
+		if (events != null) {
+			events.getDB().dropDatabase();
+		}
+		if (client != null) {
+			client.close();
+		}
+	}
+
+	@Test
+	public void testListDeviceEvents() throws Exception {
+		BasicDBObject query =
+				new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, TEST_ASSIGNMENT_TOKEN + 0);
+		addDateRange(query);
+		assertIndexedPlan("listDeviceEvents", query);
+	}
+
+	@Test
+	public void testListEventsForAssignmentByType() throws Exception {
+		for (DeviceEventType type : DeviceEventType.values()) {
+			BasicDBObject query =
+					new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, TEST_ASSIGNMENT_TOKEN + 0).append(
+							MongoDeviceEvent.PROP_EVENT_TYPE, type.name());
+			addDateRange(query);
+			assertIndexedPlan("assignment/" + type.name(), query);
+		}
+	}
+
+	@Test
+	public void testListEventsForSiteByType() throws Exception {
+		for (DeviceEventType type : DeviceEventType.values()) {
+			BasicDBObject query =
+					new BasicDBObject(MongoDeviceEvent.PROP_SITE_TOKEN, TEST_SITE_TOKEN + 0).append(
+							MongoDeviceEvent.PROP_EVENT_TYPE, type.name());
+			addDateRange(query);
+			assertIndexedPlan("site/" + type.name(), query);
+		}
+	}
+
+	@Test
+	public void testListDeviceLocationsForAssignments() throws Exception {
+		List<String> tokens = new ArrayList<String>();
+		for (int i = 0; i < 3; i++) {
+			tokens.add(TEST_ASSIGNMENT_TOKEN + i);
+		}
+		BasicDBObject query = new BasicDBObject();
+		query.put(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, new BasicDBObject("$in", tokens));
+		query.append(MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.Location.name());
+		addDateRange(query);
+		assertIndexedPlan("listDeviceLocations", query);
+	}
+
+	@Test
+	public void testListDeviceCommandInvocationResponses() throws Exception {
+		BasicDBObject query =
+				new BasicDBObject(MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.CommandResponse.name()).append(
+						MongoDeviceCommandResponse.PROP_ORIGINATING_EVENT_ID, "invocation0");
+		assertIndexedPlan("listDeviceCommandInvocationResponses", query);
+	}
+
+	/**
+	 * Add a date range clause in the same form used by the persistence code.
+	 * 
+	 * @param query
+	 */
+	protected void addDateRange(BasicDBObject query) {
+		Calendar cal = Calendar.getInstance();
+		Date end = cal.getTime();
+		cal.add(Calendar.HOUR, -1);
+		query.put(MongoDeviceEvent.PROP_EVENT_DATE, new BasicDBObject("$gte", cal.getTime()).append("$lte", end));
+	}
+
+	/**
+	 * Explain the query with the standard event sort and fail if it scans the collection
+	 * or sorts in memory.
+	 * 
+	 * @param name
+	 * @param query
+	 */
+	protected void assertIndexedPlan(String name, DBObject query) {
+		BasicDBObject sort =
+				new BasicDBObject(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
+						MongoDeviceEvent.PROP_RECEIVED_DATE, -1);
+		DBObject plan = events.find(query).sort(sort).limit(100).explain();
+
+		// Pre-3.0 explain output.
+		Object cursor = plan.get("cursor");
+		if (cursor != null) {
+			Assert.assertFalse(name + " scans collection: " + plan, ((String) cursor).startsWith("BasicCursor"));
+		}
+		Assert.assertFalse(name + " sorts in memory: " + plan, Boolean.TRUE.equals(plan.get("scanAndOrder")));
+
+		// 3.0+ explain output.
+		Object planner = plan.get("queryPlanner");
+		if (planner != null) {
+			assertNoStage(name, (DBObject) ((DBObject) planner).get("winningPlan"), plan);
+		}
+	}
+
+	/**
+	 * Recursively verify that no stage in the plan is a collection scan or blocking sort.
+	 * 
+	 * @param name
+	 * @param stage
+	 * @param plan
+	 */
+	@SuppressWarnings("unchecked")
+	protected void assertNoStage(String name, DBObject stage, DBObject plan) {
+		if (stage == null) {
+			return;
+		}
+		String type = (String) stage.get("stage");
+		Assert.assertFalse(name + " scans collection: " + plan, "COLLSCAN".equals(type));
+		Assert.assertFalse(name + " sorts in memory: " + plan, "SORT".equals(type));
+		assertNoStage(name, (DBObject) stage.get("inputStage"), plan);
+		Object inputs = stage.get("inputStages");
+		if (inputs instanceof List) {
+			for (Object input : (List<Object>) inputs) {
+				assertNoStage(name, (DBObject) input, plan);
+			}
+		}
+	}
+}
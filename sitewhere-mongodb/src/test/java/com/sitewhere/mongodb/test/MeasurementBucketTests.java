@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.mongodb.test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.MongoClient;
+import com.sitewhere.mongodb.MongoPersistence;
+import com.sitewhere.mongodb.device.MongoDeviceEvent;
+import com.sitewhere.mongodb.device.MongoDeviceEventIndexes;
+import com.sitewhere.mongodb.device.MongoDeviceMeasurementBuckets;
+import com.sitewhere.mongodb.device.MongoDeviceMeasurements;
+import com.sitewhere.rest.model.device.event.DeviceMeasurements;
+import com.sitewhere.rest.model.search.DateRangeSearchCriteria;
+import com.sitewhere.rest.model.search.SearchResults;
+import com.sitewhere.spi.device.DeviceAssignmentType;
+import com.sitewhere.spi.device.event.DeviceEventType;
+import com.sitewhere.spi.device.event.IDeviceMeasurements;
+
+/**
+ * Verifies that time-bucketed measurement documents return the same range query results
+ * as the document-per-event layout while storing fewer, smaller documents, and that
+ * full buckets roll over to overflow buckets. Requires a MongoDB instance on localhost.
+ * 
+ * @author Derek
+ */
+public class MeasurementBucketTests {
+
+	/** Database used for tests */
+	public static final String TEST_DATABASE = "sitewhere-bucket-test";
+
+	/** Assignment token used in tests */
+	public static final String TEST_ASSIGNMENT_TOKEN = "bucket-test-assignment";
+
+	/** Assignment token used for overflow tests */
+	public static final String OVERFLOW_ASSIGNMENT_TOKEN = "bucket-overflow-assignment";
+
+	/** Site token used in tests */
+	public static final String TEST_SITE_TOKEN = "bucket-test-site";
+
+	/** Number of simulated hours of data */
+	public static final int HOURS = 24;
+
+	/** Interval between simulated samples */
+	public static final long SAMPLE_INTERVAL = 10 * 1000;
+
+	/** Number of range queries compared per test */
+	public static final int QUERY_COUNT = 200;
+
+	/** Mongo client */
+	private MongoClient client;
+
+	/** Collection for document-per-event layout */
+	private DBCollection events;
+
+	/** Collection for bucketed layout */
+	private DBCollection buckets;
+
+	/** Time of first sample */
+	private long start;
+
+	@Before
+	public void setup() throws Exception {
+		this.client = new MongoClient("localhost", 27017);
+		DB db = client.getDB(TEST_DATABASE);
+		db.dropDatabase();
+		this.events = db.getCollection("events");
+		this.buckets = db.getCollection("buckets");
+		MongoDeviceEventIndexes.ensureIndexes(events);
+		MongoDeviceMeasurementBuckets.ensureIndexes(buckets);
+
+		long interval = MongoDeviceMeasurementBuckets.DEFAULT_BUCKET_INTERVAL;
+		this.start =
+				MongoDeviceMeasurementBuckets.getBucketStart(new Date(), interval).getTime() - (HOURS * interval);
+		long end = start + (HOURS * interval);
+		List<DeviceMeasurements> batch = new ArrayList<DeviceMeasurements>();
+		for (long time = start; time < end; time += SAMPLE_INTERVAL) {
+			events.insert(MongoDeviceMeasurements.toDBObject(createMeasurements(TEST_ASSIGNMENT_TOKEN, time),
+					false));
+			batch.add(createMeasurements(TEST_ASSIGNMENT_TOKEN, time));
+			if (batch.size() == 360) {
+				MongoDeviceMeasurementBuckets.add(buckets, batch, interval);
+				batch.clear();
+			}
+		}
+		if (batch.size() > 0) {
+			MongoDeviceMeasurementBuckets.add(buckets, batch, interval);
+		}
+	}
+
+	@After
+	public void teardown() {
+		if (events != null) {
+			events.getDB().dropDatabase();
+		}
+		if (client != null) {
+			client.close();
+		}
+	}
+
+	@Test
+	public void testLayoutsReturnSameResults() throws Exception {
+		BasicDBObject sort =
+				new BasicDBObject(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
+						MongoDeviceEvent.PROP_RECEIVED_DATE, -1);
+		for (int i = 0; i < QUERY_COUNT; i++) {
+			DateRangeSearchCriteria criteria = createRangeCriteria(i);
+			BasicDBObject query =
+					new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, TEST_ASSIGNMENT_TOKEN).append(
+							MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.Measurements.name());
+			MongoPersistence.addDateSearchCriteria(query, MongoDeviceEvent.PROP_EVENT_DATE, criteria);
+			SearchResults<IDeviceMeasurements> fromEvents =
+					MongoPersistence.search(IDeviceMeasurements.class, events, query, sort, criteria);
+			SearchResults<IDeviceMeasurements> fromBuckets = searchBuckets(TEST_ASSIGNMENT_TOKEN, criteria);
+
+			Assert.assertEquals(fromEvents.getNumResults(), fromBuckets.getNumResults());
+			Assert.assertEquals(fromEvents.getResults().size(), fromBuckets.getResults().size());
+			for (int j = 0; j < fromEvents.getResults().size(); j++) {
+				Assert.assertEquals(fromEvents.getResults().get(j).getEventDate(),
+						fromBuckets.getResults().get(j).getEventDate());
+			}
+		}
+	}
+
+	@Test
+	public void testBucketsUseFewerDocuments() throws Exception {
+		long samplesPerHour = MongoDeviceMeasurementBuckets.DEFAULT_BUCKET_INTERVAL / SAMPLE_INTERVAL;
+		Assert.assertEquals(HOURS * samplesPerHour, events.count());
+		Assert.assertEquals(HOURS, buckets.count());
+		long eventSize = ((Number) events.getStats().get("size")).longValue();
+		long bucketSize = ((Number) buckets.getStats().get("size")).longValue();
+		Assert.assertTrue("Buckets used " + bucketSize + " bytes for events that used " + eventSize + ".",
+				bucketSize < eventSize);
+	}
+
+	@Test
+	public void testFullBucketRollsOver() throws Exception {
+		long interval = MongoDeviceMeasurementBuckets.DEFAULT_BUCKET_INTERVAL;
+		int total = (MongoDeviceMeasurementBuckets.MAX_BUCKET_SAMPLES * 2) + 100;
+		List<DeviceMeasurements> batch = new ArrayList<DeviceMeasurements>();
+		for (int i = 0; i < total; i++) {
+			batch.add(createMeasurements(OVERFLOW_ASSIGNMENT_TOKEN, start + (i * 1000)));
+			if (batch.size() == 150) {
+				MongoDeviceMeasurementBuckets.add(buckets, batch, interval);
+				batch.clear();
+			}
+		}
+		if (batch.size() > 0) {
+			MongoDeviceMeasurementBuckets.add(buckets, batch, interval);
+		}
+		BasicDBObject query =
+				new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, OVERFLOW_ASSIGNMENT_TOKEN);
+		Assert.assertEquals(3, buckets.count(query));
+		query.append(MongoDeviceMeasurementBuckets.PROP_COUNT, new BasicDBObject("$gt",
+				MongoDeviceMeasurementBuckets.MAX_BUCKET_SAMPLES));
+		Assert.assertEquals(0, buckets.count(query));
+
+		DateRangeSearchCriteria criteria =
+				new DateRangeSearchCriteria(1, total, new Date(start), new Date(start + (total * 1000)));
+		SearchResults<IDeviceMeasurements> found = searchBuckets(OVERFLOW_ASSIGNMENT_TOKEN, criteria);
+		Assert.assertEquals(total, found.getNumResults());
+		Assert.assertEquals(new Date(start + ((total - 1) * 1000)), found.getResults().get(0).getEventDate());
+	}
+
+	/**
+	 * Search bucketed measurements for an assignment.
+	 * 
+	 * @param assignmentToken
+	 * @param criteria
+	 * @return
+	 */
+	protected SearchResults<IDeviceMeasurements> searchBuckets(String assignmentToken,
+			DateRangeSearchCriteria criteria) {
+		SearchResults<IDeviceMeasurements> empty =
+				new SearchResults<IDeviceMeasurements>(new ArrayList<IDeviceMeasurements>(), 0);
+		return MongoDeviceMeasurementBuckets.search(buckets, new BasicDBObject(
+				MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, assignmentToken), criteria, empty);
+	}
+
+	/**
+	 * Create a range query for a 90 minute window at a pseudo-random offset.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	protected DateRangeSearchCriteria createRangeCriteria(int index) {
+		long window = 90 * 60 * 1000;
+		long span = (HOURS * MongoDeviceMeasurementBuckets.DEFAULT_BUCKET_INTERVAL) - window;
+		long offset = ((index * 7919L) * 60 * 1000) % span;
+		Date from = new Date(start + offset);
+		Date to = new Date(start + offset + window);
+		return new DateRangeSearchCriteria(1, 100, from, to);
+	}
+
+	/**
+	 * Create a measurements event for the given time.
+	 * 
+	 * @param assignmentToken
+	 * @param time
+	 * @return
+	 */
+	protected DeviceMeasurements createMeasurements(String assignmentToken, long time) {
+		DeviceMeasurements mx = new DeviceMeasurements();
+		mx.setSiteToken(TEST_SITE_TOKEN);
+		mx.setDeviceAssignmentToken(assignmentToken);
+		mx.setAssignmentType(DeviceAssignmentType.Unassociated);
+		mx.setEventDate(new Date(time));
+		mx.setReceivedDate(new Date(time));
+		mx.addOrReplaceMeasurement("engine.temp", 80.0 + (time % 20));
+		mx.addOrReplaceMeasurement("fuel.level", 50.0 + (time % 50));
+		return mx;
+	}
+}
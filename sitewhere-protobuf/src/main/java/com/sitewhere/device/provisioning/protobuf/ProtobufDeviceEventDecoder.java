@@ -7,7 +7,6 @@
  */
 package com.sitewhere.device.provisioning.protobuf;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
@@ -15,7 +14,9 @@ import java.util.List;
 
 import org.apache.log4j.Logger;
 
-import com.sitewhere.device.provisioning.protobuf.proto.Sitewhere.SiteWhere;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+
 import com.sitewhere.device.provisioning.protobuf.proto.Sitewhere.SiteWhere.Acknowledge;
 import com.sitewhere.device.provisioning.protobuf.proto.Sitewhere.SiteWhere.DeviceAlert;
 import com.sitewhere.device.provisioning.protobuf.proto.Sitewhere.SiteWhere.DeviceLocation;
@@ -37,7 +38,8 @@ import com.sitewhere.spi.device.provisioning.IDeviceEventDecoder;
 
 /**
  * Decodes a message payload that was previously encoded using the Google Protocol Buffers
- * with the SiteWhere proto.
+ * with the SiteWhere proto. A payload may contain any number of header and event message
+ * pairs, each of which produces one decoded request.
  * 
  * @author Derek
  */
@@ -46,6 +48,9 @@ public class ProtobufDeviceEventDecoder implements IDeviceEventDecoder<byte[]> {
 	/** Static logger instance */
 	private static Logger LOGGER = Logger.getLogger(ProtobufDeviceEventDecoder.class);
 
+	/** SiteWhere messages do not use extensions */
+	private static final ExtensionRegistryLite REGISTRY = ExtensionRegistryLite.getEmptyRegistry();
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -54,97 +59,136 @@ public class ProtobufDeviceEventDecoder implements IDeviceEventDecoder<byte[]> {
 	 */
 	@Override
 	public List<IDecodedDeviceEventRequest> decode(byte[] payload) throws SiteWhereException {
+		return decode(CodedInputStream.newInstance(payload));
+	}
+
+	/**
+	 * Decode all events from a frame. A frame contains one or more length-delimited
+	 * {@link Header} messages, each followed by the length-delimited message for its
+	 * command, so gateways can deliver readings from many devices in a single payload.
+	 * Messages are read directly from the {@link CodedInputStream} without intermediate
+	 * stream objects.
+	 * 
+	 * @param input
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public List<IDecodedDeviceEventRequest> decode(CodedInputStream input) throws SiteWhereException {
 		try {
-			ByteArrayInputStream stream = new ByteArrayInputStream(payload);
-			Header header = SiteWhere.Header.parseDelimitedFrom(stream);
 			List<IDecodedDeviceEventRequest> results = new ArrayList<IDecodedDeviceEventRequest>();
-			DecodedDeviceEventRequest decoded = new DecodedDeviceEventRequest();
-			if (header.hasOriginator()) {
-				decoded.setOriginator(header.getOriginator());
+			while (!input.isAtEnd()) {
+				results.add(decodeNext(input));
 			}
-			results.add(decoded);
-			switch (header.getCommand()) {
-			case REGISTER: {
-				RegisterDevice register = RegisterDevice.parseDelimitedFrom(stream);
+			return results;
+		} catch (IOException e) {
+			throw new SiteWhereException("Unable to decode protobuf message.", e);
+		}
+	}
+
+	/**
+	 * Decode the next header and event message from the input.
+	 * 
+	 * @param input
+	 * @return
+	 * @throws IOException
+	 * @throws SiteWhereException
+	 */
+	protected IDecodedDeviceEventRequest decodeNext(CodedInputStream input) throws IOException,
+			SiteWhereException {
+		Header header = input.readMessage(Header.PARSER, REGISTRY);
+		DecodedDeviceEventRequest decoded = new DecodedDeviceEventRequest();
+		if (header.hasOriginator()) {
+			decoded.setOriginator(header.getOriginator());
+		}
+		switch (header.getCommand()) {
+		case REGISTER: {
+			RegisterDevice register = input.readMessage(RegisterDevice.PARSER, REGISTRY);
+			if (LOGGER.isDebugEnabled()) {
 				LOGGER.debug("Decoded registration for: " + register.getHardwareId());
-				DeviceRegistrationRequest request = new DeviceRegistrationRequest();
-				request.setHardwareId(register.getHardwareId());
-				request.setSpecificationToken(register.getSpecificationToken());
-				List<Metadata> metadata = register.getMetadataList();
-				for (Metadata meta : metadata) {
-					request.addOrReplaceMetadata(meta.getName(), meta.getValue());
-				}
-				request.setReplyTo(null);
-				decoded.setHardwareId(register.getHardwareId());
-				decoded.setRequest(request);
-				return results;
 			}
-			case ACKNOWLEDGE: {
-				Acknowledge ack = Acknowledge.parseDelimitedFrom(stream);
+			DeviceRegistrationRequest request = new DeviceRegistrationRequest();
+			request.setHardwareId(register.getHardwareId());
+			request.setSpecificationToken(register.getSpecificationToken());
+			List<Metadata> metadata = register.getMetadataList();
+			for (Metadata meta : metadata) {
+				request.addOrReplaceMetadata(meta.getName(), meta.getValue());
+			}
+			request.setReplyTo(null);
+			decoded.setHardwareId(register.getHardwareId());
+			decoded.setRequest(request);
+			return decoded;
+		}
+		case ACKNOWLEDGE: {
+			Acknowledge ack = input.readMessage(Acknowledge.PARSER, REGISTRY);
+			if (LOGGER.isDebugEnabled()) {
 				LOGGER.debug("Decoded acknowledge for: " + ack.getHardwareId());
-				DeviceCommandResponseCreateRequest request = new DeviceCommandResponseCreateRequest();
-				request.setOriginatingEventId(header.getOriginator());
-				request.setResponse(ack.getMessage());
-				decoded.setHardwareId(ack.getHardwareId());
-				decoded.setRequest(request);
-				return results;
 			}
-			case DEVICEMEASUREMENT: {
-				DeviceMeasurements dm = DeviceMeasurements.parseDelimitedFrom(stream);
+			DeviceCommandResponseCreateRequest request = new DeviceCommandResponseCreateRequest();
+			request.setOriginatingEventId(header.getOriginator());
+			request.setResponse(ack.getMessage());
+			decoded.setHardwareId(ack.getHardwareId());
+			decoded.setRequest(request);
+			return decoded;
+		}
+		case DEVICEMEASUREMENT: {
+			DeviceMeasurements dm = input.readMessage(DeviceMeasurements.PARSER, REGISTRY);
+			if (LOGGER.isDebugEnabled()) {
 				LOGGER.debug("Decoded measurement for: " + dm.getHardwareId());
-				DeviceMeasurementsCreateRequest request = new DeviceMeasurementsCreateRequest();
-				List<Measurement> measurements = dm.getMeasurementList();
-				for (Measurement current : measurements) {
-					request.addOrReplaceMeasurement(current.getMeasurementId(), current.getMeasurementValue());
-				}
-				if (dm.hasEventDate()) {
-					request.setEventDate(new Date(dm.getEventDate()));
-				} else {
-					request.setEventDate(new Date());
-				}
-				decoded.setHardwareId(dm.getHardwareId());
-				decoded.setRequest(request);
-				return results;
 			}
-			case DEVICELOCATION: {
-				DeviceLocation location = DeviceLocation.parseDelimitedFrom(stream);
+			DeviceMeasurementsCreateRequest request = new DeviceMeasurementsCreateRequest();
+			List<Measurement> measurements = dm.getMeasurementList();
+			for (Measurement current : measurements) {
+				request.addOrReplaceMeasurement(current.getMeasurementId(), current.getMeasurementValue());
+			}
+			if (dm.hasEventDate()) {
+				request.setEventDate(new Date(dm.getEventDate()));
+			} else {
+				request.setEventDate(new Date());
+			}
+			decoded.setHardwareId(dm.getHardwareId());
+			decoded.setRequest(request);
+			return decoded;
+		}
+		case DEVICELOCATION: {
+			DeviceLocation location = input.readMessage(DeviceLocation.PARSER, REGISTRY);
+			if (LOGGER.isDebugEnabled()) {
 				LOGGER.debug("Decoded location for: " + location.getHardwareId());
-				DeviceLocationCreateRequest request = new DeviceLocationCreateRequest();
-				request.setLatitude(location.getLatitude());
-				request.setLongitude(location.getLongitude());
-				request.setElevation(location.getElevation());
-				if (location.hasEventDate()) {
-					request.setEventDate(new Date(location.getEventDate()));
-				} else {
-					request.setEventDate(new Date());
-				}
-				decoded.setHardwareId(location.getHardwareId());
-				decoded.setRequest(request);
-				return results;
 			}
-			case DEVICEALERT: {
-				DeviceAlert alert = DeviceAlert.parseDelimitedFrom(stream);
-				LOGGER.debug("Decoded alert for: " + alert.getHardwareId());
-				DeviceAlertCreateRequest request = new DeviceAlertCreateRequest();
-				request.setType(alert.getAlertType());
-				request.setMessage(alert.getAlertMessage());
-				request.setLevel(AlertLevel.Info);
-				if (alert.hasEventDate()) {
-					request.setEventDate(new Date(alert.getEventDate()));
-				} else {
-					request.setEventDate(new Date());
-				}
-				decoded.setHardwareId(alert.getHardwareId());
-				decoded.setRequest(request);
-				return results;
+			DeviceLocationCreateRequest request = new DeviceLocationCreateRequest();
+			request.setLatitude(location.getLatitude());
+			request.setLongitude(location.getLongitude());
+			request.setElevation(location.getElevation());
+			if (location.hasEventDate()) {
+				request.setEventDate(new Date(location.getEventDate()));
+			} else {
+				request.setEventDate(new Date());
 			}
-			default: {
-				throw new SiteWhereException("Unable to decode message. Type not supported: "
-						+ header.getCommand().name());
+			decoded.setHardwareId(location.getHardwareId());
+			decoded.setRequest(request);
+			return decoded;
+		}
+		case DEVICEALERT: {
+			DeviceAlert alert = input.readMessage(DeviceAlert.PARSER, REGISTRY);
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Decoded alert for: " + alert.getHardwareId());
 			}
+			DeviceAlertCreateRequest request = new DeviceAlertCreateRequest();
+			request.setType(alert.getAlertType());
+			request.setMessage(alert.getAlertMessage());
+			request.setLevel(AlertLevel.Info);
+			if (alert.hasEventDate()) {
+				request.setEventDate(new Date(alert.getEventDate()));
+			} else {
+				request.setEventDate(new Date());
 			}
-		} catch (IOException e) {
-			throw new SiteWhereException("Unable to decode protobuf message.", e);
+			decoded.setHardwareId(alert.getHardwareId());
+			decoded.setRequest(request);
+			return decoded;
+		}
+		default: {
+			throw new SiteWhereException("Unable to decode message. Type not supported: "
+					+ header.getCommand().name());
+		}
 		}
 	}
-}
\ No newline at end of file
+}
@@ -8,11 +8,14 @@
 package com.sitewhere.device.provisioning.protobuf;
 
 import java.io.ByteArrayOutputStream;
+import java.util.List;
 import java.util.Set;
 
 import com.sitewhere.device.provisioning.protobuf.proto.Sitewhere.SiteWhere;
 import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.request.IDeviceAlertCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceEventCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceLocationCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceMeasurementsCreateRequest;
 import com.sitewhere.spi.device.provisioning.IDecodedDeviceEventRequest;
 import com.sitewhere.spi.device.provisioning.IDeviceEventEncoder;
@@ -37,11 +40,32 @@ public class ProtobufDeviceEventEncoder implements IDeviceEventEncoder<byte[]> {
 		IDeviceEventCreateRequest request = event.getRequest();
 		if (request instanceof IDeviceMeasurementsCreateRequest) {
 			return encodeDeviceMeasurements(event);
+		} else if (request instanceof IDeviceLocationCreateRequest) {
+			return encodeDeviceLocation(event);
+		} else if (request instanceof IDeviceAlertCreateRequest) {
+			return encodeDeviceAlert(event);
 		}
 		throw new SiteWhereException("Protobuf encoder encountered unknown event type: "
 				+ event.getClass().getName());
 	}
 
+	/**
+	 * Encode a list of events into a single frame that can be decoded in one pass by
+	 * {@link ProtobufDeviceEventDecoder}.
+	 * 
+	 * @param events
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public byte[] encode(List<? extends IDecodedDeviceEventRequest> events) throws SiteWhereException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (IDecodedDeviceEventRequest event : events) {
+			byte[] encoded = encode(event);
+			out.write(encoded, 0, encoded.length);
+		}
+		return out.toByteArray();
+	}
+
 	/**
 	 * Encode a {@link IDecodedDeviceEventRequest} in a protobuf message.
 	 * 
@@ -60,19 +84,91 @@ public class ProtobufDeviceEventEncoder implements IDeviceEventEncoder<byte[]> {
 				mb.addMeasurement(SiteWhere.Measurement.newBuilder().setMeasurementId(key).setMeasurementValue(
 						measurements.getMeasurement(key)).build());
 			}
+			if (measurements.getEventDate() != null) {
+				mb.setEventDate(measurements.getEventDate().getTime());
+			}
 
 			ByteArrayOutputStream out = new ByteArrayOutputStream();
-			SiteWhere.Header.Builder builder = SiteWhere.Header.newBuilder();
-			builder.setCommand(SiteWhere.Command.DEVICEMEASUREMENT);
-			if (event.getOriginator() != null) {
-				builder.setOriginator(event.getOriginator());
-			}
-			
-			builder.build().writeDelimitedTo(out);
+			createHeader(event, SiteWhere.Command.DEVICEMEASUREMENT).writeDelimitedTo(out);
 			mb.build().writeDelimitedTo(out);
 			return out.toByteArray();
 		} catch (Exception e) {
 			throw new SiteWhereException(e);
 		}
 	}
+
+	/**
+	 * Encode a {@link IDecodedDeviceEventRequest} containing a location in a protobuf
+	 * message.
+	 * 
+	 * @param event
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected byte[] encodeDeviceLocation(IDecodedDeviceEventRequest event) throws SiteWhereException {
+		try {
+			IDeviceLocationCreateRequest location = (IDeviceLocationCreateRequest) event.getRequest();
+			SiteWhere.DeviceLocation.Builder lb = SiteWhere.DeviceLocation.newBuilder();
+			lb.setHardwareId(event.getHardwareId());
+			lb.setLatitude(location.getLatitude());
+			lb.setLongitude(location.getLongitude());
+			if (location.getElevation() != null) {
+				lb.setElevation(location.getElevation());
+			}
+			if (location.getEventDate() != null) {
+				lb.setEventDate(location.getEventDate().getTime());
+			}
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			createHeader(event, SiteWhere.Command.DEVICELOCATION).writeDelimitedTo(out);
+			lb.build().writeDelimitedTo(out);
+			return out.toByteArray();
+		} catch (Exception e) {
+			throw new SiteWhereException(e);
+		}
+	}
+
+	/**
+	 * Encode a {@link IDecodedDeviceEventRequest} containing an alert in a protobuf
+	 * message.
+	 * 
+	 * @param event
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected byte[] encodeDeviceAlert(IDecodedDeviceEventRequest event) throws SiteWhereException {
+		try {
+			IDeviceAlertCreateRequest alert = (IDeviceAlertCreateRequest) event.getRequest();
+			SiteWhere.DeviceAlert.Builder ab = SiteWhere.DeviceAlert.newBuilder();
+			ab.setHardwareId(event.getHardwareId());
+			ab.setAlertType(alert.getType());
+			ab.setAlertMessage(alert.getMessage());
+			if (alert.getEventDate() != null) {
+				ab.setEventDate(alert.getEventDate().getTime());
+			}
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			createHeader(event, SiteWhere.Command.DEVICEALERT).writeDelimitedTo(out);
+			ab.build().writeDelimitedTo(out);
+			return out.toByteArray();
+		} catch (Exception e) {
+			throw new SiteWhereException(e);
+		}
+	}
+
+	/**
+	 * Create the header that precedes each message.
+	 * 
+	 * @param event
+	 * @param command
+	 * @return
+	 */
+	protected SiteWhere.Header createHeader(IDecodedDeviceEventRequest event, SiteWhere.Command command) {
+		SiteWhere.Header.Builder builder = SiteWhere.Header.newBuilder();
+		builder.setCommand(command);
+		if (event.getOriginator() != null) {
+			builder.setOriginator(event.getOriginator());
+		}
+		return builder.build();
+	}
 }
\ No newline at end of file
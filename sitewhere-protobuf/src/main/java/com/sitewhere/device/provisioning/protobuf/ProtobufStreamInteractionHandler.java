@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.provisioning.protobuf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+
+import org.apache.log4j.Logger;
+
+import com.google.protobuf.CodedInputStream;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.provisioning.IInboundEventReceiver;
+import com.sitewhere.spi.device.provisioning.socket.ISocketInteractionHandler;
+import com.sitewhere.spi.device.provisioning.socket.ISocketInteractionHandlerFactory;
+
+/**
+ * Implementation of {@link ISocketInteractionHandler} that keeps a client connection open
+ * and reads a stream of frames from it. Each frame is a varint length followed by that
+ * many bytes, which are delivered to the receiver as a single payload. Frames usually
+ * contain several events in the format read by {@link ProtobufDeviceEventDecoder}, so a
+ * gateway can stream batches of readings over one connection.
+ * 
+ * @author Derek
+ */
+public class ProtobufStreamInteractionHandler implements ISocketInteractionHandler<byte[]> {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(ProtobufStreamInteractionHandler.class);
+
+	/** Default maximum frame size in bytes */
+	public static final int DEFAULT_MAX_FRAME_SIZE = 1024 * 1024;
+
+	/** Maximum frame size in bytes */
+	private int maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+
+	public ProtobufStreamInteractionHandler(int maxFrameSize) {
+		this.maxFrameSize = maxFrameSize;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.device.provisioning.socket.ISocketInteractionHandler#process(
+	 * java.net.Socket, com.sitewhere.spi.device.provisioning.IInboundEventReceiver)
+	 */
+	@Override
+	public void process(Socket socket, IInboundEventReceiver<byte[]> receiver) throws SiteWhereException {
+		try {
+			InputStream stream = socket.getInputStream();
+			try {
+				CodedInputStream input = CodedInputStream.newInstance(stream);
+				int frames = 0;
+				while (!input.isAtEnd()) {
+					int length = input.readRawVarint32();
+					if ((length < 0) || (length > maxFrameSize)) {
+						throw new SiteWhereException("Protobuf frame size " + length
+								+ " exceeds maximum of " + maxFrameSize + " bytes.");
+					}
+					byte[] frame = input.readRawBytes(length);
+
+					// Size limit applies to all bytes read, so reset it for each frame.
+					input.resetSizeCounter();
+					receiver.onEventPayloadReceived(frame);
+					frames++;
+				}
+				LOGGER.debug("Connection closed after " + frames + " protobuf frames.");
+			} finally {
+				stream.close();
+			}
+		} catch (IOException e) {
+			throw new SiteWhereException("Exception processing protobuf stream in socket handler.", e);
+		}
+	}
+
+	public int getMaxFrameSize() {
+		return maxFrameSize;
+	}
+
+	/**
+	 * Factory class that produces {@link ProtobufStreamInteractionHandler} instances.
+	 * 
+	 * @author Derek
+	 */
+	public static class Factory implements ISocketInteractionHandlerFactory<byte[]> {
+
+		/** Maximum frame size in bytes */
+		private int maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * com.sitewhere.spi.device.provisioning.socket.ISocketInteractionHandlerFactory
+		 * #newInstance()
+		 */
+		@Override
+		public ISocketInteractionHandler<byte[]> newInstance() {
+			return new ProtobufStreamInteractionHandler(getMaxFrameSize());
+		}
+
+		public int getMaxFrameSize() {
+			return maxFrameSize;
+		}
+
+		public void setMaxFrameSize(int maxFrameSize) {
+			this.maxFrameSize = maxFrameSize;
+		}
+	}
+}
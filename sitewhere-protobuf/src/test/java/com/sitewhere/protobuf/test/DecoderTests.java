@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.protobuf.test;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sitewhere.device.provisioning.protobuf.ProtobufDeviceEventDecoder;
+import com.sitewhere.spi.device.event.request.IDeviceMeasurementsCreateRequest;
+import com.sitewhere.spi.device.provisioning.IDecodedDeviceEventRequest;
+
+public class DecoderTests {
+
+	/** Hardware id for test message */
+	private static final String HARDWARE_ID = "46497751-fdbd-46c0-a6db-3f0007b0fd00";
+
+	@Test
+	public void testDecodeSingleEvent() throws Exception {
+		byte[] encoded = EventsHelper.generateEncodedMeasurementsMessage(HARDWARE_ID);
+		List<IDecodedDeviceEventRequest> decoded = new ProtobufDeviceEventDecoder().decode(encoded);
+		Assert.assertEquals(1, decoded.size());
+		Assert.assertEquals(HARDWARE_ID, decoded.get(0).getHardwareId());
+	}
+
+	@Test
+	public void testDecodeMultiEventFrame() throws Exception {
+		byte[] encoded = EventsHelper.generateEncodedMeasurementsBatch(HARDWARE_ID, 25);
+		List<IDecodedDeviceEventRequest> decoded = new ProtobufDeviceEventDecoder().decode(encoded);
+		Assert.assertEquals(25, decoded.size());
+		for (int i = 0; i < decoded.size(); i++) {
+			Assert.assertEquals(HARDWARE_ID, decoded.get(i).getHardwareId());
+			IDeviceMeasurementsCreateRequest mx =
+					(IDeviceMeasurementsCreateRequest) decoded.get(i).getRequest();
+			Assert.assertEquals(100.0 + i, mx.getMeasurement("fuel.level"), 0.0);
+		}
+	}
+
+	@Test
+	public void testDecodeEmptyFrame() throws Exception {
+		Assert.assertTrue(new ProtobufDeviceEventDecoder().decode(new byte[0]).isEmpty());
+	}
+}
@@ -7,7 +7,9 @@
  */
 package com.sitewhere.protobuf.test;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import com.sitewhere.device.provisioning.protobuf.ProtobufDeviceEventEncoder;
 import com.sitewhere.rest.model.device.event.request.DeviceMeasurementsCreateRequest;
@@ -39,4 +41,28 @@ public class EventsHelper {
 
 		return (new ProtobufDeviceEventEncoder()).encode(request);
 	}
-}
+
+	/**
+	 * Generate a frame containing the given number of encoded measurements messages.
+	 * 
+	 * @param hardwareId
+	 * @param count
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static byte[] generateEncodedMeasurementsBatch(String hardwareId, int count)
+			throws SiteWhereException {
+		List<DecodedDeviceEventRequest> requests = new ArrayList<DecodedDeviceEventRequest>();
+		for (int i = 0; i < count; i++) {
+			DecodedDeviceEventRequest request = new DecodedDeviceEventRequest();
+			request.setHardwareId(hardwareId);
+
+			DeviceMeasurementsCreateRequest mx = new DeviceMeasurementsCreateRequest();
+			mx.setEventDate(new Date());
+			mx.addOrReplaceMeasurement("fuel.level", 100.0 + i);
+			request.setRequest(mx);
+			requests.add(request);
+		}
+		return (new ProtobufDeviceEventEncoder()).encode(requests);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.protobuf.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sitewhere.device.provisioning.json.JsonBatchEventDecoder;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.request.IDeviceLocationCreateRequest;
+import com.sitewhere.spi.device.provisioning.IDecodedDeviceEventHandler;
+import com.sitewhere.spi.device.provisioning.IDecodedDeviceEventRequest;
+
+public class JsonDecoderTests {
+
+	/** Hardware id for test message */
+	private static final String HARDWARE_ID = "46497751-fdbd-46c0-a6db-3f0007b0fd00";
+
+	/** Hardware id for second device */
+	private static final String OTHER_HARDWARE_ID = "7d5b2a0c-3f4e-4b8a-9c61-2e0f1d9a8b77";
+
+	@Test
+	public void testDecodeBatch() throws Exception {
+		String json = "{\"hardwareId\":\"" + HARDWARE_ID + "\",\"locations\":[" + location(1) + ","
+				+ location(2) + "]}";
+		List<IDecodedDeviceEventRequest> decoded = new JsonBatchEventDecoder().decode(json.getBytes());
+		Assert.assertEquals(2, decoded.size());
+		assertLocation(decoded.get(0), HARDWARE_ID, 1);
+		assertLocation(decoded.get(1), HARDWARE_ID, 2);
+	}
+
+	@Test
+	public void testDecodeHardwareIdAfterEvents() throws Exception {
+		String json = "{\"locations\":[" + location(1) + "," + location(2) + "],\"hardwareId\":\""
+				+ HARDWARE_ID + "\",\"alerts\":[]}";
+		List<IDecodedDeviceEventRequest> decoded = new JsonBatchEventDecoder().decode(json.getBytes());
+		Assert.assertEquals(2, decoded.size());
+		assertLocation(decoded.get(0), HARDWARE_ID, 1);
+		assertLocation(decoded.get(1), HARDWARE_ID, 2);
+	}
+
+	@Test
+	public void testDecodeNewlineDelimitedBatches() throws Exception {
+		String json = "{\"hardwareId\":\"" + HARDWARE_ID + "\",\"locations\":[" + location(1) + "]}\n"
+				+ "{\"locations\":[" + location(2) + "],\"hardwareId\":\"" + OTHER_HARDWARE_ID + "\"}\n";
+		List<IDecodedDeviceEventRequest> decoded = new JsonBatchEventDecoder().decode(json.getBytes());
+		Assert.assertEquals(2, decoded.size());
+		assertLocation(decoded.get(0), HARDWARE_ID, 1);
+		assertLocation(decoded.get(1), OTHER_HARDWARE_ID, 2);
+	}
+
+	@Test
+	public void testEventsPassedOnWhileStreaming() throws Exception {
+		String json = "{\"hardwareId\":\"" + HARDWARE_ID + "\",\"locations\":[" + location(1) + ","
+				+ location(2) + ",";
+		final List<IDecodedDeviceEventRequest> decoded = new ArrayList<IDecodedDeviceEventRequest>();
+		try {
+			new JsonBatchEventDecoder().decode(json.getBytes(), new IDecodedDeviceEventHandler() {
+
+				@Override
+				public void onEventDecoded(IDecodedDeviceEventRequest request) throws SiteWhereException {
+					decoded.add(request);
+				}
+			});
+			Assert.fail("Truncated payload should not decode.");
+		} catch (SiteWhereException e) {
+		}
+		Assert.assertEquals(2, decoded.size());
+		assertLocation(decoded.get(1), HARDWARE_ID, 2);
+	}
+
+	@Test
+	public void testNullEventsSkipped() throws Exception {
+		String json = "{\"hardwareId\":\"" + HARDWARE_ID + "\",\"locations\":[null," + location(1)
+				+ ",null," + location(2) + "],\"measurements\":null}";
+		List<IDecodedDeviceEventRequest> decoded = new JsonBatchEventDecoder().decode(json.getBytes());
+		Assert.assertEquals(2, decoded.size());
+		assertLocation(decoded.get(0), HARDWARE_ID, 1);
+		assertLocation(decoded.get(1), HARDWARE_ID, 2);
+	}
+
+	@Test(expected = SiteWhereException.class)
+	public void testNonObjectEventRejected() throws Exception {
+		String json = "{\"hardwareId\":\"" + HARDWARE_ID + "\",\"locations\":[" + location(1) + ",5]}";
+		new JsonBatchEventDecoder().decode(json.getBytes());
+	}
+
+	/**
+	 * Create JSON for a location event.
+	 * 
+	 * @param latitude
+	 * @return
+	 */
+	protected String location(double latitude) {
+		return "{\"latitude\":" + latitude + ",\"longitude\":-84.39,\"elevation\":0.0}";
+	}
+
+	/**
+	 * Assert that a decoded event is a location for the given device.
+	 * 
+	 * @param decoded
+	 * @param hardwareId
+	 * @param latitude
+	 */
+	protected void assertLocation(IDecodedDeviceEventRequest decoded, String hardwareId, double latitude) {
+		Assert.assertEquals(hardwareId, decoded.getHardwareId());
+		IDeviceLocationCreateRequest location = (IDeviceLocationCreateRequest) decoded.getRequest();
+		Assert.assertEquals(latitude, location.getLatitude(), 0.0);
+	}
+}
@@ -11,6 +11,8 @@ import java.net.Socket;
 
 import org.junit.Test;
 
+import com.google.protobuf.CodedOutputStream;
+
 public class SocketTests {
 
 	/** Hardware id for test message */
@@ -19,6 +21,15 @@ public class SocketTests {
 	/** Port that server socket listens on */
 	public static final int SERVER_SOCKET_PORT = 8585;
 
+	/** Port that streaming protobuf server socket listens on */
+	public static final int STREAMING_SOCKET_PORT = 8586;
+
+	/** Number of frames sent on streaming connection */
+	private static final int NUM_FRAMES = 10;
+
+	/** Number of events in each frame */
+	private static final int EVENTS_PER_FRAME = 50;
+
 	@Test
 	public void doSocketTest() throws Exception {
 		Socket socket = new Socket("localhost", SERVER_SOCKET_PORT);
@@ -27,4 +38,17 @@ public class SocketTests {
 		socket.getOutputStream().flush();
 		socket.getOutputStream().close();
 	}
+
+	@Test
+	public void doStreamingSocketTest() throws Exception {
+		Socket socket = new Socket("localhost", STREAMING_SOCKET_PORT);
+		CodedOutputStream output = CodedOutputStream.newInstance(socket.getOutputStream());
+		for (int i = 0; i < NUM_FRAMES; i++) {
+			byte[] frame = EventsHelper.generateEncodedMeasurementsBatch(HARDWARE_ID, EVENTS_PER_FRAME);
+			output.writeRawVarint32(frame.length);
+			output.writeRawBytes(frame);
+		}
+		output.flush();
+		socket.getOutputStream().close();
+	}
 }
\ No newline at end of file
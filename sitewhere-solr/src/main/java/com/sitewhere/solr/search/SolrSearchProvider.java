@@ -9,35 +9,46 @@ package com.sitewhere.solr.search;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import org.apache.log4j.Logger;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.Group;
+import org.apache.solr.client.solrj.response.GroupCommand;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.client.solrj.response.SolrPingResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.MultiMapSolrParams;
+import org.apache.solr.common.util.DateUtil;
 import org.apache.solr.servlet.SolrRequestParsers;
 
 import com.sitewhere.server.lifecycle.LifecycleComponent;
 import com.sitewhere.solr.SiteWhereSolrConfiguration;
+import com.sitewhere.solr.ISolrFields;
 import com.sitewhere.solr.SiteWhereSolrFactory;
+import com.sitewhere.solr.SolrEventType;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.event.IDeviceEvent;
 import com.sitewhere.spi.device.event.IDeviceLocation;
 import com.sitewhere.spi.search.IDateRangeSearchCriteria;
 import com.sitewhere.spi.search.external.IDeviceEventSearchProvider;
+import com.sitewhere.spi.search.external.ILocationSearchProvider;
 import com.sitewhere.spi.search.external.ISearchProvider;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 
 /**
  * Implementation of {@link ISearchProvider} that executes queries against a Solr server.
+ * Location queries use the spatial field indexed for location events. Location queries
+ * that do not specify a page size or maximum number of results return at most
+ * {@link #getDefaultMaxRows()} rows, so a large radius can not pull the whole index.
  * 
  * @author Derek
  */
-public class SolrSearchProvider extends LifecycleComponent implements IDeviceEventSearchProvider {
+public class SolrSearchProvider extends LifecycleComponent implements IDeviceEventSearchProvider,
+		ILocationSearchProvider {
 
 	/** Static logger instance */
 	private static Logger LOGGER = Logger.getLogger(SolrSearchProvider.class);
@@ -48,6 +59,9 @@ public class SolrSearchProvider extends LifecycleComponent implements IDeviceEve
 	/** Name returned for provider */
 	private static final String NAME = "Apache Solr";
 
+	/** Default number of rows returned by location queries without a limit */
+	private static final int DEFAULT_MAX_ROWS = 100;
+
 	/** Provider id */
 	private String id = ID;
 
@@ -57,6 +71,9 @@ public class SolrSearchProvider extends LifecycleComponent implements IDeviceEve
 	/** Solr configuration */
 	private SiteWhereSolrConfiguration solr;
 
+	/** Number of rows returned by location queries without a limit */
+	private int defaultMaxRows = DEFAULT_MAX_ROWS;
+
 	public SolrSearchProvider() {
 		super(LifecycleComponentType.SearchProvider);
 	}
@@ -139,21 +156,96 @@ public class SolrSearchProvider extends LifecycleComponent implements IDeviceEve
 	@Override
 	public List<IDeviceLocation> getLocationsNear(double latitude, double longitude, double distance,
 			IDateRangeSearchCriteria criteria) throws SiteWhereException {
-		ModifiableSolrParams params = new ModifiableSolrParams();
+		ModifiableSolrParams params = createLocationQuery(latitude, longitude, distance);
+		if ((criteria != null) && ((criteria.getStartDate() != null) || (criteria.getEndDate() != null))) {
+			String start = (criteria.getStartDate() != null) ? formatDate(criteria.getStartDate()) : "*";
+			String end = (criteria.getEndDate() != null) ? formatDate(criteria.getEndDate()) : "*";
+			params.add("fq", ISolrFields.EVENT_DATE + ":[" + start + " TO " + end + "]");
+		}
+		params.set("sort", "geodist() asc");
+		if ((criteria != null) && (criteria.getPageSize() > 0)) {
+			int page = Math.max(1, criteria.getPageNumber());
+			params.set("start", (page - 1) * criteria.getPageSize());
+			params.set("rows", criteria.getPageSize());
+		} else {
+			params.set("rows", getDefaultMaxRows());
+		}
 		try {
 			QueryResponse response = getSolr().getSolrServer().query(params);
-			SolrDocumentList docs = response.getResults();
-			while (docs.iterator().hasNext()) {
-				SolrDocument doc = docs.iterator().next();
-				doc.getFieldNames();
-			}
 			List<IDeviceLocation> results = new ArrayList<IDeviceLocation>();
+			for (SolrDocument doc : response.getResults()) {
+				results.add((IDeviceLocation) SiteWhereSolrFactory.parseDocument(doc));
+			}
 			return results;
 		} catch (SolrServerException e) {
 			throw new SiteWhereException("Unable to execute 'getLocationsNear' query.", e);
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sitewhere.spi.search.external.ILocationSearchProvider#getNearestLocations(double
+	 * , double, double, int)
+	 */
+	@Override
+	public List<IDeviceLocation> getNearestLocations(double latitude, double longitude, double radiusKm,
+			int maxResults) throws SiteWhereException {
+		ModifiableSolrParams params = createLocationQuery(latitude, longitude, radiusKm);
+		params.set("sort", "geodist() asc");
+		params.set("rows", (maxResults > 0) ? maxResults : getDefaultMaxRows());
+		params.set("group", true);
+		params.set("group.field", ISolrFields.ASSIGNMENT_TOKEN);
+		params.set("group.sort", ISolrFields.EVENT_DATE + " desc");
+		params.set("group.limit", 1);
+		try {
+			QueryResponse response = getSolr().getSolrServer().query(params);
+			List<IDeviceLocation> results = new ArrayList<IDeviceLocation>();
+			if (response.getGroupResponse() == null) {
+				return results;
+			}
+			for (GroupCommand command : response.getGroupResponse().getValues()) {
+				for (Group group : command.getValues()) {
+					for (SolrDocument doc : group.getResult()) {
+						results.add((IDeviceLocation) SiteWhereSolrFactory.parseDocument(doc));
+					}
+				}
+			}
+			return results;
+		} catch (SolrServerException e) {
+			throw new SiteWhereException("Unable to execute 'getNearestLocations' query.", e);
+		}
+	}
+
+	/**
+	 * Create a query that matches location events within a distance of a point.
+	 * 
+	 * @param latitude
+	 * @param longitude
+	 * @param distanceKm
+	 * @return
+	 */
+	protected ModifiableSolrParams createLocationQuery(double latitude, double longitude, double distanceKm) {
+		ModifiableSolrParams params = new ModifiableSolrParams();
+		params.set("q", ISolrFields.EVENT_TYPE + ":" + SolrEventType.Location.name());
+		params.add("fq", "{!geofilt}");
+		params.set("sfield", ISolrFields.LOCATION);
+		params.set("pt", latitude + "," + longitude);
+		params.set("d", String.valueOf(distanceKm));
+		return params;
+	}
+
+	/**
+	 * Format a date for use in a Solr range query.
+	 * 
+	 * @param date
+	 * @return
+	 */
+	protected String formatDate(Date date) {
+		return DateUtil.getThreadLocalDateFormat().format(date);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -187,4 +279,12 @@ public class SolrSearchProvider extends LifecycleComponent implements IDeviceEve
 	public void setSolr(SiteWhereSolrConfiguration solr) {
 		this.solr = solr;
 	}
+
+	public int getDefaultMaxRows() {
+		return defaultMaxRows;
+	}
+
+	public void setDefaultMaxRows(int defaultMaxRows) {
+		this.defaultMaxRows = defaultMaxRows;
+	}
 }
\ No newline at end of file
@@ -169,6 +169,10 @@ public class AssetManagementParser extends AbstractBeanDefinitionParser {
 		if (filename != null) {
 			module.addPropertyValue("filename", filename.getValue());
 		}
+		Attr reloadCheckInterval = element.getAttributeNode("reloadCheckInterval");
+		if (reloadCheckInterval != null) {
+			module.addPropertyValue("reloadCheckInterval", reloadCheckInterval.getValue());
+		}
 	}
 
 	/**
@@ -11,6 +11,7 @@ import java.util.List;
 
 import org.springframework.beans.factory.support.AbstractBeanDefinition;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.ManagedList;
 import org.springframework.beans.factory.xml.AbstractBeanDefinitionParser;
 import org.springframework.beans.factory.xml.NamespaceHandler;
 import org.springframework.beans.factory.xml.ParserContext;
@@ -18,6 +19,12 @@ import org.springframework.util.xml.DomUtils;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Element;
 
+import com.sitewhere.device.event.retention.EventRetentionManager;
+import com.sitewhere.device.event.retention.EventRetentionPolicy;
+import com.sitewhere.hazelcast.HazelcastDeviceManagementCacheProvider;
+import com.sitewhere.hazelcast.SiteWhereHazelcastConfiguration;
+import com.sitewhere.memory.device.InMemoryDeviceManagement;
+import com.sitewhere.memory.user.InMemoryUserManagement;
 import com.sitewhere.server.SiteWhereServerBeans;
 import com.sitewhere.server.device.DefaultDeviceModelInitializer;
 import com.sitewhere.server.user.DefaultUserModelInitializer;
@@ -65,10 +72,18 @@ public class DatastoreParser extends AbstractBeanDefinitionParser {
 				parseHBaseDatasource(child, context);
 				break;
 			}
+			case InMemory: {
+				parseInMemoryDatasource(child, context);
+				break;
+			}
 			case EHCacheDeviceManagementCache: {
 				parseEHCacheDeviceManagementCache(child, context);
 				break;
 			}
+			case HazelcastDeviceManagementCache: {
+				parseHazelcastDeviceManagementCache(child, context);
+				break;
+			}
 			case DefaultDeviceModelInitializer: {
 				parseDefaultDeviceModelInitializer(child, context);
 				break;
@@ -77,6 +92,10 @@ public class DatastoreParser extends AbstractBeanDefinitionParser {
 				parseDefaultUserModelInitializer(child, context);
 				break;
 			}
+			case EventRetention: {
+				parseEventRetention(child, context);
+				break;
+			}
 			}
 		}
 		return null;
@@ -110,6 +129,18 @@ public class DatastoreParser extends AbstractBeanDefinitionParser {
 		BeanDefinitionBuilder dm =
 				BeanDefinitionBuilder.rootBeanDefinition("com.sitewhere.mongodb.device.MongoDeviceManagement");
 		dm.addPropertyReference("mongoClient", "mongo");
+		Attr useMeasurementBuckets = element.getAttributeNode("useMeasurementBuckets");
+		if (useMeasurementBuckets != null) {
+			dm.addPropertyValue("useMeasurementBuckets", useMeasurementBuckets.getValue());
+		}
+		Attr measurementBucketInterval = element.getAttributeNode("measurementBucketInterval");
+		if (measurementBucketInterval != null) {
+			dm.addPropertyValue("measurementBucketInterval", measurementBucketInterval.getValue());
+		}
+		Attr eventTtlDays = element.getAttributeNode("eventTtlDays");
+		if (eventTtlDays != null) {
+			dm.addPropertyValue("eventTtlDays", eventTtlDays.getValue());
+		}
 		context.getRegistry().registerBeanDefinition(SiteWhereServerBeans.BEAN_DEVICE_MANAGEMENT,
 				dm.getBeanDefinition());
 
@@ -135,6 +166,22 @@ public class DatastoreParser extends AbstractBeanDefinitionParser {
 		if (quorum != null) {
 			client.addPropertyValue("quorum", quorum.getValue());
 		}
+		Attr tablePoolSize = element.getAttributeNode("tablePoolSize");
+		if (tablePoolSize != null) {
+			client.addPropertyValue("tablePoolSize", tablePoolSize.getValue());
+		}
+		Attr maxBufferedPuts = element.getAttributeNode("maxBufferedPuts");
+		if (maxBufferedPuts != null) {
+			client.addPropertyValue("maxBufferedPuts", maxBufferedPuts.getValue());
+		}
+		Attr maxBufferedBytes = element.getAttributeNode("maxBufferedBytes");
+		if (maxBufferedBytes != null) {
+			client.addPropertyValue("maxBufferedBytes", maxBufferedBytes.getValue());
+		}
+		Attr flushInterval = element.getAttributeNode("flushInterval");
+		if (flushInterval != null) {
+			client.addPropertyValue("flushInterval", flushInterval.getValue());
+		}
 		context.getRegistry().registerBeanDefinition("hbase", client.getBeanDefinition());
 
 		// Register HBase device management implementation.
@@ -152,6 +199,24 @@ public class DatastoreParser extends AbstractBeanDefinitionParser {
 				um.getBeanDefinition());
 	}
 
+	/**
+	 * Parse an in-memory datasource configuration and create beans needed to realize it.
+	 * 
+	 * @param element
+	 * @param context
+	 */
+	protected void parseInMemoryDatasource(Element element, ParserContext context) {
+		// Register in-memory device management implementation.
+		BeanDefinitionBuilder dm = BeanDefinitionBuilder.rootBeanDefinition(InMemoryDeviceManagement.class);
+		context.getRegistry().registerBeanDefinition(SiteWhereServerBeans.BEAN_DEVICE_MANAGEMENT,
+				dm.getBeanDefinition());
+
+		// Register in-memory user management implementation.
+		BeanDefinitionBuilder um = BeanDefinitionBuilder.rootBeanDefinition(InMemoryUserManagement.class);
+		context.getRegistry().registerBeanDefinition(SiteWhereServerBeans.BEAN_USER_MANAGEMENT,
+				um.getBeanDefinition());
+	}
+
 	/**
 	 * Parse configuration for the EHCache device management cache provider.
 	 * 
@@ -196,6 +261,76 @@ public class DatastoreParser extends AbstractBeanDefinitionParser {
 		if (deviceAssignmentCacheTtl != null) {
 			cache.addPropertyValue("deviceAssignmentCacheTtl", deviceAssignmentCacheTtl.getValue());
 		}
+		Attr snapshotFile = element.getAttributeNode("snapshotFile");
+		if (snapshotFile != null) {
+			cache.addPropertyValue("snapshotFile", snapshotFile.getValue());
+		}
+		Attr snapshotInterval = element.getAttributeNode("snapshotInterval");
+		if (snapshotInterval != null) {
+			cache.addPropertyValue("snapshotInterval", snapshotInterval.getValue());
+		}
+		Attr preloadThreads = element.getAttributeNode("preloadThreads");
+		if (preloadThreads != null) {
+			cache.addPropertyValue("preloadThreads", preloadThreads.getValue());
+		}
+		Attr steadyStateHitRatio = element.getAttributeNode("steadyStateHitRatio");
+		if (steadyStateHitRatio != null) {
+			cache.addPropertyValue("steadyStateHitRatio", steadyStateHitRatio.getValue());
+		}
+		context.getRegistry().registerBeanDefinition(
+				SiteWhereServerBeans.BEAN_DEVICE_MANAGEMENT_CACHE_PROVIDER, cache.getBeanDefinition());
+	}
+
+	/**
+	 * Parse configuration for the Hazelcast device management cache provider.
+	 * 
+	 * @param element
+	 * @param context
+	 */
+	protected void parseHazelcastDeviceManagementCache(Element element, ParserContext context) {
+		BeanDefinitionBuilder cache =
+				BeanDefinitionBuilder.rootBeanDefinition(HazelcastDeviceManagementCacheProvider.class);
+		cache.addPropertyReference("configuration",
+				SiteWhereHazelcastConfiguration.HAZELCAST_CONFIGURATION_BEAN);
+		Attr siteCacheMaxEntries = element.getAttributeNode("siteCacheMaxEntries");
+		if (siteCacheMaxEntries != null) {
+			cache.addPropertyValue("siteCacheMaxEntries", siteCacheMaxEntries.getValue());
+		}
+		Attr deviceSpecificationCacheMaxEntries =
+				element.getAttributeNode("deviceSpecificationCacheMaxEntries");
+		if (deviceSpecificationCacheMaxEntries != null) {
+			cache.addPropertyValue("deviceSpecificationCacheMaxEntries",
+					deviceSpecificationCacheMaxEntries.getValue());
+		}
+		Attr deviceCacheMaxEntries = element.getAttributeNode("deviceCacheMaxEntries");
+		if (deviceCacheMaxEntries != null) {
+			cache.addPropertyValue("deviceCacheMaxEntries", deviceCacheMaxEntries.getValue());
+		}
+		Attr deviceAssignmentCacheMaxEntries = element.getAttributeNode("deviceAssignmentCacheMaxEntries");
+		if (deviceAssignmentCacheMaxEntries != null) {
+			cache.addPropertyValue("deviceAssignmentCacheMaxEntries",
+					deviceAssignmentCacheMaxEntries.getValue());
+		}
+		Attr siteCacheTtl = element.getAttributeNode("siteCacheTtl");
+		if (siteCacheTtl != null) {
+			cache.addPropertyValue("siteCacheTtl", siteCacheTtl.getValue());
+		}
+		Attr deviceSpecificationCacheTtl = element.getAttributeNode("deviceSpecificationCacheTtl");
+		if (deviceSpecificationCacheTtl != null) {
+			cache.addPropertyValue("deviceSpecificationCacheTtl", deviceSpecificationCacheTtl.getValue());
+		}
+		Attr deviceCacheTtl = element.getAttributeNode("deviceCacheTtl");
+		if (deviceCacheTtl != null) {
+			cache.addPropertyValue("deviceCacheTtl", deviceCacheTtl.getValue());
+		}
+		Attr deviceAssignmentCacheTtl = element.getAttributeNode("deviceAssignmentCacheTtl");
+		if (deviceAssignmentCacheTtl != null) {
+			cache.addPropertyValue("deviceAssignmentCacheTtl", deviceAssignmentCacheTtl.getValue());
+		}
+		Attr backupCount = element.getAttributeNode("backupCount");
+		if (backupCount != null) {
+			cache.addPropertyValue("backupCount", backupCount.getValue());
+		}
 		context.getRegistry().registerBeanDefinition(
 				SiteWhereServerBeans.BEAN_DEVICE_MANAGEMENT_CACHE_PROVIDER, cache.getBeanDefinition());
 	}
@@ -234,6 +369,67 @@ public class DatastoreParser extends AbstractBeanDefinitionParser {
 				init.getBeanDefinition());
 	}
 
+	/**
+	 * Parse configuration for the event retention manager.
+	 * 
+	 * @param element
+	 * @param context
+	 */
+	protected void parseEventRetention(Element element, ParserContext context) {
+		BeanDefinitionBuilder manager = BeanDefinitionBuilder.rootBeanDefinition(EventRetentionManager.class);
+		Attr checkInterval = element.getAttributeNode("checkInterval");
+		if (checkInterval != null) {
+			manager.addPropertyValue("checkInterval", checkInterval.getValue());
+		}
+		Attr initialDelay = element.getAttributeNode("initialDelay");
+		if (initialDelay != null) {
+			manager.addPropertyValue("initialDelay", initialDelay.getValue());
+		}
+		Attr batchSize = element.getAttributeNode("batchSize");
+		if (batchSize != null) {
+			manager.addPropertyValue("batchSize", batchSize.getValue());
+		}
+		ManagedList<Object> policies = new ManagedList<Object>();
+		for (Element child : DomUtils.getChildElementsByTagName(element, "retention-policy")) {
+			policies.add(parseRetentionPolicy(child));
+		}
+		manager.addPropertyValue("policies", policies);
+		context.getRegistry().registerBeanDefinition(SiteWhereServerBeans.BEAN_EVENT_RETENTION_MANAGER,
+				manager.getBeanDefinition());
+	}
+
+	/**
+	 * Parse a single event retention policy.
+	 * 
+	 * @param element
+	 * @return
+	 */
+	protected AbstractBeanDefinition parseRetentionPolicy(Element element) {
+		BeanDefinitionBuilder policy = BeanDefinitionBuilder.rootBeanDefinition(EventRetentionPolicy.class);
+		Attr siteToken = element.getAttributeNode("siteToken");
+		if (siteToken != null) {
+			policy.addPropertyValue("siteToken", siteToken.getValue());
+		}
+		Attr eventType = element.getAttributeNode("eventType");
+		if (eventType != null) {
+			policy.addPropertyValue("eventType", eventType.getValue());
+		}
+		Attr retentionDays = element.getAttributeNode("retentionDays");
+		if (retentionDays == null) {
+			throw new RuntimeException("Retention policy does not specify retentionDays.");
+		}
+		policy.addPropertyValue("retentionDays", retentionDays.getValue());
+		Attr rollupInterval = element.getAttributeNode("rollupInterval");
+		if (rollupInterval != null) {
+			policy.addPropertyValue("rollupInterval", rollupInterval.getValue());
+		}
+		Attr includeRollups = element.getAttributeNode("includeRollups");
+		if (includeRollups != null) {
+			policy.addPropertyValue("includeRollups", includeRollups.getValue());
+		}
+		return policy.getBeanDefinition();
+	}
+
 	/**
 	 * Expected child elements.
 	 * 
@@ -247,14 +443,23 @@ public class DatastoreParser extends AbstractBeanDefinitionParser {
 		/** HBase datastore and service providers */
 		HBase("hbase-datastore"),
 
+		/** In-memory datastore and service providers */
+		InMemory("in-memory-datastore"),
+
 		/** EHCache device mananagement cache provider */
 		EHCacheDeviceManagementCache("ehcache-device-management-cache"),
 
+		/** Hazelcast device mananagement cache provider */
+		HazelcastDeviceManagementCache("hazelcast-device-management-cache"),
+
 		/** Creates sample data if no device data is present */
 		DefaultDeviceModelInitializer("default-device-model-initializer"),
 
 		/** Creates sample data if no device data is present */
-		DefaultUserModelInitializer("default-user-model-initializer");
+		DefaultUserModelInitializer("default-user-model-initializer"),
+
+		/** Purges events based on retention policies */
+		EventRetention("event-retention");
 
 		/** Event code */
 		private String localName;
@@ -22,11 +22,13 @@ import org.springframework.util.xml.DomUtils;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Element;
 
+import com.sitewhere.activemq.ActiveMQAcknowledgeMode;
 import com.sitewhere.activemq.ActiveMQInboundEventReceiver;
 import com.sitewhere.device.provisioning.BinaryInboundEventSource;
 import com.sitewhere.device.provisioning.json.JsonBatchEventDecoder;
 import com.sitewhere.device.provisioning.mqtt.MqttInboundEventReceiver;
 import com.sitewhere.device.provisioning.socket.BinarySocketInboundEventReceiver;
+import com.sitewhere.device.provisioning.socket.LineDelimitedInteractionHandler;
 import com.sitewhere.device.provisioning.socket.ReadAllInteractionHandler;
 import com.sitewhere.spi.device.provisioning.IInboundEventReceiver;
 import com.sitewhere.spi.device.provisioning.IInboundEventSource;
@@ -284,6 +286,47 @@ public class EventSourcesParser {
 			mq.addPropertyValue("numConsumers", numConsumers.getValue());
 		}
 
+		Attr maxConsumers = element.getAttributeNode("maxConsumers");
+		if (maxConsumers != null) {
+			mq.addPropertyValue("maxConsumers", maxConsumers.getValue());
+		}
+
+		Attr messagesPerConsumer = element.getAttributeNode("messagesPerConsumer");
+		if (messagesPerConsumer != null) {
+			mq.addPropertyValue("messagesPerConsumer", messagesPerConsumer.getValue());
+		}
+
+		Attr scaleInterval = element.getAttributeNode("scaleInterval");
+		if (scaleInterval != null) {
+			mq.addPropertyValue("scaleInterval", scaleInterval.getValue());
+		}
+
+		Attr acknowledgeMode = element.getAttributeNode("acknowledgeMode");
+		if (acknowledgeMode != null) {
+			if ("dups-ok".equals(acknowledgeMode.getValue())) {
+				mq.addPropertyValue("acknowledgeMode", ActiveMQAcknowledgeMode.DupsOk);
+			} else if ("transacted".equals(acknowledgeMode.getValue())) {
+				mq.addPropertyValue("acknowledgeMode", ActiveMQAcknowledgeMode.Transacted);
+			} else {
+				mq.addPropertyValue("acknowledgeMode", ActiveMQAcknowledgeMode.Auto);
+			}
+		}
+
+		Attr transactionBatchSize = element.getAttributeNode("transactionBatchSize");
+		if (transactionBatchSize != null) {
+			mq.addPropertyValue("transactionBatchSize", transactionBatchSize.getValue());
+		}
+
+		Attr prefetchSize = element.getAttributeNode("prefetchSize");
+		if (prefetchSize != null) {
+			mq.addPropertyValue("prefetchSize", prefetchSize.getValue());
+		}
+
+		Attr optimizeAcknowledge = element.getAttributeNode("optimizeAcknowledge");
+		if (optimizeAcknowledge != null) {
+			mq.addPropertyValue("optimizeAcknowledge", optimizeAcknowledge.getValue());
+		}
+
 		return mq.getBeanDefinition();
 	}
 
@@ -407,6 +450,14 @@ public class EventSourcesParser {
 				parseReadAllFactory(parent, child, context, source);
 				return true;
 			}
+			case ProtobufStreamInteractionHandlerFactory: {
+				parseProtobufStreamFactory(parent, child, context, source);
+				return true;
+			}
+			case LineDelimitedInteractionHandlerFactory: {
+				parseLineDelimitedFactory(parent, child, context, source);
+				return true;
+			}
 			}
 		}
 		return false;
@@ -449,6 +500,56 @@ public class EventSourcesParser {
 		source.addPropertyReference("handlerFactory", name);
 	}
 
+	/**
+	 * Parse configuration for factory that produces socket interaction handlers which read
+	 * a stream of length-prefixed protobuf frames from each connection.
+	 * 
+	 * @param parent
+	 * @param handler
+	 * @param context
+	 * @param source
+	 */
+	protected void parseProtobufStreamFactory(Element parent, Element handler, ParserContext context,
+			BeanDefinitionBuilder source) {
+		LOGGER.debug("Configuring protobuf stream socket interaction handler factory for "
+				+ parent.getLocalName());
+		BeanDefinitionBuilder builder =
+				BeanDefinitionBuilder.rootBeanDefinition("com.sitewhere.device.provisioning.protobuf.ProtobufStreamInteractionHandler$Factory");
+		Attr maxFrameSize = handler.getAttributeNode("maxFrameSize");
+		if (maxFrameSize != null) {
+			builder.addPropertyValue("maxFrameSize", maxFrameSize.getValue());
+		}
+		AbstractBeanDefinition bean = builder.getBeanDefinition();
+		String name = nameGenerator.generateBeanName(bean, context.getRegistry());
+		context.getRegistry().registerBeanDefinition(name, bean);
+		source.addPropertyReference("handlerFactory", name);
+	}
+
+	/**
+	 * Parse configuration for {@link LineDelimitedInteractionHandler} factory
+	 * implementation.
+	 * 
+	 * @param parent
+	 * @param handler
+	 * @param context
+	 * @param source
+	 */
+	protected void parseLineDelimitedFactory(Element parent, Element handler, ParserContext context,
+			BeanDefinitionBuilder source) {
+		LOGGER.debug("Configuring line-delimited socket interaction handler factory for "
+				+ parent.getLocalName());
+		BeanDefinitionBuilder builder =
+				BeanDefinitionBuilder.rootBeanDefinition(LineDelimitedInteractionHandler.Factory.class);
+		Attr maxLineLength = handler.getAttributeNode("maxLineLength");
+		if (maxLineLength != null) {
+			builder.addPropertyValue("maxLineLength", maxLineLength.getValue());
+		}
+		AbstractBeanDefinition bean = builder.getBeanDefinition();
+		String name = nameGenerator.generateBeanName(bean, context.getRegistry());
+		context.getRegistry().registerBeanDefinition(name, bean);
+		source.addPropertyReference("handlerFactory", name);
+	}
+
 	/**
 	 * Parse a binary decoder from the list of possibilities.
 	 * 
@@ -663,7 +764,13 @@ public class EventSourcesParser {
 		InteractionHandlerFactoryReference("interaction-handler-factory"),
 
 		/** Produces socket interaction handlers that read all data from the client socket */
-		ReadAllInteractionHandlerFactory("read-all-interaction-handler-factory");
+		ReadAllInteractionHandlerFactory("read-all-interaction-handler-factory"),
+
+		/** Produces socket interaction handlers that read a stream of protobuf frames */
+		ProtobufStreamInteractionHandlerFactory("protobuf-stream-interaction-handler-factory"),
+
+		/** Produces socket interaction handlers that deliver each line as a payload */
+		LineDelimitedInteractionHandlerFactory("line-delimited-interaction-handler-factory");
 
 		/** Event code */
 		private String localName;
@@ -21,6 +21,9 @@ import org.w3c.dom.Element;
 
 import com.sitewhere.device.event.processor.DefaultEventStorageProcessor;
 import com.sitewhere.device.event.processor.DefaultInboundEventProcessorChain;
+import com.sitewhere.device.event.processor.dedup.DuplicateEventFilter;
+import com.sitewhere.device.event.processor.ratelimit.RateLimitAction;
+import com.sitewhere.device.event.processor.ratelimit.RateLimitFilter;
 import com.sitewhere.server.SiteWhereServerBeans;
 
 /**
@@ -58,6 +61,14 @@ public class InboundProcessingChainParser extends AbstractBeanDefinitionParser {
 				processors.add(parseDefaultEventStorageProcessor(element, context));
 				break;
 			}
+			case DuplicateEventFilter: {
+				processors.add(parseDuplicateEventFilter(child, context));
+				break;
+			}
+			case RateLimitFilter: {
+				processors.add(parseRateLimitFilter(child, context));
+				break;
+			}
 			}
 		}
 		chain.addPropertyValue("processors", processors);
@@ -94,6 +105,94 @@ public class InboundProcessingChainParser extends AbstractBeanDefinitionParser {
 		return processor.getBeanDefinition();
 	}
 
+	/**
+	 * Parse configuration for filter that drops duplicate events.
+	 * 
+	 * @param element
+	 * @param context
+	 * @return
+	 */
+	protected AbstractBeanDefinition parseDuplicateEventFilter(Element element, ParserContext context) {
+		BeanDefinitionBuilder processor =
+				BeanDefinitionBuilder.rootBeanDefinition(DuplicateEventFilter.class);
+
+		Attr windowSeconds = element.getAttributeNode("windowSeconds");
+		if (windowSeconds != null) {
+			processor.addPropertyValue("windowSeconds", windowSeconds.getValue());
+		}
+
+		Attr expectedEventsPerWindow = element.getAttributeNode("expectedEventsPerWindow");
+		if (expectedEventsPerWindow != null) {
+			processor.addPropertyValue("expectedEventsPerWindow", expectedEventsPerWindow.getValue());
+		}
+
+		Attr falsePositiveRate = element.getAttributeNode("falsePositiveRate");
+		if (falsePositiveRate != null) {
+			processor.addPropertyValue("falsePositiveRate", falsePositiveRate.getValue());
+		}
+
+		return processor.getBeanDefinition();
+	}
+
+	/**
+	 * Parse configuration for filter that limits event rates.
+	 * 
+	 * @param element
+	 * @param context
+	 * @return
+	 */
+	protected AbstractBeanDefinition parseRateLimitFilter(Element element, ParserContext context) {
+		BeanDefinitionBuilder processor = BeanDefinitionBuilder.rootBeanDefinition(RateLimitFilter.class);
+
+		Attr deviceEventsPerSecond = element.getAttributeNode("deviceEventsPerSecond");
+		if (deviceEventsPerSecond != null) {
+			processor.addPropertyValue("deviceEventsPerSecond", deviceEventsPerSecond.getValue());
+		}
+
+		Attr deviceBurst = element.getAttributeNode("deviceBurst");
+		if (deviceBurst != null) {
+			processor.addPropertyValue("deviceBurst", deviceBurst.getValue());
+		}
+
+		Attr siteEventsPerSecond = element.getAttributeNode("siteEventsPerSecond");
+		if (siteEventsPerSecond != null) {
+			processor.addPropertyValue("siteEventsPerSecond", siteEventsPerSecond.getValue());
+		}
+
+		Attr siteBurst = element.getAttributeNode("siteBurst");
+		if (siteBurst != null) {
+			processor.addPropertyValue("siteBurst", siteBurst.getValue());
+		}
+
+		Attr maxDelay = element.getAttributeNode("maxDelay");
+		if (maxDelay != null) {
+			processor.addPropertyValue("maxDelay", maxDelay.getValue());
+		}
+
+		Attr downsampleRatio = element.getAttributeNode("downsampleRatio");
+		if (downsampleRatio != null) {
+			processor.addPropertyValue("downsampleRatio", downsampleRatio.getValue());
+		}
+
+		Attr idleTimeout = element.getAttributeNode("idleTimeout");
+		if (idleTimeout != null) {
+			processor.addPropertyValue("idleTimeout", idleTimeout.getValue());
+		}
+
+		Attr action = element.getAttributeNode("action");
+		if (action != null) {
+			if ("delay".equals(action.getValue())) {
+				processor.addPropertyValue("action", RateLimitAction.Delay);
+			} else if ("downsample".equals(action.getValue())) {
+				processor.addPropertyValue("action", RateLimitAction.Downsample);
+			} else {
+				processor.addPropertyValue("action", RateLimitAction.Drop);
+			}
+		}
+
+		return processor.getBeanDefinition();
+	}
+
 	/**
 	 * Expected child elements.
 	 * 
@@ -105,7 +204,13 @@ public class InboundProcessingChainParser extends AbstractBeanDefinitionParser {
 		InboundEventProcessor("inbound-event-processor"),
 
 		/** Reference to custom inbound event processor */
-		DefaultEventStorageProcessor("default-event-storage-processor");
+		DefaultEventStorageProcessor("default-event-storage-processor"),
+
+		/** Filter that drops duplicate events */
+		DuplicateEventFilter("duplicate-event-filter"),
+
+		/** Filter that limits event rates per device and site */
+		RateLimitFilter("rate-limit-filter");
 
 		/** Event code */
 		private String localName;
@@ -75,6 +75,36 @@ public class InboundProcessingStrategyParser {
 			manager.addPropertyValue("monitoringIntervalSec", monitoringIntervalSec.getValue());
 		}
 
+		Attr journalDirectory = element.getAttributeNode("journalDirectory");
+		if (journalDirectory != null) {
+			manager.addPropertyValue("journalDirectory", journalDirectory.getValue());
+		}
+
+		Attr journalSegmentSizeMb = element.getAttributeNode("journalSegmentSizeMb");
+		if (journalSegmentSizeMb != null) {
+			manager.addPropertyValue("journalSegmentSizeMb", journalSegmentSizeMb.getValue());
+		}
+
+		Attr journalMaxSizeMb = element.getAttributeNode("journalMaxSizeMb");
+		if (journalMaxSizeMb != null) {
+			manager.addPropertyValue("journalMaxSizeMb", journalMaxSizeMb.getValue());
+		}
+
+		Attr enableBackpressure = element.getAttributeNode("enableBackpressure");
+		if (enableBackpressure != null) {
+			manager.addPropertyValue("enableBackpressure", enableBackpressure.getValue());
+		}
+
+		Attr backpressureHighWatermark = element.getAttributeNode("backpressureHighWatermark");
+		if (backpressureHighWatermark != null) {
+			manager.addPropertyValue("backpressureHighWatermark", backpressureHighWatermark.getValue());
+		}
+
+		Attr backpressureLowWatermark = element.getAttributeNode("backpressureLowWatermark");
+		if (backpressureLowWatermark != null) {
+			manager.addPropertyValue("backpressureLowWatermark", backpressureLowWatermark.getValue());
+		}
+
 		return manager.getBeanDefinition();
 	}
 
@@ -21,6 +21,8 @@ import org.w3c.dom.Element;
 
 import com.sitewhere.device.event.processor.DefaultOutboundEventProcessorChain;
 import com.sitewhere.device.provisioning.ProvisioningEventProcessor;
+import com.sitewhere.geospatial.GeohashLocationIndex;
+import com.sitewhere.geospatial.LocationIndexEventProcessor;
 import com.sitewhere.geospatial.ZoneTest;
 import com.sitewhere.geospatial.ZoneTestEventProcessor;
 import com.sitewhere.hazelcast.HazelcastEventProcessor;
@@ -78,6 +80,10 @@ public class OutboundProcessingChainParser extends AbstractBeanDefinitionParser
 				processors.add(parseProvisioningEventProcessor(child, context));
 				break;
 			}
+			case LocationIndexEventProcessor: {
+				processors.add(parseLocationIndexEventProcessor(child, context));
+				break;
+			}
 			}
 		}
 		chain.addPropertyValue("processors", processors);
@@ -185,6 +191,18 @@ public class OutboundProcessingChainParser extends AbstractBeanDefinitionParser
 				BeanDefinitionBuilder.rootBeanDefinition(HazelcastEventProcessor.class);
 		processor.addPropertyReference("configuration",
 				SiteWhereHazelcastConfiguration.HAZELCAST_CONFIGURATION_BEAN);
+		Attr batched = element.getAttributeNode("batched");
+		if (batched != null) {
+			processor.addPropertyValue("batched", batched.getValue());
+		}
+		Attr maxBatchSize = element.getAttributeNode("maxBatchSize");
+		if (maxBatchSize != null) {
+			processor.addPropertyValue("maxBatchSize", maxBatchSize.getValue());
+		}
+		Attr maxBatchDelay = element.getAttributeNode("maxBatchDelay");
+		if (maxBatchDelay != null) {
+			processor.addPropertyValue("maxBatchDelay", maxBatchDelay.getValue());
+		}
 		return processor.getBeanDefinition();
 	}
 
@@ -222,6 +240,33 @@ public class OutboundProcessingChainParser extends AbstractBeanDefinitionParser
 		return processor.getBeanDefinition();
 	}
 
+	/**
+	 * Parse configuration for event processor that keeps the in-memory location index up
+	 * to date. The index is registered as a shared bean so that a location search
+	 * provider can query it.
+	 * 
+	 * @param element
+	 * @param context
+	 * @return
+	 */
+	protected AbstractBeanDefinition parseLocationIndexEventProcessor(Element element, ParserContext context) {
+		BeanDefinitionBuilder processor =
+				BeanDefinitionBuilder.rootBeanDefinition(LocationIndexEventProcessor.class);
+
+		Attr preload = element.getAttributeNode("preload");
+		if (preload != null) {
+			processor.addPropertyValue("preload", Boolean.parseBoolean(preload.getValue()));
+		}
+
+		if (!context.getRegistry().containsBeanDefinition(SiteWhereServerBeans.BEAN_LOCATION_INDEX)) {
+			BeanDefinitionBuilder index = BeanDefinitionBuilder.rootBeanDefinition(GeohashLocationIndex.class);
+			context.getRegistry().registerBeanDefinition(SiteWhereServerBeans.BEAN_LOCATION_INDEX,
+					index.getBeanDefinition());
+		}
+		processor.addPropertyReference("index", SiteWhereServerBeans.BEAN_LOCATION_INDEX);
+		return processor.getBeanDefinition();
+	}
+
 	/**
 	 * Expected child elements.
 	 * 
@@ -242,7 +287,10 @@ public class OutboundProcessingChainParser extends AbstractBeanDefinitionParser
 		SolrEventProcessor("solr-event-processor"),
 
 		/** Reference to custom inbound event processor */
-		ProvisioningEventProcessor("provisioning-event-processor");
+		ProvisioningEventProcessor("provisioning-event-processor"),
+
+		/** Keeps last known assignment locations in an in-memory index */
+		LocationIndexEventProcessor("location-index-event-processor");
 
 		/** Event code */
 		private String localName;
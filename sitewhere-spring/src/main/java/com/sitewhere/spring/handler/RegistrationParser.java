@@ -77,6 +77,21 @@ public class RegistrationParser {
 			manager.addPropertyValue("autoAssignToken", autoAssignToken.getValue());
 		}
 
+		Attr numThreads = element.getAttributeNode("numThreads");
+		if (numThreads != null) {
+			manager.addPropertyValue("numThreads", numThreads.getValue());
+		}
+
+		Attr queueSize = element.getAttributeNode("queueSize");
+		if (queueSize != null) {
+			manager.addPropertyValue("queueSize", queueSize.getValue());
+		}
+
+		Attr specificationCacheExpiration = element.getAttributeNode("specificationCacheExpiration");
+		if (specificationCacheExpiration != null) {
+			manager.addPropertyValue("specificationCacheExpiration", specificationCacheExpiration.getValue());
+		}
+
 		return manager.getBeanDefinition();
 	}
 
@@ -19,6 +19,8 @@ import org.springframework.util.xml.DomUtils;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Element;
 
+import com.sitewhere.geospatial.GeohashLocationIndex;
+import com.sitewhere.geospatial.GeohashLocationSearchProvider;
 import com.sitewhere.server.SiteWhereServerBeans;
 import com.sitewhere.server.search.SearchProviderManager;
 import com.sitewhere.solr.SiteWhereSolrConfiguration;
@@ -82,6 +84,10 @@ public class SearchProvidersParser extends AbstractBeanDefinitionParser {
 				result.add(parseSolrSearchProvider(child, context));
 				break;
 			}
+			case LocationSearchProvider: {
+				result.add(parseLocationSearchProvider(child, context));
+				break;
+			}
 			}
 		}
 		return result;
@@ -111,12 +117,52 @@ public class SearchProvidersParser extends AbstractBeanDefinitionParser {
 		}
 		provider.addPropertyValue("name", id.getValue());
 
+		// Limit for location searches that do not pass one.
+		Attr defaultMaxRows = element.getAttributeNode("defaultMaxRows");
+		if (defaultMaxRows != null) {
+			provider.addPropertyValue("defaultMaxRows", defaultMaxRows.getValue());
+		}
+
 		// Reference to global configuration.
 		provider.addPropertyReference("solr", SiteWhereSolrConfiguration.SOLR_CONFIGURATION_BEAN);
 
 		return provider.getBeanDefinition();
 	}
 
+	/**
+	 * Parse configuration for the search provider backed by the in-memory location index.
+	 * 
+	 * @param element
+	 * @param context
+	 * @return
+	 */
+	protected AbstractBeanDefinition parseLocationSearchProvider(Element element, ParserContext context) {
+		BeanDefinitionBuilder provider =
+				BeanDefinitionBuilder.rootBeanDefinition(GeohashLocationSearchProvider.class);
+
+		// Provider id.
+		Attr id = element.getAttributeNode("id");
+		if (id != null) {
+			provider.addPropertyValue("id", id.getValue());
+		}
+
+		// Provider name
+		Attr name = element.getAttributeNode("name");
+		if (name != null) {
+			provider.addPropertyValue("name", name.getValue());
+		}
+
+		// Index shared with the location index event processor.
+		if (!context.getRegistry().containsBeanDefinition(SiteWhereServerBeans.BEAN_LOCATION_INDEX)) {
+			BeanDefinitionBuilder index = BeanDefinitionBuilder.rootBeanDefinition(GeohashLocationIndex.class);
+			context.getRegistry().registerBeanDefinition(SiteWhereServerBeans.BEAN_LOCATION_INDEX,
+					index.getBeanDefinition());
+		}
+		provider.addPropertyReference("index", SiteWhereServerBeans.BEAN_LOCATION_INDEX);
+
+		return provider.getBeanDefinition();
+	}
+
 	/**
 	 * Expected child elements.
 	 * 
@@ -125,7 +171,10 @@ public class SearchProvidersParser extends AbstractBeanDefinitionParser {
 	public static enum Elements {
 
 		/** Solr search provider */
-		SolrSearchProvider("solr-search-provider");
+		SolrSearchProvider("solr-search-provider"),
+
+		/** Search provider backed by in-memory location index */
+		LocationSearchProvider("location-search-provider");
 
 		/** Event code */
 		private String localName;
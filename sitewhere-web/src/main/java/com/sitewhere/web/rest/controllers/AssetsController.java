@@ -24,12 +24,13 @@ import com.sitewhere.Tracer;
 import com.sitewhere.core.user.SitewhereRoles;
 import com.sitewhere.rest.model.asset.AssetModule;
 import com.sitewhere.rest.model.command.CommandResponse;
-import com.sitewhere.rest.model.search.SearchResults;
+import com.sitewhere.rest.model.search.SearchCriteria;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.asset.AssetType;
 import com.sitewhere.spi.asset.IAsset;
 import com.sitewhere.spi.asset.IAssetModule;
 import com.sitewhere.spi.command.ICommandResponse;
+import com.sitewhere.spi.search.ISearchResults;
 import com.sitewhere.spi.server.debug.TracerCategory;
 import com.wordnik.swagger.annotations.Api;
 import com.wordnik.swagger.annotations.ApiOperation;
@@ -49,28 +50,33 @@ public class AssetsController extends SiteWhereController {
 	private static Logger LOGGER = Logger.getLogger(AssetsController.class);
 
 	/**
-	 * Search for assets in an {@link IAssetModule} that meet the given criteria.
+	 * Search for assets in an {@link IAssetModule} that meet the given criteria. Best
+	 * matches are returned first. A page size of zero returns all matches.
 	 * 
 	 * @param assetModuleId
 	 * @param criteria
+	 * @param page
+	 * @param pageSize
 	 * @return
 	 * @throws SiteWhereException
 	 */
 	@RequestMapping(value = "/{assetModuleId}", method = RequestMethod.GET)
 	@ResponseBody
 	@ApiOperation(value = "Search hardware assets")
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@Secured({ SitewhereRoles.ROLE_AUTHENTICATED_USER })
-	public SearchResults<? extends IAsset> searchAssets(
+	public ISearchResults<? extends IAsset> searchAssets(
 			@ApiParam(value = "Unique asset module id", required = true) @PathVariable String assetModuleId,
-			@ApiParam(value = "Criteria for search", required = false) @RequestParam(defaultValue = "") String criteria)
+			@ApiParam(value = "Criteria for search", required = false) @RequestParam(defaultValue = "") String criteria,
+			@ApiParam(value = "Page Number (First page is 1)", required = false) @RequestParam(defaultValue = "1") int page,
+			@ApiParam(value = "Page size (zero for all)", required = false) @RequestParam(defaultValue = "0") int pageSize)
 			throws SiteWhereException {
 		Tracer.start(TracerCategory.RestApiCall, "searchAssets", LOGGER);
-		List<? extends IAsset> found =
-				SiteWhere.getServer().getAssetModuleManager().search(assetModuleId, criteria);
-		SearchResults<? extends IAsset> results = new SearchResults(found);
-		Tracer.stop(LOGGER);
-		return results;
+		try {
+			SearchCriteria paging = new SearchCriteria(page, pageSize);
+			return SiteWhere.getServer().getAssetModuleManager().search(assetModuleId, criteria, paging);
+		} finally {
+			Tracer.stop(LOGGER);
+		}
 	}
 
 	/**
@@ -19,6 +19,7 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import com.sitewhere.SiteWhere;
@@ -28,9 +29,11 @@ import com.sitewhere.rest.model.search.external.SearchProvider;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.SiteWhereSystemException;
 import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceLocation;
 import com.sitewhere.spi.error.ErrorCode;
 import com.sitewhere.spi.error.ErrorLevel;
 import com.sitewhere.spi.search.external.IDeviceEventSearchProvider;
+import com.sitewhere.spi.search.external.ILocationSearchProvider;
 import com.sitewhere.spi.search.external.ISearchProvider;
 import com.sitewhere.spi.server.debug.TracerCategory;
 import com.wordnik.swagger.annotations.Api;
@@ -93,4 +96,33 @@ public class SearchController extends SiteWhereController {
 			Tracer.stop(LOGGER);
 		}
 	}
+
+	@RequestMapping(value = "/{providerId}/locations/nearest", method = RequestMethod.GET)
+	@ResponseBody
+	@ApiOperation(value = "Find last known device locations nearest to a point")
+	@Secured({ SitewhereRoles.ROLE_AUTHENTICATED_USER })
+	public List<IDeviceLocation> findNearestLocations(
+			@ApiParam(value = "Search provider id", required = true) @PathVariable String providerId,
+			@ApiParam(value = "Latitude", required = true) @RequestParam double latitude,
+			@ApiParam(value = "Longitude", required = true) @RequestParam double longitude,
+			@ApiParam(value = "Radius in kilometers", required = true) @RequestParam double radius,
+			@ApiParam(value = "Maximum number of results", required = false) @RequestParam(defaultValue = "10") int maxResults)
+			throws SiteWhereException {
+		Tracer.start(TracerCategory.RestApiCall, "findNearestLocations", LOGGER);
+		try {
+			ISearchProvider provider =
+					SiteWhere.getServer().getSearchProviderManager().getSearchProvider(providerId);
+			if (provider == null) {
+				throw new SiteWhereSystemException(ErrorCode.InvalidSearchProviderId, ErrorLevel.ERROR,
+						HttpServletResponse.SC_NOT_FOUND);
+			}
+			if (!(provider instanceof ILocationSearchProvider)) {
+				throw new SiteWhereException("Search provider does not provide location search capability.");
+			}
+			return ((ILocationSearchProvider) provider).getNearestLocations(latitude, longitude, radius,
+					maxResults);
+		} finally {
+			Tracer.stop(LOGGER);
+		}
+	}
 }
\ No newline at end of file
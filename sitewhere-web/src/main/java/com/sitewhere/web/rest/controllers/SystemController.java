@@ -19,6 +19,7 @@ import com.sitewhere.Tracer;
 import com.sitewhere.core.user.SitewhereRoles;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.server.debug.TracerCategory;
+import com.sitewhere.spi.server.lifecycle.IStartupReport;
 import com.sitewhere.spi.system.IVersion;
 import com.wordnik.swagger.annotations.Api;
 import com.wordnik.swagger.annotations.ApiOperation;
@@ -48,4 +49,17 @@ public class SystemController extends SiteWhereController {
 			Tracer.stop(LOGGER);
 		}
 	}
+
+	@RequestMapping(value = "/startup", method = RequestMethod.GET)
+	@ResponseBody
+	@ApiOperation(value = "Get time taken to start each server component")
+	@Secured({ SitewhereRoles.ROLE_AUTHENTICATED_USER })
+	public IStartupReport getStartupReport() throws SiteWhereException {
+		Tracer.start(TracerCategory.RestApiCall, "getStartupReport", LOGGER);
+		try {
+			return SiteWhere.getServer().getStartupReport();
+		} finally {
+			Tracer.stop(LOGGER);
+		}
+	}
 }
\ No newline at end of file